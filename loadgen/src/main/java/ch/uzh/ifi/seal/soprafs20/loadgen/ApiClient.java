@@ -0,0 +1,76 @@
+package ch.uzh.ifi.seal.soprafs20.loadgen;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Non-blocking client of the server's REST API. Every request is recorded in the latency statistics under the name
+ * of its endpoint, e.g. "GET /lobbies/{id}/game", so requests to different lobbies are counted together.
+ */
+class ApiClient {
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+
+    private final HttpClient httpClient;
+    private final String baseUrl;
+    private final LatencyStats stats;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    ApiClient(String baseUrl, LatencyStats stats) {
+        this.httpClient = HttpClient.newBuilder().connectTimeout(TIMEOUT).build();
+        this.baseUrl = baseUrl;
+        this.stats = stats;
+    }
+
+    CompletableFuture<HttpResponse<String>> get(String endpoint, String path) {
+        return send(endpoint, request(path).GET().build());
+    }
+
+    CompletableFuture<HttpResponse<String>> put(String endpoint, String path, Map<String, ?> body) {
+        return send(endpoint, request(path).PUT(json(body)).build());
+    }
+
+    CompletableFuture<HttpResponse<String>> post(String endpoint, String path, Map<String, ?> body) {
+        return send(endpoint, request(path).POST(json(body)).build());
+    }
+
+    JsonNode parse(HttpResponse<String> response) {
+        try {
+            return objectMapper.readTree(response.body());
+        }
+        catch (JsonProcessingException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    private CompletableFuture<HttpResponse<String>> send(String endpoint, HttpRequest request) {
+        long start = System.nanoTime();
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+                .whenComplete((response, e) -> stats.record(endpoint, System.nanoTime() - start,
+                        response == null ? 0 : response.statusCode()));
+    }
+
+    private HttpRequest.Builder request(String path) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .timeout(TIMEOUT)
+                .header("Content-Type", "application/json");
+    }
+
+    private HttpRequest.BodyPublisher json(Map<String, ?> body) {
+        try {
+            return HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(body));
+        }
+        catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("The request body could not be created.", e);
+        }
+    }
+}
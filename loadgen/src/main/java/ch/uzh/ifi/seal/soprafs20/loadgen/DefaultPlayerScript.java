@@ -0,0 +1,53 @@
+package ch.uzh.ifi.seal.soprafs20.loadgen;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Plays like a typical player: thinks for a while, then picks the word, sends a clue, accepts all clues and guesses
+ */
+public class DefaultPlayerScript implements PlayerScript {
+    private static final String[] CLUES = {"water", "green", "music", "winter", "animal", "city", "light", "paper",
+            "sport", "forest", "metal", "sweet", "ocean", "fire", "school", "machine"};
+
+    @Override
+    public CompletableFuture<?> onPhase(SimulatedPlayer player, JsonNode game) {
+        boolean guesser = player.isGuesser(game);
+        switch (game.path("gameState").asText()) {
+            case "PICK_WORD_STATE":
+                return guesser ? player.think().thenCompose(v -> player.pickWord()) : done();
+            case "ENTER_CLUES_STATE":
+                if(guesser) {
+                    return done();
+                }
+                // in games of three, every player sends two clues
+                return player.think().thenCompose(v -> game.path("specialGame").asBoolean()
+                        ? player.sendClue(randomClue(), randomClue()) : player.sendClue(randomClue()));
+            case "VOTE_ON_CLUES_STATE":
+                return guesser ? done() : player.think().thenCompose(v -> player.vote(new ArrayList<>()));
+            case "ENTER_GUESS_STATE":
+                if(!guesser) {
+                    return done();
+                }
+                return player.think().thenCompose(v -> {
+                    String word = player.getLastSeenWord();
+                    boolean correct = word != null
+                            && ThreadLocalRandom.current().nextDouble() < player.getSettings().getCorrectGuessProbability();
+                    return player.guess(correct ? word : randomClue());
+                });
+            default:
+                return done();
+        }
+    }
+
+    private static String randomClue() {
+        return CLUES[ThreadLocalRandom.current().nextInt(CLUES.length)];
+    }
+
+    private static CompletableFuture<Void> done() {
+        return CompletableFuture.completedFuture(null);
+    }
+}
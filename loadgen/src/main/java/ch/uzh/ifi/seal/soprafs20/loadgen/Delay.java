@@ -0,0 +1,16 @@
+package ch.uzh.ifi.seal.soprafs20.loadgen;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+final class Delay {
+
+    private Delay() {}
+
+    /**
+     * @return completes after the given time, without blocking a thread while waiting
+     */
+    static CompletableFuture<Void> of(long millis) {
+        return CompletableFuture.runAsync(() -> {}, CompletableFuture.delayedExecutor(Math.max(millis, 0L), TimeUnit.MILLISECONDS));
+    }
+}
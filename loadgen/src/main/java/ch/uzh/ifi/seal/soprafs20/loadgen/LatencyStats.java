@@ -0,0 +1,60 @@
+package ch.uzh.ifi.seal.soprafs20.loadgen;
+
+import org.HdrHistogram.ConcurrentHistogram;
+
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latencies and outcomes of the requests, per endpoint
+ */
+class LatencyStats {
+    private final Map<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+
+    /**
+     * @param status the HTTP status, 0 if no response was received
+     */
+    void record(String endpoint, long nanos, int status) {
+        Endpoint stats = endpoints.computeIfAbsent(endpoint, name -> new Endpoint());
+        stats.latencies.recordValue(Math.max(TimeUnit.NANOSECONDS.toMicros(nanos), 1L));
+        if(status == 0 || status >= 500) {
+            stats.errors.increment();
+        }
+        else if(status >= 400) {
+            stats.rejected.increment();
+        }
+    }
+
+    long getCount(String endpoint) {
+        Endpoint stats = endpoints.get(endpoint);
+        return stats == null ? 0L : stats.latencies.getTotalCount();
+    }
+
+    void print(PrintStream out, double seconds) {
+        out.println(String.format("%-36s %9s %8s %8s %8s %9s %9s %9s %9s",
+                "endpoint", "requests", "req/s", "4xx", "errors", "p50 ms", "p90 ms", "p99 ms", "max ms"));
+        for(Map.Entry<String, Endpoint> entry : new TreeMap<>(endpoints).entrySet()) {
+            ConcurrentHistogram latencies = entry.getValue().latencies;
+            out.println(String.format("%-36s %9d %8.1f %8d %8d %9.1f %9.1f %9.1f %9.1f",
+                    entry.getKey(), latencies.getTotalCount(), latencies.getTotalCount() / seconds,
+                    entry.getValue().rejected.sum(), entry.getValue().errors.sum(),
+                    millis(latencies.getValueAtPercentile(50)), millis(latencies.getValueAtPercentile(90)),
+                    millis(latencies.getValueAtPercentile(99)), millis(latencies.getMaxValue())));
+        }
+    }
+
+    private static double millis(long micros) {
+        return micros / 1000.0;
+    }
+
+    private static class Endpoint {
+        // microseconds, three significant digits
+        private final ConcurrentHistogram latencies = new ConcurrentHistogram(3);
+        private final LongAdder rejected = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+    }
+}
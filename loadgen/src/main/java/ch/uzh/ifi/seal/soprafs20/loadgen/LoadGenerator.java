@@ -0,0 +1,106 @@
+package ch.uzh.ifi.seal.soprafs20.loadgen;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * Drives a running server with simulated lobbies over HTTP, like the clients of real players do:
+ * register and log in, browse and join lobbies, start games, poll the game and the timer every second,
+ * chat, send clues, votes and guesses. The lobbies are started evenly spread over the ramp-up time.
+ * Reports the latency percentiles per endpoint and the server's own metrics. See {@link LoadSettings} for the settings.
+ */
+public class LoadGenerator {
+    private final LoadSettings settings;
+    private final LatencyStats stats = new LatencyStats();
+    private final ApiClient api;
+
+    LoadGenerator(LoadSettings settings) {
+        this.settings = settings;
+        this.api = new ApiClient(settings.baseUrl, stats);
+    }
+
+    public static void main(String[] args) throws IOException {
+        LoadSettings settings = LoadSettings.fromSystemProperties();
+        StubDatamuseServer datamuse = null;
+        if(settings.datamusePort > 0) {
+            datamuse = StubDatamuseServer.start(settings.datamusePort);
+            System.out.println(String.format("Stub Datamuse server on port %d, start the server with --datamuse.url=http://localhost:%d",
+                    datamuse.getPort(), datamuse.getPort()));
+        }
+        try {
+            new LoadGenerator(settings).run(System.out);
+        }
+        finally {
+            if(datamuse != null) {
+                datamuse.stop();
+            }
+        }
+    }
+
+    void run(PrintStream out) {
+        PlayerScript script = createScript(settings.script);
+        String runId = Long.toString(System.currentTimeMillis() % 100_000_000L, 36);
+        long rampUpStepMillis = settings.rampUpSeconds * 1000 / Math.max(settings.lobbies, 1);
+        out.println(String.format("%d lobbies with %d players and %d bots against %s, ramp-up %d s",
+                settings.lobbies, settings.playersPerLobby, settings.botsPerLobby, settings.baseUrl, settings.rampUpSeconds));
+
+        AtomicInteger failedLobbies = new AtomicInteger();
+        List<SimulatedLobby> lobbies = new ArrayList<>();
+        List<CompletableFuture<Void>> running = new ArrayList<>();
+        long start = System.nanoTime();
+        for(int i = 0; i < settings.lobbies; i++) {
+            SimulatedLobby lobby = new SimulatedLobby(api, settings, script, "load" + runId + "l" + i);
+            lobbies.add(lobby);
+            running.add(Delay.of(i * rampUpStepMillis)
+                    .thenCompose(v -> lobby.run())
+                    .exceptionally(e -> {
+                        failedLobbies.incrementAndGet();
+                        out.println("Lobby failed: " + e.getMessage());
+                        return null;
+                    }));
+        }
+        CompletableFuture.allOf(running.toArray(new CompletableFuture[0])).join();
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        int games = 0;
+        for(SimulatedLobby lobby : lobbies) {
+            games += lobby.getFinishedGames();
+        }
+        out.println(String.format("%d games finished in %.0f s, %d of %d lobbies failed", games, seconds,
+                failedLobbies.get(), settings.lobbies));
+        out.println();
+        stats.print(out, seconds);
+        out.println();
+        printServerMetrics(out);
+    }
+
+    private void printServerMetrics(PrintStream out) {
+        HttpResponse<String> response = api.get("GET /metrics/prometheus", "/metrics/prometheus").join();
+        if(response.statusCode() != 200) {
+            out.println("Server metrics not available: " + response.statusCode());
+            return;
+        }
+        Pattern names = Pattern.compile(settings.serverMetrics);
+        out.println("server metrics:");
+        for(String line : response.body().split("\n")) {
+            if(!line.startsWith("#") && names.matcher(line).matches()) {
+                out.println(line);
+            }
+        }
+    }
+
+    private static PlayerScript createScript(String className) {
+        try {
+            return Class.forName(className).asSubclass(PlayerScript.class).getDeclaredConstructor().newInstance();
+        }
+        catch (ReflectiveOperationException e) {
+            throw new IllegalArgumentException(String.format("The player script %s could not be created.", className), e);
+        }
+    }
+}
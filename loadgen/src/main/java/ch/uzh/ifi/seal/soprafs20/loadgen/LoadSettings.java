@@ -0,0 +1,51 @@
+package ch.uzh.ifi.seal.soprafs20.loadgen;
+
+/**
+ * Size and behaviour of a load test, every setting can be overridden with a system property loadgen.&lt;name&gt;
+ */
+public class LoadSettings {
+    String baseUrl = "http://localhost:8080";
+    int lobbies = 10;
+    int playersPerLobby = 4;
+    int botsPerLobby = 0;
+    int rounds = 3;
+    int gamesPerLobby = 1;
+    long rampUpSeconds = 30;
+    long pollIntervalMillis = 1000;
+    long thinkTimeMillis = 3000;
+    double chatMessagesPerMinute = 2;
+    double correctGuessProbability = 0.6;
+    String script = DefaultPlayerScript.class.getName();
+    // port of the stub Datamuse server started with the load generator, 0 to not start it
+    int datamusePort = 9090;
+    // the server metrics printed after the run, a regular expression on the names in the Prometheus format
+    String serverMetrics = "^(game_|http_|commands_|errors_).*";
+
+    public static LoadSettings fromSystemProperties() {
+        LoadSettings settings = new LoadSettings();
+        settings.baseUrl = System.getProperty("loadgen.baseUrl", settings.baseUrl);
+        settings.lobbies = Integer.getInteger("loadgen.lobbies", settings.lobbies);
+        settings.playersPerLobby = Integer.getInteger("loadgen.playersPerLobby", settings.playersPerLobby);
+        settings.botsPerLobby = Integer.getInteger("loadgen.botsPerLobby", settings.botsPerLobby);
+        settings.rounds = Integer.getInteger("loadgen.rounds", settings.rounds);
+        settings.gamesPerLobby = Integer.getInteger("loadgen.gamesPerLobby", settings.gamesPerLobby);
+        settings.rampUpSeconds = Long.getLong("loadgen.rampUpSeconds", settings.rampUpSeconds);
+        settings.pollIntervalMillis = Long.getLong("loadgen.pollIntervalMillis", settings.pollIntervalMillis);
+        settings.thinkTimeMillis = Long.getLong("loadgen.thinkTimeMillis", settings.thinkTimeMillis);
+        settings.chatMessagesPerMinute = Double.parseDouble(System.getProperty("loadgen.chatMessagesPerMinute",
+                String.valueOf(settings.chatMessagesPerMinute)));
+        settings.correctGuessProbability = Double.parseDouble(System.getProperty("loadgen.correctGuessProbability",
+                String.valueOf(settings.correctGuessProbability)));
+        settings.script = System.getProperty("loadgen.script", settings.script);
+        settings.datamusePort = Integer.getInteger("loadgen.datamusePort", settings.datamusePort);
+        settings.serverMetrics = System.getProperty("loadgen.serverMetrics", settings.serverMetrics);
+        if(settings.playersPerLobby + settings.botsPerLobby < 3 || settings.playersPerLobby + settings.botsPerLobby > 7) {
+            throw new IllegalArgumentException("A game needs between 3 and 7 players and bots.");
+        }
+        return settings;
+    }
+
+    public long getThinkTimeMillis() { return thinkTimeMillis; }
+
+    public double getCorrectGuessProbability() { return correctGuessProbability; }
+}
@@ -0,0 +1,19 @@
+package ch.uzh.ifi.seal.soprafs20.loadgen;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * What a simulated player does when its game enters a new phase. Scripts are picked with -Dloadgen.script=&lt;class name&gt;
+ * and need a public constructor without arguments, one instance is shared by all players.
+ */
+public interface PlayerScript {
+
+    /**
+     * @param player the player, with the commands it can send
+     * @param game the game as the player sees it, the response of GET /lobbies/{id}/game
+     * @return completes once the player is done with this phase
+     */
+    CompletableFuture<?> onPhase(SimulatedPlayer player, JsonNode game);
+}
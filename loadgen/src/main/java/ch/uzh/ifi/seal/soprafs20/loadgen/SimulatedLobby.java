@@ -0,0 +1,112 @@
+package ch.uzh.ifi.seal.soprafs20.loadgen;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A lobby with its players: the host creates it, the others browse the lobbies and join, then the host starts
+ * the configured number of games, one after the other, and all players play them
+ */
+class SimulatedLobby {
+    private final ApiClient api;
+    private final LoadSettings settings;
+    private final PlayerScript script;
+    private final String name;
+    private final List<SimulatedPlayer> players = new ArrayList<>();
+    private volatile String path;
+    private volatile String lastSeenWord;
+    private volatile int finishedGames;
+
+    SimulatedLobby(ApiClient api, LoadSettings settings, PlayerScript script, String name) {
+        this.api = api;
+        this.settings = settings;
+        this.script = script;
+        this.name = name;
+        for(int i = 0; i < settings.playersPerLobby; i++) {
+            players.add(new SimulatedPlayer(api, this, settings, name + "p" + i));
+        }
+    }
+
+    String getPath() { return path; }
+
+    String getLastSeenWord() { return lastSeenWord; }
+
+    void setLastSeenWord(String word) { this.lastSeenWord = word; }
+
+    int getFinishedGames() { return finishedGames; }
+
+    CompletableFuture<Void> run() {
+        List<CompletableFuture<Void>> registrations = new ArrayList<>();
+        for(SimulatedPlayer player : players) {
+            registrations.add(player.register());
+        }
+        return CompletableFuture.allOf(registrations.toArray(new CompletableFuture[0]))
+                .thenCompose(v -> createLobby())
+                .thenCompose(v -> addBots())
+                .thenCompose(v -> joinPlayers())
+                .thenCompose(v -> playGames(settings.gamesPerLobby));
+    }
+
+    private CompletableFuture<Void> createLobby() {
+        SimulatedPlayer host = players.get(0);
+        Map<String, Object> body = new HashMap<>();
+        body.put("lobbyName", name);
+        body.put("maxPlayersAndBots", settings.playersPerLobby + settings.botsPerLobby);
+        body.put("rounds", settings.rounds);
+        body.put("hostId", host.getId());
+        body.put("hostToken", host.getToken());
+        return api.post("POST /lobbies", "/lobbies", body).thenAccept(created -> {
+            SimulatedPlayer.expect(created, 201, "create the lobby");
+            String location = created.headers().firstValue("Location")
+                    .orElseThrow(() -> new IllegalStateException("The created lobby has no location."));
+            path = URI.create(location).getPath();
+        });
+    }
+
+    private CompletableFuture<Void> addBots() {
+        if(settings.botsPerLobby == 0) {
+            return CompletableFuture.completedFuture(null);
+        }
+        Map<String, Object> body = new HashMap<>();
+        body.put("numberOfBots", settings.botsPerLobby);
+        body.put("hostToken", players.get(0).getToken());
+        return api.put("PUT /lobbies/{id}", path, body)
+                .thenAccept(updated -> SimulatedPlayer.expect(updated, 204, "add bots"));
+    }
+
+    private CompletableFuture<Void> joinPlayers() {
+        List<CompletableFuture<Void>> joins = new ArrayList<>();
+        for(SimulatedPlayer player : players.subList(1, players.size())) {
+            joins.add(player.join());
+        }
+        return CompletableFuture.allOf(joins.toArray(new CompletableFuture[0]));
+    }
+
+    private CompletableFuture<Void> playGames(int games) {
+        if(games == 0) {
+            return CompletableFuture.completedFuture(null);
+        }
+        SimulatedPlayer host = players.get(0);
+        Map<String, Object> body = new HashMap<>();
+        body.put("hostId", host.getId());
+        body.put("hostToken", host.getToken());
+        lastSeenWord = null;
+        return api.post("POST /lobbies/{id}", path, body)
+                .thenCompose(started -> {
+                    SimulatedPlayer.expect(started, 201, "start the game");
+                    List<CompletableFuture<Void>> playing = new ArrayList<>();
+                    for(SimulatedPlayer player : players) {
+                        playing.add(player.play(script));
+                    }
+                    return CompletableFuture.allOf(playing.toArray(new CompletableFuture[0]));
+                })
+                .thenCompose(v -> {
+                    finishedGames++;
+                    return playGames(games - 1);
+                });
+    }
+}
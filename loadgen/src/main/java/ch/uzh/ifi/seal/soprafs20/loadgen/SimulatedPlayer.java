@@ -0,0 +1,181 @@
+package ch.uzh.ifi.seal.soprafs20.loadgen;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.net.http.HttpResponse;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A player of a simulated lobby. Registers and logs in like a client, then polls its game and the timer
+ * while the game runs and lets the script decide what to do whenever the game enters a new phase.
+ */
+public class SimulatedPlayer {
+    private static final String[] CHAT_MESSAGES = {"hi all", "good luck", "nice one", "that was hard", "gg"};
+
+    private final ApiClient api;
+    private final SimulatedLobby lobby;
+    private final LoadSettings settings;
+    private final String username;
+    private long id;
+    private String token;
+    private String phase;
+
+    SimulatedPlayer(ApiClient api, SimulatedLobby lobby, LoadSettings settings, String username) {
+        this.api = api;
+        this.lobby = lobby;
+        this.settings = settings;
+        this.username = username;
+    }
+
+    public long getId() { return id; }
+
+    public String getToken() { return token; }
+
+    public LoadSettings getSettings() { return settings; }
+
+    /**
+     * @return the word to guess as the other players of the lobby saw it last, null if none was seen yet
+     */
+    public String getLastSeenWord() { return lobby.getLastSeenWord(); }
+
+    public boolean isGuesser(JsonNode game) {
+        return game.path("currentGuesser").path("id").asLong() == id;
+    }
+
+    /**
+     * @return completes after a think time drawn from an exponential distribution around the configured mean
+     */
+    public CompletableFuture<Void> think() {
+        double sample = -Math.log(1.0 - ThreadLocalRandom.current().nextDouble());
+        return Delay.of((long) (sample * settings.thinkTimeMillis));
+    }
+
+    public CompletableFuture<HttpResponse<String>> pickWord() {
+        return api.get("GET /lobbies/{id}/game/word", lobby.getPath() + "/game/word?token=" + token);
+    }
+
+    public CompletableFuture<HttpResponse<String>> sendClue(String... clues) {
+        Map<String, Object> body = command();
+        body.put("message", clues[0]);
+        if(clues.length > 1) {
+            body.put("message2", clues[1]);
+        }
+        return api.put("PUT /lobbies/{id}/game/clue", lobby.getPath() + "/game/clue", body);
+    }
+
+    public CompletableFuture<HttpResponse<String>> vote(List<String> invalidClues) {
+        Map<String, Object> body = command();
+        body.put("invalidClues", invalidClues);
+        return api.put("PUT /lobbies/{id}/game/vote", lobby.getPath() + "/game/vote", body);
+    }
+
+    public CompletableFuture<HttpResponse<String>> guess(String word) {
+        Map<String, Object> body = command();
+        body.put("message", word);
+        return api.put("PUT /lobbies/{id}/game/guess", lobby.getPath() + "/game/guess", body);
+    }
+
+    public CompletableFuture<HttpResponse<String>> chat(String message) {
+        Map<String, Object> body = command();
+        body.put("message", message);
+        return api.put("PUT /lobbies/{id}/chat", lobby.getPath() + "/chat", body);
+    }
+
+    /**
+     * Creates the user of the player and logs it in
+     */
+    CompletableFuture<Void> register() {
+        Map<String, Object> user = new HashMap<>();
+        user.put("username", username);
+        user.put("password", username);
+        return api.post("POST /users", "/users", user)
+                .thenCompose(created -> {
+                    expect(created, 201, "create user");
+                    return api.put("PUT /login", "/login", user);
+                })
+                .thenAccept(login -> {
+                    expect(login, 200, "log in");
+                    JsonNode loggedIn = api.parse(login);
+                    id = loggedIn.path("id").asLong();
+                    token = loggedIn.path("token").asText();
+                });
+    }
+
+    /**
+     * Browses the joinable lobbies, like a client does before joining, and joins the lobby of this player
+     */
+    CompletableFuture<Void> join() {
+        return api.get("GET /lobbies", "/lobbies?joinable=true&limit=50&token=" + token)
+                .thenCompose(lobbies -> {
+                    Map<String, Object> body = new HashMap<>();
+                    body.put("playerId", id);
+                    body.put("playerToken", token);
+                    return api.put("PUT /lobbies/{id}/joins", lobby.getPath() + "/joins", body);
+                })
+                .thenAccept(joined -> expect(joined, 200, "join the lobby"));
+    }
+
+    /**
+     * Polls the game until it has ended and was removed
+     */
+    CompletableFuture<Void> play(PlayerScript script) {
+        CompletableFuture<Void> ended = new CompletableFuture<>();
+        phase = null;
+        poll(script, ended);
+        return ended;
+    }
+
+    private void poll(PlayerScript script, CompletableFuture<Void> ended) {
+        String query = "?token=" + token;
+        CompletableFuture<HttpResponse<String>> game = api.get("GET /lobbies/{id}/game", lobby.getPath() + "/game" + query);
+        CompletableFuture<HttpResponse<String>> timer = api.get("GET /lobbies/{id}/game/timer", lobby.getPath() + "/game/timer" + query);
+        double chatProbability = settings.chatMessagesPerMinute * settings.pollIntervalMillis / 60_000.0;
+        if(ThreadLocalRandom.current().nextDouble() < chatProbability) {
+            chat(CHAT_MESSAGES[ThreadLocalRandom.current().nextInt(CHAT_MESSAGES.length)]);
+        }
+
+        game.thenAcceptBoth(timer, (gameResponse, timerResponse) -> {
+            if(gameResponse.statusCode() == 200) {
+                onGame(script, api.parse(gameResponse));
+            }
+        }).whenComplete((v, e) -> {
+            // polling starts once the game was created, so a missing game has ended
+            if(!game.isCompletedExceptionally() && game.join().statusCode() == 404) {
+                ended.complete(null);
+            }
+            else {
+                Delay.of(settings.pollIntervalMillis).thenRun(() -> poll(script, ended));
+            }
+        });
+    }
+
+    private void onGame(PlayerScript script, JsonNode game) {
+        String word = game.path("currentWord").asText(null);
+        if(word != null && !isGuesser(game)) {
+            lobby.setLastSeenWord(word);
+        }
+        String currentPhase = game.path("gameState").asText() + ":" + game.path("roundsPlayed").asInt();
+        if(!currentPhase.equals(phase)) {
+            phase = currentPhase;
+            script.onPhase(this, game);
+        }
+    }
+
+    private Map<String, Object> command() {
+        Map<String, Object> body = new HashMap<>();
+        body.put("playerId", id);
+        body.put("playerToken", token);
+        return body;
+    }
+
+    static void expect(HttpResponse<String> response, int status, String action) {
+        if(response.statusCode() != status) {
+            throw new IllegalStateException(String.format("Could not %s, the server answered %d: %s",
+                    action, response.statusCode(), response.body()));
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package ch.uzh.ifi.seal.soprafs20.loadgen;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+
+/**
+ * Answers GET /words?ml=... like the Datamuse API, with a fixed selection of words per query,
+ * so games with bots can be load tested offline. Start the server with --datamuse.url=http://localhost:&lt;port&gt;.
+ */
+public class StubDatamuseServer {
+    private static final int WORDS_PER_RESPONSE = 10;
+    private static final String[] WORDS = {"object", "thing", "item", "device", "tool", "piece", "part", "shape",
+            "color", "place", "person", "animal", "nature", "water", "light", "sound", "motion", "power", "metal",
+            "wood", "paper", "glass", "stone", "earth", "air", "heat", "cold", "game", "story", "picture"};
+
+    private final HttpServer server;
+
+    private StubDatamuseServer(HttpServer server) {
+        this.server = server;
+    }
+
+    /**
+     * @param port the port to listen on, 0 for any free port
+     */
+    public static StubDatamuseServer start(int port) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext("/words", StubDatamuseServer::handle);
+        server.setExecutor(Executors.newFixedThreadPool(4));
+        server.start();
+        return new StubDatamuseServer(server);
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public void stop() {
+        server.stop(0);
+    }
+
+    private static void handle(HttpExchange exchange) throws IOException {
+        String query = exchange.getRequestURI().getRawQuery();
+        byte[] body = wordsFor(query == null ? "" : query).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * @return the same words for the same query, in the format of the Datamuse API
+     */
+    static String wordsFor(String query) {
+        int first = Math.floorMod(query.hashCode(), WORDS.length);
+        StringBuilder json = new StringBuilder("[");
+        for(int i = 0; i < WORDS_PER_RESPONSE; i++) {
+            if(i > 0) {
+                json.append(',');
+            }
+            json.append("{\"word\":\"").append(WORDS[(first + i) % WORDS.length])
+                    .append("\",\"score\":").append(100_000 - i * 1000).append('}');
+        }
+        return json.append(']').toString();
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 9090;
+        StubDatamuseServer stub = start(port);
+        System.out.println(String.format("Stub Datamuse server listening on port %d", stub.getPort()));
+    }
+}
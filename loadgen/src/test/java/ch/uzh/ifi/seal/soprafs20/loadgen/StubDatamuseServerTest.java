@@ -0,0 +1,38 @@
+package ch.uzh.ifi.seal.soprafs20.loadgen;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StubDatamuseServerTest {
+
+    @Test
+    void wordsFor_sameQuery_sameWords() {
+        String words = StubDatamuseServer.wordsFor("ml=tool");
+
+        assertEquals(words, StubDatamuseServer.wordsFor("ml=tool"));
+        assertTrue(words.startsWith("[{\"word\":\""));
+        assertTrue(words.endsWith("}]"));
+    }
+
+    @Test
+    void getWords_answersLikeDatamuse() throws Exception {
+        StubDatamuseServer stub = StubDatamuseServer.start(0);
+        try {
+            HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + stub.getPort() + "/words?ml=star+wars")).build();
+            HttpResponse<String> response = HttpClient.newHttpClient().send(request, HttpResponse.BodyHandlers.ofString());
+
+            assertEquals(200, response.statusCode());
+            assertEquals("application/json", response.headers().firstValue("Content-Type").orElse(null));
+            assertEquals(StubDatamuseServer.wordsFor("ml=star+wars"), response.body());
+        }
+        finally {
+            stub.stop();
+        }
+    }
+}
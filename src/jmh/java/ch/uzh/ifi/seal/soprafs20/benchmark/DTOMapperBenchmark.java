@@ -0,0 +1,26 @@
+package ch.uzh.ifi.seal.soprafs20.benchmark;
+
+import ch.uzh.ifi.seal.soprafs20.entity.Game;
+import ch.uzh.ifi.seal.soprafs20.rest.dto.GameGetDTO;
+import ch.uzh.ifi.seal.soprafs20.rest.mapper.DTOMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class DTOMapperBenchmark {
+
+    private Game game;
+
+    @Setup
+    public void setup() {
+        game = GameFixtures.game(1L);
+    }
+
+    @Benchmark
+    public GameGetDTO convertEntityToGameGetDTO() {
+        return DTOMapper.INSTANCE.convertEntityToGameGetDTO(game);
+    }
+}
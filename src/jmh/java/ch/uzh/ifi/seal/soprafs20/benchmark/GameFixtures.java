@@ -0,0 +1,116 @@
+package ch.uzh.ifi.seal.soprafs20.benchmark;
+
+import ch.uzh.ifi.seal.soprafs20.GameLogic.GameState;
+import ch.uzh.ifi.seal.soprafs20.entity.Clue;
+import ch.uzh.ifi.seal.soprafs20.entity.Game;
+import ch.uzh.ifi.seal.soprafs20.entity.Player;
+import ch.uzh.ifi.seal.soprafs20.events.EventBus;
+import ch.uzh.ifi.seal.soprafs20.events.InJvmEventTransport;
+import ch.uzh.ifi.seal.soprafs20.journal.GameJournal;
+import ch.uzh.ifi.seal.soprafs20.metrics.MetricsRegistry;
+import ch.uzh.ifi.seal.soprafs20.repository.*;
+import ch.uzh.ifi.seal.soprafs20.service.DatamuseClient;
+import ch.uzh.ifi.seal.soprafs20.service.GameArchiveService;
+import ch.uzh.ifi.seal.soprafs20.service.GameLeases;
+import ch.uzh.ifi.seal.soprafs20.service.GameScheduler;
+import ch.uzh.ifi.seal.soprafs20.service.GameService;
+import ch.uzh.ifi.seal.soprafs20.service.LobbyDirectory;
+import ch.uzh.ifi.seal.soprafs20.service.SystemGameClock;
+
+import java.lang.reflect.Proxy;
+import java.util.Optional;
+
+/**
+ * In-memory games and a game service whose repositories do not touch a database, so the benchmarks measure
+ * the game logic only
+ */
+final class GameFixtures {
+    static final String[] CLUES = {"Sun", "Sweet", "Jam", "Bread", "Sweet", "Red", "Field"};
+
+    private GameFixtures() {}
+
+    /**
+     * @return a running game of seven players, everybody but the guesser sent a clue and voted the first clue out
+     */
+    static Game game(long lobbyId) {
+        Game game = new Game();
+        game.setLobbyId(lobbyId);
+        game.setRounds(13);
+        game.setCurrentWord("Strawberry");
+        game.setGameState(GameState.VOTE_ON_CLUES_STATE);
+        game.setStartTimeSeconds(0L);
+        game.setGuessCorrect(true);
+        for(int i = 0; i < CLUES.length; i++) {
+            Player player = new Player();
+            player.setId(lobbyId * 10 + i);
+            player.setUsername("player" + i);
+            player.setToken("token" + i);
+            game.addPlayer(player);
+            if(i == 0) {
+                game.setCurrentGuesser(player);
+                continue;
+            }
+            Clue clue = clue(player.getId(), CLUES[i]);
+            player.addClue(clue);
+            player.setClueIsSent(true);
+            player.setVoted(true);
+            game.addClue(clue);
+            game.addInvalidClue(clue(player.getId(), CLUES[1]));
+        }
+        return game;
+    }
+
+    static Clue clue(long playerId, String text) {
+        Clue clue = new Clue();
+        clue.setPlayerId(playerId);
+        clue.setActualClue(text);
+        clue.setTimeNeeded(12L);
+        return clue;
+    }
+
+    /**
+     * @param game the game every lookup of the game repository returns
+     */
+    static GameService gameService(Game game) {
+        MetricsRegistry metricsRegistry = new MetricsRegistry();
+        SystemGameClock gameClock = new SystemGameClock();
+        // no lease is ever taken in the benchmarks, so the leases need no transactions
+        GameLeases gameLeases = new GameLeases(repository(GameLeaseRepository.class, null), null, gameClock,
+                metricsRegistry, "benchmark", 5000L);
+        // nothing flushes the events in the benchmarks, the bus keeps at most one batch of them
+        EventBus eventBus = new EventBus("benchmark", new InJvmEventTransport(new InJvmEventTransport.Hub()), gameClock,
+                metricsRegistry, 256, 256);
+        // the benchmarks measure the game logic, not the disk
+        GameJournal gameJournal = new GameJournal(null, 0L, false, gameClock, metricsRegistry);
+        GameScheduler gameScheduler = new GameScheduler(1);
+        return new GameService(repository(GameRepository.class, game), repository(LobbyRepository.class, null),
+                repository(UserRepository.class, null), repository(LobbyScoreRepository.class, null),
+                repository(ClueRepository.class, null), repository(PlayerRepository.class, null),
+                new LobbyDirectory(), metricsRegistry, gameClock,
+                new DatamuseClient("https://api.datamuse.com"), gameScheduler, gameLeases, eventBus, gameJournal,
+                new GameArchiveService(repository(GameArchiveRepository.class, null), gameJournal, metricsRegistry,
+                        gameClock));
+    }
+
+    /**
+     * Repository whose finders return the given entity and whose save methods return what they are given
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> T repository(Class<T> type, Object entity) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            if(method.getName().startsWith("save")) {
+                return args[0];
+            }
+            if(method.getReturnType().equals(Optional.class)) {
+                return Optional.ofNullable(entity);
+            }
+            if(method.getReturnType().equals(boolean.class)) {
+                return false;
+            }
+            if(method.getReturnType().isPrimitive() && !method.getReturnType().equals(void.class)) {
+                return 0;
+            }
+            return null;
+        });
+    }
+}
@@ -0,0 +1,56 @@
+package ch.uzh.ifi.seal.soprafs20.benchmark;
+
+import ch.uzh.ifi.seal.soprafs20.entity.Game;
+import ch.uzh.ifi.seal.soprafs20.service.GameService;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The game logic mutates the game, so every invocation works on a new game.
+ * createGame measures building that game and is the baseline of the other benchmarks.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class GameServiceBenchmark {
+
+    private Game game;
+    private GameService gameService;
+
+    @Setup
+    public void setup() {
+        game = GameFixtures.game(1L);
+        gameService = GameFixtures.gameService(game);
+    }
+
+    @Benchmark
+    public Game createGame() {
+        return GameFixtures.game(1L);
+    }
+
+    @Benchmark
+    public Game checkVotes() {
+        Game newGame = GameFixtures.game(1L);
+        gameService.checkVotes(newGame, 3);
+        return newGame;
+    }
+
+    @Benchmark
+    public Game addClue() {
+        Game newGame = GameFixtures.game(1L);
+        gameService.addClue(GameFixtures.clue(99L, "Jam"), newGame);
+        gameService.addClue(GameFixtures.clue(98L, "Summer"), newGame);
+        return newGame;
+    }
+
+    /**
+     * updateScores reloads the game from the repository, so it works on the game of the setup;
+     * scores only grow, which does not change the work done
+     */
+    @Benchmark
+    public Game updateScores() {
+        gameService.updateScores(game);
+        return game;
+    }
+}
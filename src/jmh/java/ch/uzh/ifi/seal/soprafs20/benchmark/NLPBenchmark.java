@@ -0,0 +1,22 @@
+package ch.uzh.ifi.seal.soprafs20.benchmark;
+
+import ch.uzh.ifi.seal.soprafs20.GameLogic.NLP;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class NLPBenchmark {
+
+    @Param({"Jam", "Strawberries", "Strawbery"})
+    public String clue;
+
+    private final NLP nlp = new NLP();
+
+    @Benchmark
+    public boolean checkClue() {
+        return nlp.checkClue(clue, "Strawberry");
+    }
+}
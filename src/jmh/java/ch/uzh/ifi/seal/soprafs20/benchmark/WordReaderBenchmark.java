@@ -0,0 +1,25 @@
+package ch.uzh.ifi.seal.soprafs20.benchmark;
+
+import ch.uzh.ifi.seal.soprafs20.GameLogic.WordReader;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class WordReaderBenchmark {
+
+    private final WordReader wordReader = new WordReader();
+
+    @Benchmark
+    public WordReader createWordReader() {
+        return new WordReader();
+    }
+
+    @Benchmark
+    public List<String> getRandomWords() {
+        return wordReader.getRandomWords(13);
+    }
+}
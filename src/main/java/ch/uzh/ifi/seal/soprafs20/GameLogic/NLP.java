@@ -1,6 +1,7 @@
 package ch.uzh.ifi.seal.soprafs20.GameLogic;
 
 
+import ch.uzh.ifi.seal.soprafs20.metrics.ClueCheckEvent;
 import opennlp.tools.stemmer.PorterStemmer;
 import org.apache.commons.text.similarity.LevenshteinDistance;
 
@@ -9,6 +10,13 @@ public class NLP {
     private final LevenshteinDistance editDistance = new LevenshteinDistance();
 
     public boolean checkClue(String clue, String word) {
+        ClueCheckEvent event = ClueCheckEvent.start();
+        boolean valid = isValidClue(clue, word);
+        event.end(clue, word, valid);
+        return valid;
+    }
+
+    private boolean isValidClue(String clue, String word) {
         String clueToLower = clue.toLowerCase();
         String wordToLower = word.toLowerCase();
         String clueStem = stemWord(clueToLower);
@@ -29,7 +37,8 @@ public class NLP {
         return !clueStem.contains(wordStem) && !wordStem.contains(clueStem);
     }
 
-    public String stemWord(String word) {
+    // PorterStemmer keeps its state in instance buffers, so a shared instance must not be used concurrently
+    public synchronized String stemWord(String word) {
         return stemmer.stem(word);
     }
 
@@ -0,0 +1,68 @@
+package ch.uzh.ifi.seal.soprafs20.GameLogic;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The words a game can be played with, loaded once and shared by all games.
+ * Games store their deck as indices into this list, so the order of the word file must only ever be appended to.
+ */
+public final class WordCorpus {
+    private static final int MAX_WORD_LENGTH = 12;
+    private static final WordCorpus INSTANCE = new WordCorpus(new TextFile().getWords());
+
+    private final List<String> words;
+    private final Map<String, Integer> indices = new HashMap<>();
+
+    WordCorpus(String wordsAsString) {
+        List<String> wordList = new ArrayList<>();
+        for(String string : wordsAsString.split("\n")) {
+            if(!string.isEmpty() && string.length() <= MAX_WORD_LENGTH) {
+                indices.putIfAbsent(string, wordList.size());
+                wordList.add(string);
+            }
+        }
+        this.words = Collections.unmodifiableList(wordList);
+    }
+
+    public static WordCorpus getInstance() { return INSTANCE; }
+
+    public List<String> getWords() { return words; }
+
+    public int size() { return words.size(); }
+
+    public String get(int index) { return words.get(index); }
+
+    public boolean contains(String word) { return indices.containsKey(word); }
+
+    /**
+     * @return the index of the word in the corpus
+     * @throws IllegalArgumentException if the word is not part of the corpus
+     */
+    public int indexOf(String word) {
+        Integer index = indices.get(word);
+        if(index == null) {
+            throw new IllegalArgumentException(String.format("The word %s is not part of the corpus.", word));
+        }
+        return index;
+    }
+
+    /**
+     * Picks a deck of words, every fifth word of the corpus starting at a random position
+     *
+     * @return the indices of the words in the deck
+     */
+    public int[] randomDeck(int amount) {
+        int[] deck = new int[amount];
+        int randIndex = ThreadLocalRandom.current().nextInt(0, words.size());
+        for(int i = 0; i < amount; i++) {
+            deck[i] = randIndex;
+            randIndex = (randIndex + 5) % words.size();
+        }
+        return deck;
+    }
+}
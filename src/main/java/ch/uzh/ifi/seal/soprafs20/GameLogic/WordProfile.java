@@ -0,0 +1,57 @@
+package ch.uzh.ifi.seal.soprafs20.GameLogic;
+
+import java.util.Locale;
+
+/**
+ * Precomputed lower-case form and stems of the word that is currently being guessed.
+ * Built once when a word is picked so that chat messages can be checked against it
+ * without loading the game.
+ */
+public class WordProfile {
+    private static final int MIN_PARTIAL_LENGTH = 4;
+
+    private final String word;
+    private final String[] parts;
+    private final String[] stems;
+
+    public WordProfile(String word, NLP nlp) {
+        this.word = word.toLowerCase(Locale.ROOT);
+        this.parts = this.word.split("\\s+");
+        this.stems = new String[parts.length];
+        for(int i = 0; i < parts.length; i++) {
+            stems[i] = nlp.stemWord(parts[i]);
+        }
+    }
+
+    public String getWord() { return word; }
+
+    /**
+     * Checks whether a text gives away the word, i.e. it contains the word, one of its tokens
+     * is part of the word or one of its tokens has the same stem as a part of the word
+     *
+     * @param text the text to check
+     * @param nlp stemmer used for the tokens of the text
+     * @return true if the text spoils the word
+     */
+    public boolean isSpoiledBy(String text, NLP nlp) {
+        String lowerText = text.toLowerCase(Locale.ROOT);
+        if(lowerText.contains(word)) {
+            return true;
+        }
+        for(String token : lowerText.split("[^\\p{L}\\p{N}]+")) {
+            if(token.length() < MIN_PARTIAL_LENGTH) {
+                continue;
+            }
+            if(word.contains(token)) {
+                return true;
+            }
+            String tokenStem = nlp.stemWord(token);
+            for(String stem : stems) {
+                if(stem.equals(tokenStem)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -5,20 +5,36 @@ import ch.uzh.ifi.seal.soprafs20.constant.AvatarColor;
 import ch.uzh.ifi.seal.soprafs20.entity.Game;
 import ch.uzh.ifi.seal.soprafs20.entity.Lobby;
 import ch.uzh.ifi.seal.soprafs20.entity.Player;
+import ch.uzh.ifi.seal.soprafs20.exceptions.NotFoundException;
 import ch.uzh.ifi.seal.soprafs20.exceptions.UnauthorizedException;
+import ch.uzh.ifi.seal.soprafs20.metrics.MetricsRegistry;
 import ch.uzh.ifi.seal.soprafs20.rest.dto.CluePutDTO;
 import ch.uzh.ifi.seal.soprafs20.rest.dto.GameGetDTO;
 import ch.uzh.ifi.seal.soprafs20.rest.dto.MessagePutDTO;
 import ch.uzh.ifi.seal.soprafs20.rest.dto.VotePutDTO;
 import ch.uzh.ifi.seal.soprafs20.rest.mapper.DTOMapper;
+import ch.uzh.ifi.seal.soprafs20.service.ActivityTracker;
+import ch.uzh.ifi.seal.soprafs20.service.CommandRetry;
+import ch.uzh.ifi.seal.soprafs20.service.GameArchiveService;
+import ch.uzh.ifi.seal.soprafs20.service.GameClock;
 import ch.uzh.ifi.seal.soprafs20.service.GameService;
 import ch.uzh.ifi.seal.soprafs20.service.LobbyService;
 import ch.uzh.ifi.seal.soprafs20.service.PlayerService;
+import ch.uzh.ifi.seal.soprafs20.service.UserService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
-import java.util.ArrayList;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 @RestController
@@ -26,21 +42,99 @@ public class GameController {
     private final PlayerService playerService;
     private final GameService gameService;
     private final LobbyService lobbyService;
+    private final CommandRetry commandRetry;
+    private final MetricsRegistry metricsRegistry;
+    private final ObjectMapper objectMapper;
+    private final GameClock gameClock;
+    private final GameViewCache gameViewCache = new GameViewCache();
+    private final IdempotencyCache idempotencyCache;
+    private final UserService userService;
+    private final GameArchiveService gameArchiveService;
+    private final ActivityTracker activityTracker;
+
+    static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+    private static final String REPLAYED = "idempotency.replayed.";
 
 
-    GameController(PlayerService playerService, GameService gameService, LobbyService lobbyService) {
+    GameController(PlayerService playerService, GameService gameService, LobbyService lobbyService, CommandRetry commandRetry,
+                   MetricsRegistry metricsRegistry, ObjectMapper objectMapper, GameClock gameClock,
+                   UserService userService, GameArchiveService gameArchiveService, ActivityTracker activityTracker,
+                   @Value("${idempotency.max-games:10000}") int maxGames,
+                   @Value("${idempotency.max-keys-per-game:64}") int maxKeysPerGame) {
         this.playerService = playerService;
         this.gameService = gameService;
         this.lobbyService = lobbyService;
+        this.commandRetry = commandRetry;
+        this.metricsRegistry = metricsRegistry;
+        this.objectMapper = objectMapper;
+        this.gameClock = gameClock;
+        this.idempotencyCache = new IdempotencyCache(maxGames, maxKeysPerGame);
+        this.userService = userService;
+        this.gameArchiveService = gameArchiveService;
+        this.activityTracker = activityTracker;
     }
 
     @GetMapping(path = "lobbies/{lobbyId}/game", produces = "application/json")
     @ResponseStatus(HttpStatus.OK)
     @ResponseBody
-    public GameGetDTO getGame(@PathVariable Long lobbyId, @RequestParam("token") String token) {
-        Game game = gameService.getGame(lobbyId);
+    public ResponseEntity<byte[]> getGame(@PathVariable Long lobbyId, @RequestParam("token") String token) {
+        // read the version before the game, a view built from a newer state is only replaced sooner
+        long version = gameService.getStateVersion(lobbyId);
+        GameViewCache.GameView view = gameViewCache.get(lobbyId, version);
+        if (view == null) {
+            view = createGameView(lobbyId, version);
+            gameViewCache.put(lobbyId, view);
+        }
+        if (!view.isPlayer(token)) {
+            throw new UnauthorizedException("You are not allowed to access this game instance!");
+        }
+        activityTracker.polled(lobbyId, token);
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(view.getPayload(token));
+    }
+
+    /**
+     * Serializes the two views of a game: the one of the current guesser and the one of all other players
+     */
+    private GameViewCache.GameView createGameView(Long lobbyId, long version) {
+        Game game;
+        try {
+            game = gameService.getGame(lobbyId);
+        }
+        catch (NotFoundException e) {
+            gameViewCache.remove(lobbyId);
+            idempotencyCache.remove(lobbyId);
+            throw e;
+        }
         Lobby lobby = lobbyService.getLobby(lobbyId);
 
+        Set<String> tokens = new HashSet<>();
+        for (Player player : game.getPlayers()) {
+            tokens.add(player.getToken());
+        }
+
+        GameGetDTO playerView = createGameGetDTO(game, lobby);
+        //only return invalid clues if the current state is ENTER_GUESS_STATE
+        if (!game.getGameState().equals(GameState.ENTER_GUESS_STATE)) {
+            playerView.getInvalidClues().clear();
+        }
+        //the guesser neither sees the current word nor the invalid clues
+        GameGetDTO guesserView = createGameGetDTO(game, lobby);
+        if (!game.getGameState().equals(GameState.TRANSITION_STATE)) {
+            guesserView.setCurrentWord(null);
+        }
+        guesserView.getInvalidClues().clear();
+
+        String guesserToken = game.getCurrentGuesser() == null ? null : game.getCurrentGuesser().getToken();
+        try {
+            return new GameViewCache.GameView(version, tokens, guesserToken,
+                    objectMapper.writeValueAsBytes(guesserView), objectMapper.writeValueAsBytes(playerView));
+        }
+        catch (JsonProcessingException e) {
+            throw new IllegalStateException("Game could not be serialized.", e);
+        }
+    }
+
+    private GameGetDTO createGameGetDTO(Game game, Lobby lobby) {
         GameGetDTO gameGetDTO = DTOMapper.INSTANCE.convertEntityToGameGetDTO(game);
 
         for(int i = 0; i<lobby.getCurrentNumBots(); i++) {
@@ -51,59 +145,47 @@ public class GameController {
             botAsPlayer.setScore(-1);
             gameGetDTO.addPlayer(botAsPlayer);
         }
-
-        List<String> tokens = new ArrayList<>();
-        for (Player player : game.getPlayers()) {
-            tokens.add(player.getToken());
-        }
-        if (!tokens.contains(token)) {
-            throw new UnauthorizedException("You are not allowed to access this game instance!");
-        }
-        //if guesser requests game, eliminate current word from dto
-        if (game.getCurrentGuesser().getToken().equals(token) && !game.getGameState().equals(GameState.TRANSITION_STATE)) {
-            gameGetDTO.setCurrentWord(null);
-            gameGetDTO.getInvalidClues().clear();
-        }
-        //only return invalid clues if the current state is ENTER_GUESS_STATE
-        if(!game.getGameState().equals(GameState.ENTER_GUESS_STATE)) {
-            gameGetDTO.getInvalidClues().clear();
-        }
         return gameGetDTO;
     }
 
     @PutMapping(path = "lobbies/{lobbyId}/game/clue", consumes = "application/json")
     @ResponseStatus(HttpStatus.NO_CONTENT)
     @ResponseBody
-    public void sendClue(@PathVariable long lobbyId, @RequestBody CluePutDTO cluePutDTO) {
-        Game currentGame = gameService.getGame(lobbyId);
-        Player player = playerService.getPlayer(cluePutDTO.getPlayerId());
-        //If all clues were sent, sendClue returns true and the game moves on to the next state
-        if (gameService.sendClue(currentGame, player, cluePutDTO)) {
-            currentGame.getTimer().setCancel(true);
-            currentGame.setGameState(GameState.VOTE_ON_CLUES_STATE);
-            gameService.setStartTime(TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()), currentGame);
-        }
+    public void sendClue(@PathVariable long lobbyId, @RequestBody CluePutDTO cluePutDTO,
+                         @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey) {
+        runCommand(lobbyId, "game.clue", cluePutDTO.getPlayerToken(), idempotencyKey, () -> {
+            Game currentGame = gameService.getGame(lobbyId);
+            Player player = playerService.getPlayer(cluePutDTO.getPlayerId());
+            //If all clues were sent, sendClue returns true and the game moves on to the next state
+            if (gameService.sendClue(currentGame, player, cluePutDTO)) {
+                currentGame.getTimer().setCancel(true);
+                currentGame.setGameState(GameState.VOTE_ON_CLUES_STATE);
+                gameService.setStartTime(gameClock.currentTimeMillis(), currentGame);
+            }
+        });
     }
 
     @GetMapping(path = "lobbies/{lobbyId}/game/word")
     @ResponseStatus(HttpStatus.OK)
     @ResponseBody
     public void pickWord(@PathVariable long lobbyId, @RequestParam("token") String token) {
-        Game game = gameService.getGame(lobbyId);
-        if (!game.getGameState().equals(GameState.PICK_WORD_STATE)) {
-            throw new UnauthorizedException("Can't choose word in current state");
-        }
-        if (gameService.pickWord(token, game)) {
-            game.getTimer().setCancel(true);
-            game.setGameState(GameState.ENTER_CLUES_STATE);
-            gameService.setStartTime(TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()), game);
-        }
+        activityTracker.commanded(lobbyId, token);
+        commandRetry.run("game.word", () -> {
+            Game game = gameService.getGame(lobbyId);
+            if (!game.getGameState().equals(GameState.PICK_WORD_STATE)) {
+                throw new UnauthorizedException("Can't choose word in current state");
+            }
+            if (gameService.pickWord(token, game)) {
+                game.getTimer().setCancel(true);
+                game.setGameState(GameState.ENTER_CLUES_STATE);
+                gameService.setStartTime(gameClock.currentTimeMillis(), game);
+            }
+        });
     }
 
     @GetMapping(path = "lobbies/{lobbyId}/game/timer")
     @ResponseStatus(HttpStatus.OK)
     public String getTimer(@PathVariable long lobbyId, @RequestParam String token) {
-        long currentTime = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
         boolean found = false;
         Game game = gameService.getGame(lobbyId);
         for (Player p : game.getPlayers()) {
@@ -114,7 +196,8 @@ public class GameController {
         }
         if (!found)
             throw new UnauthorizedException("Not allowed to retrieve timer for this game!");
-        if (game.getStartTimeSeconds() == null) {
+        activityTracker.polled(lobbyId, token);
+        if (game.getStartTimeMillis() == null) {
             return "No timer started yet";
         }
         if (game.getGameState().equals(GameState.END_GAME_STATE)) {
@@ -122,7 +205,8 @@ public class GameController {
         }
         else {
 
-            long diff = gameService.getMaxTime(game) - (currentTime - game.getStartTimeSeconds());
+            long timeInState = TimeUnit.MILLISECONDS.toSeconds(gameClock.currentTimeMillis() - game.getStartTimeMillis());
+            long diff = gameService.getMaxTime(game) - timeInState;
             if(diff < 0)
                 return "0";
             else
@@ -133,32 +217,66 @@ public class GameController {
     @PutMapping(path = "lobbies/{lobbyId}/game/guess")
     @ResponseStatus(HttpStatus.NO_CONTENT)
     @ResponseBody
-    public void sendGuess(@PathVariable long lobbyId, @RequestBody MessagePutDTO messagePutDTO) {
-        Game game = gameService.getGame(lobbyId);
-        gameService.submitGuess(game, messagePutDTO,TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()) - game.getStartTimeSeconds());
-        gameService.updateScores(game);
-        game.getTimer().setCancel(true);
-        game.setGameState(GameState.TRANSITION_STATE);
-        gameService.setStartTime(TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()), game);
+    public void sendGuess(@PathVariable long lobbyId, @RequestBody MessagePutDTO messagePutDTO,
+                          @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey) {
+        runCommand(lobbyId, "game.guess", messagePutDTO.getPlayerToken(), idempotencyKey, () -> {
+            Game game = gameService.getGame(lobbyId);
+            gameService.submitGuess(game, messagePutDTO, gameClock.currentTimeMillis() - game.getStartTimeMillis());
+            gameService.updateScores(game);
+            game.getTimer().setCancel(true);
+            game.setGameState(GameState.TRANSITION_STATE);
+            gameService.setStartTime(gameClock.currentTimeMillis(), game);
+        });
     }
 
     @PutMapping(path = "lobbies/{lobbyId}/game/vote")
     @ResponseStatus(HttpStatus.NO_CONTENT)
     @ResponseBody
-    public void vote(@PathVariable long lobbyId, @RequestBody VotePutDTO votePutDTO) {
-        Game game = gameService.getGame(lobbyId);
-        if (!game.getGameState().equals(GameState.VOTE_ON_CLUES_STATE)) {
-            throw new UnauthorizedException("Can't vote on clues in current state!");
-        }
-        Player player = playerService.getPlayerByToken(votePutDTO.getPlayerToken());
-        if (!game.getPlayers().contains(player) || game.getCurrentGuesser().equals(player)) {
-            throw new UnauthorizedException("This player is not allowed to vote on clues!");
+    public void vote(@PathVariable long lobbyId, @RequestBody VotePutDTO votePutDTO,
+                     @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey) {
+        runCommand(lobbyId, "game.vote", votePutDTO.getPlayerToken(), idempotencyKey, () -> {
+            Game game = gameService.getGame(lobbyId);
+            if (!game.getGameState().equals(GameState.VOTE_ON_CLUES_STATE)) {
+                throw new UnauthorizedException("Can't vote on clues in current state!");
+            }
+            Player player = playerService.getPlayerByToken(votePutDTO.getPlayerToken());
+            if (!game.getPlayers().contains(player) || game.getCurrentGuesser().equals(player)) {
+                throw new UnauthorizedException("This player is not allowed to vote on clues!");
+            }
+            List<String> invalidWords = votePutDTO.getInvalidClues();
+            if (gameService.vote(game, player, invalidWords)) {
+                game.getTimer().setCancel(true);
+                game.setGameState(GameState.ENTER_GUESS_STATE);
+                gameService.setStartTime(gameClock.currentTimeMillis(), game);
+            }
+        });
+    }
+
+    /**
+     * Streams the replay of a finished game, read from its archive. The game id is the one of the lobby scores.
+     */
+    @GetMapping(path = "games/{gameId}/replay", produces = "application/json")
+    @ResponseStatus(HttpStatus.OK)
+    public void getReplay(@PathVariable Long gameId, @RequestParam("token") String token, HttpServletResponse response)
+            throws IOException {
+        userService.getUserByToken(token);
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        gameArchiveService.writeReplay(gameId, response.getOutputStream());
+    }
+
+    /**
+     * Runs a player command. If the client sent an Idempotency-Key, a retry of the same command by the same player
+     * returns the outcome of the first request without loading the game again.
+     */
+    private void runCommand(long lobbyId, String command, String token, String idempotencyKey, Runnable action) {
+        activityTracker.commanded(lobbyId, token);
+        if (idempotencyKey == null || idempotencyKey.isBlank()) {
+            commandRetry.run(command, action);
+            return;
         }
-        List<String> invalidWords = votePutDTO.getInvalidClues();
-        if (gameService.vote(game, player, invalidWords)) {
-            game.getTimer().setCancel(true);
-            game.setGameState(GameState.ENTER_GUESS_STATE);
-            gameService.setStartTime(TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()), game);
+        String key = command + ":" + token + ":" + idempotencyKey;
+        if (!idempotencyCache.execute(lobbyId, key, () -> commandRetry.run(command, action))) {
+            metricsRegistry.increment(REPLAYED + command);
         }
     }
 }
@@ -0,0 +1,80 @@
+package ch.uzh.ifi.seal.soprafs20.controller;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Holds the serialized views of every running game, one entry per lobby.
+ * Every player of a game sees one of two views, the one of the current guesser or the one of everybody else,
+ * so both are serialized once per state version and every poll within that version only writes out bytes.
+ */
+class GameViewCache {
+
+    /**
+     * Version 0 is never cached, it is used when the version of a game is unknown
+     */
+    static final long UNVERSIONED = 0L;
+
+    private final Map<Long, GameView> views = new ConcurrentHashMap<>();
+
+    /**
+     * @return the cached view of the game in the given lobby, or null if there is none for this version
+     */
+    GameView get(Long lobbyId, long version) {
+        GameView view = views.get(lobbyId);
+        if(view == null || version == UNVERSIONED || view.getVersion() != version) {
+            return null;
+        }
+        return view;
+    }
+
+    /**
+     * Stores a view, unless a view of a newer version was stored in the meantime
+     */
+    void put(Long lobbyId, GameView view) {
+        if(view.getVersion() == UNVERSIONED) {
+            return;
+        }
+        views.merge(lobbyId, view, (current, added) -> added.getVersion() > current.getVersion() ? added : current);
+    }
+
+    void remove(Long lobbyId) {
+        views.remove(lobbyId);
+    }
+
+    int size() {
+        return views.size();
+    }
+
+    static final class GameView {
+        private final long version;
+        private final Set<String> playerTokens;
+        private final String guesserToken;
+        private final byte[] guesserPayload;
+        private final byte[] playerPayload;
+
+        GameView(long version, Set<String> playerTokens, String guesserToken, byte[] guesserPayload, byte[] playerPayload) {
+            this.version = version;
+            this.playerTokens = playerTokens;
+            this.guesserToken = guesserToken;
+            this.guesserPayload = guesserPayload;
+            this.playerPayload = playerPayload;
+        }
+
+        long getVersion() {
+            return version;
+        }
+
+        boolean isPlayer(String token) {
+            return playerTokens.contains(token);
+        }
+
+        /**
+         * @return the serialized view for the player with the given token
+         */
+        byte[] getPayload(String token) {
+            return guesserToken != null && guesserToken.equals(token) ? guesserPayload : playerPayload;
+        }
+    }
+}
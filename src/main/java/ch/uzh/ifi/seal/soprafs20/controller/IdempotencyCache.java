@@ -0,0 +1,84 @@
+package ch.uzh.ifi.seal.soprafs20.controller;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Remembers the outcome of player commands by their Idempotency-Key, per game.
+ * A command that is sent again with the same key is not executed again: a retry after a success returns
+ * immediately, a retry while the first request is still running waits for its outcome.
+ * Failed commands are forgotten, so they can be retried. The number of games and of keys per game is bounded,
+ * the least recently used ones are dropped first.
+ */
+class IdempotencyCache {
+
+    private final Map<Long, Map<String, CompletableFuture<Void>>> games;
+    private final int maxKeysPerGame;
+
+    IdempotencyCache(int maxGames, int maxKeysPerGame) {
+        this.games = boundedMap(maxGames);
+        this.maxKeysPerGame = maxKeysPerGame;
+    }
+
+    /**
+     * Runs the command unless a command with the same key was already run for this game
+     *
+     * @return true if the command was executed, false if the outcome of an earlier run was returned
+     */
+    boolean execute(Long lobbyId, String key, Runnable command) {
+        Map<String, CompletableFuture<Void>> entries;
+        synchronized (games) {
+            entries = games.computeIfAbsent(lobbyId, id -> boundedMap(maxKeysPerGame));
+        }
+        CompletableFuture<Void> outcome = new CompletableFuture<>();
+        CompletableFuture<Void> earlier;
+        synchronized (entries) {
+            earlier = entries.putIfAbsent(key, outcome);
+        }
+        if (earlier != null) {
+            awaitOutcome(earlier);
+            return false;
+        }
+        try {
+            command.run();
+            outcome.complete(null);
+            return true;
+        }
+        catch (RuntimeException e) {
+            synchronized (entries) {
+                entries.remove(key, outcome);
+            }
+            outcome.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    void remove(Long lobbyId) {
+        synchronized (games) {
+            games.remove(lobbyId);
+        }
+    }
+
+    private void awaitOutcome(CompletableFuture<Void> earlier) {
+        try {
+            earlier.join();
+        }
+        catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private static <K, V> Map<K, V> boundedMap(int maxEntries) {
+        return new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+}
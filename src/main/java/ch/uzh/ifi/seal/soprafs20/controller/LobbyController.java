@@ -22,23 +22,30 @@ import java.util.List;
 
 @RestController
 public class LobbyController {
+    private static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 100;
+
     private final LobbyService lobbyService;
     private final UserService userService;
     private final PlayerService playerService;
     private final ChatService chatService;
-    private final MessageService messageService;
     private final GameService gameService;
+    private final GameCoordinator gameCoordinator;
     private final LobbyScoreService lobbyScoreService;
+    private final ActivityTracker activityTracker;
 
     LobbyController(LobbyService lobbyService, UserService userService, PlayerService playerService,
-                    LobbyScoreService lobbyScoreService, ChatService chatService, MessageService messageService, GameService gameService){
+                    LobbyScoreService lobbyScoreService, ChatService chatService, GameService gameService,
+                    GameCoordinator gameCoordinator, ActivityTracker activityTracker){
         this.lobbyService = lobbyService;
         this.userService = userService;
         this.playerService = playerService;
         this.chatService = chatService;
-        this.messageService = messageService;
         this.gameService = gameService;
+        this.gameCoordinator = gameCoordinator;
         this.lobbyScoreService = lobbyScoreService;
+        this.activityTracker = activityTracker;
     }
 
 
@@ -76,20 +83,36 @@ public class LobbyController {
         }
     }
 
+    /**
+     * Lists lobbies for the lobby browser, ordered by lobby id
+     *
+     * @param joinable if true, only public lobbies that did not start yet and have a free slot are listed
+     * @param limit maximum number of lobbies in the response
+     * @param cursor id of the last lobby of the previous page
+     * @return all lobbies if neither limit nor cursor is given, otherwise a page of them. If there might be more
+     * the header X-Next-Cursor holds the cursor of the next page
+     */
+    @CrossOrigin(exposedHeaders = NEXT_CURSOR_HEADER)
     @GetMapping(path = "/lobbies", produces = "application/json")
     @ResponseStatus(HttpStatus.OK)
     @ResponseBody
-    public List<LobbyGetDTO> getAllLobbies(@RequestParam("token") String token) {
+    public ResponseEntity<List<LobbyGetDTO>> getAllLobbies(@RequestParam("token") String token,
+                                                           @RequestParam(value = "joinable", defaultValue = "false") boolean joinable,
+                                                           @RequestParam(value = "limit", required = false) Integer limit,
+                                                           @RequestParam(value = "cursor", required = false) Long cursor) {
         userService.getUserByToken(token);
-        // fetch all lobbies in the internal representation
-        List<Lobby> lobbies = lobbyService.getLobbies();
-        List<LobbyGetDTO> lobbyGetDTOs = new ArrayList<>();
+        if(limit == null && cursor == null) {
+            // clients from before paging expect the whole list
+            return ResponseEntity.ok(lobbyService.getLobbyListings(joinable, 0L, Integer.MAX_VALUE));
+        }
+        int pageSize = limit == null ? DEFAULT_PAGE_SIZE : Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        List<LobbyGetDTO> lobbyGetDTOs = lobbyService.getLobbyListings(joinable, cursor == null ? 0L : cursor, pageSize);
 
-        // convert each lobby to the API representation
-        for (Lobby lobby : lobbies) {
-            lobbyGetDTOs.add(DTOMapper.INSTANCE.convertEntityToLobbyGetDTO(lobby));
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if(lobbyGetDTOs.size() == pageSize) {
+            response.header(NEXT_CURSOR_HEADER, String.valueOf(lobbyGetDTOs.get(pageSize - 1).getLobbyId()));
         }
-        return lobbyGetDTOs;
+        return response.body(lobbyGetDTOs);
     }
 
     @PostMapping(path = "lobbies/{lobbyId}", consumes = "application/json")
@@ -103,7 +126,7 @@ public class LobbyController {
         }
         Game createdGame = gameService.createGame(lobby, gamePostDTO);
         gameService.setTimer(createdGame);
-        gameService.timer(createdGame);
+        gameCoordinator.timer(createdGame);
 
         URI location = ServletUriComponentsBuilder.fromCurrentRequest().path("/game")
                 .build().toUri();
@@ -116,6 +139,7 @@ public class LobbyController {
     public void updateLobby(@PathVariable long lobbyId, @RequestBody LobbyPutDTO lobbyPutDTO){
         Lobby lobby = lobbyService.getLobby(lobbyId);
         lobbyService.updateLobby(lobby,lobbyPutDTO);
+        activityTracker.commanded(lobbyId, null);
     }
 
     @PutMapping(path = "/lobbies/{lobbyId}/kick", consumes = "application/json")
@@ -131,6 +155,7 @@ public class LobbyController {
             playerToKick = playerService.getPlayer(lobbyPutDTO.getPlayerToKickId());
         }
         lobbyService.kickPlayers(lobby,playerToKick);
+        activityTracker.commanded(lobbyId, null);
     }
 
     @GetMapping(path = "/lobbies/{lobbyId}", produces = "application/json")
@@ -138,6 +163,8 @@ public class LobbyController {
     @ResponseBody
     public LobbyGetDTO getLobby(@PathVariable long lobbyId) {
         Lobby lobby = lobbyService.getLobby(lobbyId);
+        // the lobby is read without a token, so the poll counts for the lobby but for no player
+        activityTracker.polled(lobbyId, null);
 
         LobbyGetDTO lobbyGetDTO = DTOMapper.INSTANCE.convertEntityToLobbyGetDTO(lobby);
         for(int i = 0; i<lobby.getCurrentNumBots(); i++) {
@@ -171,7 +198,8 @@ public class LobbyController {
             User user = userService.getUser(lobbyAcceptancePutDTO.getAccepterId());
             playerService.checkPlayerToken(user.getToken(), lobbyAcceptancePutDTO.getAccepterToken());
             Player player = playerService.convertUserToPlayer(user);
-            lobbyService.addPlayerToLobby(lobbyAcceptancePutDTO.getAccepterToken(), player, lobby);
+            lobby = lobbyService.addPlayerToLobby(lobbyAcceptancePutDTO.getAccepterToken(), player, lobby);
+            activityTracker.commanded(lobbyId, lobbyAcceptancePutDTO.getAccepterToken());
         }
 
         return DTOMapper.INSTANCE.convertEntityToLobbyGetDTO(lobby);
@@ -192,6 +220,7 @@ public class LobbyController {
         if(!found) {
             throw new UnauthorizedException("This player is not allowed to access this chat history!");
         }
+        activityTracker.polled(lobbyId, token);
         Chat chat = chatService.getChat(lobbyId);
         return DTOMapper.INSTANCE.convertEntityToChatGetDTO(chat);
     }
@@ -200,19 +229,18 @@ public class LobbyController {
     @ResponseStatus(HttpStatus.NO_CONTENT)
     @ResponseBody
     public void addChatMessage(@PathVariable long lobbyId, @RequestBody MessagePutDTO messagePutDTO) {
+        // too long messages are dropped before anything is loaded or stored
+        if(messagePutDTO.getMessage().length() > 51) {
+            return;
+        }
         Message message = DTOMapper.INSTANCE.convertMessagePutDTOtoEntity(messagePutDTO);
-        message = messageService.createMessage(message);
         User author  = userService.getUser(messagePutDTO.getPlayerId());
         Lobby lobby = lobbyService.getLobby(lobbyId);
-        if(lobby.isGameStarted()) {
-            Game game = gameService.getGame(lobbyId);
-            if(isContained(game.getCurrentWord(), messagePutDTO.getMessage())) {
-                message.setText("I'm a cheetah!");
-            }
-        }
-        if(messagePutDTO.getMessage().length() <= 51) {
-            chatService.addChatMessage(lobby, author.getToken(), message);
+        if(lobby.isGameStarted() && gameService.isSpoiler(lobbyId, messagePutDTO.getMessage())) {
+            message.setText("I'm a cheetah!");
         }
+        chatService.addChatMessage(lobby, author.getToken(), message);
+        activityTracker.commanded(lobbyId, author.getToken());
     }
 
     @PutMapping(path = "/lobbies/{lobbyId}/joins", consumes = "application/json")
@@ -229,6 +257,7 @@ public class LobbyController {
         Player player = playerService.convertUserToPlayer(user);
         try{
             lobbyService.addPlayerToLobby(joinLeavePutDTO.getPlayerToken(), player, lobby);
+            activityTracker.commanded(lobbyId, joinLeavePutDTO.getPlayerToken());
         } catch (ConflictException e){
             playerService.deletePlayer(player);
             throw e;
@@ -265,9 +294,4 @@ public class LobbyController {
         return lobbyScoreGetDTOs;
     }
 
-    public boolean isContained(String aString, String bString) {
-        return (aString.toLowerCase().contains(bString.toLowerCase()) || bString.toLowerCase().contains(aString.toLowerCase()));
-    }
-
-
 }
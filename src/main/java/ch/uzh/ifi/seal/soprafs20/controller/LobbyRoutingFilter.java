@@ -0,0 +1,94 @@
+package ch.uzh.ifi.seal.soprafs20.controller;
+
+import ch.uzh.ifi.seal.soprafs20.metrics.MetricsRegistry;
+import ch.uzh.ifi.seal.soprafs20.service.ClusterMembership;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.cors.CorsUtils;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Sends requests for a lobby and its game to the node the lobby belongs to on the hash ring, so the live
+ * state of a game is only kept by one node and never has to be reloaded from the database.
+ * Requests for lobbies of this node are served as usual, the others are answered with a 307 redirect to the
+ * same path on the owning node; 307 makes the client repeat the method and body there.
+ *
+ * The filter runs before Spring's CORS handling, so CORS preflights are always served here and the redirect
+ * carries the CORS headers itself. A request that already names the node that redirected it in X-Node is
+ * served here as well, so two nodes whose rings disagree for a moment do not send it back and forth.
+ */
+@Component
+public class LobbyRoutingFilter extends OncePerRequestFilter {
+    static final String NODE_HEADER = "X-Node";
+    static final String REDIRECTED = "http.redirected";
+    private static final Pattern LOBBY_PATH = Pattern.compile("^/lobbies/(\\d+)(/.*)?$");
+
+    private final ClusterMembership clusterMembership;
+    private final MetricsRegistry metricsRegistry;
+
+    public LobbyRoutingFilter(ClusterMembership clusterMembership, MetricsRegistry metricsRegistry) {
+        this.clusterMembership = clusterMembership;
+        this.metricsRegistry = metricsRegistry;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
+        String ownerUrl = null;
+        if(!CorsUtils.isPreFlightRequest(request) && request.getHeader(NODE_HEADER) == null) {
+            ownerUrl = ownerUrl(request.getRequestURI().substring(request.getContextPath().length()));
+        }
+        if(ownerUrl == null) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        String location = ownerUrl + request.getRequestURI();
+        if(request.getQueryString() != null) {
+            location += "?" + request.getQueryString();
+        }
+        metricsRegistry.increment(REDIRECTED);
+        response.setStatus(HttpStatus.TEMPORARY_REDIRECT.value());
+        response.setHeader(HttpHeaders.LOCATION, location);
+        response.setHeader(NODE_HEADER, clusterMembership.getNodeId());
+        if(CorsUtils.isCorsRequest(request)) {
+            // like the CORS mapping of the application, which is not applied to responses of this filter
+            response.setHeader(HttpHeaders.ACCESS_CONTROL_ALLOW_ORIGIN, "*");
+            response.setHeader(HttpHeaders.ACCESS_CONTROL_EXPOSE_HEADERS, HttpHeaders.LOCATION + ", " + NODE_HEADER);
+        }
+    }
+
+    /**
+     * @return the address of the node the requested lobby belongs to, null if it is served here
+     */
+    private String ownerUrl(String path) {
+        Matcher matcher = LOBBY_PATH.matcher(path);
+        if(!matcher.matches()) {
+            return null;
+        }
+        long lobbyId;
+        try {
+            lobbyId = Long.parseLong(matcher.group(1));
+        }
+        catch (NumberFormatException e) {
+            return null;
+        }
+        String owner = clusterMembership.ownerOf(lobbyId);
+        if(owner == null || owner.equals(clusterMembership.getNodeId())) {
+            return null;
+        }
+        String url = clusterMembership.urlOf(owner);
+        return url == null ? null : stripTrailingSlash(url);
+    }
+
+    private static String stripTrailingSlash(String url) {
+        return url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+    }
+}
@@ -0,0 +1,68 @@
+package ch.uzh.ifi.seal.soprafs20.controller;
+
+import ch.uzh.ifi.seal.soprafs20.rest.dto.JoinLeavePutDTO;
+import ch.uzh.ifi.seal.soprafs20.rest.dto.MatchmakingGetDTO;
+import ch.uzh.ifi.seal.soprafs20.rest.dto.MatchmakingStatsGetDTO;
+import ch.uzh.ifi.seal.soprafs20.service.MatchmakingService;
+import ch.uzh.ifi.seal.soprafs20.service.MatchmakingTicket;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Matchmaking Controller
+ * Users enter the queue with a POST and poll their ticket until a lobby was assigned to them.
+ */
+@RestController
+public class MatchmakingController {
+
+    private final MatchmakingService matchmakingService;
+
+    MatchmakingController(MatchmakingService matchmakingService) {
+        this.matchmakingService = matchmakingService;
+    }
+
+    @CrossOrigin(exposedHeaders = "Location")
+    @PostMapping(path = "/matchmaking", consumes = "application/json")
+    @ResponseStatus(HttpStatus.CREATED)
+    @ResponseBody
+    public ResponseEntity<Object> enterMatchmaking(@RequestBody JoinLeavePutDTO joinLeavePutDTO) {
+        MatchmakingTicket ticket = matchmakingService.enqueue(joinLeavePutDTO.getPlayerId(), joinLeavePutDTO.getPlayerToken());
+        URI location = ServletUriComponentsBuilder.fromCurrentRequest().path("/{userId}")
+                .buildAndExpand(ticket.getUserId()).toUri();
+        return ResponseEntity.created(location).build();
+    }
+
+    @GetMapping(path = "/matchmaking/{userId}", produces = "application/json")
+    @ResponseStatus(HttpStatus.OK)
+    @ResponseBody
+    public MatchmakingGetDTO getMatchmakingStatus(@PathVariable long userId, @RequestParam("token") String token) {
+        MatchmakingTicket ticket = matchmakingService.getTicket(userId, token);
+        MatchmakingGetDTO matchmakingGetDTO = new MatchmakingGetDTO();
+        matchmakingGetDTO.setUserId(ticket.getUserId());
+        matchmakingGetDTO.setStatus(ticket.getStatus());
+        matchmakingGetDTO.setLobbyId(ticket.getLobbyId());
+        matchmakingGetDTO.setReason(ticket.getReason());
+        long end = ticket.isWaiting() ? System.currentTimeMillis() : ticket.getResolvedAt();
+        matchmakingGetDTO.setWaitingSeconds(TimeUnit.MILLISECONDS.toSeconds(end - ticket.getEnqueuedAt()));
+        return matchmakingGetDTO;
+    }
+
+    @DeleteMapping(path = "/matchmaking/{userId}")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    @ResponseBody
+    public void leaveMatchmaking(@PathVariable long userId, @RequestParam("token") String token) {
+        matchmakingService.cancel(userId, token);
+    }
+
+    @GetMapping(path = "/matchmaking/stats", produces = "application/json")
+    @ResponseStatus(HttpStatus.OK)
+    @ResponseBody
+    public MatchmakingStatsGetDTO getMatchmakingStats() {
+        return matchmakingService.getStats();
+    }
+}
@@ -0,0 +1,40 @@
+package ch.uzh.ifi.seal.soprafs20.controller;
+
+import ch.uzh.ifi.seal.soprafs20.metrics.MetricsRegistry;
+import ch.uzh.ifi.seal.soprafs20.metrics.PrometheusFormat;
+import ch.uzh.ifi.seal.soprafs20.rest.dto.MetricsGetDTO;
+import ch.uzh.ifi.seal.soprafs20.service.CommandRetry;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.*;
+
+/**
+ * Metrics Controller
+ * Exposes the counters of the server, e.g. how often player commands ran into concurrent changes.
+ * All metrics including histograms and gauges are also available in the Prometheus text format.
+ */
+@RestController
+public class MetricsController {
+
+    private final MetricsRegistry metricsRegistry;
+
+    MetricsController(MetricsRegistry metricsRegistry) {
+        this.metricsRegistry = metricsRegistry;
+    }
+
+    @GetMapping(path = "/metrics", produces = "application/json")
+    @ResponseStatus(HttpStatus.OK)
+    @ResponseBody
+    public MetricsGetDTO getMetrics() {
+        MetricsGetDTO metricsGetDTO = new MetricsGetDTO();
+        metricsGetDTO.setCounters(metricsRegistry.getCounters());
+        metricsGetDTO.setConflictRates(metricsRegistry.getRatios(CommandRetry.CONFLICTS, CommandRetry.COMMANDS));
+        return metricsGetDTO;
+    }
+
+    @GetMapping(path = "/metrics/prometheus", produces = PrometheusFormat.CONTENT_TYPE)
+    @ResponseStatus(HttpStatus.OK)
+    @ResponseBody
+    public String getPrometheusMetrics() {
+        return PrometheusFormat.write(metricsRegistry);
+    }
+}
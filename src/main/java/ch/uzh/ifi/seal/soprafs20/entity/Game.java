@@ -1,21 +1,34 @@
 package ch.uzh.ifi.seal.soprafs20.entity;
 import ch.uzh.ifi.seal.soprafs20.GameLogic.GameState;
+import ch.uzh.ifi.seal.soprafs20.GameLogic.WordCorpus;
 import org.hibernate.annotations.Cascade;
+import org.hibernate.annotations.DynamicUpdate;
 import org.hibernate.annotations.Fetch;
 import org.hibernate.annotations.FetchMode;
 
 import javax.persistence.*;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 @Entity
+@DynamicUpdate
 @Table(name="GAME")
 public class Game {
 
     @Id
     private Long lobbyId;
 
+    @Version
+    private long version;
+
+    // fencing token of the lease of the node that wrote the game last, see GameLeases
+    @Column
+    private Long fencingToken;
+
     @Column
     private int roundsPlayed;
 
@@ -39,9 +52,16 @@ public class Game {
     @Column(nullable = false)
     private boolean specialGame;
 
-    @ElementCollection(fetch = FetchType.EAGER)
-    @Fetch(value = FetchMode.SUBSELECT)
-    private List<String> words = new ArrayList<>();
+    // indices of the words of this game in the word corpus, fixed when the game is created
+    @Column(nullable = false)
+    private String deck = "";
+
+    // bit i is set while the i-th word of the deck was not drawn yet
+    @Column
+    private int remainingWords;
+
+    @Transient
+    private int[] deckIndices;
 
     @OneToMany(fetch = FetchType.EAGER)
     @Fetch(value = FetchMode.SUBSELECT)
@@ -59,8 +79,9 @@ public class Game {
     @Column
     private volatile boolean isGuessCorrect;
 
+    // when the game entered its current state, in milliseconds of the game clock
     @Column
-    private Long startTimeSeconds;
+    private Long startTimeMillis;
 
     @Column
     private String currentGuess;
@@ -75,6 +96,12 @@ public class Game {
     @OneToOne(cascade = {CascadeType.ALL}, fetch = FetchType.EAGER)
     private InternalTimer timer;
 
+    public long getVersion() { return version; }
+
+    public Long getFencingToken() { return fencingToken; }
+
+    public void setFencingToken(Long fencingToken) { this.fencingToken = fencingToken; }
+
     public Long getLobbyId() {
         return lobbyId;
     }
@@ -126,12 +153,69 @@ public class Game {
         this.enteredClues.add(clue);
     }
 
+    /**
+     * @return the words of the deck that were not drawn yet
+     */
     public List<String> getWords() {
+        int[] indices = getDeck();
+        List<String> words = new ArrayList<>();
+        for(int i = 0; i < indices.length; i++) {
+            if((remainingWords & (1 << i)) != 0) {
+                words.add(WordCorpus.getInstance().get(indices[i]));
+            }
+        }
         return words;
     }
 
     public void setWords(List<String> words) {
-        this.words = words;
+        int[] indices = new int[words.size()];
+        for(int i = 0; i < indices.length; i++) {
+            indices[i] = WordCorpus.getInstance().indexOf(words.get(i));
+        }
+        setDeck(indices);
+    }
+
+    public int[] getDeck() {
+        if(deckIndices == null) {
+            deckIndices = deck.isEmpty() ? new int[0] : Arrays.stream(deck.split(",")).mapToInt(Integer::parseInt).toArray();
+        }
+        return deckIndices;
+    }
+
+    /**
+     * Sets the deck of the game, all of its words are remaining
+     *
+     * @param indices the indices of the words in the word corpus, at most 31
+     */
+    public void setDeck(int[] indices) {
+        if(indices.length >= Integer.SIZE) {
+            throw new IllegalArgumentException("A deck has at most 31 words.");
+        }
+        this.deckIndices = indices.clone();
+        this.deck = Arrays.stream(indices).mapToObj(String::valueOf).collect(Collectors.joining(","));
+        this.remainingWords = (1 << indices.length) - 1;
+    }
+
+    public int getRemainingWords() { return remainingWords; }
+
+    public void setRemainingWords(int remainingWords) { this.remainingWords = remainingWords; }
+
+    /**
+     * Draws a word from the deck, only the bitmask of the remaining words changes
+     *
+     * @param n which of the remaining words to draw, between 0 and the number of remaining words
+     * @return the drawn word
+     */
+    public String drawWord(int n) {
+        int[] indices = getDeck();
+        int skipped = 0;
+        for(int i = 0; i < indices.length; i++) {
+            if((remainingWords & (1 << i)) != 0 && skipped++ == n) {
+                remainingWords &= ~(1 << i);
+                return WordCorpus.getInstance().get(indices[i]);
+            }
+        }
+        throw new IllegalArgumentException(String.format("There are only %d words left.", Integer.bitCount(remainingWords)));
     }
 
     public GameState getGameState () { return gameState; }
@@ -162,12 +246,20 @@ public class Game {
         isGuessCorrect = guessCorrect;
     }
 
+    public Long getStartTimeMillis() {
+        return startTimeMillis;
+    }
+
+    public void setStartTimeMillis(long startTimeMillis) {
+        this.startTimeMillis = startTimeMillis;
+    }
+
     public Long getStartTimeSeconds() {
-        return startTimeSeconds;
+        return startTimeMillis == null ? null : TimeUnit.MILLISECONDS.toSeconds(startTimeMillis);
     }
 
     public void setStartTimeSeconds(long startTime) {
-        this.startTimeSeconds = startTime;
+        this.startTimeMillis = TimeUnit.SECONDS.toMillis(startTime);
     }
 
     public String getCurrentGuess() { return currentGuess; }
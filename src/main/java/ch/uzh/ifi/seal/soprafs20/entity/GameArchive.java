@@ -0,0 +1,49 @@
+package ch.uzh.ifi.seal.soprafs20.entity;
+
+import javax.persistence.*;
+import java.io.Serializable;
+
+/**
+ * Compact archive of a finished game, see {@link ch.uzh.ifi.seal.soprafs20.journal.ArchiveCodec}.
+ * It has the id of the game's lobby score.
+ */
+@Entity
+@Table(name = "GAME_ARCHIVE")
+public class GameArchive implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    private Long gameId;
+
+    @Column(nullable = false)
+    private long endedAtMillis;
+
+    @Lob
+    @Column(nullable = false)
+    private byte[] data;
+
+    public Long getGameId() {
+        return gameId;
+    }
+
+    public void setGameId(Long gameId) {
+        this.gameId = gameId;
+    }
+
+    public long getEndedAtMillis() {
+        return endedAtMillis;
+    }
+
+    public void setEndedAtMillis(long endedAtMillis) {
+        this.endedAtMillis = endedAtMillis;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    public void setData(byte[] data) {
+        this.data = data;
+    }
+}
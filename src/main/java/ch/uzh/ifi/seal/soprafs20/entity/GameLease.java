@@ -0,0 +1,72 @@
+package ch.uzh.ifi.seal.soprafs20.entity;
+
+import javax.persistence.*;
+import java.util.Objects;
+
+/**
+ * Which server node runs the game of a lobby. Only the owner runs the game's timer and changes the game,
+ * until the lease expires without being renewed and another node takes it over. Every takeover increments
+ * the fencing token, so writes of a node that lost the lease can be told apart from the new owner's writes.
+ */
+@Entity
+@Table(name = "GAME_LEASE")
+public class GameLease {
+
+    @Id
+    private Long lobbyId;
+
+    @Column(nullable = false)
+    private String owner;
+
+    @Column(nullable = false)
+    private long fencingToken;
+
+    // in milliseconds of the game clock
+    @Column(nullable = false)
+    private long expiresAtMillis;
+
+    public Long getLobbyId() {
+        return lobbyId;
+    }
+
+    public void setLobbyId(Long lobbyId) {
+        this.lobbyId = lobbyId;
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    public void setOwner(String owner) {
+        this.owner = owner;
+    }
+
+    public long getFencingToken() {
+        return fencingToken;
+    }
+
+    public void setFencingToken(long fencingToken) {
+        this.fencingToken = fencingToken;
+    }
+
+    public long getExpiresAtMillis() {
+        return expiresAtMillis;
+    }
+
+    public void setExpiresAtMillis(long expiresAtMillis) {
+        this.expiresAtMillis = expiresAtMillis;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) { return true; }
+        if (!(o instanceof GameLease)) { return false; }
+        GameLease other = (GameLease) o;
+        return lobbyId != null && lobbyId.equals(other.getLobbyId());
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(getLobbyId());
+    }
+}
@@ -2,11 +2,14 @@ package ch.uzh.ifi.seal.soprafs20.entity;
 
 import javax.persistence.*;
 import java.util.Objects;
-import java.util.Timer;
 
+/**
+ * Stored timer state of a game. The timer itself runs on the {@link ch.uzh.ifi.seal.soprafs20.service.GameScheduler},
+ * this only remembers whether a player input cut the current state short.
+ */
 @Entity
 @Table(name = "InternalTimer")
-public class InternalTimer extends Timer  {
+public class InternalTimer {
 
     @Id
     @GeneratedValue(strategy= GenerationType.IDENTITY)
@@ -3,6 +3,7 @@ package ch.uzh.ifi.seal.soprafs20.entity;
 
 import com.fasterxml.jackson.annotation.JsonBackReference;
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import org.hibernate.annotations.DynamicUpdate;
 import org.hibernate.annotations.Fetch;
 import org.hibernate.annotations.FetchMode;
 
@@ -13,6 +14,7 @@ import java.util.Objects;
 import java.util.Set;
 
 @Entity
+@DynamicUpdate
 @Table(name="LOBBY")
 public class Lobby implements Serializable {
 
@@ -22,6 +24,11 @@ public class Lobby implements Serializable {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long lobbyId;
 
+    // joins, leaves and added bots increment the version in their compare-and-set queries, so e.g. a game start
+    // on a stale lobby fails. Setting and kicking bots do not, the caller keeps changing its loaded lobby.
+    @Version
+    private long version;
+
     @Column(nullable = false)
     private String lobbyName;
 
@@ -68,6 +75,10 @@ public class Lobby implements Serializable {
     @Column(nullable = false)
     private Integer rounds;
 
+    public long getVersion() { return version; }
+
+    public void setVersion(long version) { this.version = version; }
+
     public Long getLobbyId() {
         return lobbyId;
     }
@@ -32,6 +32,14 @@ public class LobbyScore implements Serializable {
     private Set<Long> playersIdInLobby = new HashSet<>();
 
 
+    public Long getScoreId() {
+        return scoreId;
+    }
+
+    public void setScoreId(Long scoreId) {
+        this.scoreId = scoreId;
+    }
+
     public String getLobbyName() {
         return lobbyName;
     }
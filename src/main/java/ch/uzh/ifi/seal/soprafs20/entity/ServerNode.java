@@ -0,0 +1,60 @@
+package ch.uzh.ifi.seal.soprafs20.entity;
+
+import javax.persistence.*;
+import java.util.Objects;
+
+/**
+ * A server node sharing the database, with the address clients reach it at. Nodes renew lastSeenMillis
+ * regularly, a node that stopped doing so is considered gone.
+ */
+@Entity
+@Table(name = "SERVER_NODE")
+public class ServerNode {
+
+    @Id
+    private String nodeId;
+
+    @Column(nullable = false)
+    private String url;
+
+    // in milliseconds of the game clock
+    @Column(nullable = false)
+    private long lastSeenMillis;
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public void setNodeId(String nodeId) {
+        this.nodeId = nodeId;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public void setUrl(String url) {
+        this.url = url;
+    }
+
+    public long getLastSeenMillis() {
+        return lastSeenMillis;
+    }
+
+    public void setLastSeenMillis(long lastSeenMillis) {
+        this.lastSeenMillis = lastSeenMillis;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) { return true; }
+        if (!(o instanceof ServerNode)) { return false; }
+        ServerNode other = (ServerNode) o;
+        return nodeId != null && nodeId.equals(other.getNodeId());
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(getNodeId());
+    }
+}
@@ -0,0 +1,78 @@
+package ch.uzh.ifi.seal.soprafs20.events;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Something that happened in a lobby, published on the {@link EventBus} to the other server nodes.
+ * The events of a lobby are numbered by the node that published them, so a receiver can apply them in order
+ * and notice when it missed some.
+ */
+public class DomainEvent {
+
+    public enum Type {
+        GAME_CHANGED,
+        GAME_ENDED,
+        CHAT_MESSAGE
+    }
+
+    private Type type;
+    private Long lobbyId;
+    private long sequence;
+    private long timeMillis;
+    private Map<String, String> data = new HashMap<>();
+
+    public DomainEvent() {
+    }
+
+    public DomainEvent(Type type, Long lobbyId, Map<String, String> data) {
+        this.type = type;
+        this.lobbyId = lobbyId;
+        this.data = data;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public void setType(Type type) {
+        this.type = type;
+    }
+
+    public Long getLobbyId() {
+        return lobbyId;
+    }
+
+    public void setLobbyId(Long lobbyId) {
+        this.lobbyId = lobbyId;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+    public long getTimeMillis() {
+        return timeMillis;
+    }
+
+    public void setTimeMillis(long timeMillis) {
+        this.timeMillis = timeMillis;
+    }
+
+    public Map<String, String> getData() {
+        return data;
+    }
+
+    public void setData(Map<String, String> data) {
+        this.data = data;
+    }
+
+    @Override
+    public String toString() {
+        return type + " #" + sequence + " in lobby " + lobbyId + " " + data;
+    }
+}
@@ -0,0 +1,50 @@
+package ch.uzh.ifi.seal.soprafs20.events;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The events one node published since its last batch, in the order they were published
+ */
+public class EventBatch {
+
+    private String origin;
+    private long incarnation;
+    private List<DomainEvent> events = new ArrayList<>();
+
+    public EventBatch() {
+    }
+
+    public EventBatch(String origin, long incarnation, List<DomainEvent> events) {
+        this.origin = origin;
+        this.incarnation = incarnation;
+        this.events = events;
+    }
+
+    public String getOrigin() {
+        return origin;
+    }
+
+    public void setOrigin(String origin) {
+        this.origin = origin;
+    }
+
+    /**
+     * Differs every time the origin node starts, its sequence numbers start over with a new incarnation
+     */
+    public long getIncarnation() {
+        return incarnation;
+    }
+
+    public void setIncarnation(long incarnation) {
+        this.incarnation = incarnation;
+    }
+
+    public List<DomainEvent> getEvents() {
+        return events;
+    }
+
+    public void setEvents(List<DomainEvent> events) {
+        this.events = events;
+    }
+}
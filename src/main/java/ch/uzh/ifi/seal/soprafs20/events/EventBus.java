@@ -0,0 +1,223 @@
+package ch.uzh.ifi.seal.soprafs20.events;
+
+import ch.uzh.ifi.seal.soprafs20.metrics.MetricsRegistry;
+import ch.uzh.ifi.seal.soprafs20.service.ClusterMembership;
+import ch.uzh.ifi.seal.soprafs20.service.GameClock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Fans the changes of games and chats out to the other server nodes, so they can update what they cached
+ * about a lobby instead of reading it from the database again.
+ * Published events are queued and sent in batches at a short interval. The events of a lobby are numbered,
+ * receivers apply them in order, drop the ones they already got and tell the subscribers when some are missing.
+ * Subscribers only get the events of the other nodes, a node already knows about its own changes.
+ *
+ * The numbers of a lobby start over at 1 after its game ended, so senders and receivers forget the lobby
+ * instead of keeping its number forever. A receiver that missed the end sees the 1 as a restart with missed events.
+ * What a receiver knows about a node is dropped when the node restarts or was not heard from for a while.
+ */
+@Component
+public class EventBus {
+    private static final String PUBLISHED = "events.published";
+    private static final String RECEIVED = "events.received";
+    private static final String MISSED = "events.missed";
+    private static final String BATCHES = "events.batches";
+    private static final String DROPPED = "events.dropped";
+    private static final long ORIGIN_TIMEOUT_MILLIS = 10 * 60 * 1000L;
+
+    private final Logger log = LoggerFactory.getLogger(EventBus.class);
+
+    private final String nodeId;
+    private final long incarnation = ThreadLocalRandom.current().nextLong();
+    private final EventTransport transport;
+    private final GameClock gameClock;
+    private final MetricsRegistry metricsRegistry;
+    private final int batchSize;
+    private final int maxPending;
+    private final List<EventSubscriber> subscribers = new CopyOnWriteArrayList<>();
+    // events waiting for the next batch and lobbyId -> sequence number of the last event published, guarded by pending
+    private final Deque<DomainEvent> pending = new ArrayDeque<>();
+    private final Map<Long, Long> sequences = new HashMap<>();
+    // origin node -> what was received from its current incarnation
+    private final Map<String, Origin> received = new ConcurrentHashMap<>();
+
+    @Autowired
+    public EventBus(ClusterMembership clusterMembership, GameClock gameClock, MetricsRegistry metricsRegistry,
+                    @Value("${events.transport:local}") String transport,
+                    @Value("${events.socket.bind-address:127.0.0.1}") String bindAddress,
+                    @Value("${events.socket.port:9091}") int port,
+                    @Value("${events.socket.peers:}") String peers,
+                    @Value("${events.socket.max-frame-bytes:1048576}") int maxFrameBytes,
+                    @Value("${events.batch-size:256}") int batchSize,
+                    @Value("${events.max-pending:10000}") int maxPending) {
+        this(clusterMembership.getNodeId(), createTransport(transport, bindAddress, port, peers, maxFrameBytes), gameClock, metricsRegistry,
+                batchSize, maxPending);
+    }
+
+    public EventBus(String nodeId, EventTransport transport, GameClock gameClock, MetricsRegistry metricsRegistry,
+                    int batchSize, int maxPending) {
+        this.nodeId = nodeId;
+        this.transport = transport;
+        this.gameClock = gameClock;
+        this.metricsRegistry = metricsRegistry;
+        this.batchSize = Math.max(batchSize, 1);
+        this.maxPending = Math.max(maxPending, this.batchSize);
+        transport.start(this::receive);
+    }
+
+    private static EventTransport createTransport(String transport, String bindAddress, int port, String peers,
+                                                  int maxFrameBytes) {
+        switch(transport) {
+            case "local":
+                return new InJvmEventTransport(InJvmEventTransport.Hub.SHARED);
+            case "socket":
+                List<String> peerList = new ArrayList<>();
+                for(String peer : peers.split(",")) {
+                    if(!peer.isBlank()) {
+                        peerList.add(peer.trim());
+                    }
+                }
+                return new SocketEventTransport(bindAddress, port, peerList, maxFrameBytes);
+            default:
+                throw new IllegalArgumentException("Unknown event transport " + transport + ", use local or socket");
+        }
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * Queues an event for the next batch. If the batches cannot be sent fast enough, the oldest queued
+     * events are dropped and the receivers see them as missed, publishing never waits for the transport.
+     */
+    public void publish(Long lobbyId, DomainEvent.Type type, Map<String, String> data) {
+        DomainEvent event = new DomainEvent(type, lobbyId, data);
+        event.setTimeMillis(gameClock.currentTimeMillis());
+        synchronized(pending) {
+            // numbered and queued under one lock, so the events of a lobby leave in the order of their numbers
+            event.setSequence(sequences.merge(lobbyId, 1L, Long::sum));
+            if(type == DomainEvent.Type.GAME_ENDED) {
+                sequences.remove(lobbyId);
+            }
+            pending.add(event);
+            if(pending.size() > maxPending) {
+                pending.poll();
+                metricsRegistry.increment(DROPPED);
+            }
+        }
+        metricsRegistry.increment(PUBLISHED);
+    }
+
+    public void subscribe(EventSubscriber subscriber) {
+        subscribers.add(subscriber);
+    }
+
+    /**
+     * Sends the queued events, in batches of at most the configured size
+     */
+    @Scheduled(fixedDelayString = "${events.batch-interval-ms:20}")
+    public synchronized void flush() {
+        while(true) {
+            List<DomainEvent> batch = new ArrayList<>();
+            synchronized(pending) {
+                while(batch.size() < batchSize && !pending.isEmpty()) {
+                    batch.add(pending.poll());
+                }
+            }
+            if(batch.isEmpty()) {
+                return;
+            }
+            transport.send(new EventBatch(nodeId, incarnation, batch));
+            metricsRegistry.increment(BATCHES);
+        }
+    }
+
+    void receive(EventBatch batch) {
+        if(nodeId.equals(batch.getOrigin()) && incarnation == batch.getIncarnation()) {
+            return;
+        }
+        long now = gameClock.currentTimeMillis();
+        // a new incarnation replaces the one before, the restarted node numbers its events from 1 again
+        Origin origin = received.compute(batch.getOrigin(), (node, known) ->
+                known == null || known.incarnation != batch.getIncarnation() ? new Origin(batch.getIncarnation()) : known);
+        origin.lastReceivedMillis = now;
+        // batches of one origin can arrive on different threads after a reconnect
+        synchronized(origin) {
+            for(DomainEvent event : batch.getEvents()) {
+                long last = origin.lastSequences.getOrDefault(event.getLobbyId(), 0L);
+                // the game ended and the numbers started over, but the end did not arrive
+                boolean restarted = event.getSequence() == 1L && last > 0L;
+                if(!restarted && event.getSequence() <= last) {
+                    continue;
+                }
+                boolean missedEvents = restarted || event.getSequence() != last + 1;
+                if(missedEvents) {
+                    metricsRegistry.add(MISSED, restarted ? 1L : event.getSequence() - last - 1);
+                }
+                if(event.getType() == DomainEvent.Type.GAME_ENDED) {
+                    origin.lastSequences.remove(event.getLobbyId());
+                }
+                else {
+                    origin.lastSequences.put(event.getLobbyId(), event.getSequence());
+                }
+                metricsRegistry.increment(RECEIVED);
+                deliver(event, missedEvents);
+            }
+        }
+        received.values().removeIf(known -> known.lastReceivedMillis < now - ORIGIN_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * @return the number of nodes whose events this node keeps track of
+     */
+    int countOrigins() {
+        return received.size();
+    }
+
+    private void deliver(DomainEvent event, boolean missedEvents) {
+        for(EventSubscriber subscriber : subscribers) {
+            try {
+                subscriber.onEvent(event, missedEvents);
+            }
+            catch (RuntimeException e) {
+                log.error(String.format("Subscriber failed on %s: %s", event, e.getMessage()), e);
+            }
+        }
+    }
+
+    /**
+     * Sends what is still queued and closes the transport when the server stops
+     */
+    @PreDestroy
+    public void close() {
+        try {
+            flush();
+        }
+        finally {
+            transport.close();
+        }
+    }
+
+    private static class Origin {
+        private final long incarnation;
+        // lobbyId -> sequence number of the last event received, guarded by the origin
+        private final Map<Long, Long> lastSequences = new HashMap<>();
+        private volatile long lastReceivedMillis;
+
+        private Origin(long incarnation) {
+            this.incarnation = incarnation;
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package ch.uzh.ifi.seal.soprafs20.events;
+
+/**
+ * Receives the events other nodes published, one lobby's events in the order they were published
+ */
+@FunctionalInterface
+public interface EventSubscriber {
+
+    /**
+     * @param missedEvents true if earlier events of the lobby did not arrive, e.g. because a connection broke,
+     *                     so a view built from the events should be rebuilt instead of updated
+     */
+    void onEvent(DomainEvent event, boolean missedEvents);
+}
@@ -0,0 +1,20 @@
+package ch.uzh.ifi.seal.soprafs20.events;
+
+import java.util.function.Consumer;
+
+/**
+ * Carries event batches between the nodes. A transport keeps the batches of one sender in order,
+ * but may lose batches, e.g. when a connection breaks.
+ */
+public interface EventTransport extends AutoCloseable {
+
+    /**
+     * Starts receiving, the receiver gets the batches of the other nodes and may also get the own ones
+     */
+    void start(Consumer<EventBatch> receiver);
+
+    void send(EventBatch batch);
+
+    @Override
+    void close();
+}
@@ -0,0 +1,46 @@
+package ch.uzh.ifi.seal.soprafs20.events;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Transport between the nodes running in one JVM, e.g. several application contexts in the tests.
+ * Batches are handed to the receivers of all transports on the same hub right away, on the sending thread.
+ */
+public class InJvmEventTransport implements EventTransport {
+
+    /**
+     * The transports that reach each other
+     */
+    public static class Hub {
+        public static final Hub SHARED = new Hub();
+
+        private final List<Consumer<EventBatch>> receivers = new CopyOnWriteArrayList<>();
+    }
+
+    private final Hub hub;
+    private Consumer<EventBatch> receiver;
+
+    public InJvmEventTransport(Hub hub) {
+        this.hub = hub;
+    }
+
+    @Override
+    public void start(Consumer<EventBatch> receiver) {
+        this.receiver = receiver;
+        hub.receivers.add(receiver);
+    }
+
+    @Override
+    public void send(EventBatch batch) {
+        for(Consumer<EventBatch> other : hub.receivers) {
+            other.accept(batch);
+        }
+    }
+
+    @Override
+    public void close() {
+        hub.receivers.remove(receiver);
+    }
+}
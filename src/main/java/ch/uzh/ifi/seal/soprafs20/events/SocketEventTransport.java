@@ -0,0 +1,225 @@
+package ch.uzh.ifi.seal.soprafs20.events;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.UnknownHostException;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Transport over plain TCP connections. Every node listens on a port and keeps one connection to each peer,
+ * a batch is written as its length followed by its JSON. A broken connection is opened again with the next
+ * batch, the batches sent in between are lost and the receivers see a gap in the sequence numbers.
+ *
+ * The connections are not authenticated: a node only listens on the given address, only accepts connections
+ * from the hosts of its peers and drops a connection that announces a batch larger than the frame limit.
+ * Keep the address on a network only the nodes can reach.
+ */
+public class SocketEventTransport implements EventTransport {
+    private static final int CONNECT_TIMEOUT_MILLIS = 1000;
+
+    private final Logger log = LoggerFactory.getLogger(SocketEventTransport.class);
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final String bindAddress;
+    private final int port;
+    private final int maxFrameBytes;
+    private final List<Peer> peers = new ArrayList<>();
+    private final List<Socket> accepted = new CopyOnWriteArrayList<>();
+    private ServerSocket serverSocket;
+    private volatile boolean closed;
+
+    /**
+     * @param bindAddress   address to listen on
+     * @param port          port to listen on, 0 picks a free one
+     * @param peers         host:port of the other nodes, connections from other hosts are refused
+     * @param maxFrameBytes largest batch accepted, in bytes of its JSON
+     */
+    public SocketEventTransport(String bindAddress, int port, Collection<String> peers, int maxFrameBytes) {
+        this.bindAddress = bindAddress;
+        this.port = port;
+        this.maxFrameBytes = maxFrameBytes;
+        for(String peer : peers) {
+            int colon = peer.lastIndexOf(':');
+            if(colon < 0) {
+                throw new IllegalArgumentException("Peer must be given as host:port, not " + peer);
+            }
+            this.peers.add(new Peer(peer.substring(0, colon).trim(), Integer.parseInt(peer.substring(colon + 1).trim())));
+        }
+    }
+
+    /**
+     * @return the port this node listens on, after start
+     */
+    public int getLocalPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    @Override
+    public void start(Consumer<EventBatch> receiver) {
+        try {
+            serverSocket = new ServerSocket();
+            serverSocket.bind(new InetSocketAddress(InetAddress.getByName(bindAddress), port));
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException("Could not listen for events on " + bindAddress + ":" + port, e);
+        }
+        daemon("events-accept", () -> {
+            while(!closed) {
+                try {
+                    Socket socket = serverSocket.accept();
+                    if(!isPeer(socket.getInetAddress())) {
+                        log.warn(String.format("Refused events from %s, it is not a peer", socket.getInetAddress()));
+                        closeQuietly(socket);
+                        continue;
+                    }
+                    accepted.add(socket);
+                    daemon("events-receive-" + socket.getPort(), () -> receive(socket, receiver));
+                }
+                catch (IOException e) {
+                    if(!closed) {
+                        log.warn(String.format("Accepting event connections failed: %s", e.getMessage()));
+                    }
+                }
+            }
+        });
+    }
+
+    private void receive(Socket socket, Consumer<EventBatch> receiver) {
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()))) {
+            while(!closed) {
+                int length = in.readInt();
+                if(length < 0 || length > maxFrameBytes) {
+                    log.warn(String.format("Dropped the event connection from %s, it sent a batch of %d bytes",
+                            socket.getInetAddress(), length));
+                    return;
+                }
+                byte[] json = new byte[length];
+                in.readFully(json);
+                receiver.accept(objectMapper.readValue(json, EventBatch.class));
+            }
+        }
+        catch (EOFException e) {
+            // the peer closed the connection
+        }
+        catch (IOException e) {
+            if(!closed) {
+                log.warn(String.format("Receiving events failed: %s", e.getMessage()));
+            }
+        }
+        finally {
+            accepted.remove(socket);
+        }
+    }
+
+    /**
+     * Resolves the peers on every accepted connection, so a peer whose address changed is still accepted
+     */
+    private boolean isPeer(InetAddress address) {
+        for(Peer peer : peers) {
+            try {
+                for(InetAddress peerAddress : InetAddress.getAllByName(peer.host)) {
+                    if(peerAddress.equals(address)) {
+                        return true;
+                    }
+                }
+            }
+            catch (UnknownHostException e) {
+                // the peer is not reachable right now
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void send(EventBatch batch) {
+        byte[] json;
+        try {
+            json = objectMapper.writeValueAsBytes(batch);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        for(Peer peer : peers) {
+            peer.send(json);
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        for(Peer peer : peers) {
+            peer.disconnect();
+        }
+        for(Socket socket : accepted) {
+            closeQuietly(socket);
+        }
+        if(serverSocket != null) {
+            closeQuietly(serverSocket);
+        }
+    }
+
+    private static void daemon(String name, Runnable task) {
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        }
+        catch (IOException e) {
+            // closing anyway
+        }
+    }
+
+    private class Peer {
+        private final String host;
+        private final int port;
+        private Socket socket;
+        private DataOutputStream out;
+
+        private Peer(String host, int port) {
+            this.host = host;
+            this.port = port;
+        }
+
+        private synchronized void send(byte[] json) {
+            if(closed) {
+                return;
+            }
+            try {
+                if(out == null) {
+                    socket = new Socket();
+                    socket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MILLIS);
+                    socket.setTcpNoDelay(true);
+                    out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                }
+                out.writeInt(json.length);
+                out.write(json);
+                out.flush();
+            }
+            catch (IOException e) {
+                log.warn(String.format("Sending events to %s:%d failed: %s", host, port, e.getMessage()));
+                disconnect();
+            }
+        }
+
+        private synchronized void disconnect() {
+            if(socket != null) {
+                closeQuietly(socket);
+            }
+            socket = null;
+            out = null;
+        }
+    }
+}
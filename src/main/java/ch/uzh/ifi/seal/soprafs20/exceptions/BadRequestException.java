@@ -1,11 +1,8 @@
 package ch.uzh.ifi.seal.soprafs20.exceptions;
 
-public class BadRequestException extends RuntimeException {
+public class BadRequestException extends DomainException {
 
     public BadRequestException(String message) {
-        super(message);
+        super(message, ErrorCode.BAD_REQUEST);
     }
 }
-
-
-
@@ -1,8 +1,8 @@
 package ch.uzh.ifi.seal.soprafs20.exceptions;
 
-public class ConflictException extends RuntimeException {
+public class ConflictException extends DomainException {
 
     public ConflictException(String message) {
-        super(message);
+        super(message, ErrorCode.CONFLICT);
     }
 }
@@ -0,0 +1,19 @@
+package ch.uzh.ifi.seal.soprafs20.exceptions;
+
+/**
+ * Base of the exceptions thrown when a request is rejected by the game rules, e.g. a vote in the wrong state.
+ * These are part of the normal flow of a game, so no stack trace is captured when they are created.
+ */
+public abstract class DomainException extends RuntimeException {
+
+    private final ErrorCode errorCode;
+
+    protected DomainException(String message, ErrorCode errorCode) {
+        super(message, null, false, false);
+        this.errorCode = errorCode;
+    }
+
+    public ErrorCode getErrorCode() {
+        return errorCode;
+    }
+}
@@ -0,0 +1,17 @@
+package ch.uzh.ifi.seal.soprafs20.exceptions;
+
+/**
+ * Machine readable reason of a rejected request, sent to the client in the X-Error-Code header
+ */
+public enum ErrorCode {
+    BAD_REQUEST,
+    UNAUTHORIZED,
+    FORBIDDEN,
+    NOT_FOUND,
+    NOT_ACCEPTABLE,
+    NO_CONTENT,
+    CONFLICT,
+    CONCURRENT_MODIFICATION,
+    NOT_OWNER,
+    INVALID_FORMAT
+}
@@ -0,0 +1,63 @@
+package ch.uzh.ifi.seal.soprafs20.exceptions;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Decides whether an error should be logged: per key at most maxPerInterval errors are logged per interval,
+ * the rest are only counted and reported with the next error that is logged.
+ */
+class ErrorLogLimiter {
+
+    static final long SUPPRESSED = -1L;
+
+    private final int maxPerInterval;
+    private final long intervalMillis;
+    private final LongSupplier clock;
+    private final Map<String, Window> windows = new ConcurrentHashMap<>();
+
+    ErrorLogLimiter(int maxPerInterval, long intervalMillis) {
+        this(maxPerInterval, intervalMillis, System::currentTimeMillis);
+    }
+
+    ErrorLogLimiter(int maxPerInterval, long intervalMillis, LongSupplier clock) {
+        this.maxPerInterval = maxPerInterval;
+        this.intervalMillis = intervalMillis;
+        this.clock = clock;
+    }
+
+    /**
+     * @return SUPPRESSED if this error should not be logged, otherwise the number of errors with this key
+     * that were not logged since the last one that was
+     */
+    long tryAcquire(String key) {
+        long now = clock.getAsLong();
+        return windows.computeIfAbsent(key, k -> new Window(now)).tryAcquire(now);
+    }
+
+    private class Window {
+        private long start;
+        private int logged;
+        private long suppressed;
+
+        Window(long start) {
+            this.start = start;
+        }
+
+        synchronized long tryAcquire(long now) {
+            if (now - start >= intervalMillis) {
+                start = now;
+                logged = 0;
+            }
+            if (logged >= maxPerInterval) {
+                suppressed++;
+                return SUPPRESSED;
+            }
+            logged++;
+            long count = suppressed;
+            suppressed = 0;
+            return count;
+        }
+    }
+}
@@ -1,9 +1,8 @@
 package ch.uzh.ifi.seal.soprafs20.exceptions;
 
-public class ForbiddenException extends RuntimeException {
+public class ForbiddenException extends DomainException {
 
     public ForbiddenException(String message) {
-        super(message);
+        super(message, ErrorCode.FORBIDDEN);
     }
 }
-
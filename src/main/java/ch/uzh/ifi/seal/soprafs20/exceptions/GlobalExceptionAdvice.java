@@ -1,7 +1,10 @@
 package ch.uzh.ifi.seal.soprafs20.exceptions;
 
+import ch.uzh.ifi.seal.soprafs20.metrics.MetricsRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -20,19 +23,31 @@ import javax.servlet.http.HttpServletRequest;
 @ControllerAdvice(annotations = RestController.class)
 public class GlobalExceptionAdvice extends ResponseEntityExceptionHandler {
 
+    public static final String ERROR_CODE_HEADER = "X-Error-Code";
+    static final String ERRORS = "errors.";
+
     private final Logger log = LoggerFactory.getLogger(GlobalExceptionAdvice.class);
+    private final MetricsRegistry metricsRegistry;
+    private final ErrorLogLimiter logLimiter;
+
+    public GlobalExceptionAdvice(MetricsRegistry metricsRegistry,
+                                 @Value("${errors.log.max-per-interval:10}") int maxLogsPerInterval,
+                                 @Value("${errors.log.interval-ms:10000}") long logIntervalMillis) {
+        this.metricsRegistry = metricsRegistry;
+        this.logLimiter = new ErrorLogLimiter(maxLogsPerInterval, logIntervalMillis);
+    }
 
     @ExceptionHandler(value = {IllegalArgumentException.class, IllegalStateException.class})
     protected ResponseEntity<Object> handleConflict(RuntimeException ex, WebRequest request) {
+        count(ex);
         String bodyOfResponse = "This should be application specific";
         return handleExceptionInternal(ex, bodyOfResponse, new HttpHeaders(), HttpStatus.CONFLICT, request);
     }
 
     @ExceptionHandler(BadRequestException.class)
     @ResponseStatus(HttpStatus.BAD_REQUEST)
-    public ResponseEntity<Object> handleBadRequestException(BadRequestException ex) {
-        log.error(String.format("BadRequestException raised:%s", ex));
-        return new ResponseEntity<>(ex.getMessage(), HttpStatus.BAD_REQUEST);
+    public ResponseEntity<Object> handleBadRequestException(BadRequestException ex, HttpServletRequest request) {
+        return reject(ex, HttpStatus.BAD_REQUEST, request);
     }
 
 
@@ -40,57 +55,99 @@ public class GlobalExceptionAdvice extends ResponseEntityExceptionHandler {
     @ResponseStatus(HttpStatus.CONFLICT)
     @Override
     public ResponseEntity<Object> handleHttpMessageNotReadable(HttpMessageNotReadableException ex, HttpHeaders headers, HttpStatus status, WebRequest request){
-        log.error(String.format("HttpMessageNotReadable raised %s","Invalid format!"));
-        return new ResponseEntity<>("Invalid format!",HttpStatus.CONFLICT);
+        count(ex);
+        logRejection(ex, request.getDescription(false), "Invalid format!");
+        return respond("Invalid format!", ErrorCode.INVALID_FORMAT, HttpStatus.CONFLICT);
     }
 
     @ExceptionHandler(UnauthorizedException.class)
     @ResponseStatus(HttpStatus.UNAUTHORIZED)
-    public ResponseEntity<Object> handleUnauthorizedException(UnauthorizedException ex) {
-        log.error(String.format("UnauthorizedException raised:%s", ex));
-        return new ResponseEntity<>(ex.getMessage(), HttpStatus.UNAUTHORIZED);
+    public ResponseEntity<Object> handleUnauthorizedException(UnauthorizedException ex, HttpServletRequest request) {
+        return reject(ex, HttpStatus.UNAUTHORIZED, request);
     }
 
     @ExceptionHandler(NoContentException.class)
     @ResponseStatus(HttpStatus.NO_CONTENT)
-    public ResponseEntity<Object> handleNoContentException(NoContentException ex) {
-        log.error(String.format("NoContentException raised:%s", ex));
-        return new ResponseEntity<>(ex.getMessage(), HttpStatus.NO_CONTENT);
+    public ResponseEntity<Object> handleNoContentException(NoContentException ex, HttpServletRequest request) {
+        return reject(ex, HttpStatus.NO_CONTENT, request);
     }
 
     @ExceptionHandler(NotAcceptableException.class)
     @ResponseStatus(HttpStatus.NOT_ACCEPTABLE)
-    public ResponseEntity<Object> handleNotAcceptableException(NotAcceptableException ex) {
-        log.error(String.format("NotAcceptableException raised:%s", ex));
-        return new ResponseEntity<>(ex.getMessage(), HttpStatus.NOT_ACCEPTABLE);
+    public ResponseEntity<Object> handleNotAcceptableException(NotAcceptableException ex, HttpServletRequest request) {
+        return reject(ex, HttpStatus.NOT_ACCEPTABLE, request);
     }
 
     @ExceptionHandler(NotFoundException.class)
     @ResponseStatus(HttpStatus.NOT_FOUND)
-    public ResponseEntity<Object> handleNotFoundException(NotFoundException ex) {
-        log.error(String.format("NotFoundException raised:%s", ex));
-        return new ResponseEntity<>(ex.getMessage(), HttpStatus.NOT_FOUND);
+    public ResponseEntity<Object> handleNotFoundException(NotFoundException ex, HttpServletRequest request) {
+        return reject(ex, HttpStatus.NOT_FOUND, request);
     }
 
     @ExceptionHandler(ConflictException.class)
     @ResponseStatus(HttpStatus.CONFLICT)
-    public ResponseEntity<Object> handleConflictException(ConflictException ex) {
-        log.error(String.format("ConflictException raised:%s", ex));
-        return new ResponseEntity<>(ex.getMessage(), HttpStatus.CONFLICT);
+    public ResponseEntity<Object> handleConflictException(ConflictException ex, HttpServletRequest request) {
+        return reject(ex, HttpStatus.CONFLICT, request);
+    }
+
+    @ExceptionHandler(NotOwnerException.class)
+    @ResponseStatus(HttpStatus.CONFLICT)
+    public ResponseEntity<Object> handleNotOwnerException(NotOwnerException ex, HttpServletRequest request) {
+        return reject(ex, HttpStatus.CONFLICT, request);
+    }
+
+    @ExceptionHandler(OptimisticLockingFailureException.class)
+    @ResponseStatus(HttpStatus.CONFLICT)
+    public ResponseEntity<Object> handleOptimisticLockingFailureException(OptimisticLockingFailureException ex, HttpServletRequest request) {
+        count(ex);
+        logRejection(ex, request.getRequestURI(), ex.getMessage());
+        return respond("This was changed by somebody else in the meantime, please try again!", ErrorCode.CONCURRENT_MODIFICATION, HttpStatus.CONFLICT);
     }
 
     @ExceptionHandler(TransactionSystemException.class)
     @ResponseStatus(HttpStatus.CONFLICT)
     public ResponseEntity<Object> handleTransactionSystemException(Exception ex, HttpServletRequest request) {
-        log.error(String.format("Request: %s raised %s", request.getRequestURL(), ex));
-        return new ResponseEntity<>(ex.getMessage(), HttpStatus.CONFLICT);
+        count(ex);
+        long suppressed = logLimiter.tryAcquire(ex.getClass().getSimpleName());
+        if (suppressed != ErrorLogLimiter.SUPPRESSED) {
+            log.error("Request: {} raised {} ({} similar not logged)", request.getRequestURI(), ex, suppressed, ex);
+        }
+        return respond(ex.getMessage(), ErrorCode.CONFLICT, HttpStatus.CONFLICT);
     }
 
     @ExceptionHandler(HttpClientErrorException.Forbidden.class)
     @ResponseStatus(HttpStatus.FORBIDDEN)
     public ResponseEntity<Object> handleForbiddenException(Exception ex, HttpServletRequest request){
-        log.error(String.format("Request: %s raised %s", request.getRequestURL(),ex));
-        return new ResponseEntity<>(ex.getMessage(),HttpStatus.FORBIDDEN);
+        count(ex);
+        logRejection(ex, request.getRequestURI(), ex.getMessage());
+        return respond(ex.getMessage(), ErrorCode.FORBIDDEN, HttpStatus.FORBIDDEN);
+    }
+
+    private ResponseEntity<Object> reject(DomainException ex, HttpStatus status, HttpServletRequest request) {
+        count(ex);
+        logRejection(ex, request.getRequestURI(), ex.getMessage());
+        return respond(ex.getMessage(), ex.getErrorCode(), status);
+    }
+
+    private ResponseEntity<Object> respond(String message, ErrorCode errorCode, HttpStatus status) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(ERROR_CODE_HEADER, errorCode.name());
+        return new ResponseEntity<>(message, headers, status);
+    }
+
+    private void count(Exception ex) {
+        metricsRegistry.increment(ERRORS + ex.getClass().getSimpleName());
+    }
+
+    /**
+     * Rejected requests are part of a normal game, so they are logged as warnings and at most a few per interval
+     */
+    private void logRejection(Exception ex, String request, String message) {
+        String type = ex.getClass().getSimpleName();
+        long suppressed = logLimiter.tryAcquire(type);
+        if (suppressed != ErrorLogLimiter.SUPPRESSED) {
+            log.warn("Request: {} raised {}: {} ({} similar not logged)", request, type, message, suppressed);
+        }
     }
 
 //    //Keep this one disable for all testing purposes -> it shows more detail with this one disabled
@@ -1,8 +1,8 @@
 package ch.uzh.ifi.seal.soprafs20.exceptions;
 
-public class NoContentException extends RuntimeException {
+public class NoContentException extends DomainException {
 
     public NoContentException(String message) {
-        super(message);
+        super(message, ErrorCode.NO_CONTENT);
     }
 }
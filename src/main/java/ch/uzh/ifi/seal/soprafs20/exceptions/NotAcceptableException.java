@@ -1,8 +1,8 @@
 package ch.uzh.ifi.seal.soprafs20.exceptions;
 
-public class NotAcceptableException extends RuntimeException {
+public class NotAcceptableException extends DomainException {
 
     public NotAcceptableException(String message) {
-        super(message);
+        super(message, ErrorCode.NOT_ACCEPTABLE);
     }
 }
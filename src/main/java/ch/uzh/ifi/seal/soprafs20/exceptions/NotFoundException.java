@@ -1,8 +1,8 @@
 package ch.uzh.ifi.seal.soprafs20.exceptions;
 
-public class NotFoundException extends RuntimeException {
+public class NotFoundException extends DomainException {
 
     public NotFoundException(String message) {
-        super(message);
+        super(message, ErrorCode.NOT_FOUND);
     }
 }
@@ -0,0 +1,21 @@
+package ch.uzh.ifi.seal.soprafs20.exceptions;
+
+/**
+ * Thrown when a game is changed on a server node that does not hold the game's lease
+ */
+public class NotOwnerException extends DomainException {
+
+    private final String owner;
+
+    public NotOwnerException(String message, String owner) {
+        super(message, ErrorCode.NOT_OWNER);
+        this.owner = owner;
+    }
+
+    /**
+     * @return the node that holds the lease, null if it is not known
+     */
+    public String getOwner() {
+        return owner;
+    }
+}
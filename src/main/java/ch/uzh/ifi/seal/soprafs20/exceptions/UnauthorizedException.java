@@ -1,8 +1,8 @@
 package ch.uzh.ifi.seal.soprafs20.exceptions;
 
-public class UnauthorizedException extends RuntimeException {
+public class UnauthorizedException extends DomainException {
 
     public UnauthorizedException(String message) {
-        super(message);
+        super(message, ErrorCode.UNAUTHORIZED);
     }
 }
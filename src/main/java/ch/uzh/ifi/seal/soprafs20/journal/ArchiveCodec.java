@@ -0,0 +1,366 @@
+package ch.uzh.ifi.seal.soprafs20.journal;
+
+import ch.uzh.ifi.seal.soprafs20.GameLogic.GameState;
+import ch.uzh.ifi.seal.soprafs20.GameLogic.WordCorpus;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Compact binary archive of a finished game, built from the game's journal records. Words are stored as their
+ * index in the word corpus, every clue and guess text once in a dictionary that the rounds refer to, players by
+ * their slot in the game and all times as milliseconds since the game started, everything as varints.
+ * A game of a few rounds takes a few hundred bytes.
+ *
+ * Layout: version, start time, duration, overall score, lobby name, players (id, username), dictionary,
+ * then per round: number, word, when the word was picked, clues (slot, text, seconds left),
+ * votes (slot, texts), guess (kind, text, score, time) and phases (state, time).
+ */
+public final class ArchiveCodec {
+    private static final int VERSION = 1;
+    private static final int NO_WORD = 0;
+    private static final int WORD_IN_DICTIONARY = 1;
+    private static final int GUESS_NONE = 0;
+    private static final int GUESS_WRONG = 1;
+    private static final int GUESS_CORRECT = 2;
+
+    private ArchiveCodec() {
+    }
+
+    /**
+     * @param history the journal records of the game, in order, starting with the start of the game
+     */
+    public static byte[] encode(List<JournalRecord> history, String lobbyName, int overallScore, long endedAtMillis) {
+        long startedAt = history.isEmpty() ? endedAtMillis : history.get(0).getTimeMillis();
+        long[] playerIds = new long[0];
+        String[] usernames = new String[0];
+        Dictionary dictionary = new Dictionary();
+        TreeMap<Long, Round> rounds = new TreeMap<>();
+        Round current = null;
+        for(JournalRecord record : history) {
+            long at = record.getTimeMillis() - startedAt;
+            switch(record.getType()) {
+                case STARTED:
+                    playerIds = record.getNumbers();
+                    usernames = record.getTexts();
+                    break;
+                case WORD_PICKED:
+                    current = rounds.computeIfAbsent(record.getNumbers()[0], Round::new);
+                    current.word = record.getTexts()[0];
+                    current.pickedAt = at;
+                    break;
+                case PHASE:
+                    Round round = rounds.computeIfAbsent(record.getNumbers()[0], Round::new);
+                    round.phases.add(new long[]{GameState.valueOf(record.getTexts()[0]).ordinal(), at});
+                    if(current == null || round.number > current.number) {
+                        current = round;
+                    }
+                    break;
+                case CLUE:
+                    if(current != null) {
+                        for(String clue : record.getTexts()) {
+                            if(clue != null && !clue.isEmpty()) {
+                                current.clues.add(new long[]{slot(playerIds, record.getNumbers()[0]),
+                                        dictionary.refer(clue), record.getNumbers()[1]});
+                            }
+                        }
+                    }
+                    break;
+                case VOTE:
+                    if(current != null) {
+                        long[] vote = new long[1 + record.getTexts().length];
+                        vote[0] = slot(playerIds, record.getNumbers()[0]);
+                        for(int i = 0; i < record.getTexts().length; i++) {
+                            vote[i + 1] = dictionary.refer(String.valueOf(record.getTexts()[i]));
+                        }
+                        current.votes.add(vote);
+                    }
+                    break;
+                case GUESS:
+                    if(current != null) {
+                        current.guess = new long[]{record.getNumbers()[0] == 1L ? GUESS_CORRECT : GUESS_WRONG,
+                                dictionary.refer(String.valueOf(record.getTexts()[0])), record.getNumbers()[1],
+                                at - current.pickedAt};
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        for(Round round : rounds.values()) {
+            if(round.word != null && !WordCorpus.getInstance().contains(round.word)) {
+                round.wordRef = dictionary.refer(round.word);
+            }
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+        out.write(VERSION);
+        writeVarLong(out, startedAt);
+        writeVarLong(out, Math.max(endedAtMillis - startedAt, 0L));
+        writeSigned(out, overallScore);
+        writeString(out, lobbyName);
+        writeVarLong(out, playerIds.length);
+        for(int i = 0; i < playerIds.length; i++) {
+            writeVarLong(out, playerIds[i]);
+            writeString(out, i < usernames.length ? usernames[i] : null);
+        }
+        writeVarLong(out, dictionary.texts.size());
+        for(String text : dictionary.texts) {
+            writeString(out, text);
+        }
+        writeVarLong(out, rounds.size());
+        for(Round round : rounds.values()) {
+            writeVarLong(out, round.number);
+            if(round.word == null) {
+                writeVarLong(out, NO_WORD);
+            }
+            else if(round.wordRef >= 0) {
+                writeVarLong(out, WORD_IN_DICTIONARY);
+                writeVarLong(out, round.wordRef);
+            }
+            else {
+                writeVarLong(out, WordCorpus.getInstance().indexOf(round.word) + 2L);
+            }
+            writeVarLong(out, Math.max(round.pickedAt, 0L));
+            writeVarLong(out, round.clues.size());
+            for(long[] clue : round.clues) {
+                writeVarLong(out, clue[0]);
+                writeVarLong(out, clue[1]);
+                writeSigned(out, clue[2]);
+            }
+            writeVarLong(out, round.votes.size());
+            for(long[] vote : round.votes) {
+                writeVarLong(out, vote[0]);
+                writeVarLong(out, vote.length - 1L);
+                for(int i = 1; i < vote.length; i++) {
+                    writeVarLong(out, vote[i]);
+                }
+            }
+            if(round.guess == null) {
+                writeVarLong(out, GUESS_NONE);
+            }
+            else {
+                writeVarLong(out, round.guess[0]);
+                writeVarLong(out, round.guess[1]);
+                writeSigned(out, round.guess[2]);
+                writeVarLong(out, Math.max(round.guess[3], 0L));
+            }
+            writeVarLong(out, round.phases.size());
+            for(long[] phase : round.phases) {
+                writeVarLong(out, phase[0]);
+                writeVarLong(out, Math.max(phase[1], 0L));
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Writes the archived game as JSON while reading it, only the players and the dictionary are kept in memory
+     */
+    public static void writeJson(Long gameId, InputStream archive, JsonGenerator json) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(archive));
+        int version = in.readUnsignedByte();
+        if(version != VERSION) {
+            throw new IOException("Unknown archive version " + version);
+        }
+        json.writeStartObject();
+        json.writeNumberField("gameId", gameId);
+        long startedAt = readVarLong(in);
+        json.writeNumberField("startedAt", startedAt);
+        json.writeNumberField("durationMillis", readVarLong(in));
+        json.writeNumberField("overallScore", readSigned(in));
+        json.writeStringField("lobbyName", readString(in));
+
+        long[] playerIds = new long[(int) readVarLong(in)];
+        json.writeArrayFieldStart("players");
+        for(int i = 0; i < playerIds.length; i++) {
+            playerIds[i] = readVarLong(in);
+            json.writeStartObject();
+            json.writeNumberField("id", playerIds[i]);
+            json.writeStringField("username", readString(in));
+            json.writeEndObject();
+        }
+        json.writeEndArray();
+
+        String[] dictionary = new String[(int) readVarLong(in)];
+        for(int i = 0; i < dictionary.length; i++) {
+            dictionary[i] = readString(in);
+        }
+
+        long rounds = readVarLong(in);
+        json.writeArrayFieldStart("rounds");
+        for(long r = 0; r < rounds; r++) {
+            json.writeStartObject();
+            json.writeNumberField("round", readVarLong(in));
+            long word = readVarLong(in);
+            json.writeFieldName("word");
+            if(word == NO_WORD) {
+                json.writeNull();
+            }
+            else {
+                json.writeString(word == WORD_IN_DICTIONARY ? dictionary[(int) readVarLong(in)]
+                        : WordCorpus.getInstance().get((int) (word - 2)));
+            }
+            json.writeNumberField("pickedAtMillis", readVarLong(in));
+
+            long clues = readVarLong(in);
+            json.writeArrayFieldStart("clues");
+            for(long c = 0; c < clues; c++) {
+                json.writeStartObject();
+                writePlayer(json, playerIds, readVarLong(in));
+                json.writeStringField("clue", dictionary[(int) readVarLong(in)]);
+                json.writeNumberField("secondsLeft", readSigned(in));
+                json.writeEndObject();
+            }
+            json.writeEndArray();
+
+            long votes = readVarLong(in);
+            json.writeArrayFieldStart("votes");
+            for(long v = 0; v < votes; v++) {
+                json.writeStartObject();
+                writePlayer(json, playerIds, readVarLong(in));
+                long invalid = readVarLong(in);
+                json.writeArrayFieldStart("invalidClues");
+                for(long i = 0; i < invalid; i++) {
+                    json.writeString(dictionary[(int) readVarLong(in)]);
+                }
+                json.writeEndArray();
+                json.writeEndObject();
+            }
+            json.writeEndArray();
+
+            long guess = readVarLong(in);
+            json.writeFieldName("guess");
+            if(guess == GUESS_NONE) {
+                json.writeNull();
+            }
+            else {
+                json.writeStartObject();
+                json.writeStringField("text", dictionary[(int) readVarLong(in)]);
+                json.writeBooleanField("correct", guess == GUESS_CORRECT);
+                json.writeNumberField("guesserScore", readSigned(in));
+                json.writeNumberField("afterMillis", readVarLong(in));
+                json.writeEndObject();
+            }
+
+            long phases = readVarLong(in);
+            json.writeArrayFieldStart("phases");
+            for(long p = 0; p < phases; p++) {
+                json.writeStartObject();
+                json.writeStringField("state", GameState.values()[(int) readVarLong(in)].name());
+                json.writeNumberField("atMillis", readVarLong(in));
+                json.writeEndObject();
+            }
+            json.writeEndArray();
+            json.writeEndObject();
+        }
+        json.writeEndArray();
+        json.writeEndObject();
+        json.flush();
+    }
+
+    private static void writePlayer(JsonGenerator json, long[] playerIds, long slot) throws IOException {
+        json.writeFieldName("playerId");
+        if(slot == 0 || slot > playerIds.length) {
+            // clues of bots are not tied to a player
+            json.writeNull();
+        }
+        else {
+            json.writeNumber(playerIds[(int) slot - 1]);
+        }
+    }
+
+    /**
+     * @return 0 for bots and players that are not in the game, else the position of the player plus one
+     */
+    private static long slot(long[] playerIds, long playerId) {
+        for(int i = 0; i < playerIds.length; i++) {
+            if(playerIds[i] == playerId && playerId != 0L) {
+                return i + 1L;
+            }
+        }
+        return 0L;
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream out, long value) {
+        long rest = value;
+        while((rest & ~0x7FL) != 0) {
+            out.write((int) ((rest & 0x7F) | 0x80));
+            rest >>>= 7;
+        }
+        out.write((int) rest);
+    }
+
+    private static void writeSigned(ByteArrayOutputStream out, long value) {
+        writeVarLong(out, (value << 1) ^ (value >> 63));
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String text) {
+        if(text == null) {
+            writeVarLong(out, 0);
+            return;
+        }
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(out, bytes.length + 1L);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for(int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint in the game archive");
+    }
+
+    private static long readSigned(DataInputStream in) throws IOException {
+        long zigzag = readVarLong(in);
+        return (zigzag >>> 1) ^ -(zigzag & 1);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = (int) readVarLong(in);
+        if(length == 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length - 1];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Every distinct text once, in the order it first appeared
+     */
+    private static class Dictionary {
+        private final List<String> texts = new ArrayList<>();
+        private final Map<String, Integer> refs = new HashMap<>();
+
+        private int refer(String text) {
+            return refs.computeIfAbsent(text, t -> {
+                texts.add(t);
+                return texts.size() - 1;
+            });
+        }
+    }
+
+    private static class Round {
+        private final long number;
+        private String word;
+        private int wordRef = -1;
+        private long pickedAt;
+        private final List<long[]> clues = new ArrayList<>();
+        private final List<long[]> votes = new ArrayList<>();
+        private final List<long[]> phases = new ArrayList<>();
+        private long[] guess;
+
+        private Round(long number) {
+            this.number = number;
+        }
+    }
+}
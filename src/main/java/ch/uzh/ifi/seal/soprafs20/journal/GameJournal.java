@@ -0,0 +1,371 @@
+package ch.uzh.ifi.seal.soprafs20.journal;
+
+import ch.uzh.ifi.seal.soprafs20.metrics.MetricsRegistry;
+import ch.uzh.ifi.seal.soprafs20.service.GameClock;
+import ch.uzh.ifi.seal.soprafs20.service.GameLeases;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Append-only journal of what happens in the games this node runs: clues, votes, guesses and phase changes.
+ * Records are appended to segment files of a fixed size and forced to disk together at a short interval, so a
+ * burst of commands costs one fsync instead of one each. The history of a game is read memory-mapped when the
+ * game is archived. The database stays the state of the games, recovery and takeovers read it, not the journal.
+ *
+ * Segments are deleted once no running game has records in them. The journal is kept per node id, so it only
+ * survives a restart with a configured games.node-id. Without one the journal is deleted when the server stops,
+ * because no later start would find it again.
+ */
+@Component
+public class GameJournal {
+    private static final String APPENDS = "game.journal.appends";
+    private static final String BYTES = "game.journal.bytes";
+    private static final String FSYNCS = "game.journal.fsyncs";
+    private static final String FSYNC_LATENCY = "game.journal.fsync.seconds";
+    private static final String SEGMENTS_DELETED = "game.journal.segments.deleted";
+    private static final String SEGMENT_PATTERN = "segment-%012d.log";
+
+    private final Logger log = LoggerFactory.getLogger(GameJournal.class);
+
+    private final Path directory;
+    private final long segmentBytes;
+    private final boolean deleteOnClose;
+    private final GameClock gameClock;
+    private final MetricsRegistry metricsRegistry;
+
+    // all fields below are guarded by this
+    // lobbyId -> where the records of the game are
+    private final Map<Long, GameIndex> games = new HashMap<>();
+    // number of the segment -> its file, the last one is appended to
+    private final TreeMap<Long, Path> segments = new TreeMap<>();
+    private FileChannel current;
+    private long currentNumber;
+    private long currentSize;
+    private boolean dirty;
+
+    @Autowired
+    public GameJournal(GameLeases gameLeases, GameClock gameClock, MetricsRegistry metricsRegistry,
+                       @Value("${games.journal.enabled:true}") boolean enabled,
+                       @Value("${games.journal.dir:${java.io.tmpdir}/justone-journal}") String directory,
+                       @Value("${games.journal.segment-bytes:16777216}") long segmentBytes,
+                       @Value("${games.node-id:}") String configuredNodeId) {
+        this(enabled ? Paths.get(directory, gameLeases.getNodeId()) : null, segmentBytes,
+                configuredNodeId == null || configuredNodeId.isEmpty(), gameClock, metricsRegistry);
+    }
+
+    /**
+     * @param directory where the segments are kept, null disables the journal
+     */
+    public GameJournal(Path directory, long segmentBytes, boolean deleteOnClose, GameClock gameClock,
+                       MetricsRegistry metricsRegistry) {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.deleteOnClose = deleteOnClose;
+        this.gameClock = gameClock;
+        this.metricsRegistry = metricsRegistry;
+        if(directory != null) {
+            open();
+        }
+    }
+
+    public boolean isEnabled() {
+        return directory != null;
+    }
+
+    /**
+     * Finds the segments of an earlier run, indexes the games in them and cuts off a last record that was only
+     * written partly, e.g. because the server crashed while appending it
+     */
+    private synchronized void open() {
+        try {
+            Files.createDirectories(directory);
+            try(Stream<Path> files = Files.list(directory)) {
+                files.forEach(file -> {
+                    String name = file.getFileName().toString();
+                    if(name.startsWith("segment-") && name.endsWith(".log")) {
+                        segments.put(Long.parseLong(name.substring(8, name.length() - 4)), file);
+                    }
+                });
+            }
+            long validSize = 0;
+            for(Map.Entry<Long, Path> segment : segments.entrySet()) {
+                validSize = scan(segment.getKey(), segment.getValue(), Files.size(segment.getValue()), this::index);
+            }
+            if(segments.isEmpty()) {
+                startSegment(1L);
+            }
+            else {
+                currentNumber = segments.lastKey();
+                current = FileChannel.open(segments.lastEntry().getValue(), StandardOpenOption.WRITE);
+                current.truncate(validSize);
+                current.position(validSize);
+                currentSize = validSize;
+            }
+            log.info(String.format("Game journal in %s has %d segments and %d running games", directory,
+                    segments.size(), games.size()));
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException("Could not open the game journal in " + directory, e);
+        }
+    }
+
+    private void index(long segment, int offset, JournalRecord record) {
+        if(record.getType() == JournalRecord.Type.ENDED) {
+            games.remove(record.getLobbyId());
+            return;
+        }
+        GameIndex game = games.computeIfAbsent(record.getLobbyId(), id -> new GameIndex(segment));
+        if(record.getType() == JournalRecord.Type.STARTED) {
+            game.firstSegment = segment;
+        }
+        game.sequence = record.getSequence();
+    }
+
+    /**
+     * Appends a record to the game's part of the journal. It reaches the disk with the next {@link #sync()}.
+     */
+    public synchronized void append(Long lobbyId, JournalRecord.Type type, long[] numbers, String... texts) {
+        if(directory == null || lobbyId == null) {
+            return;
+        }
+        GameIndex game = games.get(lobbyId);
+        if(type == JournalRecord.Type.STARTED || game == null) {
+            game = new GameIndex(currentNumber);
+            games.put(lobbyId, game);
+        }
+        game.sequence++;
+        JournalRecord record = new JournalRecord(type, lobbyId, game.sequence, gameClock.currentTimeMillis(),
+                numbers, texts);
+        ByteBuffer bytes = RecordCodec.encode(record);
+        try {
+            if(currentSize > 0 && currentSize + bytes.remaining() > segmentBytes) {
+                rollSegment();
+            }
+            int length = bytes.remaining();
+            while(bytes.hasRemaining()) {
+                current.write(bytes);
+            }
+            currentSize += length;
+            dirty = true;
+            metricsRegistry.increment(APPENDS);
+            metricsRegistry.add(BYTES, length);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException("Could not append to the game journal", e);
+        }
+        if(type == JournalRecord.Type.ENDED) {
+            games.remove(lobbyId);
+            deleteUnusedSegments();
+        }
+    }
+
+    /**
+     * Forgets a game this node no longer runs, e.g. because another node took it over, so its records do not
+     * keep the segments from being deleted
+     */
+    public synchronized void forget(Long lobbyId) {
+        if(games.remove(lobbyId) != null) {
+            deleteUnusedSegments();
+        }
+    }
+
+    /**
+     * Forgets all games except the given ones, used after a restart with the games this node runs again
+     */
+    public synchronized void retainOnly(Collection<Long> lobbyIds) {
+        if(games.keySet().retainAll(new HashSet<>(lobbyIds))) {
+            deleteUnusedSegments();
+        }
+    }
+
+    /**
+     * Forces the appended records to disk, all records appended since the last call share one fsync
+     */
+    @Scheduled(fixedDelayString = "${games.journal.fsync-interval-ms:50}")
+    public void sync() {
+        FileChannel channel;
+        synchronized(this) {
+            if(!dirty) {
+                return;
+            }
+            dirty = false;
+            channel = current;
+        }
+        long start = System.nanoTime();
+        try {
+            channel.force(false);
+        }
+        catch (IOException e) {
+            synchronized(this) {
+                dirty = true;
+            }
+            log.warn(String.format("Could not force the game journal to disk: %s", e.getMessage()));
+            return;
+        }
+        metricsRegistry.increment(FSYNCS);
+        metricsRegistry.record(FSYNC_LATENCY, System.nanoTime() - start);
+    }
+
+    /**
+     * @return all records of the game since it started, empty if the journal knows nothing about the game
+     */
+    public List<JournalRecord> history(Long lobbyId) {
+        long fromSegment;
+        synchronized(this) {
+            GameIndex game = games.get(lobbyId);
+            if(game == null) {
+                return Collections.emptyList();
+            }
+            fromSegment = game.firstSegment;
+        }
+        return read(lobbyId, fromSegment);
+    }
+
+    private List<JournalRecord> read(Long lobbyId, long fromSegment) {
+        Map<Long, Path> toRead;
+        long lastNumber;
+        long lastSize;
+        synchronized(this) {
+            toRead = new TreeMap<>(segments.tailMap(fromSegment, true));
+            lastNumber = currentNumber;
+            lastSize = currentSize;
+        }
+        List<JournalRecord> records = new ArrayList<>();
+        for(Map.Entry<Long, Path> segment : toRead.entrySet()) {
+            long number = segment.getKey();
+            try {
+                long size = number == lastNumber ? lastSize : Files.size(segment.getValue());
+                scan(number, segment.getValue(), size, (n, o, record) -> {
+                    // snapshots written by earlier versions repeat what the records before them say
+                    if(record.getLobbyId() == lobbyId && record.getType() != JournalRecord.Type.SNAPSHOT) {
+                        records.add(record);
+                    }
+                });
+            }
+            catch (NoSuchFileException e) {
+                // deleted meanwhile, it held no records of running games
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException("Could not read the game journal", e);
+            }
+        }
+        // the segments can still hold an earlier game of the same lobby, only the last one counts
+        for(int i = records.size() - 1; i > 0; i--) {
+            if(records.get(i).getType() == JournalRecord.Type.STARTED) {
+                return new ArrayList<>(records.subList(i, records.size()));
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Maps the segment into memory and visits its records
+     *
+     * @return the size of the segment up to the last complete record
+     */
+    private long scan(long number, Path file, long size, RecordVisitor visitor) throws IOException {
+        if(size <= 0) {
+            return size;
+        }
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            while(buffer.hasRemaining()) {
+                int position = buffer.position();
+                JournalRecord record = RecordCodec.decode(buffer);
+                if(record == null) {
+                    return position;
+                }
+                visitor.visit(number, position, record);
+            }
+            return buffer.position();
+        }
+    }
+
+    private void rollSegment() throws IOException {
+        current.force(false);
+        current.close();
+        dirty = false;
+        startSegment(currentNumber + 1);
+        deleteUnusedSegments();
+    }
+
+    private void startSegment(long number) throws IOException {
+        Path file = directory.resolve(String.format(SEGMENT_PATTERN, number));
+        current = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        currentNumber = number;
+        currentSize = 0;
+        segments.put(number, file);
+    }
+
+    /**
+     * Deletes the full segments that hold no records of a running game
+     */
+    private void deleteUnusedSegments() {
+        long firstNeeded = currentNumber;
+        for(GameIndex game : games.values()) {
+            firstNeeded = Math.min(firstNeeded, game.firstSegment);
+        }
+        Iterator<Map.Entry<Long, Path>> iterator = segments.headMap(firstNeeded, false).entrySet().iterator();
+        while(iterator.hasNext()) {
+            Path file = iterator.next().getValue();
+            try {
+                Files.deleteIfExists(file);
+                iterator.remove();
+                metricsRegistry.increment(SEGMENTS_DELETED);
+            }
+            catch (IOException e) {
+                log.warn(String.format("Could not delete journal segment %s: %s", file, e.getMessage()));
+            }
+        }
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        if(directory == null || current == null) {
+            return;
+        }
+        try {
+            current.force(false);
+            current.close();
+            current = null;
+            if(deleteOnClose) {
+                for(Path file : segments.values()) {
+                    Files.deleteIfExists(file);
+                }
+                Files.deleteIfExists(directory);
+            }
+        }
+        catch (IOException e) {
+            log.warn(String.format("Could not close the game journal: %s", e.getMessage()));
+        }
+    }
+
+    @FunctionalInterface
+    private interface RecordVisitor {
+        void visit(long segment, int offset, JournalRecord record);
+    }
+
+    private static class GameIndex {
+        private long firstSegment;
+        private long sequence;
+
+        private GameIndex(long firstSegment) {
+            this.firstSegment = firstSegment;
+        }
+    }
+}
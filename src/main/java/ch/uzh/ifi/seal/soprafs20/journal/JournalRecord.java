@@ -0,0 +1,96 @@
+package ch.uzh.ifi.seal.soprafs20.journal;
+
+import java.util.Arrays;
+
+/**
+ * One entry of the game journal: something that happened in a game.
+ * What the numbers and texts hold depends on the type, see {@link Type}.
+ */
+public class JournalRecord {
+
+    public enum Type {
+        /** numbers: id of each player, texts: username of each player */
+        STARTED(1),
+        /** numbers: round, texts: the word */
+        WORD_PICKED(2),
+        /** numbers: id of the player (0 for bots), seconds that were left, texts: the clues */
+        CLUE(3),
+        /** numbers: id of the player, texts: the clues the player voted out */
+        VOTE(4),
+        /** numbers: 1 if correct else 0, score of the guesser afterwards, texts: the guess */
+        GUESS(5),
+        /** numbers: round, overall score, texts: the new state, the current word */
+        PHASE(6),
+        /** no longer written, kept so journals of earlier versions can still be read */
+        SNAPSHOT(7),
+        /** numbers: overall score */
+        ENDED(8);
+
+        private final byte code;
+
+        Type(int code) {
+            this.code = (byte) code;
+        }
+
+        public byte getCode() {
+            return code;
+        }
+
+        public static Type of(byte code) {
+            for(Type type : values()) {
+                if(type.code == code) {
+                    return type;
+                }
+            }
+            throw new IllegalArgumentException("Unknown journal record type " + code);
+        }
+    }
+
+    private final Type type;
+    private final long lobbyId;
+    private final long sequence;
+    private final long timeMillis;
+    private final long[] numbers;
+    private final String[] texts;
+
+    public JournalRecord(Type type, long lobbyId, long sequence, long timeMillis, long[] numbers, String[] texts) {
+        this.type = type;
+        this.lobbyId = lobbyId;
+        this.sequence = sequence;
+        this.timeMillis = timeMillis;
+        this.numbers = numbers;
+        this.texts = texts;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public long getLobbyId() {
+        return lobbyId;
+    }
+
+    /**
+     * @return number of the record within its game, starting at 1
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    public long getTimeMillis() {
+        return timeMillis;
+    }
+
+    public long[] getNumbers() {
+        return numbers;
+    }
+
+    public String[] getTexts() {
+        return texts;
+    }
+
+    @Override
+    public String toString() {
+        return type + " #" + sequence + " in lobby " + lobbyId + " " + Arrays.toString(numbers) + " " + Arrays.toString(texts);
+    }
+}
@@ -0,0 +1,120 @@
+package ch.uzh.ifi.seal.soprafs20.journal;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+/**
+ * Binary form of the journal records. A record is stored as the length and the CRC-32 of its body, followed by
+ * the body: the type, then lobby id, sequence and time as varints, then the numbers as zigzag varints and the
+ * texts as UTF-8 prefixed with their length. A typical clue takes about 30 bytes.
+ */
+final class RecordCodec {
+    static final int HEADER_BYTES = 8;
+
+    private RecordCodec() {
+    }
+
+    /**
+     * @return the record with its header, ready to be appended
+     */
+    static ByteBuffer encode(JournalRecord record) {
+        byte[][] texts = new byte[record.getTexts().length][];
+        int size = 1 + 3 * 10 + 5 + record.getNumbers().length * 10 + 5;
+        for(int i = 0; i < texts.length; i++) {
+            String text = record.getTexts()[i];
+            texts[i] = text == null ? null : text.getBytes(StandardCharsets.UTF_8);
+            size += 5 + (texts[i] == null ? 0 : texts[i].length);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + size);
+        buffer.position(HEADER_BYTES);
+        buffer.put(record.getType().getCode());
+        putVarLong(buffer, record.getLobbyId());
+        putVarLong(buffer, record.getSequence());
+        putVarLong(buffer, record.getTimeMillis());
+        putVarLong(buffer, record.getNumbers().length);
+        for(long number : record.getNumbers()) {
+            putVarLong(buffer, (number << 1) ^ (number >> 63));
+        }
+        putVarLong(buffer, texts.length);
+        for(byte[] text : texts) {
+            // 0 stands for null, so the length of a text is stored plus one
+            putVarLong(buffer, text == null ? 0 : text.length + 1L);
+            if(text != null) {
+                buffer.put(text);
+            }
+        }
+        int bodyLength = buffer.position() - HEADER_BYTES;
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), HEADER_BYTES, bodyLength);
+        buffer.putInt(0, bodyLength);
+        buffer.putInt(4, (int) crc.getValue());
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Reads the record at the position of the buffer and moves the position past it
+     *
+     * @return the record, null if the buffer ends with a record that was not written completely
+     */
+    static JournalRecord decode(ByteBuffer buffer) {
+        if(buffer.remaining() < HEADER_BYTES) {
+            return null;
+        }
+        int start = buffer.position();
+        int bodyLength = buffer.getInt(start);
+        int checksum = buffer.getInt(start + 4);
+        if(bodyLength <= 0 || bodyLength > buffer.remaining() - HEADER_BYTES) {
+            return null;
+        }
+        ByteBuffer body = buffer.duplicate();
+        body.position(start + HEADER_BYTES).limit(start + HEADER_BYTES + bodyLength);
+        CRC32 crc = new CRC32();
+        crc.update(body.duplicate());
+        if((int) crc.getValue() != checksum) {
+            return null;
+        }
+        JournalRecord.Type type = JournalRecord.Type.of(body.get());
+        long lobbyId = getVarLong(body);
+        long sequence = getVarLong(body);
+        long timeMillis = getVarLong(body);
+        long[] numbers = new long[(int) getVarLong(body)];
+        for(int i = 0; i < numbers.length; i++) {
+            long zigzag = getVarLong(body);
+            numbers[i] = (zigzag >>> 1) ^ -(zigzag & 1);
+        }
+        String[] texts = new String[(int) getVarLong(body)];
+        for(int i = 0; i < texts.length; i++) {
+            int length = (int) getVarLong(body);
+            if(length > 0) {
+                byte[] text = new byte[length - 1];
+                body.get(text);
+                texts[i] = new String(text, StandardCharsets.UTF_8);
+            }
+        }
+        buffer.position(start + HEADER_BYTES + bodyLength);
+        return new JournalRecord(type, lobbyId, sequence, timeMillis, numbers, texts);
+    }
+
+    private static void putVarLong(ByteBuffer buffer, long value) {
+        long rest = value;
+        while((rest & ~0x7FL) != 0) {
+            buffer.put((byte) ((rest & 0x7F) | 0x80));
+            rest >>>= 7;
+        }
+        buffer.put((byte) rest);
+    }
+
+    private static long getVarLong(ByteBuffer buffer) {
+        long value = 0;
+        for(int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if(b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalStateException("Malformed varint in the game journal");
+    }
+}
@@ -0,0 +1,40 @@
+package ch.uzh.ifi.seal.soprafs20.metrics;
+
+import jdk.jfr.*;
+
+/**
+ * Flight recorder event spanning one validation of a clue against the current word.
+ * It is disabled by default as every clue of every game and bot is checked, enable it in a recording to see it.
+ */
+@Name("ch.uzh.ifi.seal.soprafs20.ClueCheck")
+@Label("Clue Check")
+@Category({"Just One", "Game"})
+@Description("A clue was validated against the current word")
+@Enabled(false)
+@StackTrace(false)
+public class ClueCheckEvent extends Event {
+
+    @Label("Clue")
+    private String clue;
+
+    @Label("Word")
+    private String word;
+
+    @Label("Valid")
+    private boolean valid;
+
+    public static ClueCheckEvent start() {
+        ClueCheckEvent event = new ClueCheckEvent();
+        event.begin();
+        return event;
+    }
+
+    public void end(String clue, String word, boolean valid) {
+        if(shouldCommit()) {
+            this.clue = clue;
+            this.word = word;
+            this.valid = valid;
+            commit();
+        }
+    }
+}
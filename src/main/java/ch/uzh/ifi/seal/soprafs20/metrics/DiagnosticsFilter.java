@@ -0,0 +1,109 @@
+package ch.uzh.ifi.seal.soprafs20.metrics;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+import org.springframework.web.util.UrlPathHelper;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Diagnostic mode: for a sample of the requests, counts the SQL statements and the bytes allocated by the request
+ * thread. They are sent back in the X-Sql-Count and X-Alloc-Bytes headers and recorded per endpoint.
+ * Requests that are not sampled only cost a random number. Streamed responses, e.g. replays, are not buffered:
+ * their numbers are only recorded, the headers are already sent when they are known.
+ */
+@Component
+public class DiagnosticsFilter extends OncePerRequestFilter {
+    public static final String SQL_COUNT_HEADER = "X-Sql-Count";
+    public static final String ALLOC_BYTES_HEADER = "X-Alloc-Bytes";
+    static final String SQL_STATEMENTS = "diagnostics.sql_statements.";
+    static final String ALLOCATED_BYTES = "diagnostics.allocated_bytes.";
+    static final List<String> STREAMED_PATHS = List.of("/games/*/replay");
+
+    private final MetricsRegistry metricsRegistry;
+    private final boolean enabled;
+    private final double sampleRate;
+    private final com.sun.management.ThreadMXBean threadMXBean;
+    private final AntPathMatcher pathMatcher = new AntPathMatcher();
+    private final UrlPathHelper urlPathHelper = new UrlPathHelper();
+
+    public DiagnosticsFilter(MetricsRegistry metricsRegistry,
+                             @Value("${diagnostics.enabled:false}") boolean enabled,
+                             @Value("${diagnostics.sample-rate:0.01}") double sampleRate) {
+        this.metricsRegistry = metricsRegistry;
+        this.enabled = enabled;
+        this.sampleRate = sampleRate;
+        this.threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
+        if(!enabled || ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        // the body is buffered so the headers can still be set once the request is handled, unless it is streamed
+        ContentCachingResponseWrapper wrappedResponse = null;
+        if(!isStreamed(request)) {
+            wrappedResponse = new ContentCachingResponseWrapper(response);
+        }
+        long allocatedBefore = allocatedBytes();
+        SqlStatementCounter.start();
+        try {
+            filterChain.doFilter(request, wrappedResponse == null ? response : wrappedResponse);
+        }
+        finally {
+            int statements = SqlStatementCounter.stop();
+            long allocated = allocatedBytes() - allocatedBefore;
+            String endpoint = endpointOf(request);
+
+            metricsRegistry.record(SQL_STATEMENTS + endpoint, statements);
+            if(allocatedBefore >= 0) {
+                metricsRegistry.record(ALLOCATED_BYTES + endpoint, allocated);
+            }
+            if(wrappedResponse != null) {
+                wrappedResponse.setHeader(SQL_COUNT_HEADER, Integer.toString(statements));
+                if(allocatedBefore >= 0) {
+                    wrappedResponse.setHeader(ALLOC_BYTES_HEADER, Long.toString(allocated));
+                }
+                wrappedResponse.copyBodyToResponse();
+            }
+        }
+    }
+
+    private boolean isStreamed(HttpServletRequest request) {
+        String path = urlPathHelper.getPathWithinApplication(request);
+        for(String pattern : STREAMED_PATHS) {
+            if(pathMatcher.match(pattern, path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the bytes allocated by the current thread so far, -1 if the JVM does not measure it
+     */
+    private long allocatedBytes() {
+        if(!threadMXBean.isThreadAllocatedMemorySupported() || !threadMXBean.isThreadAllocatedMemoryEnabled()) {
+            return -1L;
+        }
+        return threadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private String endpointOf(HttpServletRequest request) {
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        return request.getMethod() + " " + (pattern == null ? "unmatched" : pattern);
+    }
+}
@@ -0,0 +1,43 @@
+package ch.uzh.ifi.seal.soprafs20.metrics;
+
+import ch.uzh.ifi.seal.soprafs20.entity.Game;
+import jdk.jfr.*;
+
+/**
+ * Flight recorder event spanning one operation of the game service, e.g. sendClue or generateCluesForBots.
+ * Creating the event is cheap and nothing is written unless a recording has the event enabled.
+ */
+@Name("ch.uzh.ifi.seal.soprafs20.GameCommand")
+@Label("Game Command")
+@Category({"Just One", "Game"})
+@Description("An operation of the game service, with the game state after the operation")
+@StackTrace(false)
+public class GameCommandEvent extends Event {
+
+    @Label("Command")
+    private String command;
+
+    @Label("Lobby Id")
+    private long lobbyId;
+
+    @Label("Game State")
+    private String state;
+
+    private GameCommandEvent(String command) {
+        this.command = command;
+    }
+
+    public static GameCommandEvent start(String command) {
+        GameCommandEvent event = new GameCommandEvent(command);
+        event.begin();
+        return event;
+    }
+
+    public void end(Game game) {
+        if(shouldCommit()) {
+            lobbyId = game.getLobbyId() == null ? -1L : game.getLobbyId();
+            state = game.getGameState() == null ? null : game.getGameState().name();
+            commit();
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package ch.uzh.ifi.seal.soprafs20.metrics;
+
+import jdk.jfr.*;
+
+/**
+ * Flight recorder event written when a game leaves a state, with how long the game was in that state
+ */
+@Name("ch.uzh.ifi.seal.soprafs20.GamePhase")
+@Label("Game Phase")
+@Category({"Just One", "Game"})
+@Description("A game moved from one state to the next")
+@StackTrace(false)
+public class GamePhaseEvent extends Event {
+
+    @Label("Lobby Id")
+    private final long lobbyId;
+
+    @Label("Game State")
+    private final String state;
+
+    @Label("Next Game State")
+    private final String nextState;
+
+    @Label("Time In State")
+    @Timespan(Timespan.NANOSECONDS)
+    private final long timeInState;
+
+    private GamePhaseEvent(long lobbyId, String state, String nextState, long timeInState) {
+        this.lobbyId = lobbyId;
+        this.state = state;
+        this.nextState = nextState;
+        this.timeInState = timeInState;
+    }
+
+    /**
+     * @param nextState null if the game ended
+     */
+    public static void emit(long lobbyId, String state, String nextState, long timeInState) {
+        GamePhaseEvent event = new GamePhaseEvent(lobbyId, state, nextState, timeInState);
+        if(event.shouldCommit()) {
+            event.commit();
+        }
+    }
+}
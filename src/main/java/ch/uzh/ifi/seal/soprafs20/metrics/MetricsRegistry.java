@@ -0,0 +1,108 @@
+package ch.uzh.ifi.seal.soprafs20.metrics;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * In-memory counters, histograms and gauges of the server, named with dots (e.g. "commands.game.clue").
+ * Counting is a single LongAdder increment and recording a histogram value a single bucket increment,
+ * so both can be done on every request.
+ */
+@Component
+public class MetricsRegistry {
+
+    private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private final Map<String, Histogram> histograms = new ConcurrentHashMap<>();
+    private final Map<String, Gauge> gauges = new ConcurrentHashMap<>();
+
+    public void increment(String name) {
+        add(name, 1L);
+    }
+
+    public void add(String name, long amount) {
+        counters.computeIfAbsent(name, key -> new LongAdder()).add(amount);
+    }
+
+    /**
+     * Records a value, e.g. a number of writes per request. Durations are recorded in nanoseconds under a name
+     * ending with ".seconds", they are exported in seconds.
+     */
+    public void record(String name, long value) {
+        histograms.computeIfAbsent(name, key -> new Histogram()).record(value);
+    }
+
+    /**
+     * Registers a gauge with one value per label value, e.g. the number of running games per game state.
+     * The supplier is only called when the metrics are read.
+     */
+    public void gauge(String name, String label, Supplier<Map<String, Long>> values) {
+        gauges.put(name, new Gauge(label, values));
+    }
+
+    public long getCount(String name) {
+        LongAdder counter = counters.get(name);
+        return counter == null ? 0L : counter.sum();
+    }
+
+    /**
+     * @return the current value of every counter, sorted by name
+     */
+    public SortedMap<String, Long> getCounters() {
+        SortedMap<String, Long> snapshot = new TreeMap<>();
+        counters.forEach((name, counter) -> snapshot.put(name, counter.sum()));
+        return snapshot;
+    }
+
+    /**
+     * Divides every counter starting with numeratorPrefix by the counter with the same suffix starting with
+     * denominatorPrefix, e.g. ratios("conflicts.", "commands.") gives the conflict rate per command
+     */
+    public SortedMap<String, Double> getRatios(String numeratorPrefix, String denominatorPrefix) {
+        SortedMap<String, Double> ratios = new TreeMap<>();
+        for(Map.Entry<String, Long> entry : getCounters().entrySet()) {
+            if(!entry.getKey().startsWith(denominatorPrefix) || entry.getValue() == 0L) {
+                continue;
+            }
+            String suffix = entry.getKey().substring(denominatorPrefix.length());
+            ratios.put(suffix, (double) getCount(numeratorPrefix + suffix) / entry.getValue());
+        }
+        return ratios;
+    }
+
+    /**
+     * @return every histogram, sorted by name
+     */
+    public SortedMap<String, Histogram> getHistograms() {
+        return new TreeMap<>(histograms);
+    }
+
+    /**
+     * @return every gauge, sorted by name
+     */
+    public SortedMap<String, Gauge> getGauges() {
+        return new TreeMap<>(gauges);
+    }
+
+    public static class Gauge {
+        private final String label;
+        private final Supplier<Map<String, Long>> values;
+
+        Gauge(String label, Supplier<Map<String, Long>> values) {
+            this.label = label;
+            this.values = values;
+        }
+
+        public String getLabel() { return label; }
+
+        /**
+         * @return the current value per label value, sorted by label value
+         */
+        public SortedMap<String, Long> getValues() { return new TreeMap<>(values.get()); }
+    }
+}
@@ -0,0 +1,53 @@
+package ch.uzh.ifi.seal.soprafs20.metrics;
+
+import java.util.Map;
+
+/**
+ * Writes the metrics of the registry in the Prometheus text format. Counters get the suffix "_total",
+ * histograms are written as summaries with the 50th, 90th and 99th percentile.
+ */
+public final class PrometheusFormat {
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    private static final String SECONDS = ".seconds";
+    private static final double NANOS_PER_SECOND = 1e9;
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99};
+
+    private PrometheusFormat() {}
+
+    public static String write(MetricsRegistry metricsRegistry) {
+        StringBuilder out = new StringBuilder();
+        for(Map.Entry<String, Long> counter : metricsRegistry.getCounters().entrySet()) {
+            String name = name(counter.getKey()) + "_total";
+            out.append("# TYPE ").append(name).append(" counter\n");
+            out.append(name).append(' ').append(counter.getValue()).append('\n');
+        }
+        for(Map.Entry<String, MetricsRegistry.Gauge> gauge : metricsRegistry.getGauges().entrySet()) {
+            String name = name(gauge.getKey());
+            String label = name(gauge.getValue().getLabel());
+            out.append("# TYPE ").append(name).append(" gauge\n");
+            for(Map.Entry<String, Long> value : gauge.getValue().getValues().entrySet()) {
+                out.append(name).append('{').append(label).append("=\"").append(value.getKey()).append("\"} ").append(value.getValue()).append('\n');
+            }
+        }
+        for(Map.Entry<String, Histogram> histogram : metricsRegistry.getHistograms().entrySet()) {
+            writeSummary(out, histogram.getKey(), histogram.getValue());
+        }
+        return out.toString();
+    }
+
+    private static void writeSummary(StringBuilder out, String key, Histogram histogram) {
+        String name = name(key);
+        double divisor = key.endsWith(SECONDS) ? NANOS_PER_SECOND : 1.0;
+        out.append("# TYPE ").append(name).append(" summary\n");
+        for(double quantile : QUANTILES) {
+            out.append(name).append("{quantile=\"").append(quantile).append("\"} ")
+                    .append(histogram.getValueAtPercentile(quantile * 100) / divisor).append('\n');
+        }
+        out.append(name).append("_sum ").append(histogram.getSum() / divisor).append('\n');
+        out.append(name).append("_count ").append(histogram.getCount()).append('\n');
+    }
+
+    private static String name(String key) {
+        return key.replaceAll("[^a-zA-Z0-9_]", "_");
+    }
+}
@@ -0,0 +1,48 @@
+package ch.uzh.ifi.seal.soprafs20.metrics;
+
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Records how many times a request wrote the game to the database, see {@link #countGameSave()}
+ */
+@Component
+public class RequestMetricsFilter extends OncePerRequestFilter {
+    public static final String GAME_SAVES = "http.request.game_saves";
+    private static final ThreadLocal<int[]> GAME_SAVES_OF_REQUEST = new ThreadLocal<>();
+
+    private final MetricsRegistry metricsRegistry;
+
+    public RequestMetricsFilter(MetricsRegistry metricsRegistry) {
+        this.metricsRegistry = metricsRegistry;
+    }
+
+    /**
+     * Counts a saveAndFlush of a game for the request handled by the current thread, does nothing outside of requests
+     */
+    public static void countGameSave() {
+        int[] saves = GAME_SAVES_OF_REQUEST.get();
+        if(saves != null) {
+            saves[0]++;
+        }
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
+        int[] saves = new int[1];
+        GAME_SAVES_OF_REQUEST.set(saves);
+        try {
+            filterChain.doFilter(request, response);
+        }
+        finally {
+            GAME_SAVES_OF_REQUEST.remove();
+            metricsRegistry.record(GAME_SAVES, saves[0]);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package ch.uzh.ifi.seal.soprafs20.metrics;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+/**
+ * Counts the SQL statements Hibernate prepares on the current thread while counting is started.
+ * Registered as statement inspector in application.properties, Hibernate creates the instance itself.
+ */
+public class SqlStatementCounter implements StatementInspector {
+    private static final long serialVersionUID = 1L;
+    private static final ThreadLocal<int[]> STATEMENTS = new ThreadLocal<>();
+
+    public static void start() {
+        STATEMENTS.set(new int[1]);
+    }
+
+    /**
+     * @return the number of statements since start(), 0 if counting was not started
+     */
+    public static int stop() {
+        int[] statements = STATEMENTS.get();
+        STATEMENTS.remove();
+        return statements == null ? 0 : statements[0];
+    }
+
+    @Override
+    public String inspect(String sql) {
+        int[] statements = STATEMENTS.get();
+        if(statements != null) {
+            statements[0]++;
+        }
+        return sql;
+    }
+}
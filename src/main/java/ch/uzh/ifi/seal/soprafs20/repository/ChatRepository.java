@@ -1,12 +1,23 @@
 package ch.uzh.ifi.seal.soprafs20.repository;
 
 import ch.uzh.ifi.seal.soprafs20.entity.Chat;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
 import java.util.Optional;
 
 @Repository("chatRepository")
 public interface ChatRepository extends JpaRepository<Chat, Long> {
     Optional<Chat> findByLobbyId(long lobbyId);
+
+    /**
+     * Chats whose lobby is gone, in the order of their lobby ids
+     */
+    @Query("SELECT c.lobbyId FROM Chat c WHERE c.lobbyId > :after " +
+            "AND NOT EXISTS (SELECT l FROM Lobby l WHERE l.lobbyId = c.lobbyId) ORDER BY c.lobbyId")
+    List<Long> findOrphanIds(@Param("after") long after, Pageable page);
 }
@@ -1,12 +1,32 @@
 package ch.uzh.ifi.seal.soprafs20.repository;
 
 import ch.uzh.ifi.seal.soprafs20.entity.Clue;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository("clueRepository")
 public interface ClueRepository extends JpaRepository<Clue, Long> {
     Optional<Clue> findByClueId(long clueId);
+
+    /**
+     * Clues that neither a player nor the entered or invalid clues of a game refer to, e.g. the ones of
+     * earlier rounds, in the order of their ids
+     */
+    @Query("SELECT c.clueId FROM Clue c WHERE c.clueId > :after " +
+            "AND NOT EXISTS (SELECT p FROM Player p JOIN p.clues pc WHERE pc = c) " +
+            "AND NOT EXISTS (SELECT g FROM Game g JOIN g.enteredClues e WHERE e = c) " +
+            "AND NOT EXISTS (SELECT g FROM Game g JOIN g.invalidClues i WHERE i = c) ORDER BY c.clueId")
+    List<Long> findOrphanIds(@Param("after") long after, Pageable page);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("DELETE FROM Clue c WHERE c.clueId IN :ids")
+    int deleteByIds(@Param("ids") Collection<Long> ids);
 }
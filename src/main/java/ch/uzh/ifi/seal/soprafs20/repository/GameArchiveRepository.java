@@ -0,0 +1,17 @@
+package ch.uzh.ifi.seal.soprafs20.repository;
+
+import ch.uzh.ifi.seal.soprafs20.entity.GameArchive;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+@Repository("gameArchiveRepository")
+public interface GameArchiveRepository extends JpaRepository<GameArchive, Long> {
+
+    /**
+     * @return only the archived bytes, the archive entity is not loaded, null if there is no archive
+     */
+    @Query("SELECT a.data FROM GameArchive a WHERE a.gameId = :gameId")
+    byte[] findDataByGameId(@Param("gameId") Long gameId);
+}
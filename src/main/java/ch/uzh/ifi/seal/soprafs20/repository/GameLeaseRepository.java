@@ -0,0 +1,58 @@
+package ch.uzh.ifi.seal.soprafs20.repository;
+
+import ch.uzh.ifi.seal.soprafs20.entity.GameLease;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository("gameLeaseRepository")
+public interface GameLeaseRepository extends JpaRepository<GameLease, Long> {
+
+    /*
+     * Like the slot counters of the lobbies, leases only change in compare-and-set updates of a single row,
+     * so two nodes can never both take over the same lease. They return the number of updated rows.
+     */
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE GameLease l SET l.owner = :owner, l.fencingToken = l.fencingToken + 1, l.expiresAtMillis = :expiresAt " +
+            "WHERE l.lobbyId = :lobbyId AND (l.owner = :owner OR l.expiresAtMillis < :now)")
+    int takeOver(@Param("lobbyId") long lobbyId, @Param("owner") String owner, @Param("expiresAt") long expiresAt,
+                 @Param("now") long now);
+
+    // a plain insert, so a lease another node inserted at the same time is not overwritten but fails on the key
+    @Modifying
+    @Query(value = "INSERT INTO GAME_LEASE (LOBBY_ID, OWNER, FENCING_TOKEN, EXPIRES_AT_MILLIS) " +
+            "VALUES (:lobbyId, :owner, :fencingToken, :expiresAt)", nativeQuery = true)
+    int insert(@Param("lobbyId") long lobbyId, @Param("owner") String owner, @Param("fencingToken") long fencingToken,
+               @Param("expiresAt") long expiresAt);
+
+    // only the leases the node still holds, a lease it handed over keeps its owner until another node takes it
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE GameLease l SET l.expiresAtMillis = :expiresAt WHERE l.owner = :owner AND l.lobbyId IN :lobbyIds")
+    int renewAll(@Param("owner") String owner, @Param("lobbyIds") Collection<Long> lobbyIds,
+                 @Param("expiresAt") long expiresAt);
+
+    // lets a lease expire right away, so the node the lobby belongs to now can take it over
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE GameLease l SET l.expiresAtMillis = 0 WHERE l.lobbyId = :lobbyId AND l.owner = :owner")
+    int expire(@Param("lobbyId") long lobbyId, @Param("owner") String owner);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE GameLease l SET l.expiresAtMillis = 0 WHERE l.owner = :owner")
+    int expireAll(@Param("owner") String owner);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("DELETE FROM GameLease l WHERE l.lobbyId = :lobbyId AND l.owner = :owner")
+    int release(@Param("lobbyId") long lobbyId, @Param("owner") String owner);
+
+    @Query("SELECT l.lobbyId FROM GameLease l WHERE l.owner = :owner")
+    List<Long> findLobbyIdsByOwner(@Param("owner") String owner);
+
+    @Query("SELECT l.lobbyId FROM GameLease l WHERE l.expiresAtMillis < :now")
+    List<Long> findExpired(@Param("now") long now);
+}
@@ -1,12 +1,36 @@
 package ch.uzh.ifi.seal.soprafs20.repository;
 
+import ch.uzh.ifi.seal.soprafs20.GameLogic.GameState;
 import ch.uzh.ifi.seal.soprafs20.entity.Game;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository("gameRepository")
 public interface GameRepository extends JpaRepository<Game, Long> {
     Optional<Game> findByLobbyId(long lobbyId);
+
+    /**
+     * Reads what is needed to restart the timers of all stored games in one query,
+     * without loading the players, clues and timers of the games
+     */
+    @Query("SELECT g.lobbyId AS lobbyId, g.gameState AS gameState, g.startTimeMillis AS startTimeMillis, " +
+            "g.currentWord AS currentWord FROM Game g")
+    List<ActiveGame> findActiveGames();
+
+    @Query("SELECT g.lobbyId AS lobbyId, g.gameState AS gameState, g.startTimeMillis AS startTimeMillis, " +
+            "g.currentWord AS currentWord FROM Game g WHERE g.lobbyId IN :lobbyIds")
+    List<ActiveGame> findActiveGames(@Param("lobbyIds") Collection<Long> lobbyIds);
+
+    interface ActiveGame {
+        Long getLobbyId();
+        GameState getGameState();
+        Long getStartTimeMillis();
+        String getCurrentWord();
+    }
 }
@@ -2,17 +2,51 @@ package ch.uzh.ifi.seal.soprafs20.repository;
 
 import ch.uzh.ifi.seal.soprafs20.entity.Lobby;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
 import java.util.Optional;
 
 @Repository("lobbyRepository")
-public interface LobbyRepository extends JpaRepository<Lobby, Long> {
+public interface LobbyRepository extends JpaRepository<Lobby, Long>, LobbyRepositoryCustom {
     Optional<Lobby> findByLobbyId(long lobbyId);
     Optional<Lobby> findByHostId(long userId);
 
     @Query(value = "SELECT lobbyName, lobbyScore FROM Lobby")
     List<Lobby> getLobbiesByLobbyScore();
+
+    /*
+     * The following updates are compare-and-set operations on the slot counters of a single lobby.
+     * Each one locks only the row of that lobby until the transaction ends, so concurrent membership
+     * changes of the same lobby are serialized while other lobbies are not affected.
+     * They return the number of updated rows, i.e. 0 if the condition did not hold. They bypass the persistence
+     * context: a lobby that is already loaded keeps its old counters, read it with findFreshById after an update.
+     */
+
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE Lobby l SET l.currentNumPlayers = l.currentNumPlayers + 1, l.version = l.version + 1 WHERE l.lobbyId = :lobbyId " +
+            "AND l.gameIsStarted = false AND l.currentNumPlayers + l.currentNumBots < l.maxPlayersAndBots")
+    int reserveSlot(@Param("lobbyId") Long lobbyId);
+
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE Lobby l SET l.currentNumPlayers = l.currentNumPlayers - 1, l.version = l.version + 1 WHERE l.lobbyId = :lobbyId " +
+            "AND l.gameIsStarted = false AND l.currentNumPlayers > 0")
+    int releaseSlot(@Param("lobbyId") Long lobbyId);
+
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE Lobby l SET l.currentNumBots = :numberOfBots WHERE l.lobbyId = :lobbyId " +
+            "AND l.gameIsStarted = false AND l.currentNumPlayers + :numberOfBots <= l.maxPlayersAndBots")
+    int setBots(@Param("lobbyId") Long lobbyId, @Param("numberOfBots") int numberOfBots);
+
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE Lobby l SET l.currentNumBots = l.currentNumBots + :numberOfBots, l.version = l.version + 1 WHERE l.lobbyId = :lobbyId " +
+            "AND l.gameIsStarted = false AND l.currentNumPlayers + l.currentNumBots + :numberOfBots <= l.maxPlayersAndBots")
+    int addBots(@Param("lobbyId") Long lobbyId, @Param("numberOfBots") int numberOfBots);
+
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE Lobby l SET l.currentNumBots = l.currentNumBots - 1 WHERE l.lobbyId = :lobbyId AND l.currentNumBots > 0")
+    int releaseBot(@Param("lobbyId") Long lobbyId);
 }
@@ -0,0 +1,13 @@
+package ch.uzh.ifi.seal.soprafs20.repository;
+
+import ch.uzh.ifi.seal.soprafs20.entity.Lobby;
+
+import java.util.Optional;
+
+public interface LobbyRepositoryCustom {
+    /**
+     * Reads the lobby from the database again, also if it is already loaded in this transaction,
+     * e.g. to see the counters after one of the slot updates
+     */
+    Optional<Lobby> findFreshById(Long lobbyId);
+}
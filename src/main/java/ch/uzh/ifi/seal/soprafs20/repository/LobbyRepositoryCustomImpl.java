@@ -0,0 +1,23 @@
+package ch.uzh.ifi.seal.soprafs20.repository;
+
+import ch.uzh.ifi.seal.soprafs20.entity.Lobby;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.util.Optional;
+
+public class LobbyRepositoryCustomImpl implements LobbyRepositoryCustom {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public Optional<Lobby> findFreshById(Long lobbyId) {
+        Lobby lobby = entityManager.find(Lobby.class, lobbyId);
+        if(lobby != null) {
+            // only the lobby is read again, the other loaded entities stay attached
+            entityManager.refresh(lobby);
+        }
+        return Optional.ofNullable(lobby);
+    }
+}
@@ -1,12 +1,29 @@
 package ch.uzh.ifi.seal.soprafs20.repository;
 
 import ch.uzh.ifi.seal.soprafs20.entity.Message;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository("messageRepository")
 public interface MessageRepository extends JpaRepository<Message, Long> {
     Optional<Message> findByMessageId(long messageId);
+
+    /**
+     * Messages that are in no chat, in the order of their ids
+     */
+    @Query("SELECT m.messageId FROM Message m WHERE m.messageId > :after " +
+            "AND NOT EXISTS (SELECT c FROM Chat c JOIN c.messages cm WHERE cm = m) ORDER BY m.messageId")
+    List<Long> findOrphanIds(@Param("after") long after, Pageable page);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("DELETE FROM Message m WHERE m.messageId IN :ids")
+    int deleteByIds(@Param("ids") Collection<Long> ids);
 }
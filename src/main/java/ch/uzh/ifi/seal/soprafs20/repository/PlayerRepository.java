@@ -1,13 +1,26 @@
 package ch.uzh.ifi.seal.soprafs20.repository;
 
 import ch.uzh.ifi.seal.soprafs20.entity.Player;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
 import java.util.Optional;
 
 @Repository("playerRepository")
 public interface PlayerRepository extends JpaRepository<Player, Long> {
     Optional<Player> findById(Long id);
     Optional<Player> findByToken(String token);
+
+    /**
+     * Players that are in no lobby and no game, in the order of their ids
+     */
+    @Query("SELECT p.id FROM Player p WHERE p.id > :after " +
+            "AND NOT EXISTS (SELECT l FROM Lobby l JOIN l.playersInLobby lp WHERE lp = p) " +
+            "AND NOT EXISTS (SELECT g FROM Game g JOIN g.players gp WHERE gp = p) " +
+            "AND NOT EXISTS (SELECT g FROM Game g WHERE g.currentGuesser = p) ORDER BY p.id")
+    List<Long> findOrphanIds(@Param("after") long after, Pageable page);
 }
@@ -0,0 +1,21 @@
+package ch.uzh.ifi.seal.soprafs20.repository;
+
+import ch.uzh.ifi.seal.soprafs20.entity.ServerNode;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+@Repository("serverNodeRepository")
+public interface ServerNodeRepository extends JpaRepository<ServerNode, String> {
+    List<ServerNode> findByLastSeenMillisGreaterThanEqual(long since);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM ServerNode n WHERE n.lastSeenMillis < :before")
+    int deleteNotSeenSince(@Param("before") long before);
+}
@@ -5,11 +5,23 @@ import java.util.HashSet;
 import java.util.Set;
 
 public class LobbyScoreGetDTO {
+    private Long gameId;
     private String lobbyName;
     private int score;
     private Date date;
     private Set<Long> playersIdInLobby = new HashSet<>();
 
+    /**
+     * @return the id the replay of the game is served under
+     */
+    public Long getGameId() {
+        return gameId;
+    }
+
+    public void setGameId(Long gameId) {
+        this.gameId = gameId;
+    }
+
     public String getLobbyName() {
         return lobbyName;
     }
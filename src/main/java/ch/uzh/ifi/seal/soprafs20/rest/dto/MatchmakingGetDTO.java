@@ -0,0 +1,31 @@
+package ch.uzh.ifi.seal.soprafs20.rest.dto;
+
+import ch.uzh.ifi.seal.soprafs20.constant.MatchmakingStatus;
+
+public class MatchmakingGetDTO {
+    private Long userId;
+    private MatchmakingStatus status;
+    private Long lobbyId;
+    private long waitingSeconds;
+    private String reason;
+
+    public Long getUserId() { return userId; }
+
+    public void setUserId(Long userId) { this.userId = userId; }
+
+    public MatchmakingStatus getStatus() { return status; }
+
+    public void setStatus(MatchmakingStatus status) { this.status = status; }
+
+    public Long getLobbyId() { return lobbyId; }
+
+    public void setLobbyId(Long lobbyId) { this.lobbyId = lobbyId; }
+
+    public long getWaitingSeconds() { return waitingSeconds; }
+
+    public void setWaitingSeconds(long waitingSeconds) { this.waitingSeconds = waitingSeconds; }
+
+    public String getReason() { return reason; }
+
+    public void setReason(String reason) { this.reason = reason; }
+}
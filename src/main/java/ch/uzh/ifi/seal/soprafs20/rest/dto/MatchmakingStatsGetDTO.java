@@ -0,0 +1,39 @@
+package ch.uzh.ifi.seal.soprafs20.rest.dto;
+
+public class MatchmakingStatsGetDTO {
+    private int waiting;
+    private long matched;
+    private long rejected;
+    private long botsBackfilled;
+    private double matchesPerSecond;
+    private double averageTimeToMatchMillis;
+    private long maxTimeToMatchMillis;
+
+    public int getWaiting() { return waiting; }
+
+    public void setWaiting(int waiting) { this.waiting = waiting; }
+
+    public long getMatched() { return matched; }
+
+    public void setMatched(long matched) { this.matched = matched; }
+
+    public long getRejected() { return rejected; }
+
+    public void setRejected(long rejected) { this.rejected = rejected; }
+
+    public long getBotsBackfilled() { return botsBackfilled; }
+
+    public void setBotsBackfilled(long botsBackfilled) { this.botsBackfilled = botsBackfilled; }
+
+    public double getMatchesPerSecond() { return matchesPerSecond; }
+
+    public void setMatchesPerSecond(double matchesPerSecond) { this.matchesPerSecond = matchesPerSecond; }
+
+    public double getAverageTimeToMatchMillis() { return averageTimeToMatchMillis; }
+
+    public void setAverageTimeToMatchMillis(double averageTimeToMatchMillis) { this.averageTimeToMatchMillis = averageTimeToMatchMillis; }
+
+    public long getMaxTimeToMatchMillis() { return maxTimeToMatchMillis; }
+
+    public void setMaxTimeToMatchMillis(long maxTimeToMatchMillis) { this.maxTimeToMatchMillis = maxTimeToMatchMillis; }
+}
@@ -0,0 +1,16 @@
+package ch.uzh.ifi.seal.soprafs20.rest.dto;
+
+import java.util.Map;
+
+public class MetricsGetDTO {
+    private Map<String, Long> counters;
+    private Map<String, Double> conflictRates;
+
+    public Map<String, Long> getCounters() { return counters; }
+
+    public void setCounters(Map<String, Long> counters) { this.counters = counters; }
+
+    public Map<String, Double> getConflictRates() { return conflictRates; }
+
+    public void setConflictRates(Map<String, Double> conflictRates) { this.conflictRates = conflictRates; }
+}
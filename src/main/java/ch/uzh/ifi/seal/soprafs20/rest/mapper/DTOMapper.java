@@ -113,5 +113,6 @@ public interface DTOMapper {
     @Mapping(source = "lobbyId", target = "lobbyId")
     ChatGetDTO convertEntityToChatGetDTO(Chat chat);
 
+    @Mapping(source = "scoreId", target = "gameId")
     LobbyScoreGetDTO convertEntityToLobbyScoreGetDTO(LobbyScore lb);
 }
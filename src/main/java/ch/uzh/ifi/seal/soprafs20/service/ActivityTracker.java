@@ -0,0 +1,251 @@
+package ch.uzh.ifi.seal.soprafs20.service;
+
+import ch.uzh.ifi.seal.soprafs20.metrics.MetricsRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
+import java.util.function.Consumer;
+
+/**
+ * When the players of each lobby last sent a command and last polled, and when the lobby or its game expires
+ * because nobody did either for too long. Every lobby has one deadline and one check of it on the game scheduler.
+ * Activity only moves the deadline, the check reschedules itself when it finds the deadline moved, so polls
+ * never touch the scheduler. A game expires much sooner than a lobby, its players poll it every second.
+ */
+@Component
+public class ActivityTracker {
+    private static final String TRACKED = "activity.tracked";
+    private static final String EXPIRED = "activity.expired";
+
+    private final GameScheduler gameScheduler;
+    private final GameClock gameClock;
+    private final MetricsRegistry metricsRegistry;
+    private final boolean enabled;
+    private final long lobbyIdleMillis;
+    private final long gameIdleMillis;
+    // lobbyId -> activity in the lobby and its game
+    private final Map<Long, LobbyActivity> lobbies = new ConcurrentHashMap<>();
+    private final List<Consumer<Long>> listeners = new CopyOnWriteArrayList<>();
+
+    public ActivityTracker(GameScheduler gameScheduler, GameClock gameClock, MetricsRegistry metricsRegistry,
+                           @Value("${activity.enabled:true}") boolean enabled,
+                           @Value("${activity.lobby-idle-ms:900000}") long lobbyIdleMillis,
+                           @Value("${activity.game-idle-ms:120000}") long gameIdleMillis) {
+        this.gameScheduler = gameScheduler;
+        this.gameClock = gameClock;
+        this.metricsRegistry = metricsRegistry;
+        this.enabled = enabled;
+        this.lobbyIdleMillis = lobbyIdleMillis;
+        this.gameIdleMillis = gameIdleMillis;
+        metricsRegistry.gauge(TRACKED, "kind", this::countTracked);
+    }
+
+    /**
+     * Calls the listener with the id of every lobby that expired, on a thread of the game scheduler
+     */
+    public void subscribe(Consumer<Long> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * A player, or anybody if the token is null, read the lobby, its chat or its game
+     */
+    public void polled(Long lobbyId, String token) {
+        LobbyActivity activity = track(lobbyId);
+        if(activity != null) {
+            long now = activity.touch(gameClock.currentTimeMillis());
+            if(token != null) {
+                activity.player(token).lastPollMillis = now;
+            }
+        }
+    }
+
+    /**
+     * A player, or anybody if the token is null, changed the lobby or played a move in its game
+     */
+    public void commanded(Long lobbyId, String token) {
+        LobbyActivity activity = track(lobbyId);
+        if(activity != null) {
+            long now = activity.touch(gameClock.currentTimeMillis());
+            if(token != null) {
+                activity.player(token).lastCommandMillis = now;
+            }
+        }
+    }
+
+    /**
+     * The game of the lobby started or runs on this node now, from now on the lobby expires after the game idle time
+     */
+    public void gameStarted(Long lobbyId) {
+        LobbyActivity activity = track(lobbyId);
+        if(activity != null && !activity.game) {
+            activity.game = true;
+            activity.touch(gameClock.currentTimeMillis());
+            // the deadline moved closer, the pending check would come too late
+            reschedule(lobbyId, activity, gameIdleMillis);
+        }
+    }
+
+    /**
+     * The game of the lobby ended, the lobby is back to waiting for the next game
+     */
+    public void gameEnded(Long lobbyId) {
+        LobbyActivity activity = lobbies.get(lobbyId);
+        if(activity != null) {
+            activity.game = false;
+            activity.touch(gameClock.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Stops tracking a lobby, e.g. because it was removed
+     */
+    public void forget(Long lobbyId) {
+        LobbyActivity activity = lobbies.remove(lobbyId);
+        if(activity != null) {
+            activity.cancel();
+        }
+    }
+
+    /**
+     * @return when the player last read the lobby, its chat or its game, empty if never since it is tracked
+     */
+    public OptionalLong getLastPollMillis(Long lobbyId, String token) {
+        PlayerActivity player = findPlayer(lobbyId, token);
+        return player == null || player.lastPollMillis == 0L ? OptionalLong.empty() : OptionalLong.of(player.lastPollMillis);
+    }
+
+    /**
+     * @return when the player last sent a command to the lobby or its game, empty if never since it is tracked
+     */
+    public OptionalLong getLastCommandMillis(Long lobbyId, String token) {
+        PlayerActivity player = findPlayer(lobbyId, token);
+        return player == null || player.lastCommandMillis == 0L ? OptionalLong.empty() : OptionalLong.of(player.lastCommandMillis);
+    }
+
+    /**
+     * @return when the lobby expires unless there is activity, empty if it is not tracked
+     */
+    public OptionalLong getDeadlineMillis(Long lobbyId) {
+        LobbyActivity activity = lobbies.get(lobbyId);
+        return activity == null ? OptionalLong.empty() : OptionalLong.of(deadline(activity));
+    }
+
+    @PreDestroy
+    public void stop() {
+        for(LobbyActivity activity : lobbies.values()) {
+            activity.cancel();
+        }
+        lobbies.clear();
+    }
+
+    private LobbyActivity track(Long lobbyId) {
+        if(!enabled || lobbyId == null) {
+            return null;
+        }
+        LobbyActivity activity = lobbies.get(lobbyId);
+        if(activity != null) {
+            return activity;
+        }
+        LobbyActivity created = new LobbyActivity(gameClock.currentTimeMillis());
+        activity = lobbies.putIfAbsent(lobbyId, created);
+        if(activity != null) {
+            return activity;
+        }
+        reschedule(lobbyId, created, lobbyIdleMillis);
+        return created;
+    }
+
+    private long deadline(LobbyActivity activity) {
+        return activity.lastActivityMillis + (activity.game ? gameIdleMillis : lobbyIdleMillis);
+    }
+
+    private void reschedule(Long lobbyId, LobbyActivity activity, long delayMillis) {
+        synchronized (activity) {
+            activity.cancel();
+            activity.check = gameScheduler.schedule(delayMillis, () -> check(lobbyId, activity));
+        }
+    }
+
+    /**
+     * Expires the lobby if its deadline passed, else checks again at the deadline
+     */
+    private void check(Long lobbyId, LobbyActivity activity) {
+        long left = deadline(activity) - gameClock.currentTimeMillis();
+        if(left > 0) {
+            synchronized (activity) {
+                if(lobbies.get(lobbyId) == activity) {
+                    activity.check = gameScheduler.schedule(left, () -> check(lobbyId, activity));
+                }
+            }
+            return;
+        }
+        if(!lobbies.remove(lobbyId, activity)) {
+            return;
+        }
+        metricsRegistry.increment(EXPIRED + (activity.game ? ".games" : ".lobbies"));
+        for(Consumer<Long> listener : listeners) {
+            listener.accept(lobbyId);
+        }
+    }
+
+    private PlayerActivity findPlayer(Long lobbyId, String token) {
+        LobbyActivity activity = lobbies.get(lobbyId);
+        return activity == null || token == null ? null : activity.players.get(token);
+    }
+
+    private Map<String, Long> countTracked() {
+        long games = 0;
+        for(LobbyActivity activity : lobbies.values()) {
+            if(activity.game) {
+                games++;
+            }
+        }
+        Map<String, Long> counts = new HashMap<>();
+        counts.put("lobby", lobbies.size() - games);
+        counts.put("game", games);
+        return counts;
+    }
+
+    private static class LobbyActivity {
+        // player token -> when the player was last seen
+        private final Map<String, PlayerActivity> players = new ConcurrentHashMap<>();
+        private volatile boolean game;
+        private volatile long lastActivityMillis;
+        private ScheduledFuture<?> check;
+
+        private LobbyActivity(long nowMillis) {
+            this.lastActivityMillis = nowMillis;
+        }
+
+        private long touch(long nowMillis) {
+            if(nowMillis > lastActivityMillis) {
+                lastActivityMillis = nowMillis;
+            }
+            return nowMillis;
+        }
+
+        private PlayerActivity player(String token) {
+            return players.computeIfAbsent(token, t -> new PlayerActivity());
+        }
+
+        private synchronized void cancel() {
+            if(check != null) {
+                check.cancel(false);
+            }
+        }
+    }
+
+    private static class PlayerActivity {
+        private volatile long lastCommandMillis;
+        private volatile long lastPollMillis;
+    }
+}
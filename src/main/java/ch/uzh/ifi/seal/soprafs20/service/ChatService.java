@@ -4,27 +4,62 @@ import ch.uzh.ifi.seal.soprafs20.entity.Chat;
 import ch.uzh.ifi.seal.soprafs20.entity.Lobby;
 import ch.uzh.ifi.seal.soprafs20.entity.Message;
 import ch.uzh.ifi.seal.soprafs20.entity.Player;
+import ch.uzh.ifi.seal.soprafs20.events.DomainEvent;
+import ch.uzh.ifi.seal.soprafs20.events.EventBus;
 import ch.uzh.ifi.seal.soprafs20.exceptions.NotFoundException;
 import ch.uzh.ifi.seal.soprafs20.exceptions.UnauthorizedException;
 import ch.uzh.ifi.seal.soprafs20.repository.ChatRepository;
+import ch.uzh.ifi.seal.soprafs20.repository.MessageRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import java.util.Optional;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
 
 @Service
 @Transactional
 public class ChatService {
+    private final Logger log = LoggerFactory.getLogger(ChatService.class);
 
     private final ChatRepository chatRepository;
+    private final MessageRepository messageRepository;
+    private final EventBus eventBus;
+    private final TransactionTemplate flushTransaction;
+    // accepted messages per lobby that are not persisted yet, written in batches by flushPendingMessages.
+    // A queue is drained and its batch committed while holding its lock, so batches of a lobby are persisted in order
+    private final Map<Long, Deque<Message>> pendingMessages = new ConcurrentHashMap<>();
 
     @Autowired
-    public ChatService(ChatRepository chatRepository) {
+    public ChatService(ChatRepository chatRepository, MessageRepository messageRepository, EventBus eventBus,
+                       PlatformTransactionManager transactionManager) {
         this.chatRepository = chatRepository;
+        this.messageRepository = messageRepository;
+        this.eventBus = eventBus;
+        // every batch commits on its own, a failing lobby neither loses nor holds back the messages of the others
+        this.flushTransaction = new TransactionTemplate(transactionManager);
+        this.flushTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
     }
 
+    /**
+     * Returns the chat of a lobby. This writes: the pending messages of the lobby are persisted first,
+     * in a transaction of their own, the chat is then read in a read-only one.
+     */
+    @Transactional(readOnly = true)
     public Chat getChat(Long lobbyId) {
+        flush(lobbyId);
+        return findChat(lobbyId);
+    }
+
+    private Chat findChat(Long lobbyId) {
         Optional<Chat> optionalChat = chatRepository.findById(lobbyId);
         if(optionalChat.isPresent()){
             return optionalChat.get();
@@ -40,15 +75,114 @@ public class ChatService {
         chatRepository.flush();
     }
 
+    /**
+     * Accepts a message for the chat of the lobby. The message is only queued here and gets persisted
+     * with the next batch or when the chat is read, the other nodes learn about it right away
+     */
     public void addChatMessage(Lobby lobby, String token, Message message) {
         for (Player player : lobby.getPlayersInLobby()) {
             if (player.getToken().equals(token)) {
                 message.setAuthorUsername(player.getUsername());
-                Chat chat = getChat(lobby.getLobbyId());
-                chat.setMessages(message);
+                message.setCreationDate();
+                // compute keeps the queue from being removed as empty while the message is added
+                pendingMessages.compute(lobby.getLobbyId(), (id, queue) -> {
+                    Deque<Message> pending = queue == null ? new ConcurrentLinkedDeque<>() : queue;
+                    pending.add(message);
+                    return pending;
+                });
+                Map<String, String> data = new HashMap<>();
+                data.put("author", message.getAuthorUsername());
+                data.put("text", message.getText());
+                eventBus.publish(lobby.getLobbyId(), DomainEvent.Type.CHAT_MESSAGE, data);
                 return;
             }
         }
         throw new UnauthorizedException("You are not allowed to send this message.");
     }
+
+    /**
+     * Persists all queued messages in one batch per lobby and forgets the lobbies without pending messages.
+     * A batch that fails is queued again and retried with the next flush.
+     */
+    @Scheduled(fixedDelayString = "${chat.flush-interval-ms:500}")
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void flushPendingMessages() {
+        for(Long lobbyId : pendingMessages.keySet()) {
+            try {
+                flush(lobbyId);
+            }
+            catch (RuntimeException e) {
+                log.warn("Could not persist the chat messages of lobby {}: {}", lobbyId, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Persists the pending messages of one lobby in their own transaction, they are queued again if it fails
+     */
+    private void flush(Long lobbyId) {
+        Deque<Message> queue = pendingMessages.get(lobbyId);
+        if(queue == null) {
+            return;
+        }
+        synchronized(queue) {
+            List<Message> messages = drain(queue);
+            if(!messages.isEmpty()) {
+                try {
+                    flushTransaction.executeWithoutResult(status -> {
+                        Optional<Chat> chat = chatRepository.findById(lobbyId);
+                        if(chat.isPresent()) {
+                            persistMessages(chat.get(), messages);
+                        }
+                        // otherwise the lobby and its chat are gone, the messages are dropped
+                    });
+                }
+                catch (RuntimeException e) {
+                    requeue(queue, messages);
+                    throw e;
+                }
+            }
+        }
+        removeIfEmpty(lobbyId);
+    }
+
+    /**
+     * @return the number of lobbies with a queue of pending messages
+     */
+    int countPendingLobbies() {
+        return pendingMessages.size();
+    }
+
+    private void removeIfEmpty(Long lobbyId) {
+        pendingMessages.computeIfPresent(lobbyId, (id, queue) -> queue.isEmpty() ? null : queue);
+    }
+
+    /**
+     * Puts the messages of a failed batch back in front of the messages that arrived since, in their order
+     */
+    private void requeue(Deque<Message> queue, List<Message> messages) {
+        for(int i = messages.size() - 1; i >= 0; i--) {
+            Message message = messages.get(i);
+            // the id drawn in the rolled back transaction was never stored
+            message.setMessageId(null);
+            queue.addFirst(message);
+        }
+    }
+
+    private List<Message> drain(Deque<Message> queue) {
+        List<Message> messages = new ArrayList<>();
+        Message message;
+        while((message = queue.poll()) != null) {
+            messages.add(message);
+        }
+        return messages;
+    }
+
+    private void persistMessages(Chat chat, List<Message> messages) {
+        messageRepository.saveAll(messages);
+        for(Message message : messages) {
+            chat.setMessages(message);
+        }
+        chatRepository.saveAndFlush(chat);
+    }
 }
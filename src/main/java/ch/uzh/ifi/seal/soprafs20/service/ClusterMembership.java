@@ -0,0 +1,126 @@
+package ch.uzh.ifi.seal.soprafs20.service;
+
+import ch.uzh.ifi.seal.soprafs20.entity.ServerNode;
+import ch.uzh.ifi.seal.soprafs20.repository.ServerNodeRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The server nodes that share the database and the hash ring that assigns the lobbies to them.
+ * Every node announces itself in the SERVER_NODE table and reads the other nodes from it at the interval
+ * the game leases are renewed at, a node that was not seen for the duration of a lease drops out of the ring.
+ * Requests only read the ring that was built last, so deciding where a lobby belongs never touches the database.
+ */
+@Component
+public class ClusterMembership {
+    private final Logger log = LoggerFactory.getLogger(ClusterMembership.class);
+
+    private final ServerNodeRepository nodeRepository;
+    private final GameClock gameClock;
+    private final String nodeId;
+    private final String nodeUrl;
+    private final int virtualNodes;
+    private final long timeoutMillis;
+
+    private volatile HashRing ring;
+    // nodeId -> url of the node, for every node on the ring
+    private volatile Map<String, String> urls;
+
+    public ClusterMembership(ServerNodeRepository nodeRepository, GameClock gameClock, GameLeases gameLeases,
+                             @Value("${games.node-url:http://localhost:${server.port:8080}}") String nodeUrl,
+                             @Value("${games.ring.virtual-nodes:128}") int virtualNodes,
+                             @Value("${games.lease.duration-ms:5000}") long timeoutMillis) {
+        this.nodeRepository = nodeRepository;
+        this.gameClock = gameClock;
+        this.nodeId = gameLeases.getNodeId();
+        this.nodeUrl = nodeUrl;
+        this.virtualNodes = virtualNodes;
+        this.timeoutMillis = timeoutMillis;
+        this.ring = new HashRing(Collections.singleton(nodeId), virtualNodes);
+        this.urls = Collections.singletonMap(nodeId, nodeUrl);
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * @return the node the lobby belongs to
+     */
+    public String ownerOf(long lobbyId) {
+        return ring.ownerOf(lobbyId);
+    }
+
+    /**
+     * @return true if the lobby belongs to this node
+     */
+    public boolean isLocal(long lobbyId) {
+        return nodeId.equals(ring.ownerOf(lobbyId));
+    }
+
+    /**
+     * @return the address clients reach the node at, null if the node is not on the ring
+     */
+    public String urlOf(String node) {
+        return urls.get(node);
+    }
+
+    /**
+     * Joins the ring before the games are recovered, so this node only restarts the games that belong to it
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void join() {
+        heartbeat();
+    }
+
+    /**
+     * Announces this node and rebuilds the ring if nodes joined or left since the last heartbeat.
+     * Runs on the thread of the {@link LeaseMaintainer}.
+     */
+    public void heartbeat() {
+        long now = gameClock.currentTimeMillis();
+        ServerNode self = new ServerNode();
+        self.setNodeId(nodeId);
+        self.setUrl(nodeUrl);
+        self.setLastSeenMillis(now);
+        nodeRepository.save(self);
+
+        Map<String, String> liveNodes = new HashMap<>();
+        for(ServerNode node : nodeRepository.findByLastSeenMillisGreaterThanEqual(now - timeoutMillis)) {
+            liveNodes.put(node.getNodeId(), node.getUrl());
+        }
+        liveNodes.put(nodeId, nodeUrl);
+        if(!liveNodes.keySet().equals(ring.getNodes())) {
+            ring = new HashRing(liveNodes.keySet(), virtualNodes);
+            log.info(String.format("Node %s sees %d nodes: %s", nodeId, liveNodes.size(), ring.getNodes()));
+        }
+        urls = liveNodes;
+        // nodes that are gone for long are forgotten, e.g. the ones of earlier deployments
+        nodeRepository.deleteNotSeenSince(now - 100 * timeoutMillis);
+    }
+
+    /**
+     * Leaves the ring when the server stops, so the other nodes take over its lobbies right away
+     */
+    @PreDestroy
+    public void leave() {
+        try {
+            nodeRepository.deleteById(nodeId);
+        }
+        catch (RuntimeException e) {
+            log.warn(String.format("Node %s could not leave the ring: %s", nodeId, e.getMessage()));
+        }
+    }
+}
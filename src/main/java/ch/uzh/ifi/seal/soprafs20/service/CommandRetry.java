@@ -0,0 +1,75 @@
+package ch.uzh.ifi.seal.soprafs20.service;
+
+import ch.uzh.ifi.seal.soprafs20.exceptions.ConflictException;
+import ch.uzh.ifi.seal.soprafs20.metrics.MetricsRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Runs player commands in one transaction and retries them when the game or lobby was changed concurrently.
+ * Since a failed attempt is rolled back as a whole, running a command again is safe.
+ * Every attempt and conflict is counted per command.
+ */
+@Component
+public class CommandRetry {
+    public static final String COMMANDS = "commands.";
+    public static final String CONFLICTS = "conflicts.";
+    public static final String EXHAUSTED = "conflicts.exhausted.";
+    private static final long BACKOFF_MILLIS = 10L;
+
+    private final Logger log = LoggerFactory.getLogger(CommandRetry.class);
+
+    private final TransactionTemplate transactionTemplate;
+    private final MetricsRegistry metricsRegistry;
+    private final int maxAttempts;
+
+    public CommandRetry(PlatformTransactionManager transactionManager, MetricsRegistry metricsRegistry,
+                        @Value("${commands.max-attempts:3}") int maxAttempts) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.metricsRegistry = metricsRegistry;
+        this.maxAttempts = Math.max(maxAttempts, 1);
+    }
+
+    /**
+     * @param command name of the command in the metrics, e.g. "game.clue"
+     * @param action the command, must load everything it changes itself
+     */
+    public void run(String command, Runnable action) {
+        metricsRegistry.increment(COMMANDS + command);
+        for(int attempt = 1; ; attempt++) {
+            try {
+                transactionTemplate.execute(status -> {
+                    action.run();
+                    return null;
+                });
+                return;
+            }
+            catch (OptimisticLockingFailureException e) {
+                metricsRegistry.increment(CONFLICTS + command);
+                if(attempt >= maxAttempts) {
+                    metricsRegistry.increment(EXHAUSTED + command);
+                    log.warn(String.format("Command %s failed after %d attempts: %s", command, attempt, e.getMessage()));
+                    throw new ConflictException("The game was changed by somebody else, please try again!");
+                }
+                backoff(attempt);
+            }
+        }
+    }
+
+    private void backoff(int attempt) {
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(BACKOFF_MILLIS * attempt) + 1);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConflictException("The command was interrupted, please try again!");
+        }
+    }
+}
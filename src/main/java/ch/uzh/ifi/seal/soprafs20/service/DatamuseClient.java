@@ -0,0 +1,29 @@
+package ch.uzh.ifi.seal.soprafs20.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * Client of the Datamuse API the bots get their clues from.
+ * The address is configurable with datamuse.url, e.g. to use the stub server of the load generator.
+ */
+@Component
+public class DatamuseClient {
+    static final String DEFAULT_URL = "https://api.datamuse.com";
+
+    private final String baseUrl;
+    private final RestTemplate restTemplate = new RestTemplate();
+
+    public DatamuseClient(@Value("${datamuse.url:" + DEFAULT_URL + "}") String baseUrl) {
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+    }
+
+    /**
+     * @param words the words the result should mean something like
+     * @return the response of the API, a JSON array of words with their score
+     */
+    public String findWordsMeaningLike(String... words) {
+        return restTemplate.getForObject(String.format("%s/words?ml=%s", baseUrl, String.join("+", words)), String.class);
+    }
+}
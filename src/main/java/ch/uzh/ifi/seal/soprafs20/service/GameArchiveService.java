@@ -0,0 +1,88 @@
+package ch.uzh.ifi.seal.soprafs20.service;
+
+import ch.uzh.ifi.seal.soprafs20.entity.Game;
+import ch.uzh.ifi.seal.soprafs20.entity.GameArchive;
+import ch.uzh.ifi.seal.soprafs20.exceptions.NotFoundException;
+import ch.uzh.ifi.seal.soprafs20.journal.ArchiveCodec;
+import ch.uzh.ifi.seal.soprafs20.journal.GameJournal;
+import ch.uzh.ifi.seal.soprafs20.journal.JournalRecord;
+import ch.uzh.ifi.seal.soprafs20.metrics.MetricsRegistry;
+import ch.uzh.ifi.seal.soprafs20.repository.GameArchiveRepository;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * Archives finished games from their journal and serves them as replays
+ */
+@Service
+@Transactional
+public class GameArchiveService {
+    private static final String ARCHIVED = "game.archive.games";
+    private static final String ARCHIVED_BYTES = "game.archive.bytes";
+    private static final String SKIPPED = "game.archive.skipped";
+
+    private final GameArchiveRepository gameArchiveRepository;
+    private final GameJournal gameJournal;
+    private final MetricsRegistry metricsRegistry;
+    private final GameClock gameClock;
+    private final JsonFactory jsonFactory = new JsonFactory();
+
+    @Autowired
+    public GameArchiveService(GameArchiveRepository gameArchiveRepository, GameJournal gameJournal,
+                              MetricsRegistry metricsRegistry, GameClock gameClock) {
+        this.gameArchiveRepository = gameArchiveRepository;
+        this.gameJournal = gameJournal;
+        this.metricsRegistry = metricsRegistry;
+        this.gameClock = gameClock;
+    }
+
+    /**
+     * Archives a game that just ended. Nothing is archived if the journal of this node does not know the start of
+     * the game, e.g. because the game was taken over from another node or outlived a restart: without it the
+     * archive would miss the players and show every clue as a bot's.
+     *
+     * @param gameId the id the replay is served under, the id of the game's lobby score
+     */
+    public void archive(Game game, Long gameId) {
+        if(gameId == null) {
+            return;
+        }
+        List<JournalRecord> history = gameJournal.history(game.getLobbyId());
+        if(history.isEmpty() || history.get(0).getType() != JournalRecord.Type.STARTED) {
+            metricsRegistry.increment(SKIPPED);
+            return;
+        }
+        long endedAt = gameClock.currentTimeMillis();
+        GameArchive archive = new GameArchive();
+        archive.setGameId(gameId);
+        archive.setEndedAtMillis(endedAt);
+        archive.setData(ArchiveCodec.encode(history, game.getLobbyName(), game.getOverallScore(), endedAt));
+        gameArchiveRepository.save(archive);
+        metricsRegistry.increment(ARCHIVED);
+        metricsRegistry.add(ARCHIVED_BYTES, archive.getData().length);
+    }
+
+    /**
+     * Writes the replay of an archived game as JSON, decoded while it is written
+     *
+     * @throws NotFoundException if the game was not archived
+     */
+    @Transactional(readOnly = true)
+    public void writeReplay(Long gameId, OutputStream out) throws IOException {
+        byte[] data = gameArchiveRepository.findDataByGameId(gameId);
+        if(data == null) {
+            throw new NotFoundException("Could not find the replay of this game!");
+        }
+        JsonGenerator json = jsonFactory.createGenerator(out);
+        ArchiveCodec.writeJson(gameId, new ByteArrayInputStream(data), json);
+        json.flush();
+    }
+}
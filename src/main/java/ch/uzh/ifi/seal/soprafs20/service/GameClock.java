@@ -0,0 +1,23 @@
+package ch.uzh.ifi.seal.soprafs20.service;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Source of the current time for the flow of a game: phase start times, timeouts and scoring.
+ * The time is monotonic, it never goes back, also not when the clock of the system is adjusted, so phase
+ * deadlines do not jump. Games can so also be run against a virtual clock, e.g. to simulate many games in a short time.
+ */
+public interface GameClock {
+
+    /**
+     * @return milliseconds since the epoch, never less than the value returned before
+     */
+    long currentTimeMillis();
+
+    /**
+     * @return nanoseconds of the clock for measuring durations, only the difference of two values is meaningful
+     */
+    default long nanoTime() {
+        return TimeUnit.MILLISECONDS.toNanos(currentTimeMillis());
+    }
+}
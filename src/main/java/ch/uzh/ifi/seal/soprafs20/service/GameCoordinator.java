@@ -0,0 +1,219 @@
+package ch.uzh.ifi.seal.soprafs20.service;
+
+import ch.uzh.ifi.seal.soprafs20.entity.Game;
+import ch.uzh.ifi.seal.soprafs20.events.DomainEvent;
+import ch.uzh.ifi.seal.soprafs20.events.EventBus;
+import ch.uzh.ifi.seal.soprafs20.exceptions.NotOwnerException;
+import ch.uzh.ifi.seal.soprafs20.journal.GameJournal;
+import ch.uzh.ifi.seal.soprafs20.metrics.MetricsRegistry;
+import ch.uzh.ifi.seal.soprafs20.repository.GameRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the timers of the games and decides which node runs them: starts and restarts the timers of the games
+ * whose lease this node holds, hands games over to and takes them over from other nodes, and keeps the journal,
+ * the activity of the games and the caches of the game service in step with that.
+ * The game logic of a tick stays in the {@link GameService}.
+ */
+@Component
+public class GameCoordinator {
+    private static final String TIMER = "game.timer";
+    private static final String RECOVERED_GAMES = "game.recovered";
+
+    private final Logger log = LoggerFactory.getLogger(GameCoordinator.class);
+
+    private final GameService gameService;
+    private final GameRepository gameRepository;
+    private final GameScheduler gameScheduler;
+    private final GameLeases gameLeases;
+    private final ClusterMembership clusterMembership;
+    private final GameJournal gameJournal;
+    private final ActivityTracker activityTracker;
+    private final MetricsRegistry metricsRegistry;
+    private final GameClock gameClock;
+    // a tick loads, changes and saves the game several times, it runs in one transaction so the game stays managed
+    private final TransactionTemplate tickTransaction;
+
+    public GameCoordinator(GameService gameService, GameRepository gameRepository, GameScheduler gameScheduler,
+                           GameLeases gameLeases, ClusterMembership clusterMembership, GameJournal gameJournal,
+                           ActivityTracker activityTracker, EventBus eventBus, MetricsRegistry metricsRegistry,
+                           GameClock gameClock, PlatformTransactionManager transactionManager) {
+        this.gameService = gameService;
+        this.gameRepository = gameRepository;
+        this.gameScheduler = gameScheduler;
+        this.gameLeases = gameLeases;
+        this.clusterMembership = clusterMembership;
+        this.gameJournal = gameJournal;
+        this.activityTracker = activityTracker;
+        this.metricsRegistry = metricsRegistry;
+        this.gameClock = gameClock;
+        this.tickTransaction = new TransactionTemplate(transactionManager);
+        eventBus.subscribe(this::onRemoteEvent);
+    }
+
+    /**
+     * Central timer logic for each game. Sets timer for each state,
+     * If state is complete before the timer ends, the game transitions into the next state with a new timer.
+     * Timer also takes care of all the logic set up for the next state if no user input was entered
+     * The timer only runs on the server node that holds the lease on the game.
+     *
+     * @param g - takes a game instance as input
+     */
+    public void timer(Game g) {
+        if(g.getRoundsPlayed() <= g.getRounds() && gameLeases.acquire(g.getLobbyId()).isPresent()) {
+            startTimer(g, 0L);
+        }
+    }
+
+    private void startTimer(Game g, long initialDelayMillis) {
+        Long lobbyId = g.getLobbyId();
+        activityTracker.gameStarted(lobbyId);
+        gameScheduler.start(lobbyId, initialDelayMillis, () -> {
+            metricsRegistry.increment(CommandRetry.COMMANDS + TIMER);
+            try {
+                // the template returns once the tick is committed
+                if(tickTransaction.execute(status -> gameService.tick(g)) == null) {
+                    gameScheduler.stop(lobbyId);
+                    gameLeases.release(lobbyId);
+                    activityTracker.gameEnded(lobbyId);
+                }
+            }
+            catch (OptimisticLockingFailureException e) {
+                // a player changed the game in the meantime, the next tick works on the updated game
+                metricsRegistry.increment(CommandRetry.CONFLICTS + TIMER);
+            }
+            catch (NotOwnerException e) {
+                // another node runs the game now, or this node runs it again once it renewed its lease
+                metricsRegistry.increment(CommandRetry.CONFLICTS + TIMER);
+                if(!gameLeases.holds(lobbyId)) {
+                    gameScheduler.stop(lobbyId);
+                    gameJournal.forget(lobbyId);
+                }
+            }
+            catch (RuntimeException e) {
+                // a game that was removed in the meantime has nothing left to time
+                if(!gameRepository.existsById(lobbyId)) {
+                    gameScheduler.stop(lobbyId);
+                    gameLeases.release(lobbyId);
+                }
+                throw e;
+            }
+        });
+    }
+
+    /**
+     * Restarts the timers of the stored games once the application is ready, see {@link #recoverGames()}.
+     * Returns nothing, Spring would publish a returned value as an event.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void recoverGamesOnStartup() {
+        recoverGames();
+    }
+
+    /**
+     * Restarts the timers of all stored games when the application starts, e.g. after a restart or a crash.
+     * The games are read in one query and each timer first ticks when the time of the game's state is up,
+     * so games whose time ran out while the server was down move on right away, in parallel on the
+     * scheduler's threads. When several nodes share the database, each node restarts the games of the lobbies
+     * that belong to it on the hash ring.
+     *
+     * @return the number of games whose timer was restarted
+     */
+    public int recoverGames() {
+        int recovered = 0;
+        for(GameRepository.ActiveGame active : gameRepository.findActiveGames()) {
+            if(active.getGameState() != null && !gameScheduler.isRunning(active.getLobbyId())
+                    && clusterMembership.isLocal(active.getLobbyId()) && gameLeases.acquire(active.getLobbyId()).isPresent()) {
+                resumeTimer(active);
+                recovered++;
+            }
+        }
+        // the journal of an earlier run may hold games that ended or moved to another node meanwhile
+        gameJournal.retainOnly(gameScheduler.getRunningLobbyIds());
+        metricsRegistry.add(RECOVERED_GAMES, recovered);
+        if(recovered > 0) {
+            log.info("Restarted the timers of {} games", recovered);
+        }
+        return recovered;
+    }
+
+    /**
+     * Renews the leases of this node and stops the timers of the games another node took over.
+     * Hands over the games whose lobby belongs to another node on the hash ring, e.g. after a node joined,
+     * and takes over the games of this node's lobbies whose leases expired or were handed over.
+     * Runs on the thread of the {@link LeaseMaintainer}.
+     */
+    public void maintainLeases() {
+        for(Long lobbyId : gameLeases.renew()) {
+            gameScheduler.stop(lobbyId);
+            gameJournal.forget(lobbyId);
+            activityTracker.forget(lobbyId);
+        }
+        for(Long lobbyId : gameLeases.getHeldLobbyIds()) {
+            if(!clusterMembership.isLocal(lobbyId)) {
+                gameScheduler.stop(lobbyId);
+                gameLeases.handOver(lobbyId);
+                gameJournal.forget(lobbyId);
+                activityTracker.forget(lobbyId);
+            }
+        }
+        List<Long> takenOver = gameLeases.takeOverExpired(clusterMembership::isLocal);
+        if(takenOver.isEmpty()) {
+            return;
+        }
+        Set<Long> stored = new HashSet<>();
+        for(GameRepository.ActiveGame active : gameRepository.findActiveGames(takenOver)) {
+            stored.add(active.getLobbyId());
+            if(active.getGameState() != null) {
+                resumeTimer(active);
+            }
+        }
+        for(Long lobbyId : takenOver) {
+            if(!stored.contains(lobbyId)) {
+                // the game ended or was never stored
+                gameLeases.release(lobbyId);
+            }
+        }
+        log.info("Took over {} games from other nodes", takenOver.size());
+    }
+
+    /**
+     * Restarts the timer of a stored game so it first ticks when the time of the game's state is up
+     */
+    private void resumeTimer(GameRepository.ActiveGame active) {
+        long now = gameClock.currentTimeMillis();
+        Game game = gameService.restoreRunningGame(active);
+        long deadline = game.getStartTimeMillis() + TimeUnit.SECONDS.toMillis(gameService.getMaxTime(game));
+        startTimer(game, deadline - now);
+    }
+
+    /**
+     * Another node changed or ended a game: the views of this node move to a new version and the cached
+     * state is dropped, it is read from the database again when it is needed
+     */
+    private void onRemoteEvent(DomainEvent event, boolean missedEvents) {
+        Long lobbyId = event.getLobbyId();
+        switch(event.getType()) {
+            case GAME_CHANGED:
+                gameService.changedElsewhere(lobbyId);
+                break;
+            case GAME_ENDED:
+                gameService.endedElsewhere(lobbyId);
+                break;
+            default:
+                break;
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package ch.uzh.ifi.seal.soprafs20.service;
+
+import ch.uzh.ifi.seal.soprafs20.entity.Game;
+import ch.uzh.ifi.seal.soprafs20.entity.GameLease;
+import ch.uzh.ifi.seal.soprafs20.exceptions.NotOwnerException;
+import ch.uzh.ifi.seal.soprafs20.metrics.MetricsRegistry;
+import ch.uzh.ifi.seal.soprafs20.repository.GameLeaseRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongPredicate;
+import java.util.function.Supplier;
+
+/**
+ * The leases on the games this server node runs. A node only runs the timer of a game and changes the game
+ * while it holds the game's lease, so several nodes can share one database without advancing a game twice.
+ * Leases are renewed in bulk and expire when their node stops renewing them, e.g. because it crashed;
+ * the other nodes then take them over.
+ *
+ * Every write of a game is fenced: it carries the fencing token of the writer's lease and a write with an
+ * older token than the one already stored is rejected, so a node that lost its lease without noticing
+ * cannot overwrite the new owner's changes.
+ *
+ * Lease changes run in their own transactions, so they are visible to the other nodes right away and a
+ * lost race does not roll back the caller.
+ */
+@Component
+public class GameLeases {
+    private static final String ACQUIRED = "game.lease.acquired";
+    private static final String TAKEN_OVER = "game.lease.taken_over";
+    private static final String LOST = "game.lease.lost";
+    private static final String HELD = "game.lease.held";
+
+    private final GameLeaseRepository leaseRepository;
+    private final TransactionTemplate leaseTransaction;
+    private final GameClock gameClock;
+    private final MetricsRegistry metricsRegistry;
+    private final String nodeId;
+    private final long leaseMillis;
+    // lobbyId -> lease this node holds on the game
+    private final Map<Long, HeldLease> held = new ConcurrentHashMap<>();
+    private final AtomicLong acquisitions = new AtomicLong();
+
+    public GameLeases(GameLeaseRepository leaseRepository, PlatformTransactionManager transactionManager,
+                      GameClock gameClock, MetricsRegistry metricsRegistry,
+                      @Value("${games.node-id:}") String nodeId,
+                      @Value("${games.lease.duration-ms:5000}") long leaseMillis) {
+        this.leaseRepository = leaseRepository;
+        this.leaseTransaction = new TransactionTemplate(transactionManager);
+        this.leaseTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.gameClock = gameClock;
+        this.metricsRegistry = metricsRegistry;
+        this.nodeId = nodeId == null || nodeId.isEmpty() ? "node-" + UUID.randomUUID() : nodeId;
+        this.leaseMillis = leaseMillis;
+        metricsRegistry.gauge(HELD, "node", () -> Collections.singletonMap(this.nodeId, (long) held.size()));
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * Takes the lease on a game if nobody holds it, this node already holds it or its owner let it expire
+     *
+     * @return the fencing token of the lease, empty if another node holds it
+     */
+    public OptionalLong acquire(Long lobbyId) {
+        long now = gameClock.currentTimeMillis();
+        long expiresAt = now + leaseMillis;
+        Long token;
+        try {
+            token = inLeaseTransaction(() -> {
+                if(leaseRepository.takeOver(lobbyId, nodeId, expiresAt, now) == 1) {
+                    return leaseRepository.findById(lobbyId).map(GameLease::getFencingToken).orElse(null);
+                }
+                if(leaseRepository.existsById(lobbyId)) {
+                    return null;
+                }
+                leaseRepository.insert(lobbyId, nodeId, 1L, expiresAt);
+                return 1L;
+            });
+        }
+        catch (DataIntegrityViolationException e) {
+            // another node inserted the lease first
+            token = null;
+        }
+        if(token == null) {
+            return OptionalLong.empty();
+        }
+        held.put(lobbyId, new HeldLease(token, expiresAt, acquisitions.incrementAndGet()));
+        metricsRegistry.increment(ACQUIRED);
+        return OptionalLong.of(token);
+    }
+
+    /**
+     * @return true if this node holds the lease on the game and it did not run out since it was last renewed
+     */
+    public boolean holds(Long lobbyId) {
+        HeldLease lease = held.get(lobbyId);
+        return lease != null && lease.expiresAt > gameClock.currentTimeMillis();
+    }
+
+    /**
+     * Stamps the fencing token of this node's lease on a game before the game is written
+     *
+     * @throws NotOwnerException if another node holds the lease, this node's lease ran out or the game was
+     * already written by a newer owner
+     */
+    public void fence(Game game) {
+        Long lobbyId = game.getLobbyId();
+        HeldLease lease = held.get(lobbyId);
+        if(lease == null) {
+            Optional<GameLease> stored = leaseRepository.findById(lobbyId);
+            if(stored.isEmpty()) {
+                // nobody runs a timer for the game, e.g. it was stored before its timer was started
+                return;
+            }
+            if(!nodeId.equals(stored.get().getOwner()) || acquire(lobbyId).isEmpty()) {
+                throw new NotOwnerException("The game is run by another server!", stored.get().getOwner());
+            }
+            lease = held.get(lobbyId);
+        }
+        if(lease.expiresAt <= gameClock.currentTimeMillis()) {
+            throw new NotOwnerException("The lease of this server on the game ran out!", null);
+        }
+        if(game.getFencingToken() != null && game.getFencingToken() > lease.token) {
+            held.remove(lobbyId, lease);
+            metricsRegistry.increment(LOST);
+            throw new NotOwnerException("The game was taken over by another server!", null);
+        }
+        game.setFencingToken(lease.token);
+    }
+
+    /**
+     * Gives up the lease on a game, e.g. because the game ended
+     */
+    public void release(Long lobbyId) {
+        if(held.remove(lobbyId) != null) {
+            inLeaseTransaction(() -> leaseRepository.release(lobbyId, nodeId));
+        }
+    }
+
+    /**
+     * Extends all leases of this node in one update
+     *
+     * @return the games whose lease this node lost to another node since the last renewal
+     */
+    public Set<Long> renew() {
+        if(held.isEmpty()) {
+            return Collections.emptySet();
+        }
+        long expiresAt = gameClock.currentTimeMillis() + leaseMillis;
+        long lastAcquisition = acquisitions.get();
+        Set<Long> renewed = new HashSet<>(held.keySet());
+        List<Long> owned = inLeaseTransaction(() -> {
+            leaseRepository.renewAll(nodeId, renewed, expiresAt);
+            return leaseRepository.findLobbyIdsByOwner(nodeId);
+        });
+        Set<Long> stillOwned = new HashSet<>(owned);
+        Set<Long> lost = new HashSet<>();
+        for(Map.Entry<Long, HeldLease> entry : held.entrySet()) {
+            if(entry.getValue().acquisition > lastAcquisition) {
+                // acquired while the leases were read, it is renewed next time
+                continue;
+            }
+            if(stillOwned.contains(entry.getKey())) {
+                entry.getValue().expiresAt = expiresAt;
+            }
+            else if(held.remove(entry.getKey(), entry.getValue())) {
+                lost.add(entry.getKey());
+            }
+        }
+        metricsRegistry.add(LOST, lost.size());
+        return lost;
+    }
+
+    /**
+     * Hands the lease on a game over to whichever node takes it over next, e.g. because the lobby belongs
+     * to another node now. The lease keeps this node as owner until then, but is no longer renewed.
+     */
+    public void handOver(Long lobbyId) {
+        if(held.remove(lobbyId) != null) {
+            inLeaseTransaction(() -> leaseRepository.expire(lobbyId, nodeId));
+        }
+    }
+
+    /**
+     * @return the games this node holds the lease on
+     */
+    public Set<Long> getHeldLobbyIds() {
+        return Collections.unmodifiableSet(held.keySet());
+    }
+
+    /**
+     * Takes over the leases that expired, because their node stopped renewing them or handed them over
+     *
+     * @param belongsHere whether a lobby belongs to this node, leases of other lobbies are left to their node
+     * @return the games this node took over
+     */
+    public List<Long> takeOverExpired(LongPredicate belongsHere) {
+        List<Long> expired = leaseRepository.findExpired(gameClock.currentTimeMillis());
+        List<Long> takenOver = new ArrayList<>();
+        for(Long lobbyId : expired) {
+            if(belongsHere.test(lobbyId) && acquire(lobbyId).isPresent()) {
+                takenOver.add(lobbyId);
+            }
+        }
+        metricsRegistry.add(TAKEN_OVER, takenOver.size());
+        return takenOver;
+    }
+
+    /**
+     * Hands over all leases when the server stops, so the other nodes need not wait for them to expire
+     */
+    @PreDestroy
+    public void handOverAll() {
+        if(held.isEmpty()) {
+            return;
+        }
+        held.clear();
+        try {
+            inLeaseTransaction(() -> leaseRepository.expireAll(nodeId));
+        }
+        catch (RuntimeException e) {
+            // the leases expire by themselves
+        }
+    }
+
+    private <T> T inLeaseTransaction(Supplier<T> action) {
+        return leaseTransaction.execute(status -> action.get());
+    }
+
+    private static class HeldLease {
+        private final long token;
+        private final long acquisition;
+        private volatile long expiresAt;
+
+        private HeldLease(long token, long expiresAt, long acquisition) {
+            this.token = token;
+            this.expiresAt = expiresAt;
+            this.acquisition = acquisition;
+        }
+    }
+}
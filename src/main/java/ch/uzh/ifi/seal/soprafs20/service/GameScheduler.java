@@ -0,0 +1,108 @@
+package ch.uzh.ifi.seal.soprafs20.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the timers of all games on a small shared pool of threads, instead of one thread per game.
+ * Every game has at most one timer, it ticks once a second until it is cancelled.
+ * A tick that throws is logged and the timer keeps going, so one bad tick does not stop a game.
+ * The pool also runs one-off tasks, like the checks of the lobbies' activity deadlines.
+ */
+@Component
+public class GameScheduler {
+    public static final long TICK_MILLIS = 1000L;
+
+    private final Logger log = LoggerFactory.getLogger(GameScheduler.class);
+
+    private final ScheduledThreadPoolExecutor executor;
+    // lobbyId -> the timer of the game in this lobby
+    private final Map<Long, ScheduledFuture<?>> timers = new ConcurrentHashMap<>();
+
+    public GameScheduler(@Value("${games.scheduler.threads:4}") int threads) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ScheduledThreadPoolExecutor(Math.max(threads, 1), task -> {
+            Thread thread = new Thread(task, "game-timer-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.executor.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Starts the timer of a game, a timer that is already running for the lobby is replaced
+     *
+     * @param initialDelayMillis milliseconds until the first tick, the following ones come every second
+     */
+    public void start(Long lobbyId, long initialDelayMillis, Runnable tick) {
+        Runnable guardedTick = () -> {
+            try {
+                tick.run();
+            }
+            catch (RuntimeException e) {
+                log.error(String.format("Timer of game %d failed: %s", lobbyId, e.getMessage()), e);
+            }
+        };
+        timers.compute(lobbyId, (id, running) -> {
+            if(running != null) {
+                running.cancel(false);
+            }
+            return executor.scheduleAtFixedRate(guardedTick, Math.max(initialDelayMillis, 0L), TICK_MILLIS,
+                    TimeUnit.MILLISECONDS);
+        });
+    }
+
+    /**
+     * Stops the timer of a game, also safe to call from within its own tick
+     */
+    public void stop(Long lobbyId) {
+        ScheduledFuture<?> running = timers.remove(lobbyId);
+        if(running != null) {
+            running.cancel(false);
+        }
+    }
+
+    /**
+     * Runs a task once after the delay on the same threads as the game timers, e.g. to check a deadline
+     */
+    public ScheduledFuture<?> schedule(long delayMillis, Runnable task) {
+        return executor.schedule(() -> {
+            try {
+                task.run();
+            }
+            catch (RuntimeException e) {
+                log.error(String.format("Scheduled task failed: %s", e.getMessage()), e);
+            }
+        }, Math.max(delayMillis, 0L), TimeUnit.MILLISECONDS);
+    }
+
+    public boolean isRunning(Long lobbyId) {
+        return timers.containsKey(lobbyId);
+    }
+
+    public Set<Long> getRunningLobbyIds() {
+        return Collections.unmodifiableSet(timers.keySet());
+    }
+
+    public int countRunning() {
+        return timers.size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+        timers.clear();
+    }
+}
@@ -2,12 +2,22 @@ package ch.uzh.ifi.seal.soprafs20.service;
 
 import ch.uzh.ifi.seal.soprafs20.GameLogic.APIResponse;
 import ch.uzh.ifi.seal.soprafs20.GameLogic.NLP;
-import ch.uzh.ifi.seal.soprafs20.GameLogic.WordReader;
+import ch.uzh.ifi.seal.soprafs20.GameLogic.WordProfile;
+import ch.uzh.ifi.seal.soprafs20.GameLogic.WordCorpus;
 import ch.uzh.ifi.seal.soprafs20.GameLogic.GameState;
 import ch.uzh.ifi.seal.soprafs20.entity.*;
+import ch.uzh.ifi.seal.soprafs20.events.DomainEvent;
+import ch.uzh.ifi.seal.soprafs20.events.EventBus;
 import ch.uzh.ifi.seal.soprafs20.exceptions.ConflictException;
 import ch.uzh.ifi.seal.soprafs20.exceptions.NotFoundException;
+import ch.uzh.ifi.seal.soprafs20.exceptions.NotOwnerException;
 import ch.uzh.ifi.seal.soprafs20.exceptions.UnauthorizedException;
+import ch.uzh.ifi.seal.soprafs20.journal.GameJournal;
+import ch.uzh.ifi.seal.soprafs20.journal.JournalRecord;
+import ch.uzh.ifi.seal.soprafs20.metrics.GameCommandEvent;
+import ch.uzh.ifi.seal.soprafs20.metrics.GamePhaseEvent;
+import ch.uzh.ifi.seal.soprafs20.metrics.MetricsRegistry;
+import ch.uzh.ifi.seal.soprafs20.metrics.RequestMetricsFilter;
 import ch.uzh.ifi.seal.soprafs20.repository.*;
 import ch.uzh.ifi.seal.soprafs20.rest.dto.CluePutDTO;
 import ch.uzh.ifi.seal.soprafs20.rest.dto.GamePostDTO;
@@ -18,10 +28,13 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 
 /**
@@ -38,6 +51,20 @@ public class GameService{
     private final ClueRepository clueRepository;
     private final LobbyScoreRepository lobbyScoreRepository;
     private final PlayerRepository playerRepository;
+    private final LobbyDirectory lobbyDirectory;
+    private final MetricsRegistry metricsRegistry;
+    private final GameClock gameClock;
+    private final DatamuseClient datamuseClient;
+    private final GameScheduler gameScheduler;
+    private final GameLeases gameLeases;
+    private final EventBus eventBus;
+    private final GameJournal gameJournal;
+    private final GameArchiveService gameArchiveService;
+    private static final String LIVE_GAMES = "game.live";
+    private static final String PHASE_DURATION = "game.phase.%s.seconds";
+    private static final String TRANSITION_LATENESS = "game.timer.lateness.seconds";
+    private static final String CHECK_CLUE_LATENCY = "game.nlp.check_clue.seconds";
+    private static final String BOT_CLUES_LATENCY = "game.bots.fetch_clues.seconds";
     private static final int PICK_WORD_TIME = 10;
     private static final int ENTER_CLUES_TIME = 30;
     private static final int VOTE_TIME = 15;
@@ -45,10 +72,17 @@ public class GameService{
     private static final int TRANSITION_TIME = 5;
     private static final int END_TIME = 10;
     private final Random rand = new Random();
+    // lobbyId -> profile of the word currently being guessed, used to filter the chat without loading the game
+    private final Map<Long, WordProfile> wordProfiles = new ConcurrentHashMap<>();
+    // lobbyId -> version of the stored game state, drawn from one sequence so a version is never reused
+    private final Map<Long, Long> stateVersions = new ConcurrentHashMap<>();
+    private final AtomicLong versionSequence = new AtomicLong();
+    // lobbyId -> state of the running game and since when it is in this state
+    private final Map<Long, Phase> phases = new ConcurrentHashMap<>();
     NLP nlp = new NLP();
 
     @Autowired
-    public GameService(GameRepository gameRepository, LobbyRepository lobbyRepository, UserRepository userRepository, LobbyScoreRepository lobbyScoreRepository, ClueRepository clueRepository, PlayerRepository playerRepository) {
+    public GameService(GameRepository gameRepository, LobbyRepository lobbyRepository, UserRepository userRepository, LobbyScoreRepository lobbyScoreRepository, ClueRepository clueRepository, PlayerRepository playerRepository, LobbyDirectory lobbyDirectory, MetricsRegistry metricsRegistry, GameClock gameClock, DatamuseClient datamuseClient, GameScheduler gameScheduler, GameLeases gameLeases, EventBus eventBus, GameJournal gameJournal, GameArchiveService gameArchiveService) {
 
         this.gameRepository = gameRepository;
         this.lobbyRepository = lobbyRepository;
@@ -56,6 +90,16 @@ public class GameService{
         this.clueRepository = clueRepository;
         this.lobbyScoreRepository = lobbyScoreRepository;
         this.playerRepository = playerRepository;
+        this.lobbyDirectory = lobbyDirectory;
+        this.metricsRegistry = metricsRegistry;
+        this.gameClock = gameClock;
+        this.datamuseClient = datamuseClient;
+        this.gameScheduler = gameScheduler;
+        this.gameLeases = gameLeases;
+        this.eventBus = eventBus;
+        this.gameJournal = gameJournal;
+        this.gameArchiveService = gameArchiveService;
+        metricsRegistry.gauge(LIVE_GAMES, "state", this::countGamesPerState);
     }
 
     public Game getGame(Long id) {
@@ -66,20 +110,201 @@ public class GameService{
             return game;
         }
         else {
+            // the version handed out for the missing game is not needed any more
+            stateVersions.remove(id);
             throw new NotFoundException("Could not find game!");
         }
     }
 
+    /**
+     * Returns the current version of the game state in the given lobby. The version changes every time
+     * the game is written, so views of the game can be cached as long as the version stays the same.
+     * Versions start at 1. A version asked for a lobby without a game is dropped again by {@link #getGame(Long)}.
+     */
+    public long getStateVersion(Long lobbyId) {
+        return stateVersions.computeIfAbsent(lobbyId, id -> versionSequence.incrementAndGet());
+    }
+
+    private void saveGame(Game game) {
+        gameLeases.fence(game);
+        gameRepository.saveAndFlush(game);
+        RequestMetricsFilter.countGameSave();
+        trackPhase(game);
+        markChanged(game);
+    }
+
+    /**
+     * Records how long the game was in its last state once it is saved in a new one
+     */
+    private void trackPhase(Game game) {
+        GameState state = game.getGameState();
+        if(state == null || game.getLobbyId() == null) {
+            return;
+        }
+        long now = gameClock.nanoTime();
+        boolean[] changed = new boolean[1];
+        phases.compute(game.getLobbyId(), (id, phase) -> {
+            if(phase != null && phase.state == state) {
+                return phase;
+            }
+            if(phase != null) {
+                recordPhaseDuration(id, phase, state, now);
+            }
+            changed[0] = true;
+            return new Phase(state, now);
+        });
+        if(changed[0]) {
+            journal(game, JournalRecord.Type.PHASE, new long[]{game.getRoundsPlayed(), game.getOverallScore()},
+                    state.name(), game.getCurrentWord());
+        }
+    }
+
+    private void endPhase(Long lobbyId) {
+        Phase phase = phases.remove(lobbyId);
+        if(phase != null) {
+            recordPhaseDuration(lobbyId, phase, null, gameClock.nanoTime());
+        }
+    }
+
+    private void recordPhaseDuration(Long lobbyId, Phase phase, GameState nextState, long now) {
+        metricsRegistry.record(String.format(PHASE_DURATION, phase.state.name().toLowerCase()), now - phase.since);
+        GamePhaseEvent.emit(lobbyId, phase.state.name(), nextState == null ? null : nextState.name(), now - phase.since);
+    }
+
+    private Map<String, Long> countGamesPerState() {
+        Map<String, Long> games = new HashMap<>();
+        for(GameState state : GameState.values()) {
+            games.put(state.name(), 0L);
+        }
+        for(Phase phase : phases.values()) {
+            games.merge(phase.state.name(), 1L, Long::sum);
+        }
+        return games;
+    }
+
+    /**
+     * @return milliseconds since the game entered its current state
+     */
+    private long getTimeInState(Game game) {
+        return gameClock.currentTimeMillis() - game.getStartTimeMillis();
+    }
+
+    /**
+     * @return the whole seconds that are left of the time of the current state
+     */
+    private long remainingSeconds(Game game, int stateTime) {
+        return stateTime - TimeUnit.MILLISECONDS.toSeconds(getTimeInState(game));
+    }
+
+    /**
+     * Records how late the timer moved the game on, compared to when the time of the state was up
+     */
+    private void recordTransitionLateness(Game game, int stateTime) {
+        long deadline = game.getStartTimeMillis() + TimeUnit.SECONDS.toMillis(stateTime);
+        long lateness = Math.max(gameClock.currentTimeMillis() - deadline, 0L);
+        metricsRegistry.record(TRANSITION_LATENESS, TimeUnit.MILLISECONDS.toNanos(lateness));
+    }
+
+    private boolean checkClue(String clue, String word) {
+        long start = System.nanoTime();
+        try {
+            return nlp.checkClue(clue, word);
+        }
+        finally {
+            metricsRegistry.record(CHECK_CLUE_LATENCY, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Moves the game to a new state version once the write is committed, so a view built for the new
+     * version can never be made from the old state, and tells the other nodes about the change
+     */
+    private void markChanged(Game game) {
+        Long lobbyId = game.getLobbyId();
+        Map<String, String> data = Collections.singletonMap("state", String.valueOf(game.getGameState()));
+        afterCommit(() -> {
+            stateVersions.put(lobbyId, versionSequence.incrementAndGet());
+            eventBus.publish(lobbyId, DomainEvent.Type.GAME_CHANGED, data);
+        });
+    }
+
+    private void afterCommit(Runnable action) {
+        if(TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        }
+        else {
+            action.run();
+        }
+    }
+
+    /**
+     * Appends a record to the game journal once the change is committed
+     */
+    private void journal(Game game, JournalRecord.Type type, long[] numbers, String... texts) {
+        Long lobbyId = game.getLobbyId();
+        if(lobbyId == null || !gameJournal.isEnabled()) {
+            return;
+        }
+        afterCommit(() -> gameJournal.append(lobbyId, type, numbers, texts));
+    }
+
+    private static long orZero(Long value) {
+        return value == null ? 0L : value;
+    }
+
+    /**
+     * Another node changed the game, the views of this node move to a new version
+     */
+    void changedElsewhere(Long lobbyId) {
+        stateVersions.put(lobbyId, versionSequence.incrementAndGet());
+    }
+
+    /**
+     * Another node ended the game, its cached state is dropped
+     */
+    void endedElsewhere(Long lobbyId) {
+        stateVersions.remove(lobbyId);
+        wordProfiles.remove(lobbyId);
+    }
+
+    /**
+     * Restores the cached state of a stored game whose timer is restarted on this node, e.g. after a restart
+     * or when the game was taken over from another node
+     *
+     * @return the game with the fields its timer needs, the timer reloads the rest
+     */
+    Game restoreRunningGame(GameRepository.ActiveGame active) {
+        Game game = new Game();
+        game.setLobbyId(active.getLobbyId());
+        game.setGameState(active.getGameState());
+        game.setStartTimeMillis(active.getStartTimeMillis() == null ? gameClock.currentTimeMillis() : active.getStartTimeMillis());
+        if(active.getCurrentWord() != null) {
+            game.setCurrentWord(active.getCurrentWord());
+            registerWordProfile(game);
+        }
+        phases.putIfAbsent(game.getLobbyId(), new Phase(game.getGameState(), gameClock.nanoTime()));
+        return game;
+    }
+
     public int getMaxTime(Game game){
-        if(game.getGameState().equals(GameState.END_GAME_STATE))
+        return getMaxTime(game.getGameState());
+    }
+
+    private int getMaxTime(GameState state){
+        if(state.equals(GameState.END_GAME_STATE))
             return END_TIME;
-        else if(game.getGameState().equals(GameState.PICK_WORD_STATE))
+        else if(state.equals(GameState.PICK_WORD_STATE))
             return PICK_WORD_TIME;
-        else if(game.getGameState().equals(GameState.TRANSITION_STATE))
+        else if(state.equals(GameState.TRANSITION_STATE))
             return TRANSITION_TIME;
-        else if(game.getGameState().equals(GameState.ENTER_CLUES_STATE))
+        else if(state.equals(GameState.ENTER_CLUES_STATE))
             return ENTER_CLUES_TIME;
-        else if(game.getGameState().equals(GameState.VOTE_ON_CLUES_STATE))
+        else if(state.equals(GameState.VOTE_ON_CLUES_STATE))
             return VOTE_TIME;
         else
             return GUESS_TIME;
@@ -122,54 +347,75 @@ public class GameService{
 
         //set round count to 1
         newGame.setRoundsPlayed(1);
-        setStartTime(TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()), newGame);
+        setStartTime(gameClock.currentTimeMillis(), newGame);
 
-        //select 13 random words from words.txt
-        WordReader reader = new WordReader();
-        newGame.setWords(reader.getRandomWords(13));
+        //select 13 random words from the word corpus
+        newGame.setDeck(WordCorpus.getInstance().randomDeck(13));
 
         newGame = gameRepository.save(newGame);
         gameRepository.flush();
+        markChanged(newGame);
+        journalStart(newGame);
+        lobbyDirectory.update(lobby);
         return newGame;
     }
 
-    public boolean sendClue(Game game, Player player, CluePutDTO cluePutDTO) {
-        if(!game.getGameState().equals(GameState.ENTER_CLUES_STATE))
-            throw new UnauthorizedException("Clues are not accepted in current state!");
-
-        if(!game.getPlayers().contains(player) || player.isClueIsSent() || game.getCurrentGuesser().equals(player) ||
-                (!player.getToken().equals(cluePutDTO.getPlayerToken()))){
-            throw new UnauthorizedException("This player is not allowed to send a clue!");
-        }
-
-        if (!game.isSpecialGame()) {
-            Clue clue = new Clue();
-            clue.setPlayerId(player.getId());
-            clue.setActualClue(cluePutDTO.getMessage());
-            clue.setTimeNeeded(ENTER_CLUES_TIME - (TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()) - game.getStartTimeSeconds()));
-            player.addClue(clue);
-            player.setClueIsSent(true);
-            // if the same clue is sent twice, remove it from list of entered clues
-            addClue(clue, game);
-            clueRepository.saveAndFlush(clue);
-            gameRepository.saveAndFlush(game);
-        }
-        else {
-            sendClueSpecial(game, player, cluePutDTO);
+    private void journalStart(Game game) {
+        long[] playerIds = new long[game.getPlayers().size()];
+        String[] usernames = new String[playerIds.length];
+        for(int i = 0; i < playerIds.length; i++) {
+            Player player = game.getPlayers().get(i);
+            playerIds[i] = orZero(player.getId());
+            usernames[i] = player.getUsername();
         }
-        int counter = 0;
-        for (Player playerInGame : game.getPlayers()){
-            if (playerInGame.isClueIsSent()){
-                counter++;
+        journal(game, JournalRecord.Type.STARTED, playerIds, usernames);
+    }
+
+    public boolean sendClue(Game game, Player player, CluePutDTO cluePutDTO) {
+        GameCommandEvent event = GameCommandEvent.start("sendClue");
+        try {
+            if(!game.getGameState().equals(GameState.ENTER_CLUES_STATE))
+                throw new UnauthorizedException("Clues are not accepted in current state!");
+
+            if(!game.getPlayers().contains(player) || player.isClueIsSent() || game.getCurrentGuesser().equals(player) ||
+                    (!player.getToken().equals(cluePutDTO.getPlayerToken()))){
+                throw new UnauthorizedException("This player is not allowed to send a clue!");
             }
+
+            if (!game.isSpecialGame()) {
+                Clue clue = new Clue();
+                clue.setPlayerId(player.getId());
+                clue.setActualClue(cluePutDTO.getMessage());
+                clue.setTimeNeeded(remainingSeconds(game, ENTER_CLUES_TIME));
+                player.addClue(clue);
+                player.setClueIsSent(true);
+                // if the same clue is sent twice, remove it from list of entered clues
+                addClue(clue, game);
+                clueRepository.saveAndFlush(clue);
+                saveGame(game);
+                journal(game, JournalRecord.Type.CLUE, new long[]{orZero(player.getId()), orZero(clue.getTimeNeeded())},
+                        clue.getActualClue());
+            }
+            else {
+                sendClueSpecial(game, player, cluePutDTO);
+            }
+            int counter = 0;
+            for (Player playerInGame : game.getPlayers()){
+                if (playerInGame.isClueIsSent()){
+                    counter++;
+                }
+            }
+            if(allSent(game, counter)) {
+                generateCluesForBots(game);
+                checkClues(game);
+                saveGame(game);
+                return true;
+            }
+            return false;
         }
-        if(allSent(game, counter)) {
-            generateCluesForBots(game);
-            checkClues(game);
-            gameRepository.saveAndFlush(game);
-            return true;
+        finally {
+            event.end(game);
         }
-        return false;
     }
 
 
@@ -195,9 +441,11 @@ public class GameService{
         if (!game.getCurrentGuesser().getToken().equals(token)) {
             throw new UnauthorizedException("This player is not allowed to pick a word!");
         }
-        game.setCurrentWord(chooseWordAtRandom(game.getWords()));
+        game.setCurrentWord(drawWord(game));
+        registerWordProfile(game);
         game.setGameState(GameState.ENTER_CLUES_STATE);
-        gameRepository.saveAndFlush(game);
+        saveGame(game);
+        journal(game, JournalRecord.Type.WORD_PICKED, new long[]{game.getRoundsPlayed()}, game.getCurrentWord());
         return true;
     }
 
@@ -205,7 +453,23 @@ public class GameService{
      * Overloaded pickWord method for the case that the timer runs out and the guesser did not send a guess
      */
     public void pickWord(Game game) {
-        game.setCurrentWord(chooseWordAtRandom(game.getWords()));
+        game.setCurrentWord(drawWord(game));
+        registerWordProfile(game);
+        journal(game, JournalRecord.Type.WORD_PICKED, new long[]{game.getRoundsPlayed()}, game.getCurrentWord());
+    }
+
+    private void registerWordProfile(Game game) {
+        wordProfiles.put(game.getLobbyId(), new WordProfile(game.getCurrentWord(), nlp));
+    }
+
+    /**
+     * Checks a chat message against the word of the running game in the given lobby
+     *
+     * @return true if the text gives away the current word, false if it doesn't or no word was picked yet
+     */
+    public boolean isSpoiler(Long lobbyId, String text) {
+        WordProfile profile = wordProfiles.get(lobbyId);
+        return profile != null && profile.isSpoiledBy(text, nlp);
     }
 
 
@@ -216,12 +480,12 @@ public class GameService{
         Clue firstClue = new Clue();
         firstClue.setPlayerId(player.getId());
         firstClue.setActualClue(cluePutDTO.getMessage());
-        firstClue.setTimeNeeded(ENTER_CLUES_TIME - (TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()) - game.getStartTimeSeconds()));
+        firstClue.setTimeNeeded(remainingSeconds(game, ENTER_CLUES_TIME));
         player.addClue(firstClue);
 
         Clue secondClue = new Clue();
         secondClue.setPlayerId(player.getId());
-        secondClue.setTimeNeeded(ENTER_CLUES_TIME - (TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()) - game.getStartTimeSeconds()));
+        secondClue.setTimeNeeded(remainingSeconds(game, ENTER_CLUES_TIME));
         if(cluePutDTO.getMessage2() != null) {
             secondClue.setActualClue(cluePutDTO.getMessage2());
             player.addClue(secondClue);
@@ -233,39 +497,52 @@ public class GameService{
         addClue(secondClue, game);
         player.setClueIsSent(true);
 
-        gameRepository.saveAndFlush(game);
+        saveGame(game);
         clueRepository.saveAndFlush(firstClue);
         clueRepository.saveAndFlush(secondClue);
+        journal(game, JournalRecord.Type.CLUE, new long[]{orZero(player.getId()), orZero(firstClue.getTimeNeeded())},
+                firstClue.getActualClue(), secondClue.getActualClue());
     }
 
 
-    public void submitGuess(Game game, MessagePutDTO messagePutDTO, long time) {
-        if (!game.getCurrentGuesser().getToken().equals(messagePutDTO.getPlayerToken())) {
-            throw new UnauthorizedException("User is not allowed to submit a guess!");
-        }
-        if(game.getCurrentGuesser().isGuessIsSent()) {
-            throw new UnauthorizedException("This player already submitted his guess!");
+    public void submitGuess(Game game, MessagePutDTO messagePutDTO, long timeMillis) {
+        GameCommandEvent event = GameCommandEvent.start("submitGuess");
+        try {
+            if (!game.getCurrentGuesser().getToken().equals(messagePutDTO.getPlayerToken())) {
+                throw new UnauthorizedException("User is not allowed to submit a guess!");
+            }
+            if(game.getCurrentGuesser().isGuessIsSent()) {
+                throw new UnauthorizedException("This player already submitted his guess!");
+            }
+            if(!game.getGameState().equals(GameState.ENTER_GUESS_STATE)) {
+                throw new UnauthorizedException("Can't submit guess in current state!");
+            }
+
+            game.getCurrentGuesser().setGuessIsSent(true);
+            game.setGuessCorrect(messagePutDTO.getMessage().equalsIgnoreCase(game.getCurrentWord()));
+            game.setCurrentGuess(messagePutDTO.getMessage());
+            guesserScore(game, timeMillis);
+            saveGame(game);
+            journal(game, JournalRecord.Type.GUESS, new long[]{game.isGuessCorrect() ? 1L : 0L,
+                    game.getCurrentGuesser().getScore()}, game.getCurrentGuess());
         }
-        if(!game.getGameState().equals(GameState.ENTER_GUESS_STATE)) {
-            throw new UnauthorizedException("Can't submit guess in current state!");
+        finally {
+            event.end(game);
         }
-
-        game.getCurrentGuesser().setGuessIsSent(true);
-        game.setGuessCorrect(messagePutDTO.getMessage().equalsIgnoreCase(game.getCurrentWord()));
-        game.setCurrentGuess(messagePutDTO.getMessage());
-        guesserScore(game, time);
-        gameRepository.saveAndFlush(game);
     }
 
-    private void guesserScore(Game game, long time){
+    /**
+     * @param timeMillis how long the guesser took, the faster the more points a correct guess is worth
+     */
+    private void guesserScore(Game game, long timeMillis){
         int pastScore = game.getCurrentGuesser().getScore();
         int score = 0;
         if(game.isGuessCorrect()){
             if(game.isSpecialGame()){
-                score = (int)((GUESS_TIME - time)*10);
+                score = (int) ((TimeUnit.SECONDS.toMillis(GUESS_TIME) - timeMillis) * 10 / 1000);
 
             } else {
-                score = (int) ((GUESS_TIME - time)*5);
+                score = (int) ((TimeUnit.SECONDS.toMillis(GUESS_TIME) - timeMillis) * 5 / 1000);
             }
             game.setOverallScore(game.getOverallScore() + score);
             game.getCurrentGuesser().setScore(pastScore + score);
@@ -304,20 +581,20 @@ public class GameService{
         game.getInvalidClues().clear();
         game.setGuessCorrect(false);
         game.setCurrentGuess("");
-        gameRepository.saveAndFlush(game);
+        saveGame(game);
     }
 
     public void checkClues(Game game) {
         List<Clue> invalidClues = new ArrayList<>();
         for (Clue clue : game.getEnteredClues()) {
-            if (!nlp.checkClue(clue.getActualClue(), game.getCurrentWord())) {
+            if (!checkClue(clue.getActualClue(), game.getCurrentWord())) {
                 clue.setPlayerId(-1L);
                 invalidClues.add(clue);
             }
         }
         game.getEnteredClues().removeAll(invalidClues);
         game.addInvalidClues(invalidClues);
-        gameRepository.saveAndFlush(game);
+        saveGame(game);
     }
 
     /**
@@ -329,22 +606,23 @@ public class GameService{
         return counter == game.getPlayers().size() - 1;
     }
 
-    public void setStartTime(long time, Game game) {
-        game.setStartTimeSeconds(time);
-        gameRepository.saveAndFlush(game);
+    /**
+     * @param timeMillis when the game entered its current state, in milliseconds of the game clock
+     */
+    public void setStartTime(long timeMillis, Game game) {
+        game.setStartTimeMillis(timeMillis);
+        saveGame(game);
     }
 
 
     /**
-     * Helper function that returns a random word from list and deletes it from list
+     * Helper function that draws a random word from the deck of the game
      *
-     * @param words The list of words
-     * @return random word from list
+     * @param game The game to draw from
+     * @return random word from the deck
      */
-    public String chooseWordAtRandom(List<String> words) {
-        String currentWord = words.get(rand.nextInt(words.size()));
-        words.remove(currentWord);
-        return currentWord;
+    public String drawWord(Game game) {
+        return game.drawWord(rand.nextInt(Integer.bitCount(game.getRemainingWords())));
     }
 
     public void updateScores(Game game){
@@ -387,134 +665,186 @@ public class GameService{
     }
 
     void updateUserDatabase(Game game){
-        for(Player player: game.getPlayers()){
-            Optional<User> optionalUser = userRepository.findById(player.getId());
-            if (optionalUser.isPresent()) {
-                User user = optionalUser.get();
-                user.setScore(user.getScore() + player.getScore());
-                userRepository.saveAndFlush(user);
+        GameCommandEvent event = GameCommandEvent.start("updateUserDatabase");
+        try {
+            for(Player player: game.getPlayers()){
+                Optional<User> optionalUser = userRepository.findById(player.getId());
+                if (optionalUser.isPresent()) {
+                    User user = optionalUser.get();
+                    user.setScore(user.getScore() + player.getScore());
+                    userRepository.saveAndFlush(user);
+                }
             }
         }
-
+        finally {
+            event.end(game);
+        }
     }
 
 
 
     /**
-     * Central timer logic for each game. Sets timer for each state,
-     * If state is complete before the timer ends, the game transitions into the next state with a new timer.
-     * Timer also takes care of all the logic set up for the next state if no user input was entered
+     * One tick of the timer of a game, done every second while the game runs.
+     * Moves the game on once the time of its state is up and takes care of what the players did not do in time.
+     * The {@link GameCoordinator} runs it in one transaction, a conflict rolls back the whole tick and the next
+     * tick tries again.
      *
-     * @param g - takes a game instance as input
+     * @param g the game, it is reloaded first
+     * @return the updated game, null once the game has ended and was removed
      */
-    public void timer(Game g) {
-        final Game[] game = {g};
-        TimerTask timerTask = new TimerTask() {
-            @Override
-            public void run() {
-                game[0] = getUpdatedGame(game[0]);
-                game[0].setTime(TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()) - game[0].getStartTimeSeconds());
-                //PickwordState
-                if(game[0].getTime() >= PICK_WORD_TIME && game[0].getRoundsPlayed() <= game[0].getRounds() && !getCancel(game[0]) && game[0].getGameState().equals(GameState.PICK_WORD_STATE)){
-                    game[0].getTimer().cancel();
-                    game[0].getTimer().purge();
-                    pickWord(game[0]);
-
-                    game[0].setGameState(getNextState(game[0]));
-                    game[0].setStartTimeSeconds(TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()));
-
-                    gameRepository.saveAndFlush(game[0]);
-                }
+    public Game tick(Game g) {
+        Game game = getUpdatedGame(g);
+        game.setTime(TimeUnit.MILLISECONDS.toSeconds(getTimeInState(game)));
+        //PickwordState
+        if(game.getTime() >= PICK_WORD_TIME && game.getRoundsPlayed() <= game.getRounds() && !getCancel(game) && game.getGameState().equals(GameState.PICK_WORD_STATE)){
+            recordTransitionLateness(game, PICK_WORD_TIME);
+            pickWord(game);
+
+            game.setGameState(getNextState(game));
+            game.setStartTimeMillis(gameClock.currentTimeMillis());
+
+            saveGame(game);
+        }
 
-                //EnterCluesState
-                else if(game[0].getTime() >= ENTER_CLUES_TIME && game[0].getRoundsPlayed() <= game[0].getRounds() && !getCancel(game[0]) && game[0].getGameState().equals(GameState.ENTER_CLUES_STATE)){
-                    game[0].getTimer().cancel();
-                    game[0].getTimer().purge();
-                    sendClue(game[0]);
-                    game[0].setGameState(getNextState(game[0]));
-                    game[0].setStartTimeSeconds(TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()));
-                    gameRepository.saveAndFlush(game[0]);
-                }
+        //EnterCluesState
+        else if(game.getTime() >= ENTER_CLUES_TIME && game.getRoundsPlayed() <= game.getRounds() && !getCancel(game) && game.getGameState().equals(GameState.ENTER_CLUES_STATE)){
+            recordTransitionLateness(game, ENTER_CLUES_TIME);
+            sendClue(game);
+            game.setGameState(getNextState(game));
+            game.setStartTimeMillis(gameClock.currentTimeMillis());
+            saveGame(game);
+        }
 
-                //VoteState
-                else if(game[0].getTime() >= VOTE_TIME && game[0].getRoundsPlayed() <= game[0].getRounds() && !getCancel(game[0]) && game[0].getGameState().equals(GameState.VOTE_ON_CLUES_STATE)){
-                    game[0].getTimer().cancel();
-                    game[0].getTimer().purge();
-                    vote(game[0]);
-                    game[0].setGameState(getNextState(game[0]));
-                    game[0].setStartTimeSeconds(TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()));
-                    gameRepository.saveAndFlush(game[0]);
-                }
-                //GuessState
-                else if(game[0].getTime() >= GUESS_TIME && game[0].getRoundsPlayed() <= game[0].getRounds() && !getCancel(game[0]) && game[0].getGameState().equals(GameState.ENTER_GUESS_STATE)){
-                    game[0].getTimer().cancel();
-                    game[0].getTimer().purge();
-                    game[0].setGuessCorrect(false);
-                    game[0].setGameState(getNextState(game[0]));
-                    updateScores(game[0]);
-                    guesserScore(game[0], GUESS_TIME);
-
-                    game[0].setStartTimeSeconds(TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()));
-                    gameRepository.saveAndFlush(game[0]);
-                }
-                //TransitionState
-                else if(game[0].getTime() >= TRANSITION_TIME && game[0].getRoundsPlayed() <= game[0].getRounds() && !getCancel(game[0]) && game[0].getGameState().equals(GameState.TRANSITION_STATE)){
-                    game[0].getTimer().cancel();
-                    game[0].getTimer().purge();
-                    startNewRound(game[0]);
-                    if(game[0].getRoundsPlayed() > game[0].getRounds()){
-                        game[0].setGameState(GameState.END_GAME_STATE);
-                        game[0].setRoundsPlayed(game[0].getRounds());
-                    } else {
-                        game[0].setGameState(getNextState(game[0]));
-                    }
-                    game[0].setStartTimeSeconds(TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()));
-                    gameRepository.saveAndFlush(game[0]);
-                }
+        //VoteState
+        else if(game.getTime() >= VOTE_TIME && game.getRoundsPlayed() <= game.getRounds() && !getCancel(game) && game.getGameState().equals(GameState.VOTE_ON_CLUES_STATE)){
+            recordTransitionLateness(game, VOTE_TIME);
+            vote(game);
+            game.setGameState(getNextState(game));
+            game.setStartTimeMillis(gameClock.currentTimeMillis());
+            saveGame(game);
+        }
+        //GuessState
+        else if(game.getTime() >= GUESS_TIME && game.getRoundsPlayed() <= game.getRounds() && !getCancel(game) && game.getGameState().equals(GameState.ENTER_GUESS_STATE)){
+            recordTransitionLateness(game, GUESS_TIME);
+            game.setGuessCorrect(false);
+            game.setGameState(getNextState(game));
+            updateScores(game);
+            guesserScore(game, TimeUnit.SECONDS.toMillis(GUESS_TIME));
+
+            game.setStartTimeMillis(gameClock.currentTimeMillis());
+            saveGame(game);
+        }
+        //TransitionState
+        else if(game.getTime() >= TRANSITION_TIME && game.getRoundsPlayed() <= game.getRounds() && !getCancel(game) && game.getGameState().equals(GameState.TRANSITION_STATE)){
+            recordTransitionLateness(game, TRANSITION_TIME);
+            startNewRound(game);
+            if(game.getRoundsPlayed() > game.getRounds()){
+                game.setGameState(GameState.END_GAME_STATE);
+                game.setRoundsPlayed(game.getRounds());
+            } else {
+                game.setGameState(getNextState(game));
+            }
+            game.setStartTimeMillis(gameClock.currentTimeMillis());
+            saveGame(game);
+        }
 
-                //EndGameState
-                else if (game[0].getTime() >= END_TIME && !getCancel(game[0]) && game[0].getGameState().equals(GameState.END_GAME_STATE)){
-                    game[0].getTimer().cancel();
-                    game[0].getTimer().purge();
-                    g.getTimer().cancel();
-                    g.getTimer().purge();
-
-                    updateUserDatabase(game[0]);
-                    Lobby currentLobby = getUpdatedLobby(game[0].getLobbyId());
-                    currentLobby.setGameIsStarted(false);
-                    lobbyRepository.saveAndFlush(currentLobby);
-
-                    LobbyScore lobbyScore = new LobbyScore();
-                    lobbyScore.setLobbyName(game[0].getLobbyName());
-                    lobbyScore.setScore(game[0].getOverallScore());
-                    lobbyScore.setPlayersIdInLobby(game[0].getPlayers());
-                    lobbyScore.setDate(new Date());
-                    lobbyScoreRepository.saveAndFlush(lobbyScore);
-
-                    for(Player p: game[0].getPlayers()){
-                        p.setScore(0);
-                    }
-                    playerRepository.saveAll(game[0].getPlayers());
+        //EndGameState
+        else if (game.getTime() >= END_TIME && !getCancel(game) && game.getGameState().equals(GameState.END_GAME_STATE)){
+            recordTransitionLateness(game, END_TIME);
+            endGame(game);
+            return null;
+        }
+        //player input cancels timer
+        else if (getCancel(game) && game.getRoundsPlayed() <= game.getRounds() && !game.getGameState().equals(GameState.END_GAME_STATE)) {
+            game = getUpdatedGame(game);
+            game.setStartTimeMillis(gameClock.currentTimeMillis());
+            game.getTimer().setCancel(false);
+            saveGame(game);
+        }
+        return game;
+    }
 
-                    game[0].setPlayers(null);
-                    game[0].setCurrentGuesser(null);
-                    gameRepository.saveAndFlush(game[0]);
-                    gameRepository.delete(game[0]);
-                    gameRepository.flush();
-                }
-                //player input cancels timer
-                else if (getCancel(game[0]) && game[0].getRoundsPlayed() <= game[0].getRounds() && !game[0].getGameState().equals(GameState.END_GAME_STATE)) {
-                    game[0].getTimer().cancel();
-                    game[0] = getUpdatedGame(game[0]);
-                    game[0].setStartTimeSeconds(TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()));
-                    game[0].getTimer().setCancel(false);
-                    gameRepository.saveAndFlush(game[0]);
-                }
+    /**
+     * Ends the game: adds the scores to the users, frees the lobby, stores the score of the lobby, archives the game
+     * and removes it. Must run in one transaction, so the scores are only added once the whole game is removed.
+     */
+    public void endGame(Game game) {
+        wordProfiles.remove(game.getLobbyId());
+        updateUserDatabase(game);
+        Lobby currentLobby = getUpdatedLobby(game.getLobbyId());
+        currentLobby.setGameIsStarted(false);
+        lobbyRepository.saveAndFlush(currentLobby);
+        lobbyDirectory.update(currentLobby);
+
+        LobbyScore lobbyScore = new LobbyScore();
+        lobbyScore.setLobbyName(game.getLobbyName());
+        lobbyScore.setScore(game.getOverallScore());
+        lobbyScore.setPlayersIdInLobby(game.getPlayers());
+        lobbyScore.setDate(new Date());
+        lobbyScoreRepository.saveAndFlush(lobbyScore);
+        gameArchiveService.archive(game, lobbyScore.getScoreId());
+
+        for(Player p: game.getPlayers()){
+            p.setScore(0);
+        }
+        playerRepository.saveAll(game.getPlayers());
+
+        game.setPlayers(null);
+        game.setCurrentGuesser(null);
+        saveGame(game);
+        gameRepository.delete(game);
+        gameRepository.flush();
+        stateVersions.remove(game.getLobbyId());
+        endPhase(game.getLobbyId());
+        journal(game, JournalRecord.Type.ENDED, new long[]{game.getOverallScore()});
+        Long lobbyId = game.getLobbyId();
+        afterCommit(() -> eventBus.publish(lobbyId, DomainEvent.Type.GAME_ENDED, Collections.emptyMap()));
+    }
+
+    /**
+     * Removes a game nobody played or watched for the game idle time, together with its lobby and its players,
+     * so its timer, its caches and its rows are freed. The timer and the caches are only dropped once the removal
+     * is committed. Nothing is scored or archived, the chat of the lobby is left to the orphan reaper.
+     *
+     * @return the number of removed players, -1 if the lobby has no game
+     * @throws NotOwnerException if another node runs the game
+     */
+    public int abandonGame(Long lobbyId) {
+        Optional<Game> optionalGame = gameRepository.findById(lobbyId);
+        if(optionalGame.isEmpty()) {
+            return -1;
+        }
+        Game game = optionalGame.get();
+        gameLeases.fence(game);
+        Optional<Lobby> lobby = lobbyRepository.findById(lobbyId);
+        if(lobby.isPresent()) {
+            for(User user : lobby.get().getInvitedUsers()) {
+                user.getLobbyInvites().remove(lobby.get());
             }
-        };
-        if(game[0].getRoundsPlayed() <= game[0].getRounds()) {
-            game[0].getTimer().schedule(timerTask, 0, 1000);
+            lobbyRepository.delete(lobby.get());
+            lobbyRepository.flush();
+            lobbyDirectory.remove(lobbyId);
         }
+        List<Player> players = new ArrayList<>(game.getPlayers());
+        // unlinked first, like in endGame, so the game row goes before the players it refers to
+        game.setPlayers(null);
+        game.setCurrentGuesser(null);
+        saveGame(game);
+        gameRepository.delete(game);
+        gameRepository.flush();
+        playerRepository.deleteAll(players);
+        playerRepository.flush();
+        // if the removal rolls back, e.g. because a tick wrote the game meanwhile, the game keeps its timer
+        afterCommit(() -> {
+            gameScheduler.stop(lobbyId);
+            wordProfiles.remove(lobbyId);
+            stateVersions.remove(lobbyId);
+            endPhase(lobbyId);
+            gameLeases.release(lobbyId);
+            gameJournal.forget(lobbyId);
+            eventBus.publish(lobbyId, DomainEvent.Type.GAME_ENDED, Collections.emptyMap());
+        });
+        return players.size();
     }
 
     public Lobby getUpdatedLobby(Long lobbyId) {
@@ -576,76 +906,86 @@ public class GameService{
     }
 
     public void generateCluesForBots(Game game) {
-        Lobby lobby;
-        Optional<Lobby> foundLobby = lobbyRepository.findByLobbyId(game.getLobbyId());
-        if(foundLobby.isPresent()) {
-            lobby = foundLobby.get();
-        }
-        else { return; }
-        String uri;
-        // The api call is a bit different if the current word consists of two separate words
-        String[] split = game.getCurrentWord().split(" ");
-        if(split.length == 1) {
-            uri = String.format("https://api.datamuse.com/words?ml=%s", split[0]);
-        }
-        else if(split.length == 2) {
-            uri = String.format("https://api.datamuse.com/words?ml=%s+%s", split[0], split[1]);
-        }
-        else { return; }
-        RestTemplate restTemplate = new RestTemplate();
-        String result = restTemplate.getForObject(uri, String.class);
-        // In the case of a game with 3 players, a bot submits two clues instead of one
-        int amountOfClues = (game.isSpecialGame() ? lobby.getCurrentNumBots()*2 : lobby.getCurrentNumBots());
-        ObjectMapper objectMapper = new ObjectMapper();
+        GameCommandEvent event = GameCommandEvent.start("generateCluesForBots");
         try {
-            List<APIResponse> response = objectMapper.readValue(result, new TypeReference<>() {
-            });
-            Iterator<APIResponse> iterator = response.iterator();
-            for(int i = 0; i < amountOfClues; i++) {
-                while(iterator.hasNext()) {
-                    APIResponse apiResponse = iterator.next();
-                    String potentialClue = apiResponse.getWord();
-                    if(nlp.checkClue(potentialClue, game.getCurrentWord())) {
-                        Clue clueFromBot = new Clue();
-                        clueFromBot.setPlayerId(0L);
-                        clueFromBot.setActualClue(potentialClue);
-                        if(!game.getEnteredClues().contains(clueFromBot)) {
-                            game.getEnteredClues().add(clueFromBot);
-                            clueRepository.saveAndFlush(clueFromBot);
-                            break;
+            Lobby lobby;
+            Optional<Lobby> foundLobby = lobbyRepository.findByLobbyId(game.getLobbyId());
+            if(foundLobby.isPresent()) {
+                lobby = foundLobby.get();
+            }
+            else { return; }
+            if(lobby.getCurrentNumBots() == 0) { return; }
+            // The api call is a bit different if the current word consists of two separate words
+            String[] split = game.getCurrentWord().split(" ");
+            if(split.length > 2) { return; }
+            long start = System.nanoTime();
+            String result = datamuseClient.findWordsMeaningLike(split);
+            metricsRegistry.record(BOT_CLUES_LATENCY, System.nanoTime() - start);
+            // In the case of a game with 3 players, a bot submits two clues instead of one
+            int amountOfClues = (game.isSpecialGame() ? lobby.getCurrentNumBots()*2 : lobby.getCurrentNumBots());
+            ObjectMapper objectMapper = new ObjectMapper();
+            try {
+                List<APIResponse> response = objectMapper.readValue(result, new TypeReference<>() {
+                });
+                Iterator<APIResponse> iterator = response.iterator();
+                for(int i = 0; i < amountOfClues; i++) {
+                    while(iterator.hasNext()) {
+                        APIResponse apiResponse = iterator.next();
+                        String potentialClue = apiResponse.getWord();
+                        if(checkClue(potentialClue, game.getCurrentWord())) {
+                            Clue clueFromBot = new Clue();
+                            clueFromBot.setPlayerId(0L);
+                            clueFromBot.setActualClue(potentialClue);
+                            if(!game.getEnteredClues().contains(clueFromBot)) {
+                                game.getEnteredClues().add(clueFromBot);
+                                clueRepository.saveAndFlush(clueFromBot);
+                                journal(game, JournalRecord.Type.CLUE, new long[]{0L, 0L}, potentialClue);
+                                break;
+                            }
                         }
                     }
                 }
+            } catch (JsonProcessingException ex) {
+                ex.getMessage();
             }
-        } catch (JsonProcessingException ex) {
-            ex.getMessage();
+        }
+        finally {
+            event.end(game);
         }
     }
 
     public boolean vote(Game game, Player player, List<String> invalidWords) {
-        if(!player.isVoted()) {
-            for(String s : invalidWords) {
-                Clue clue = new Clue();
-                clue.setPlayerId(player.getId());
-                clue.setActualClue(s);
-                game.addInvalidClue(clue);
+        GameCommandEvent event = GameCommandEvent.start("vote");
+        try {
+            if(!player.isVoted()) {
+                for(String s : invalidWords) {
+                    Clue clue = new Clue();
+                    clue.setPlayerId(player.getId());
+                    clue.setActualClue(s);
+                    game.addInvalidClue(clue);
+                }
+                player.setVoted(true);
+                markChanged(game);
+                journal(game, JournalRecord.Type.VOTE, new long[]{orZero(player.getId())}, invalidWords.toArray(new String[0]));
             }
-            player.setVoted(true);
-        }
-        else {
-            throw new UnauthorizedException("This player already sent his votes!");
-        }
-        int counter = 0;
-        for (Player p : game.getPlayers()){
-            if(p.isVoted())
-                counter++;
+            else {
+                throw new UnauthorizedException("This player already sent his votes!");
+            }
+            int counter = 0;
+            for (Player p : game.getPlayers()){
+                if(p.isVoted())
+                    counter++;
+            }
+            if(counter == game.getPlayers().size() - 1) {
+                checkVotes(game, (int)Math.ceil(((float)game.getPlayers().size() - 1 )/2));
+                game.getTimer().setCancel(true);
+                saveGame(game);
+            }
+            return allSent(game, counter);
         }
-        if(counter == game.getPlayers().size() - 1) {
-            checkVotes(game, (int)Math.ceil(((float)game.getPlayers().size() - 1 )/2));
-            game.getTimer().setCancel(true);
-            gameRepository.saveAndFlush(game);
+        finally {
+            event.end(game);
         }
-        return allSent(game, counter);
     }
 
     public void vote(Game game) {
@@ -655,7 +995,7 @@ public class GameService{
             }
         }
         checkVotes(game, (int)Math.ceil(((float)game.getPlayers().size() - 1 )/2));
-        gameRepository.saveAndFlush(game);
+        saveGame(game);
     }
 
     public void checkVotes(Game game, int threshold) {
@@ -687,7 +1027,7 @@ public class GameService{
         }
         //Remove duplicates from list of invalid clues to return to client
         game.setInvalidClues(actualInvalidClues);
-        gameRepository.saveAndFlush(game);
+        saveGame(game);
     }
 
     public void addClue(Clue clue, Game game) {
@@ -703,9 +1043,16 @@ public class GameService{
         else if(!game.getInvalidClues().contains(clue)) {
             game.addClue(clue);
         }
-        gameRepository.saveAndFlush(game);
+        saveGame(game);
     }
 
-}
-
+    private static class Phase {
+        private final GameState state;
+        private final long since;
 
+        Phase(GameState state, long since) {
+            this.state = state;
+            this.since = since;
+        }
+    }
+}
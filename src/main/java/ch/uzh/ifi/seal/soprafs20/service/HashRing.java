@@ -0,0 +1,89 @@
+package ch.uzh.ifi.seal.soprafs20.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Consistent hash ring that assigns every lobby to one server node. Each node is placed on the ring at many
+ * points (virtual nodes), a lobby belongs to the node of the first point at or after the lobby's hash.
+ * When a node joins or leaves, only the lobbies next to its points move, about 1/n of them, all others
+ * keep their node. The ring is immutable, a changed set of nodes builds a new ring.
+ */
+public final class HashRing {
+    private final Set<String> nodes;
+    // sorted positions of all virtual nodes, owners[i] is the node placed at points[i]
+    private final long[] points;
+    private final String[] owners;
+
+    public HashRing(Collection<String> nodes, int virtualNodes) {
+        this.nodes = Collections.unmodifiableSet(new TreeSet<>(nodes));
+        int perNode = Math.max(virtualNodes, 1);
+        List<Point> ring = new ArrayList<>(this.nodes.size() * perNode);
+        for(String node : this.nodes) {
+            for(int i = 0; i < perNode; i++) {
+                ring.add(new Point(hash(node + "#" + i), node));
+            }
+        }
+        ring.sort(Comparator.comparingLong((Point p) -> p.position).thenComparing(p -> p.node));
+        this.points = new long[ring.size()];
+        this.owners = new String[ring.size()];
+        for(int i = 0; i < ring.size(); i++) {
+            points[i] = ring.get(i).position;
+            owners[i] = ring.get(i).node;
+        }
+    }
+
+    /**
+     * @return the node the lobby belongs to, null if the ring has no nodes
+     */
+    public String ownerOf(long lobbyId) {
+        if(points.length == 0) {
+            return null;
+        }
+        int index = Arrays.binarySearch(points, mix(lobbyId));
+        if(index < 0) {
+            index = -index - 1;
+        }
+        return owners[index == points.length ? 0 : index];
+    }
+
+    public Set<String> getNodes() {
+        return nodes;
+    }
+
+    /**
+     * 64 bit FNV-1a of the UTF-8 bytes, mixed so nearby names end up far apart. Unlike String.hashCode
+     * it spreads the points evenly over all 64 bits and is the same on every node.
+     */
+    static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for(byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    /**
+     * Finalizer of MurmurHash3, spreads consecutive lobby ids over the whole ring
+     */
+    static long mix(long value) {
+        long h = value;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static class Point {
+        private final long position;
+        private final String node;
+
+        private Point(long position, String node) {
+            this.position = position;
+            this.node = node;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package ch.uzh.ifi.seal.soprafs20.service;
+
+import ch.uzh.ifi.seal.soprafs20.exceptions.NotOwnerException;
+import ch.uzh.ifi.seal.soprafs20.metrics.MetricsRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Removes the lobbies and games whose activity deadline passed: a game all players left is torn down with its
+ * lobby right away instead of its timer running through every round, a lobby nobody uses is removed with its
+ * players. Eviction that fails, e.g. because a tick of the game wrote it at the same time, is tried again
+ * after the next idle time.
+ */
+@Component
+public class IdleLobbyEvictor {
+    private static final String RECLAIMED = "activity.reclaimed.";
+
+    private final Logger log = LoggerFactory.getLogger(IdleLobbyEvictor.class);
+
+    private final ActivityTracker activityTracker;
+    private final GameService gameService;
+    private final LobbyService lobbyService;
+    private final MetricsRegistry metricsRegistry;
+
+    public IdleLobbyEvictor(ActivityTracker activityTracker, GameService gameService, LobbyService lobbyService,
+                            MetricsRegistry metricsRegistry) {
+        this.activityTracker = activityTracker;
+        this.gameService = gameService;
+        this.lobbyService = lobbyService;
+        this.metricsRegistry = metricsRegistry;
+        activityTracker.subscribe(this::evict);
+    }
+
+    /**
+     * Removes the game of the lobby, or the lobby itself if it has no game
+     */
+    void evict(Long lobbyId) {
+        boolean game = true;
+        try {
+            int players = gameService.abandonGame(lobbyId);
+            if(players < 0) {
+                game = false;
+                players = lobbyService.evictIdleLobby(lobbyId);
+            }
+            if(players >= 0) {
+                if(game) {
+                    metricsRegistry.increment(RECLAIMED + "games");
+                    metricsRegistry.increment(RECLAIMED + "timers");
+                }
+                metricsRegistry.increment(RECLAIMED + "lobbies");
+                metricsRegistry.add(RECLAIMED + "players", players);
+                log.info(String.format("Removed the idle %s of lobby %d and its %d players",
+                        game ? "game" : "lobby", lobbyId, players));
+            }
+        }
+        catch (NotOwnerException e) {
+            // the node that runs the game sees its activity and evicts it
+        }
+        catch (RuntimeException e) {
+            log.warn(String.format("Could not remove the idle lobby %d: %s", lobbyId, e.getMessage()));
+            if(game) {
+                activityTracker.gameStarted(lobbyId);
+            }
+            else {
+                activityTracker.polled(lobbyId, null);
+            }
+        }
+    }
+}
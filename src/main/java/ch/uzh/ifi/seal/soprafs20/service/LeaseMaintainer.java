@@ -0,0 +1,60 @@
+package ch.uzh.ifi.seal.soprafs20.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the heartbeat of this node and the renewal of its game leases on a thread of their own.
+ * The jobs on Spring's scheduler force the journal to disk and connect to the other nodes, a renewal that
+ * waited behind them could come after the leases ran out and the games would move from node to node.
+ */
+@Component
+public class LeaseMaintainer {
+    private final Logger log = LoggerFactory.getLogger(LeaseMaintainer.class);
+
+    private final ClusterMembership clusterMembership;
+    private final GameCoordinator gameCoordinator;
+    private final ScheduledThreadPoolExecutor executor;
+
+    public LeaseMaintainer(ClusterMembership clusterMembership, GameCoordinator gameCoordinator,
+                           @Value("${games.lease.renew-interval-ms:1000}") long intervalMillis) {
+        this.clusterMembership = clusterMembership;
+        this.gameCoordinator = gameCoordinator;
+        this.executor = new ScheduledThreadPoolExecutor(1, task -> {
+            Thread thread = new Thread(task, "lease-maintainer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.executor.scheduleWithFixedDelay(this::maintain, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Announces this node, then renews, hands over and takes over the leases. A failure of one is logged and
+     * does not keep the other from running, the next run tries again.
+     */
+    void maintain() {
+        try {
+            clusterMembership.heartbeat();
+        }
+        catch (RuntimeException e) {
+            log.error(String.format("Heartbeat failed: %s", e.getMessage()), e);
+        }
+        try {
+            gameCoordinator.maintainLeases();
+        }
+        catch (RuntimeException e) {
+            log.error(String.format("Lease maintenance failed: %s", e.getMessage()), e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
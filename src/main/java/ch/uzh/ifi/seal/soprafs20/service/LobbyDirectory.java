@@ -0,0 +1,188 @@
+package ch.uzh.ifi.seal.soprafs20.service;
+
+import ch.uzh.ifi.seal.soprafs20.entity.Lobby;
+import ch.uzh.ifi.seal.soprafs20.rest.dto.LobbyGetDTO;
+import ch.uzh.ifi.seal.soprafs20.rest.mapper.DTOMapper;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Lobby Directory
+ * In-memory index of all lobbies used by the lobby browser, so that listing lobbies does not hit the database.
+ * Lobbies are indexed by their state (open, started, private) and by their number of free slots.
+ * LobbyService and GameService keep it up to date, changes made inside a transaction are applied after commit.
+ */
+@Component
+public class LobbyDirectory {
+    static final int MAX_SLOTS = 7;
+
+    private final ConcurrentSkipListMap<Long, Listing> listings = new ConcurrentSkipListMap<>();
+    private final NavigableSet<Long> openLobbies = new ConcurrentSkipListSet<>();
+    private final NavigableSet<Long> startedLobbies = new ConcurrentSkipListSet<>();
+    private final NavigableSet<Long> privateLobbies = new ConcurrentSkipListSet<>();
+    // public lobbies that did not start yet and have at least one free slot
+    private final NavigableSet<Long> joinableLobbies = new ConcurrentSkipListSet<>();
+    // index = number of free slots
+    private final List<NavigableSet<Long>> lobbiesByFreeSlots = new ArrayList<>();
+
+    public LobbyDirectory() {
+        for(int i = 0; i <= MAX_SLOTS; i++) {
+            lobbiesByFreeSlots.add(new ConcurrentSkipListSet<>());
+        }
+    }
+
+    /**
+     * Adds the lobby to the directory or replaces its current listing. The listing is taken once the change is
+     * committed, a listing of an older version of the lobby than the one in the directory is dropped, so
+     * transactions committing close together cannot leave the directory behind.
+     */
+    public void update(Lobby lobby) {
+        if(lobby.getLobbyId() == null) {
+            return;
+        }
+        afterCommit(() -> put(new Listing(lobby)));
+    }
+
+    public void remove(Long lobbyId) {
+        afterCommit(() -> delete(lobbyId));
+    }
+
+    /**
+     * Returns a page of listings ordered by lobby id
+     *
+     * @param joinableOnly only return public lobbies that did not start yet and have a free slot
+     * @param cursor only lobbies with an id greater than the cursor are returned
+     * @param limit maximum number of listings
+     */
+    public List<LobbyGetDTO> list(boolean joinableOnly, long cursor, int limit) {
+        NavigableSet<Long> ids = joinableOnly ? joinableLobbies : listings.keySet();
+        List<LobbyGetDTO> page = new ArrayList<>();
+        for(Long lobbyId : ids.tailSet(cursor, false)) {
+            if(page.size() >= limit) {
+                break;
+            }
+            Listing listing = listings.get(lobbyId);
+            if(listing != null && (!joinableOnly || listing.isJoinable())) {
+                page.add(listing.lobbyGetDTO);
+            }
+        }
+        return page;
+    }
+
+    /**
+     * @return ids of the joinable lobbies with exactly the given number of free slots
+     */
+    public NavigableSet<Long> getJoinableLobbies(int freeSlots) {
+        if(freeSlots < 1 || freeSlots > MAX_SLOTS) {
+            return Collections.emptyNavigableSet();
+        }
+        return Collections.unmodifiableNavigableSet(lobbiesByFreeSlots.get(freeSlots));
+    }
+
+    public int getNumberOfOpenLobbies() { return openLobbies.size(); }
+
+    public int getNumberOfStartedLobbies() { return startedLobbies.size(); }
+
+    public int getNumberOfPrivateLobbies() { return privateLobbies.size(); }
+
+    public void clear() {
+        for(Long lobbyId : listings.keySet()) {
+            delete(lobbyId);
+        }
+    }
+
+    private void afterCommit(Runnable change) {
+        if(TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    change.run();
+                }
+            });
+        }
+        else {
+            change.run();
+        }
+    }
+
+    private synchronized void put(Listing listing) {
+        Listing old = listings.get(listing.lobbyId);
+        if(old != null) {
+            if(listing.version < old.version) {
+                return;
+            }
+            unindex(old);
+        }
+        listings.put(listing.lobbyId, listing);
+        index(listing);
+    }
+
+    private synchronized void delete(Long lobbyId) {
+        Listing old = listings.remove(lobbyId);
+        if(old != null) {
+            unindex(old);
+        }
+    }
+
+    private void index(Listing listing) {
+        if(listing.isPrivate) {
+            privateLobbies.add(listing.lobbyId);
+        }
+        else if(listing.started) {
+            startedLobbies.add(listing.lobbyId);
+        }
+        else {
+            openLobbies.add(listing.lobbyId);
+        }
+        if(listing.isJoinable()) {
+            joinableLobbies.add(listing.lobbyId);
+            lobbiesByFreeSlots.get(listing.freeSlots).add(listing.lobbyId);
+        }
+    }
+
+    private void unindex(Listing listing) {
+        privateLobbies.remove(listing.lobbyId);
+        startedLobbies.remove(listing.lobbyId);
+        openLobbies.remove(listing.lobbyId);
+        joinableLobbies.remove(listing.lobbyId);
+        lobbiesByFreeSlots.get(listing.freeSlots).remove(listing.lobbyId);
+    }
+
+    /**
+     * Immutable snapshot of a lobby taken when a change of it was committed
+     */
+    private static class Listing {
+        private final Long lobbyId;
+        private final long version;
+        private final boolean isPrivate;
+        private final boolean started;
+        private final int freeSlots;
+        private final LobbyGetDTO lobbyGetDTO;
+
+        private Listing(Lobby lobby) {
+            this.lobbyId = lobby.getLobbyId();
+            this.version = lobby.getVersion();
+            this.isPrivate = lobby.isPrivate();
+            this.started = lobby.isGameStarted();
+            int occupied = valueOf(lobby.getCurrentNumPlayers()) + valueOf(lobby.getCurrentNumBots());
+            this.freeSlots = Math.max(0, Math.min(MAX_SLOTS, valueOf(lobby.getMaxPlayersAndBots()) - occupied));
+            this.lobbyGetDTO = DTOMapper.INSTANCE.convertEntityToLobbyGetDTO(lobby);
+        }
+
+        private static int valueOf(Integer value) {
+            return value == null ? 0 : value;
+        }
+
+        private boolean isJoinable() {
+            return !isPrivate && !started && freeSlots > 0;
+        }
+    }
+}
@@ -10,11 +10,15 @@ import ch.uzh.ifi.seal.soprafs20.exceptions.NotFoundException;
 import ch.uzh.ifi.seal.soprafs20.exceptions.UnauthorizedException;
 import ch.uzh.ifi.seal.soprafs20.repository.LobbyRepository;
 import ch.uzh.ifi.seal.soprafs20.repository.PlayerRepository;
+import ch.uzh.ifi.seal.soprafs20.rest.dto.LobbyGetDTO;
 import ch.uzh.ifi.seal.soprafs20.rest.dto.LobbyPutDTO;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -26,17 +30,44 @@ public class LobbyService {
 
     private final LobbyRepository lobbyRepository;
     private final PlayerRepository playerRepository;
+    private final LobbyDirectory lobbyDirectory;
+    private final ActivityTracker activityTracker;
 
     @Autowired
-    public LobbyService(LobbyRepository lobbyRepository,PlayerRepository playerRepository) {
+    public LobbyService(LobbyRepository lobbyRepository,PlayerRepository playerRepository, LobbyDirectory lobbyDirectory,
+                        ActivityTracker activityTracker) {
         this.lobbyRepository = lobbyRepository;
         this.playerRepository = playerRepository;
+        this.lobbyDirectory = lobbyDirectory;
+        this.activityTracker = activityTracker;
     }
 
     public List<Lobby> getLobbies() {
         return this.lobbyRepository.findAll();
     }
 
+    /**
+     * Returns a page of the lobby browser, served from the lobby directory without touching the database
+     *
+     * @param joinableOnly only list public lobbies that did not start yet and have a free slot
+     * @param cursor id of the last lobby of the previous page, 0 for the first page
+     * @param limit maximum number of lobbies on the page
+     */
+    public List<LobbyGetDTO> getLobbyListings(boolean joinableOnly, long cursor, int limit) {
+        return lobbyDirectory.list(joinableOnly, cursor, limit);
+    }
+
+    /**
+     * Fills the lobby directory with the lobbies that are already stored when the application starts
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void indexLobbies() {
+        lobbyDirectory.clear();
+        for(Lobby lobby : lobbyRepository.findAll()) {
+            lobbyDirectory.update(lobby);
+        }
+    }
+
     public Lobby getLobby(Long lobbyId){
         Lobby lobby;
         Optional<Lobby> optionalLobby = lobbyRepository.findById(lobbyId);
@@ -48,6 +79,13 @@ public class LobbyService {
         }
     }
 
+    /**
+     * Reads the lobby again, the slot updates of the repository do not change a lobby that is already loaded
+     */
+    private Lobby getFreshLobby(Long lobbyId) {
+        return lobbyRepository.findFreshById(lobbyId).orElseThrow(() -> new NotFoundException("Could not find lobby!"));
+    }
+
     public Lobby createLobby(Lobby newLobby, Player host){
         checkLobbyName(newLobby.getLobbyName());
         checkIfLobbyExists(newLobby);
@@ -62,6 +100,8 @@ public class LobbyService {
         newLobby.setCurrentNumBots(0);
         newLobby = lobbyRepository.save(newLobby);
         lobbyRepository.flush();
+        lobbyDirectory.update(newLobby);
+        activityTracker.commanded(newLobby.getLobbyId(), host.getToken());
         return newLobby;
     }
 
@@ -84,16 +124,16 @@ public class LobbyService {
             }
         }
         if(receivedValues.getNumberOfBots() != null) {
-            if((lobby.getCurrentNumPlayers() + lobby.getCurrentNumBots()) < lobby.getMaxPlayersAndBots()) {
-                lobby.setCurrentNumBots(receivedValues.getNumberOfBots());
-            }
-            else {
+            // checked and set in one statement, so it can not overshoot together with concurrent joins
+            if(lobbyRepository.setBots(lobby.getLobbyId(), receivedValues.getNumberOfBots()) == 0) {
                 throw new ConflictException("There are no more players or bots allowed in this lobby!");
             }
+            lobby.setCurrentNumBots(receivedValues.getNumberOfBots());
         }
         if(receivedValues.getRounds() != null && (receivedValues.getRounds() >= 3 || receivedValues.getRounds() <= 13)){
             lobby.setRounds(receivedValues.getRounds());
         }
+        lobbyDirectory.update(lobby);
         return lobby;
     }
 
@@ -113,7 +153,14 @@ public class LobbyService {
         }
     }
 
-    public void addPlayerToLobby(String playerToken, Player playerToAdd, Lobby lobby){
+    /**
+     * Adds a player to a lobby. The slot is taken with a compare-and-set on the slot counter of the lobby,
+     * which also serializes concurrent joins of the same lobby. The membership is then changed on a freshly
+     * loaded lobby, the passed lobby instance is only used for the early checks.
+     *
+     * @return the updated lobby
+     */
+    public Lobby addPlayerToLobby(String playerToken, Player playerToAdd, Lobby lobby){
         if(lobby.isGameStarted()){
             throw new ConflictException("Cant join the lobby, the game is already under way!");
         }
@@ -127,21 +174,64 @@ public class LobbyService {
             throw new ConflictException("Host cannot join their own lobby!");
         }
         checkIfLobbyIsFull(lobby);
-        lobby.addPlayerToLobby(playerToAdd);
-        lobby.setCurrentNumPlayers(lobby.getPlayersInLobby().size());
-        lobbyRepository.save(lobby);
+        if(lobbyRepository.reserveSlot(lobby.getLobbyId()) == 0) {
+            throw new ConflictException("Failed to join lobby: Sorry, the lobby is already full");
+        }
+        Lobby currentLobby = getFreshLobby(lobby.getLobbyId());
+        if(currentLobby.getPlayersInLobby().contains(playerToAdd)) {
+            // joined concurrently, the reserved slot is released by the rollback
+            throw new ConflictException("User is already in lobby!");
+        }
+        currentLobby.addPlayerToLobby(playerRepository.findById(playerToAdd.getId()).orElse(playerToAdd));
+        currentLobby.setCurrentNumPlayers(currentLobby.getPlayersInLobby().size());
+        lobbyRepository.saveAndFlush(currentLobby);
+        lobbyDirectory.update(currentLobby);
+        return currentLobby;
     }
 
-    public void removePlayerFromLobby(Player playerToRemove, Lobby lobby){
-        if(lobby.isGameStarted()){
+    /**
+     * Adds bots to a lobby that did not start yet, as many as fit into the free slots
+     *
+     * @return the number of bots that were added
+     */
+    public int addBots(Long lobbyId, int numberOfBots) {
+        Lobby lobby = getLobby(lobbyId);
+        if(lobby.isGameStarted()) {
+            throw new ConflictException("Cant add bots to the lobby, the game is already under way!");
+        }
+        int freeSlots = lobby.getMaxPlayersAndBots() - lobby.getCurrentNumPlayers() - lobby.getCurrentNumBots();
+        int added = Math.max(0, Math.min(freeSlots, numberOfBots));
+        if(added == 0 || lobbyRepository.addBots(lobbyId, added) == 0) {
+            return 0;
+        }
+        lobbyDirectory.update(getFreshLobby(lobbyId));
+        return added;
+    }
+
+    /**
+     * Removes a player from a lobby. Like a join, the slot counter is updated first with a compare-and-set
+     * and the membership is changed on a freshly loaded lobby.
+     */
+    public void removePlayerFromLobby(Player playerToRemove, Lobby staleLobby){
+        if(staleLobby.isGameStarted()){
             throw new ConflictException("Cannot leave lobby, game already started!");
         }
+        if(lobbyRepository.releaseSlot(staleLobby.getLobbyId()) == 0) {
+            // the lobby was removed, its game started or nobody is counted in it any more
+            if(getFreshLobby(staleLobby.getLobbyId()).isGameStarted()) {
+                throw new ConflictException("Cannot leave lobby, game already started!");
+            }
+            throw new ConflictException("Cannot leave lobby, there are no players left in it!");
+        }
+        Lobby lobby = getFreshLobby(staleLobby.getLobbyId());
         if(playerToRemove.getId().equals(lobby.getHostId())){
             //host leaves lobby and is alone
             if(lobby.getPlayersInLobby().size() == 1){
                 removeLobbyInviteFromAllUsers(lobby);
                 deletePlayer(playerToRemove);
                 lobbyRepository.delete(lobby);
+                lobbyDirectory.remove(lobby.getLobbyId());
+                activityTracker.forget(lobby.getLobbyId());
             }
             //host leaves lobby, so new host is chosen
             else{
@@ -152,11 +242,15 @@ public class LobbyService {
                 lobby.setHostToken(newHost.getToken());
                 lobby.setCurrentNumPlayers(lobby.getPlayersInLobby().size());
                 lobbyRepository.saveAndFlush(lobby);
+                lobbyDirectory.update(lobby);
+            }
+        } else {
+            if(lobby.getPlayersInLobby().remove(playerToRemove)) {
+                deletePlayer(playerToRemove);
             }
-        } else if(lobby.getPlayersInLobby().contains(playerToRemove)){
-            lobby.getPlayersInLobby().remove(playerToRemove);
-            deletePlayer(playerToRemove);
+            // also corrects the released slot if the player was not in the lobby
             lobby.setCurrentNumPlayers(lobby.getPlayersInLobby().size());
+            lobbyDirectory.update(lobby);
         }
     }
 
@@ -168,13 +262,20 @@ public class LobbyService {
 
     public void kickPlayers(Lobby lobby, Player playerToKick){
         if(playerToKick.getId() == 0L) {
-            lobby.setCurrentNumBots(lobby.getCurrentNumBots() - 1);
+            if(lobbyRepository.releaseBot(lobby.getLobbyId()) > 0) {
+                lobby.setCurrentNumBots(lobby.getCurrentNumBots() - 1);
+            }
+            lobbyDirectory.update(lobby);
+            return;
         }
         //remove user from lobby but dont remove lobby leader
-        if(!playerToKick.getId().equals(lobby.getHostId())){
-            lobby.getPlayersInLobby().remove(playerToKick);
-            deletePlayer(playerToKick);
-            lobby.setCurrentNumPlayers(lobby.getPlayersInLobby().size());
+        if(!playerToKick.getId().equals(lobby.getHostId()) && lobbyRepository.releaseSlot(lobby.getLobbyId()) > 0){
+            Lobby currentLobby = getFreshLobby(lobby.getLobbyId());
+            if(currentLobby.getPlayersInLobby().remove(playerToKick)) {
+                deletePlayer(playerToKick);
+            }
+            currentLobby.setCurrentNumPlayers(currentLobby.getPlayersInLobby().size());
+            lobbyDirectory.update(currentLobby);
         }
     }
 
@@ -184,6 +285,28 @@ public class LobbyService {
         }
     }
 
+    /**
+     * Removes a lobby nobody used for the lobby idle time, together with its players. The chat of the lobby is
+     * left to the orphan reaper.
+     *
+     * @return the number of removed players, -1 if the lobby is gone or its game started
+     */
+    public int evictIdleLobby(Long lobbyId) {
+        Optional<Lobby> optionalLobby = lobbyRepository.findById(lobbyId);
+        if(optionalLobby.isEmpty() || optionalLobby.get().isGameStarted()) {
+            return -1;
+        }
+        Lobby lobby = optionalLobby.get();
+        List<Player> players = new ArrayList<>(lobby.getPlayersInLobby());
+        removeLobbyInviteFromAllUsers(lobby);
+        lobbyRepository.delete(lobby);
+        lobbyRepository.flush();
+        playerRepository.deleteAll(players);
+        // applied once the removal is committed, a lobby whose removal rolled back stays listed
+        lobbyDirectory.remove(lobbyId);
+        return players.size();
+    }
+
     public void deletePlayer(Player player) {
         try {
             playerRepository.delete(player);
@@ -0,0 +1,276 @@
+package ch.uzh.ifi.seal.soprafs20.service;
+
+import ch.uzh.ifi.seal.soprafs20.entity.Lobby;
+import ch.uzh.ifi.seal.soprafs20.entity.Player;
+import ch.uzh.ifi.seal.soprafs20.entity.User;
+import ch.uzh.ifi.seal.soprafs20.exceptions.ConflictException;
+import ch.uzh.ifi.seal.soprafs20.exceptions.NotFoundException;
+import ch.uzh.ifi.seal.soprafs20.exceptions.UnauthorizedException;
+import ch.uzh.ifi.seal.soprafs20.rest.dto.MatchmakingStatsGetDTO;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Matchmaking Service
+ * Users enqueue a ticket and the matcher places them into public lobbies that did not start yet, the fullest lobby first.
+ * Lobbies that received matched players but are still too small to start a game after a configurable wait are
+ * back-filled with bots. Assignments are published on the tickets which the clients poll.
+ *
+ * Not @Transactional on purpose: every join runs in its own LobbyService transaction, so one rejected join
+ * does not roll back the placements of the other waiting users.
+ */
+@Service
+public class MatchmakingService {
+    private static final int MIN_PLAYERS_AND_BOTS = 3;
+    private static final long RESOLVED_TICKET_TTL = TimeUnit.MINUTES.toMillis(5);
+
+    private final LobbyService lobbyService;
+    private final UserService userService;
+    private final PlayerService playerService;
+    private final LobbyDirectory lobbyDirectory;
+    private final long botBackfillMillis;
+
+    private final Queue<MatchmakingTicket> incoming = new ConcurrentLinkedQueue<>();
+    // only touched by match(), which is synchronized
+    private final Deque<MatchmakingTicket> waiting = new ArrayDeque<>();
+    private final Map<Long, MatchmakingTicket> tickets = new ConcurrentHashMap<>();
+    // lobbyId -> time the first matched player was placed into it
+    private final Map<Long, Long> matchedLobbies = new ConcurrentHashMap<>();
+
+    private final long startedAt = System.currentTimeMillis();
+    private final AtomicLong matched = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong botsBackfilled = new AtomicLong();
+    private final AtomicLong totalTimeToMatch = new AtomicLong();
+    private final AtomicLong maxTimeToMatch = new AtomicLong();
+
+    @Autowired
+    public MatchmakingService(LobbyService lobbyService, UserService userService, PlayerService playerService,
+                              LobbyDirectory lobbyDirectory, @Value("${matchmaking.bot-backfill-seconds:30}") long botBackfillSeconds) {
+        this.lobbyService = lobbyService;
+        this.userService = userService;
+        this.playerService = playerService;
+        this.lobbyDirectory = lobbyDirectory;
+        this.botBackfillMillis = TimeUnit.SECONDS.toMillis(botBackfillSeconds);
+    }
+
+    /**
+     * Puts a user into the matchmaking queue
+     *
+     * @return the ticket of the user
+     */
+    public MatchmakingTicket enqueue(Long userId, String token) {
+        User user = userService.getUser(userId);
+        if(!user.getToken().equals(token)) {
+            throw new UnauthorizedException("You are not allowed to enter matchmaking in the name of this user!");
+        }
+        MatchmakingTicket ticket = new MatchmakingTicket(userId, token, System.currentTimeMillis());
+        MatchmakingTicket existing = tickets.putIfAbsent(userId, ticket);
+        if(existing != null) {
+            if(existing.isWaiting()) {
+                throw new ConflictException("This user is already waiting for a lobby!");
+            }
+            tickets.put(userId, ticket);
+        }
+        incoming.add(ticket);
+        return ticket;
+    }
+
+    public MatchmakingTicket getTicket(Long userId, String token) {
+        MatchmakingTicket ticket = tickets.get(userId);
+        if(ticket == null) {
+            throw new NotFoundException("This user is not in matchmaking!");
+        }
+        if(!ticket.getToken().equals(token)) {
+            throw new UnauthorizedException("You are not allowed to access the matchmaking of this user!");
+        }
+        return ticket;
+    }
+
+    /**
+     * Removes the ticket of a user, a waiting ticket is skipped by the matcher from then on
+     */
+    public void cancel(Long userId, String token) {
+        MatchmakingTicket ticket = getTicket(userId, token);
+        tickets.remove(userId, ticket);
+    }
+
+    /**
+     * One run of the matcher: places waiting users, back-fills bots and forgets old assignments
+     */
+    @Scheduled(fixedDelayString = "${matchmaking.interval-ms:200}")
+    public synchronized void match() {
+        MatchmakingTicket next;
+        while((next = incoming.poll()) != null) {
+            waiting.add(next);
+        }
+        int toProcess = waiting.size();
+        for(int i = 0; i < toProcess && hasJoinableLobby(); i++) {
+            MatchmakingTicket ticket = waiting.poll();
+            if(tickets.get(ticket.getUserId()) != ticket) {
+                // cancelled
+                continue;
+            }
+            if(!place(ticket)) {
+                waiting.add(ticket);
+            }
+        }
+        long now = System.currentTimeMillis();
+        backfillBots(now);
+        tickets.values().removeIf(ticket -> !ticket.isWaiting() && now - ticket.getResolvedAt() > RESOLVED_TICKET_TTL);
+    }
+
+    public MatchmakingStatsGetDTO getStats() {
+        MatchmakingStatsGetDTO stats = new MatchmakingStatsGetDTO();
+        long matchedCount = matched.get();
+        double uptimeSeconds = Math.max(1L, System.currentTimeMillis() - startedAt) / 1000.0;
+        stats.setWaiting(waitingCount());
+        stats.setMatched(matchedCount);
+        stats.setRejected(rejected.get());
+        stats.setBotsBackfilled(botsBackfilled.get());
+        stats.setMatchesPerSecond(matchedCount / uptimeSeconds);
+        stats.setAverageTimeToMatchMillis(matchedCount == 0 ? 0 : (double) totalTimeToMatch.get() / matchedCount);
+        stats.setMaxTimeToMatchMillis(maxTimeToMatch.get());
+        return stats;
+    }
+
+    private int waitingCount() {
+        int count = 0;
+        for(MatchmakingTicket ticket : tickets.values()) {
+            if(ticket.isWaiting()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private boolean hasJoinableLobby() {
+        for(int freeSlots = 1; freeSlots <= LobbyDirectory.MAX_SLOTS; freeSlots++) {
+            if(!lobbyDirectory.getJoinableLobbies(freeSlots).isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Tries to place the user of the ticket into the fullest joinable lobby. The user is only converted to a
+     * player once a lobby with room is picked, so a user that keeps waiting costs no player row per run.
+     *
+     * @return true if the ticket is resolved, false if it has to keep waiting
+     */
+    private boolean place(MatchmakingTicket ticket) {
+        User user;
+        try {
+            user = userService.getUser(ticket.getUserId());
+        }
+        catch (NotFoundException e) {
+            reject(ticket, e.getMessage());
+            return true;
+        }
+        if(!user.getToken().equals(ticket.getToken())) {
+            reject(ticket, "The user logged out in the meantime");
+            return true;
+        }
+        Player player = null;
+        // fewest free slots first, so lobbies fill up and can start
+        for(int freeSlots = 1; freeSlots <= LobbyDirectory.MAX_SLOTS; freeSlots++) {
+            for(Long lobbyId : lobbyDirectory.getJoinableLobbies(freeSlots)) {
+                Lobby lobby = joinableLobby(ticket, lobbyId);
+                if(lobby == null) {
+                    continue;
+                }
+                if(player == null) {
+                    try {
+                        player = playerService.convertUserToPlayer(user);
+                    }
+                    catch (ConflictException e) {
+                        reject(ticket, e.getMessage());
+                        return true;
+                    }
+                }
+                if(tryJoin(ticket, player, lobby)) {
+                    return true;
+                }
+            }
+        }
+        if(player != null) {
+            // every picked lobby filled up in the meantime
+            playerService.deletePlayer(player);
+        }
+        return false;
+    }
+
+    /**
+     * @return the lobby if the user of the ticket may join it and it has room, null otherwise
+     */
+    private Lobby joinableLobby(MatchmakingTicket ticket, Long lobbyId) {
+        try {
+            Lobby lobby = lobbyService.getLobby(lobbyId);
+            if(lobby.isPrivate() || lobby.isGameStarted() || lobby.getHostId().equals(ticket.getUserId())
+                    || lobby.getCurrentNumPlayers() + lobby.getCurrentNumBots() >= lobby.getMaxPlayersAndBots()) {
+                return null;
+            }
+            return lobby;
+        }
+        catch (NotFoundException e) {
+            return null;
+        }
+    }
+
+    private boolean tryJoin(MatchmakingTicket ticket, Player player, Lobby lobby) {
+        try {
+            lobbyService.addPlayerToLobby(ticket.getToken(), player, lobby);
+        }
+        catch (NotFoundException | ConflictException e) {
+            // lobby is gone or became full in the meantime
+            return false;
+        }
+        Long lobbyId = lobby.getLobbyId();
+        long now = System.currentTimeMillis();
+        ticket.matched(lobbyId, now);
+        matchedLobbies.putIfAbsent(lobbyId, now);
+        long timeToMatch = now - ticket.getEnqueuedAt();
+        matched.incrementAndGet();
+        totalTimeToMatch.addAndGet(timeToMatch);
+        maxTimeToMatch.accumulateAndGet(timeToMatch, Math::max);
+        return true;
+    }
+
+    private void reject(MatchmakingTicket ticket, String reason) {
+        ticket.rejected(reason, System.currentTimeMillis());
+        rejected.incrementAndGet();
+    }
+
+    /**
+     * Adds bots to lobbies that received matched players but are still too small to start a game after the wait
+     */
+    private void backfillBots(long now) {
+        Iterator<Map.Entry<Long, Long>> iterator = matchedLobbies.entrySet().iterator();
+        while(iterator.hasNext()) {
+            Map.Entry<Long, Long> entry = iterator.next();
+            if(now - entry.getValue() < botBackfillMillis) {
+                continue;
+            }
+            iterator.remove();
+            try {
+                Lobby lobby = lobbyService.getLobby(entry.getKey());
+                int missing = MIN_PLAYERS_AND_BOTS - lobby.getCurrentNumPlayers() - lobby.getCurrentNumBots();
+                if(!lobby.isGameStarted() && missing > 0) {
+                    botsBackfilled.addAndGet(lobbyService.addBots(entry.getKey(), missing));
+                }
+            }
+            catch (NotFoundException | ConflictException e) {
+                // lobby was deleted or started in the meantime, nothing to fill
+            }
+        }
+    }
+}
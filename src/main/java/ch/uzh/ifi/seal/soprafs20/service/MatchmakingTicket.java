@@ -0,0 +1,51 @@
+package ch.uzh.ifi.seal.soprafs20.service;
+
+import ch.uzh.ifi.seal.soprafs20.constant.MatchmakingStatus;
+
+/**
+ * A user waiting in the matchmaking queue. The matcher publishes the assignment by updating the ticket,
+ * clients read it by polling.
+ */
+public class MatchmakingTicket {
+    private final Long userId;
+    private final String token;
+    private final long enqueuedAt;
+    private volatile MatchmakingStatus status = MatchmakingStatus.WAITING;
+    private volatile Long lobbyId;
+    private volatile long resolvedAt;
+    private volatile String reason;
+
+    public MatchmakingTicket(Long userId, String token, long enqueuedAt) {
+        this.userId = userId;
+        this.token = token;
+        this.enqueuedAt = enqueuedAt;
+    }
+
+    public Long getUserId() { return userId; }
+
+    public String getToken() { return token; }
+
+    public long getEnqueuedAt() { return enqueuedAt; }
+
+    public MatchmakingStatus getStatus() { return status; }
+
+    public Long getLobbyId() { return lobbyId; }
+
+    public long getResolvedAt() { return resolvedAt; }
+
+    public String getReason() { return reason; }
+
+    public boolean isWaiting() { return status == MatchmakingStatus.WAITING; }
+
+    void matched(Long lobbyId, long time) {
+        this.lobbyId = lobbyId;
+        this.resolvedAt = time;
+        this.status = MatchmakingStatus.MATCHED;
+    }
+
+    void rejected(String reason, long time) {
+        this.reason = reason;
+        this.resolvedAt = time;
+        this.status = MatchmakingStatus.REJECTED;
+    }
+}
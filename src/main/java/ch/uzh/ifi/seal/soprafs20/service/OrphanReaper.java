@@ -0,0 +1,174 @@
+package ch.uzh.ifi.seal.soprafs20.service;
+
+import ch.uzh.ifi.seal.soprafs20.entity.Chat;
+import ch.uzh.ifi.seal.soprafs20.entity.Message;
+import ch.uzh.ifi.seal.soprafs20.entity.Player;
+import ch.uzh.ifi.seal.soprafs20.metrics.MetricsRegistry;
+import ch.uzh.ifi.seal.soprafs20.repository.ChatRepository;
+import ch.uzh.ifi.seal.soprafs20.repository.ClueRepository;
+import ch.uzh.ifi.seal.soprafs20.repository.MessageRepository;
+import ch.uzh.ifi.seal.soprafs20.repository.PlayerRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Deletes the rows nothing refers to any more: clues of earlier rounds, players that are in no lobby and no game,
+ * chats of lobbies that are gone together with their messages, and messages that are in no chat.
+ *
+ * A row is only deleted once two runs in a row found it orphaned, so rows that were just written and are
+ * attached by a following request are left alone. Every batch of at most batch-size rows runs in its own
+ * short transaction and a run stops after max-batches batches or once it spent max-run-ms, so the reaper never
+ * holds locks for long and never keeps the shared scheduler thread busy. Only the node that owns lobby 0 on
+ * the hash ring reaps, the other nodes would only race it for the same rows.
+ */
+@Component
+public class OrphanReaper {
+    private static final String BATCHES = "reaper.batches";
+    private static final String LOCK_TIME = "reaper.lock.seconds";
+    private static final String RECLAIMED = "reaper.reclaimed.";
+
+    private final ClueRepository clueRepository;
+    private final PlayerRepository playerRepository;
+    private final ChatRepository chatRepository;
+    private final MessageRepository messageRepository;
+    private final TransactionTemplate transaction;
+    private final ClusterMembership clusterMembership;
+    private final MetricsRegistry metricsRegistry;
+    private final boolean enabled;
+    private final int batchSize;
+    private final int maxBatches;
+    private final long maxRunNanos;
+
+    // kind of row -> ids the last run found orphaned
+    private final Map<String, Set<Long>> suspects = new HashMap<>();
+
+    public OrphanReaper(ClueRepository clueRepository, PlayerRepository playerRepository,
+                        ChatRepository chatRepository, MessageRepository messageRepository,
+                        PlatformTransactionManager transactionManager, ClusterMembership clusterMembership,
+                        MetricsRegistry metricsRegistry,
+                        @Value("${reaper.enabled:true}") boolean enabled,
+                        @Value("${reaper.batch-size:200}") int batchSize,
+                        @Value("${reaper.max-batches:8}") int maxBatches,
+                        @Value("${reaper.max-run-ms:200}") long maxRunMillis) {
+        this.clueRepository = clueRepository;
+        this.playerRepository = playerRepository;
+        this.chatRepository = chatRepository;
+        this.messageRepository = messageRepository;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.clusterMembership = clusterMembership;
+        this.metricsRegistry = metricsRegistry;
+        this.enabled = enabled;
+        this.batchSize = Math.max(batchSize, 1);
+        this.maxBatches = Math.max(maxBatches, 1);
+        this.maxRunNanos = maxRunMillis * 1_000_000L;
+    }
+
+    /**
+     * Deletes the rows that were already found orphaned by the last run and remembers the new ones
+     *
+     * @return the number of deleted rows
+     */
+    @Scheduled(initialDelayString = "${reaper.interval-ms:30000}", fixedDelayString = "${reaper.interval-ms:30000}")
+    public synchronized int reap() {
+        if(!enabled || !clusterMembership.isLocal(0L)) {
+            return 0;
+        }
+        long deadline = System.nanoTime() + maxRunNanos;
+        int reclaimed = 0;
+        reclaimed += reap("chats", chatRepository::findOrphanIds, this::deleteChats, deadline);
+        reclaimed += reap("players", playerRepository::findOrphanIds, this::deletePlayers, deadline);
+        reclaimed += reap("clues", clueRepository::findOrphanIds, clueRepository::deleteByIds, deadline);
+        reclaimed += reap("messages", messageRepository::findOrphanIds, messageRepository::deleteByIds, deadline);
+        return reclaimed;
+    }
+
+    private int reap(String kind, OrphanFinder finder, Function<List<Long>, Integer> delete, long deadline) {
+        Set<Long> lastSuspects = suspects.getOrDefault(kind, Collections.emptySet());
+        Set<Long> nextSuspects = new HashSet<>();
+        int reclaimed = 0;
+        long after = Long.MIN_VALUE;
+        for(int i = 0; i < maxBatches && System.nanoTime() < deadline; i++) {
+            long start = System.nanoTime();
+            long from = after;
+            Batch batch = transaction.execute(status -> {
+                Batch result = new Batch(finder.find(from, PageRequest.of(0, batchSize)));
+                List<Long> confirmed = new ArrayList<>();
+                for(Long id : result.found) {
+                    if(lastSuspects.contains(id)) {
+                        confirmed.add(id);
+                    }
+                    else {
+                        nextSuspects.add(id);
+                    }
+                }
+                if(!confirmed.isEmpty()) {
+                    result.deleted = delete.apply(confirmed);
+                }
+                return result;
+            });
+            metricsRegistry.record(LOCK_TIME, System.nanoTime() - start);
+            metricsRegistry.increment(BATCHES);
+            if(batch == null || batch.found.isEmpty()) {
+                break;
+            }
+            reclaimed += batch.deleted;
+            after = batch.found.get(batch.found.size() - 1);
+            if(batch.found.size() < batchSize) {
+                break;
+            }
+        }
+        suspects.put(kind, nextSuspects);
+        metricsRegistry.add(RECLAIMED + kind, reclaimed);
+        return reclaimed;
+    }
+
+    /**
+     * Deletes the chats with all their messages
+     */
+    private int deleteChats(List<Long> lobbyIds) {
+        List<Chat> chats = chatRepository.findAllById(lobbyIds);
+        List<Long> messageIds = new ArrayList<>();
+        for(Chat chat : chats) {
+            for(Message message : chat.getMessages()) {
+                messageIds.add(message.getMessageId());
+            }
+        }
+        chatRepository.deleteAll(chats);
+        chatRepository.flush();
+        if(!messageIds.isEmpty()) {
+            messageRepository.deleteByIds(messageIds);
+        }
+        return chats.size();
+    }
+
+    /**
+     * Deletes the players as entities, so their clues go with them
+     */
+    private int deletePlayers(List<Long> ids) {
+        List<Player> players = playerRepository.findAllById(ids);
+        playerRepository.deleteAll(players);
+        playerRepository.flush();
+        return players.size();
+    }
+
+    private interface OrphanFinder {
+        List<Long> find(long after, Pageable page);
+    }
+
+    private static class Batch {
+        private final List<Long> found;
+        private int deleted;
+
+        private Batch(List<Long> found) {
+            this.found = found;
+        }
+    }
+}
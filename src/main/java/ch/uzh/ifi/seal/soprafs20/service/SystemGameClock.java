@@ -0,0 +1,25 @@
+package ch.uzh.ifi.seal.soprafs20.service;
+
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The time of the system the server runs on. The epoch time is read once at startup and then advanced with
+ * System.nanoTime, so adjustments of the system clock while the server runs do not move the games' deadlines.
+ */
+@Component
+public class SystemGameClock implements GameClock {
+    private final long startMillis = System.currentTimeMillis();
+    private final long startNanos = System.nanoTime();
+
+    @Override
+    public long currentTimeMillis() {
+        return startMillis + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    @Override
+    public long nanoTime() {
+        return System.nanoTime();
+    }
+}
@@ -0,0 +1,33 @@
+package ch.uzh.ifi.seal.soprafs20.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Clock that only moves when it is told to, so hours of games can be played in seconds, e.g. in load tests
+ */
+public class VirtualGameClock implements GameClock {
+    private final AtomicLong millis;
+
+    public VirtualGameClock(long startMillis) {
+        this.millis = new AtomicLong(startMillis);
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return millis.get();
+    }
+
+    /**
+     * Moves the clock forward to the given time, the clock never goes back
+     */
+    public void advanceTo(long timeMillis) {
+        millis.accumulateAndGet(timeMillis, Math::max);
+    }
+
+    public void advanceBy(long millis) {
+        if(millis < 0) {
+            throw new IllegalArgumentException("The clock can not go back.");
+        }
+        this.millis.addAndGet(millis);
+    }
+}
@@ -3,15 +3,24 @@ package ch.uzh.ifi.seal.soprafs20.controller;
 import ch.uzh.ifi.seal.soprafs20.GameLogic.GameState;
 import ch.uzh.ifi.seal.soprafs20.entity.*;
 import ch.uzh.ifi.seal.soprafs20.exceptions.BadRequestException;
+import ch.uzh.ifi.seal.soprafs20.exceptions.NotFoundException;
 import ch.uzh.ifi.seal.soprafs20.exceptions.UnauthorizedException;
+import ch.uzh.ifi.seal.soprafs20.metrics.MetricsRegistry;
 import ch.uzh.ifi.seal.soprafs20.rest.dto.CluePutDTO;
 import ch.uzh.ifi.seal.soprafs20.rest.dto.MessagePutDTO;
 import ch.uzh.ifi.seal.soprafs20.rest.dto.VotePutDTO;
+import ch.uzh.ifi.seal.soprafs20.service.ClusterMembership;
+import ch.uzh.ifi.seal.soprafs20.service.ActivityTracker;
+import ch.uzh.ifi.seal.soprafs20.service.CommandRetry;
+import ch.uzh.ifi.seal.soprafs20.service.GameArchiveService;
+import ch.uzh.ifi.seal.soprafs20.service.GameClock;
 import ch.uzh.ifi.seal.soprafs20.service.GameService;
 import ch.uzh.ifi.seal.soprafs20.service.LobbyService;
 import ch.uzh.ifi.seal.soprafs20.service.PlayerService;
+import ch.uzh.ifi.seal.soprafs20.service.UserService;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -21,6 +30,8 @@ import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.concurrent.TimeUnit;
 
@@ -41,6 +52,29 @@ class GameControllerTest {
     private GameService gameService;
     @MockBean
     private LobbyService lobbyService;
+    @MockBean
+    private CommandRetry commandRetry;
+    @MockBean
+    private MetricsRegistry metricsRegistry;
+    @MockBean
+    private ClusterMembership clusterMembership;
+    @MockBean
+    private GameClock gameClock;
+    @MockBean
+    private UserService userService;
+    @MockBean
+    private GameArchiveService gameArchiveService;
+    @MockBean
+    private ActivityTracker activityTracker;
+
+    @BeforeEach
+    void setup() {
+        given(gameClock.currentTimeMillis()).willAnswer(invocation -> System.currentTimeMillis());
+        Mockito.doAnswer(invocation -> {
+            invocation.<Runnable>getArgument(1).run();
+            return null;
+        }).when(commandRetry).run(Mockito.anyString(), Mockito.any());
+    }
 
 
     @Test
@@ -177,6 +211,55 @@ class GameControllerTest {
                 .andExpect(jsonPath("$.currentWord", is(nullValue())));
     }
 
+    @Test
+    void getGame_sameVersion_servedFromCache() throws Exception {
+        Player player1 = new Player();
+        player1.setId(1L);
+        player1.setToken("token1");
+
+        Player player2 = new Player();
+        player2.setId(2L);
+        player2.setToken("token2");
+
+        Lobby lobby = new Lobby();
+        lobby.setCurrentNumBots(0);
+
+        Game game = new Game();
+        game.setLobbyId(42L);
+        game.setRoundsPlayed(1);
+        game.addPlayer(player1);
+        game.addPlayer(player2);
+        game.setCurrentGuesser(player1);
+        game.setCurrentWord("Erdbeermarmeladebrot");
+        game.setGameState(GameState.ENTER_CLUES_STATE);
+
+        given(gameService.getStateVersion(42L)).willReturn(7L);
+        given(gameService.getGame(42L)).willReturn(game);
+        given(lobbyService.getLobby(42L)).willReturn(lobby);
+
+        for (int i = 0; i < 3; i++) {
+            mockMvc.perform(get("/lobbies/{lobbyId}/game", 42L).param("token", player2.getToken()))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.currentWord", is(game.getCurrentWord())));
+        }
+        mockMvc.perform(get("/lobbies/{lobbyId}/game", 42L).param("token", player1.getToken()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.currentWord", is(nullValue())));
+        mockMvc.perform(get("/lobbies/{lobbyId}/game", 42L).param("token", "otherToken"))
+                .andExpect(status().isUnauthorized());
+
+        Mockito.verify(gameService, Mockito.times(1)).getGame(42L);
+
+        //a new version is built from the stored game again
+        game.setGameState(GameState.VOTE_ON_CLUES_STATE);
+        given(gameService.getStateVersion(42L)).willReturn(8L);
+
+        mockMvc.perform(get("/lobbies/{lobbyId}/game", 42L).param("token", player2.getToken()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.gameState", is("VOTE_ON_CLUES_STATE")));
+        Mockito.verify(gameService, Mockito.times(2)).getGame(42L);
+    }
+
     @Test
     void getGame_invalidToken_throwsException() throws Exception{
         Player player1 = new Player();
@@ -242,6 +325,40 @@ class GameControllerTest {
                 .andExpect(status().isNoContent());
     }
 
+    @Test
+    void sendClue_sameIdempotencyKey_executedOnce() throws Exception {
+        Player player1 = new Player();
+        player1.setId(1L);
+        player1.setToken("token1");
+
+        Game game = new Game();
+        game.setLobbyId(1L);
+        game.addPlayer(player1);
+        game.setCurrentGuesser(player1);
+        game.setGameState(GameState.ENTER_CLUES_STATE);
+
+        CluePutDTO cluePutDTO = new CluePutDTO();
+        cluePutDTO.setMessage("Zopf");
+        cluePutDTO.setPlayerId(2L);
+        cluePutDTO.setPlayerToken("token2");
+
+        given(playerService.getPlayer(Mockito.any())).willReturn(player1);
+        given(gameService.getGame(Mockito.anyLong())).willReturn(game);
+        given(gameService.sendClue(Mockito.any(), Mockito.any(), Mockito.any())).willReturn(true);
+
+        MockHttpServletRequestBuilder putRequest = put("/lobbies/{lobbyId}/game/clue", game.getLobbyId())
+                .contentType(MediaType.APPLICATION_JSON)
+                .header("Idempotency-Key", "clue-1")
+                .content(asJsonString(cluePutDTO));
+
+        mockMvc.perform(putRequest).andExpect(status().isNoContent());
+        mockMvc.perform(putRequest).andExpect(status().isNoContent());
+
+        Mockito.verify(gameService, Mockito.times(1)).sendClue(Mockito.any(), Mockito.any(), Mockito.any());
+        Mockito.verify(gameService, Mockito.times(1)).getGame(Mockito.anyLong());
+        Mockito.verify(metricsRegistry).increment("idempotency.replayed.game.clue");
+    }
+
     @Test
     void sendClue_validInput_wrongState() throws Exception {
         Player player1 = new Player();
@@ -274,7 +391,10 @@ class GameControllerTest {
                 .content(asJsonString(cluePutDTO));
 
         mockMvc.perform(putRequest)
-                .andExpect(status().isUnauthorized());
+                .andExpect(status().isUnauthorized())
+                .andExpect(header().string("X-Error-Code", "UNAUTHORIZED"));
+
+        Mockito.verify(metricsRegistry).increment("errors.UnauthorizedException");
     }
 
     @Test
@@ -567,16 +687,41 @@ class GameControllerTest {
         game.setCurrentGuesser(player1);
         game.setGameState(GameState.PICK_WORD_STATE);
         game.setTimer(timer);
-        game.setStartTimeSeconds(TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()));
+        game.setStartTimeMillis(1_000_000L);
         given(gameService.getGame(Mockito.anyLong())).willReturn(game);
         given(gameService.getMaxTime(game)).willReturn(10);
-        Thread.sleep(3000);
+        given(gameClock.currentTimeMillis()).willReturn(1_003_500L);
 
         MockHttpServletRequestBuilder getRequest = get("/lobbies/{lobbyId}/game/timer?token=token1", game.getLobbyId())
                 .contentType(MediaType.APPLICATION_JSON);
 
         mockMvc.perform(getRequest).andExpect(status().isOk())
                 .andExpect(content().string("7"));
+        Mockito.verify(activityTracker).polled(1L, "token1");
+    }
+
+    @Test
+    void getReplay_streamsArchive() throws Exception {
+        Mockito.doAnswer(invocation -> {
+            invocation.<OutputStream>getArgument(1).write("{\"gameId\":7}".getBytes(StandardCharsets.UTF_8));
+            return null;
+        }).when(gameArchiveService).writeReplay(Mockito.eq(7L), Mockito.any());
+
+        MockHttpServletRequestBuilder getRequest = get("/games/{gameId}/replay?token=token1", 7L);
+
+        mockMvc.perform(getRequest).andExpect(status().isOk())
+                .andExpect(jsonPath("$.gameId", is(7)));
+        Mockito.verify(userService).getUserByToken("token1");
+    }
+
+    @Test
+    void getReplay_unknownGame_notFound() throws Exception {
+        Mockito.doThrow(new NotFoundException("Could not find the replay of this game!"))
+                .when(gameArchiveService).writeReplay(Mockito.eq(8L), Mockito.any());
+
+        MockHttpServletRequestBuilder getRequest = get("/games/{gameId}/replay?token=token1", 8L);
+
+        mockMvc.perform(getRequest).andExpect(status().isNotFound());
     }
 
     private String asJsonString(final Object object) {
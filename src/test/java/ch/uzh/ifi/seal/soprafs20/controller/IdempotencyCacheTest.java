@@ -0,0 +1,58 @@
+package ch.uzh.ifi.seal.soprafs20.controller;
+
+import ch.uzh.ifi.seal.soprafs20.exceptions.ConflictException;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IdempotencyCacheTest {
+
+    private final IdempotencyCache idempotencyCache = new IdempotencyCache(2, 2);
+    private final AtomicInteger runs = new AtomicInteger();
+
+    @Test
+    void execute_sameKey_runsOnce() {
+        assertTrue(idempotencyCache.execute(1L, "key", runs::incrementAndGet));
+        assertFalse(idempotencyCache.execute(1L, "key", runs::incrementAndGet));
+
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    void execute_sameKeyOtherGame_runsAgain() {
+        idempotencyCache.execute(1L, "key", runs::incrementAndGet);
+        idempotencyCache.execute(2L, "key", runs::incrementAndGet);
+
+        assertEquals(2, runs.get());
+    }
+
+    @Test
+    void execute_failed_canBeRetried() {
+        assertThrows(ConflictException.class, () -> idempotencyCache.execute(1L, "key", () -> {
+            throw new ConflictException("conflict");
+        }));
+
+        assertTrue(idempotencyCache.execute(1L, "key", runs::incrementAndGet));
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    void execute_tooManyKeys_oldestKeyDropped() {
+        idempotencyCache.execute(1L, "first", runs::incrementAndGet);
+        idempotencyCache.execute(1L, "second", runs::incrementAndGet);
+        idempotencyCache.execute(1L, "third", runs::incrementAndGet);
+
+        assertTrue(idempotencyCache.execute(1L, "first", runs::incrementAndGet));
+        assertEquals(4, runs.get());
+    }
+
+    @Test
+    void remove_forgetsKeysOfGame() {
+        idempotencyCache.execute(1L, "key", runs::incrementAndGet);
+        idempotencyCache.remove(1L);
+
+        assertTrue(idempotencyCache.execute(1L, "key", runs::incrementAndGet));
+    }
+}
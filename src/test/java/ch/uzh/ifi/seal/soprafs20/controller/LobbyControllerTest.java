@@ -7,7 +7,9 @@ import ch.uzh.ifi.seal.soprafs20.exceptions.BadRequestException;
 import ch.uzh.ifi.seal.soprafs20.exceptions.ConflictException;
 import ch.uzh.ifi.seal.soprafs20.exceptions.NotFoundException;
 import ch.uzh.ifi.seal.soprafs20.exceptions.UnauthorizedException;
+import ch.uzh.ifi.seal.soprafs20.metrics.MetricsRegistry;
 import ch.uzh.ifi.seal.soprafs20.rest.dto.*;
+import ch.uzh.ifi.seal.soprafs20.rest.mapper.DTOMapper;
 import ch.uzh.ifi.seal.soprafs20.service.*;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -50,10 +52,17 @@ class LobbyControllerTest {
     @MockBean
     private GameService gameService;
     @MockBean
-    private MessageService messageService;
+    private GameCoordinator gameCoordinator;
     @MockBean
     private LobbyScoreService lobbyScoreService;
+    @MockBean
+    private MetricsRegistry metricsRegistry;
+
+    @MockBean
+    private ClusterMembership clusterMembership;
 
+    @MockBean
+    private ActivityTracker activityTracker;
 
     @Test
     void givenLobbies_whenGetLobbies_thenReturnJsonArray() throws Exception {
@@ -66,9 +75,9 @@ class LobbyControllerTest {
         lobby.setCurrentNumBots(0);
         lobby.setCurrentNumPlayers(1);
 
-        List<Lobby> allLobbies = Collections.singletonList(lobby);
+        List<LobbyGetDTO> allLobbies = Collections.singletonList(DTOMapper.INSTANCE.convertEntityToLobbyGetDTO(lobby));
 
-        given(lobbyService.getLobbies()).willReturn(allLobbies);
+        given(lobbyService.getLobbyListings(false, 0L, Integer.MAX_VALUE)).willReturn(allLobbies);
 
         MockHttpServletRequestBuilder getRequest = get("/lobbies")
                 .contentType(MediaType.APPLICATION_JSON)
@@ -81,7 +90,36 @@ class LobbyControllerTest {
                 .andExpect(jsonPath("$[0].currentNumPlayers", is(lobby.getCurrentNumPlayers())))
                 .andExpect(jsonPath("$[0].maxPlayersAndBots",is(lobby.getMaxPlayersAndBots())))
                 .andExpect(jsonPath("$[0].rounds", is(lobby.getRounds())))
-                .andExpect(jsonPath(("$[0].hostId"), is(lobby.getHostId().intValue())));
+                .andExpect(jsonPath(("$[0].hostId"), is(lobby.getHostId().intValue())))
+                .andExpect(header().doesNotExist("X-Next-Cursor"));
+    }
+
+    @Test
+    void givenJoinableLobbies_whenGetLobbiesWithLimit_thenReturnNextCursor() throws Exception {
+        Lobby lobby = new Lobby();
+        lobby.setLobbyId(4L);
+        lobby.setLobbyName("Badbunny");
+        lobby.setMaxPlayersAndBots(5);
+        lobby.setRounds(13);
+        lobby.setHostId(1234);
+        lobby.setCurrentNumBots(0);
+        lobby.setCurrentNumPlayers(1);
+
+        List<LobbyGetDTO> page = Collections.singletonList(DTOMapper.INSTANCE.convertEntityToLobbyGetDTO(lobby));
+
+        given(lobbyService.getLobbyListings(true, 2L, 1)).willReturn(page);
+
+        MockHttpServletRequestBuilder getRequest = get("/lobbies")
+                .contentType(MediaType.APPLICATION_JSON)
+                .param("token", "anyToken")
+                .param("joinable", "true")
+                .param("limit", "1")
+                .param("cursor", "2");
+
+        mockMvc.perform(getRequest).andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].lobbyId", is(4)))
+                .andExpect(header().string("X-Next-Cursor", "4"));
     }
 
     @Test
@@ -271,13 +309,15 @@ class LobbyControllerTest {
         given(lobbyService.getLobby(Mockito.any())).willReturn(lobby);
         given(userService.getUser(Mockito.any())).willReturn(testUser);
         given(userService.acceptOrDeclineLobbyInvite(Mockito.any(), Mockito.any())).willReturn(true);
+        given(lobbyService.addPlayerToLobby(Mockito.any(), Mockito.any(), Mockito.any())).willReturn(lobby);
 
         MockHttpServletRequestBuilder putRequest = put("/lobbies/{lobbyId}/acceptances", "1")
                 .contentType(MediaType.APPLICATION_JSON)
                 .content(asJsonString(lobbyAcceptancePutDTO));
 
         mockMvc.perform(putRequest)
-                .andExpect(status().isOk());
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.lobbyId", is(1)));
     }
 
     @Test
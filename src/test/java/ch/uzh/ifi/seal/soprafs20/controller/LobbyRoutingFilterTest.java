@@ -0,0 +1,105 @@
+package ch.uzh.ifi.seal.soprafs20.controller;
+
+import ch.uzh.ifi.seal.soprafs20.metrics.MetricsRegistry;
+import ch.uzh.ifi.seal.soprafs20.service.ClusterMembership;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LobbyRoutingFilterTest {
+
+    private ClusterMembership clusterMembership;
+    private LobbyRoutingFilter filter;
+
+    @BeforeEach
+    void setUp() {
+        clusterMembership = Mockito.mock(ClusterMembership.class);
+        Mockito.when(clusterMembership.getNodeId()).thenReturn("node-1");
+        Mockito.when(clusterMembership.urlOf("node-2")).thenReturn("http://node-2:8080/");
+        filter = new LobbyRoutingFilter(clusterMembership, Mockito.mock(MetricsRegistry.class));
+    }
+
+    @Test
+    void lobbyOfOtherNode_redirectedWithPathAndQuery() throws Exception {
+        Mockito.when(clusterMembership.ownerOf(7L)).thenReturn("node-2");
+        MockHttpServletRequest request = new MockHttpServletRequest("PUT", "/lobbies/7/game/clue");
+        request.setQueryString("token=abc");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain chain = new MockFilterChain();
+
+        filter.doFilter(request, response, chain);
+
+        assertEquals(307, response.getStatus());
+        assertEquals("http://node-2:8080/lobbies/7/game/clue?token=abc", response.getHeader("Location"));
+        assertNull(chain.getRequest());
+    }
+
+    @Test
+    void corsRequest_redirectCarriesCorsHeaders() throws Exception {
+        Mockito.when(clusterMembership.ownerOf(7L)).thenReturn("node-2");
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/lobbies/7/game");
+        request.addHeader("Origin", "http://client.example");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(request, response, new MockFilterChain());
+
+        assertEquals(307, response.getStatus());
+        assertEquals("*", response.getHeader("Access-Control-Allow-Origin"));
+    }
+
+    @Test
+    void corsPreflight_served() throws Exception {
+        Mockito.when(clusterMembership.ownerOf(7L)).thenReturn("node-2");
+        MockHttpServletRequest request = new MockHttpServletRequest("OPTIONS", "/lobbies/7/game/clue");
+        request.addHeader("Origin", "http://client.example");
+        request.addHeader("Access-Control-Request-Method", "PUT");
+        MockFilterChain chain = new MockFilterChain();
+
+        filter.doFilter(request, new MockHttpServletResponse(), chain);
+
+        assertNotNull(chain.getRequest());
+    }
+
+    @Test
+    void alreadyRedirectedByPeer_served() throws Exception {
+        Mockito.when(clusterMembership.ownerOf(7L)).thenReturn("node-2");
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/lobbies/7/game");
+        request.addHeader("X-Node", "node-2");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain chain = new MockFilterChain();
+
+        filter.doFilter(request, response, chain);
+
+        assertEquals(200, response.getStatus());
+        assertNotNull(chain.getRequest());
+    }
+
+    @Test
+    void lobbyOfThisNode_served() throws Exception {
+        Mockito.when(clusterMembership.ownerOf(7L)).thenReturn("node-1");
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/lobbies/7/game");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain chain = new MockFilterChain();
+
+        filter.doFilter(request, response, chain);
+
+        assertEquals(200, response.getStatus());
+        assertNotNull(chain.getRequest());
+    }
+
+    @Test
+    void notALobbyPath_served() throws Exception {
+        Mockito.when(clusterMembership.ownerOf(Mockito.anyLong())).thenReturn("node-2");
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/lobbies/scores");
+        MockFilterChain chain = new MockFilterChain();
+
+        filter.doFilter(request, new MockHttpServletResponse(), chain);
+
+        assertNotNull(chain.getRequest());
+    }
+}
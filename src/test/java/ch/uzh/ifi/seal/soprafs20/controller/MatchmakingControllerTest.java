@@ -0,0 +1,130 @@
+package ch.uzh.ifi.seal.soprafs20.controller;
+
+import ch.uzh.ifi.seal.soprafs20.exceptions.BadRequestException;
+import ch.uzh.ifi.seal.soprafs20.exceptions.ConflictException;
+import ch.uzh.ifi.seal.soprafs20.exceptions.UnauthorizedException;
+import ch.uzh.ifi.seal.soprafs20.metrics.MetricsRegistry;
+import ch.uzh.ifi.seal.soprafs20.rest.dto.JoinLeavePutDTO;
+import ch.uzh.ifi.seal.soprafs20.rest.dto.MatchmakingStatsGetDTO;
+import ch.uzh.ifi.seal.soprafs20.service.ClusterMembership;
+import ch.uzh.ifi.seal.soprafs20.service.MatchmakingService;
+import ch.uzh.ifi.seal.soprafs20.service.MatchmakingTicket;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import static org.hamcrest.Matchers.is;
+import static org.mockito.BDDMockito.given;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@WebMvcTest(MatchmakingController.class)
+class MatchmakingControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+    @MockBean
+    private MatchmakingService matchmakingService;
+    @MockBean
+    private MetricsRegistry metricsRegistry;
+
+    @MockBean
+    private ClusterMembership clusterMembership;
+
+    @Test
+    void enterMatchmaking_validInput_created() throws Exception {
+        JoinLeavePutDTO joinLeavePutDTO = new JoinLeavePutDTO();
+        joinLeavePutDTO.setPlayerId(1L);
+        joinLeavePutDTO.setPlayerToken("token");
+
+        given(matchmakingService.enqueue(1L, "token")).willReturn(new MatchmakingTicket(1L, "token", System.currentTimeMillis()));
+
+        MockHttpServletRequestBuilder postRequest = post("/matchmaking")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(asJsonString(joinLeavePutDTO));
+
+        mockMvc.perform(postRequest)
+                .andExpect(status().isCreated())
+                .andExpect(header().exists("Location"));
+    }
+
+    @Test
+    void enterMatchmaking_alreadyWaiting_conflict() throws Exception {
+        JoinLeavePutDTO joinLeavePutDTO = new JoinLeavePutDTO();
+        joinLeavePutDTO.setPlayerId(1L);
+        joinLeavePutDTO.setPlayerToken("token");
+
+        given(matchmakingService.enqueue(Mockito.anyLong(), Mockito.anyString())).willThrow(new ConflictException("waiting"));
+
+        MockHttpServletRequestBuilder postRequest = post("/matchmaking")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(asJsonString(joinLeavePutDTO));
+
+        mockMvc.perform(postRequest)
+                .andExpect(status().isConflict());
+    }
+
+    @Test
+    void getMatchmakingStatus_waiting() throws Exception {
+        given(matchmakingService.getTicket(1L, "token")).willReturn(new MatchmakingTicket(1L, "token", System.currentTimeMillis()));
+
+        MockHttpServletRequestBuilder getRequest = get("/matchmaking/{userId}", 1L)
+                .param("token", "token");
+
+        mockMvc.perform(getRequest)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.userId", is(1)))
+                .andExpect(jsonPath("$.status", is("WAITING")));
+    }
+
+    @Test
+    void getMatchmakingStatus_wrongToken_unauthorized() throws Exception {
+        given(matchmakingService.getTicket(Mockito.anyLong(), Mockito.anyString())).willThrow(new UnauthorizedException("wrong token"));
+
+        MockHttpServletRequestBuilder getRequest = get("/matchmaking/{userId}", 1L)
+                .param("token", "otherToken");
+
+        mockMvc.perform(getRequest)
+                .andExpect(status().isUnauthorized());
+    }
+
+    @Test
+    void getMatchmakingStats_success() throws Exception {
+        MatchmakingStatsGetDTO stats = new MatchmakingStatsGetDTO();
+        stats.setMatched(5L);
+        stats.setWaiting(2);
+        given(matchmakingService.getStats()).willReturn(stats);
+
+        mockMvc.perform(get("/matchmaking/stats"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.matched", is(5)))
+                .andExpect(jsonPath("$.waiting", is(2)));
+    }
+
+    @Test
+    void leaveMatchmaking_success() throws Exception {
+        MockHttpServletRequestBuilder deleteRequest = delete("/matchmaking/{userId}", 1L)
+                .param("token", "token");
+
+        mockMvc.perform(deleteRequest)
+                .andExpect(status().isNoContent());
+
+        Mockito.verify(matchmakingService, Mockito.times(1)).cancel(1L, "token");
+    }
+
+    private String asJsonString(final Object object) {
+        try {
+            return new ObjectMapper().writeValueAsString(object);
+        }
+        catch (JsonProcessingException e) {
+            throw new BadRequestException(String.format("The request body could not be created.%s", e.toString()));
+        }
+    }
+}
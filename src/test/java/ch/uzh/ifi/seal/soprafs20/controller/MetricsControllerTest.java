@@ -0,0 +1,68 @@
+package ch.uzh.ifi.seal.soprafs20.controller;
+
+import ch.uzh.ifi.seal.soprafs20.metrics.Histogram;
+import ch.uzh.ifi.seal.soprafs20.metrics.MetricsRegistry;
+import ch.uzh.ifi.seal.soprafs20.service.ClusterMembership;
+import ch.uzh.ifi.seal.soprafs20.service.CommandRetry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.BDDMockito.given;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@WebMvcTest(MetricsController.class)
+class MetricsControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+    @MockBean
+    private MetricsRegistry metricsRegistry;
+
+    @MockBean
+    private ClusterMembership clusterMembership;
+
+    @Test
+    void getMetrics_returnsCountersAndConflictRates() throws Exception {
+        SortedMap<String, Long> counters = new TreeMap<>();
+        counters.put("commands.game.clue", 4L);
+        counters.put("conflicts.game.clue", 1L);
+        SortedMap<String, Double> conflictRates = new TreeMap<>();
+        conflictRates.put("game.clue", 0.25);
+
+        given(metricsRegistry.getCounters()).willReturn(counters);
+        given(metricsRegistry.getRatios(CommandRetry.CONFLICTS, CommandRetry.COMMANDS)).willReturn(conflictRates);
+
+        mockMvc.perform(get("/metrics"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.counters['commands.game.clue']", is(4)))
+                .andExpect(jsonPath("$.conflictRates['game.clue']", is(0.25)));
+    }
+
+    @Test
+    void getPrometheusMetrics_returnsTextFormat() throws Exception {
+        SortedMap<String, Long> counters = new TreeMap<>();
+        counters.put("commands.game.clue", 4L);
+        SortedMap<String, Histogram> histograms = new TreeMap<>();
+        Histogram histogram = new Histogram();
+        histogram.record(2_000_000_000L);
+        histograms.put("game.nlp.check_clue.seconds", histogram);
+
+        given(metricsRegistry.getCounters()).willReturn(counters);
+        given(metricsRegistry.getHistograms()).willReturn(histograms);
+
+        mockMvc.perform(get("/metrics/prometheus"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("commands_game_clue_total 4\n")))
+                .andExpect(content().string(containsString("game_nlp_check_clue_seconds_sum 2.0\n")))
+                .andExpect(content().string(containsString("game_nlp_check_clue_seconds_count 1\n")));
+    }
+}
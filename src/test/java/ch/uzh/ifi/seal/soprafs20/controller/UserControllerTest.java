@@ -4,8 +4,10 @@ import ch.uzh.ifi.seal.soprafs20.constant.UserStatus;
 import ch.uzh.ifi.seal.soprafs20.entity.Lobby;
 import ch.uzh.ifi.seal.soprafs20.entity.User;
 import ch.uzh.ifi.seal.soprafs20.exceptions.*;
+import ch.uzh.ifi.seal.soprafs20.metrics.MetricsRegistry;
 import ch.uzh.ifi.seal.soprafs20.repository.UserRepository;
 import ch.uzh.ifi.seal.soprafs20.rest.dto.*;
+import ch.uzh.ifi.seal.soprafs20.service.ClusterMembership;
 import ch.uzh.ifi.seal.soprafs20.service.UserService;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -48,6 +50,11 @@ class UserControllerTest {
 
     @MockBean
     private UserService userService;
+    @MockBean
+    private MetricsRegistry metricsRegistry;
+
+    @MockBean
+    private ClusterMembership clusterMembership;
 
     @Test
     void givenUsers_whenGetUsers_thenReturnJsonArray() throws Exception {
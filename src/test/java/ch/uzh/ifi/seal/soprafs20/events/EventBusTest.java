@@ -0,0 +1,213 @@
+package ch.uzh.ifi.seal.soprafs20.events;
+
+import ch.uzh.ifi.seal.soprafs20.metrics.MetricsRegistry;
+import ch.uzh.ifi.seal.soprafs20.service.VirtualGameClock;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.DataOutputStream;
+import java.net.Socket;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EventBusTest {
+    private final VirtualGameClock clock = new VirtualGameClock(1_000_000L);
+    private final List<EventBus> buses = new ArrayList<>();
+
+    private EventBus bus(String nodeId, EventTransport transport, MetricsRegistry metricsRegistry, int batchSize, int maxPending) {
+        EventBus bus = new EventBus(nodeId, transport, clock, metricsRegistry, batchSize, maxPending);
+        buses.add(bus);
+        return bus;
+    }
+
+    /**
+     * Subscriber that remembers what it got, as "lobbyId:sequence" plus "!" if events were missed before
+     */
+    private static List<String> record(EventBus bus) {
+        List<String> received = Collections.synchronizedList(new ArrayList<>());
+        bus.subscribe((event, missed) -> received.add(event.getLobbyId() + ":" + event.getSequence() + (missed ? "!" : "")));
+        return received;
+    }
+
+    private static DomainEvent event(long lobbyId, long sequence) {
+        DomainEvent event = new DomainEvent(DomainEvent.Type.GAME_CHANGED, lobbyId, Collections.emptyMap());
+        event.setSequence(sequence);
+        return event;
+    }
+
+    @AfterEach
+    void closeBuses() {
+        for(EventBus bus : buses) {
+            bus.close();
+        }
+    }
+
+    @Test
+    void publish_inJvm_otherNodesGetEventsInOrderAfterFlush() {
+        InJvmEventTransport.Hub hub = new InJvmEventTransport.Hub();
+        MetricsRegistry metricsRegistry = new MetricsRegistry();
+        EventBus first = bus("node-1", new InJvmEventTransport(hub), metricsRegistry, 4, 100);
+        List<String> own = record(first);
+        List<String> second = record(bus("node-2", new InJvmEventTransport(hub), new MetricsRegistry(), 4, 100));
+        List<String> third = record(bus("node-3", new InJvmEventTransport(hub), new MetricsRegistry(), 4, 100));
+
+        for(int i = 0; i < 5; i++) {
+            first.publish(1L, DomainEvent.Type.GAME_CHANGED, Collections.emptyMap());
+            first.publish(2L, DomainEvent.Type.CHAT_MESSAGE, Collections.singletonMap("text", "hi"));
+        }
+        assertTrue(second.isEmpty());
+
+        first.flush();
+
+        List<String> expected = new ArrayList<>();
+        for(int i = 1; i <= 5; i++) {
+            expected.add("1:" + i);
+            expected.add("2:" + i);
+        }
+        assertEquals(expected, second);
+        assertEquals(expected, third);
+        assertTrue(own.isEmpty());
+        assertEquals(3, metricsRegistry.getCount("events.batches"));
+    }
+
+    @Test
+    void receive_duplicatesDroppedAndGapsFlagged() {
+        EventBus bus = bus("node-2", new InJvmEventTransport(new InJvmEventTransport.Hub()), new MetricsRegistry(), 10, 100);
+        List<String> received = record(bus);
+
+        bus.receive(new EventBatch("node-1", 7L, Arrays.asList(event(1L, 1), event(1L, 2), event(2L, 1))));
+        bus.receive(new EventBatch("node-1", 7L, Arrays.asList(event(1L, 2), event(1L, 5), event(2L, 2))));
+
+        assertEquals(Arrays.asList("1:1", "1:2", "2:1", "1:5!", "2:2"), received);
+    }
+
+    @Test
+    void receive_originRestarted_sequenceStartsOver() {
+        EventBus bus = bus("node-2", new InJvmEventTransport(new InJvmEventTransport.Hub()), new MetricsRegistry(), 10, 100);
+        List<String> received = record(bus);
+
+        bus.receive(new EventBatch("node-1", 7L, Arrays.asList(event(1L, 1), event(1L, 2))));
+        bus.receive(new EventBatch("node-1", 8L, Collections.singletonList(event(1L, 1))));
+
+        assertEquals(Arrays.asList("1:1", "1:2", "1:1"), received);
+    }
+
+    @Test
+    void publish_gameEnded_sequenceStartsOver() {
+        InJvmEventTransport.Hub hub = new InJvmEventTransport.Hub();
+        EventBus first = bus("node-1", new InJvmEventTransport(hub), new MetricsRegistry(), 10, 100);
+        List<String> second = record(bus("node-2", new InJvmEventTransport(hub), new MetricsRegistry(), 10, 100));
+
+        first.publish(1L, DomainEvent.Type.GAME_CHANGED, Collections.emptyMap());
+        first.publish(1L, DomainEvent.Type.GAME_ENDED, Collections.emptyMap());
+        first.publish(1L, DomainEvent.Type.CHAT_MESSAGE, Collections.emptyMap());
+        first.flush();
+
+        assertEquals(Arrays.asList("1:1", "1:2", "1:1"), second);
+    }
+
+    @Test
+    void receive_gameEndMissed_restartSeenAsMissed() {
+        EventBus bus = bus("node-2", new InJvmEventTransport(new InJvmEventTransport.Hub()), new MetricsRegistry(), 10, 100);
+        List<String> received = record(bus);
+
+        bus.receive(new EventBatch("node-1", 7L, Arrays.asList(event(1L, 1), event(1L, 2))));
+        bus.receive(new EventBatch("node-1", 7L, Arrays.asList(event(1L, 1), event(1L, 2))));
+
+        assertEquals(Arrays.asList("1:1", "1:2", "1:1!", "1:2"), received);
+    }
+
+    @Test
+    void receive_originSilentForLong_forgotten() {
+        EventBus bus = bus("node-2", new InJvmEventTransport(new InJvmEventTransport.Hub()), new MetricsRegistry(), 10, 100);
+        bus.receive(new EventBatch("node-1", 7L, Collections.singletonList(event(1L, 1))));
+        bus.receive(new EventBatch("node-1", 8L, Collections.singletonList(event(1L, 1))));
+        assertEquals(1, bus.countOrigins());
+
+        clock.advanceBy(60 * 60 * 1000L);
+        bus.receive(new EventBatch("node-3", 1L, Collections.singletonList(event(1L, 1))));
+
+        assertEquals(1, bus.countOrigins());
+    }
+
+    @Test
+    void publish_tooManyPending_oldestDroppedAndSeenAsMissed() {
+        InJvmEventTransport.Hub hub = new InJvmEventTransport.Hub();
+        MetricsRegistry metricsRegistry = new MetricsRegistry();
+        EventBus first = bus("node-1", new InJvmEventTransport(hub), metricsRegistry, 2, 2);
+        List<String> second = record(bus("node-2", new InJvmEventTransport(hub), new MetricsRegistry(), 2, 2));
+
+        for(int i = 0; i < 4; i++) {
+            first.publish(1L, DomainEvent.Type.GAME_CHANGED, Collections.emptyMap());
+        }
+        first.flush();
+
+        assertEquals(Arrays.asList("1:3!", "1:4"), second);
+        assertEquals(2, metricsRegistry.getCount("events.dropped"));
+    }
+
+    @Test
+    void publish_socketLoopback_eventsArrive() throws InterruptedException {
+        // node-1 is a peer of node-2, it only sends to node-2 in this test
+        SocketEventTransport receiving = socket(Collections.singletonList("127.0.0.1:1"));
+        EventBus second = bus("node-2", receiving, new MetricsRegistry(), 16, 100);
+        BlockingQueue<DomainEvent> received = new LinkedBlockingQueue<>();
+        second.subscribe((event, missed) -> received.add(event));
+        EventBus first = bus("node-1", socket(Collections.singletonList("127.0.0.1:" + receiving.getLocalPort())),
+                new MetricsRegistry(), 16, 100);
+
+        first.publish(3L, DomainEvent.Type.CHAT_MESSAGE, Collections.singletonMap("text", "hello"));
+        first.publish(3L, DomainEvent.Type.GAME_ENDED, Collections.emptyMap());
+        first.flush();
+
+        DomainEvent chat = received.poll(5, TimeUnit.SECONDS);
+        DomainEvent ended = received.poll(5, TimeUnit.SECONDS);
+        assertNotNull(chat);
+        assertNotNull(ended);
+        assertEquals(DomainEvent.Type.CHAT_MESSAGE, chat.getType());
+        assertEquals("hello", chat.getData().get("text"));
+        assertEquals(3L, chat.getLobbyId());
+        assertEquals(1L, chat.getSequence());
+        assertEquals(1_000_000L, chat.getTimeMillis());
+        assertEquals(DomainEvent.Type.GAME_ENDED, ended.getType());
+        assertEquals(2L, ended.getSequence());
+    }
+
+    @Test
+    void receive_notAPeer_refused() throws InterruptedException {
+        SocketEventTransport receiving = socket(Collections.singletonList("192.0.2.1:9091"));
+        BlockingQueue<DomainEvent> received = new LinkedBlockingQueue<>();
+        bus("node-2", receiving, new MetricsRegistry(), 16, 100).subscribe((event, missed) -> received.add(event));
+        EventBus first = bus("node-1", socket(Collections.singletonList("127.0.0.1:" + receiving.getLocalPort())),
+                new MetricsRegistry(), 16, 100);
+
+        first.publish(3L, DomainEvent.Type.GAME_ENDED, Collections.emptyMap());
+        first.flush();
+
+        assertNull(received.poll(500, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void receive_frameTooLarge_connectionDropped() throws Exception {
+        SocketEventTransport receiving = socket(Collections.singletonList("127.0.0.1:1"));
+        BlockingQueue<DomainEvent> received = new LinkedBlockingQueue<>();
+        bus("node-2", receiving, new MetricsRegistry(), 16, 100).subscribe((event, missed) -> received.add(event));
+
+        try(Socket socket = new Socket("127.0.0.1", receiving.getLocalPort())) {
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            out.writeInt(Integer.MAX_VALUE);
+            out.flush();
+            socket.setSoTimeout(5000);
+            assertEquals(-1, socket.getInputStream().read());
+        }
+        assertTrue(received.isEmpty());
+    }
+
+    private static SocketEventTransport socket(List<String> peers) {
+        return new SocketEventTransport("127.0.0.1", 0, peers, 64 * 1024);
+    }
+}
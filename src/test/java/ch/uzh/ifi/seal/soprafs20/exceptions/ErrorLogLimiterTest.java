@@ -0,0 +1,42 @@
+package ch.uzh.ifi.seal.soprafs20.exceptions;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ErrorLogLimiterTest {
+
+    private final AtomicLong now = new AtomicLong(1000L);
+    private final ErrorLogLimiter logLimiter = new ErrorLogLimiter(2, 100L, now::get);
+
+    @Test
+    void tryAcquire_overLimit_suppressedUntilNextInterval() {
+        assertEquals(0L, logLimiter.tryAcquire("NotFoundException"));
+        assertEquals(0L, logLimiter.tryAcquire("NotFoundException"));
+        assertEquals(ErrorLogLimiter.SUPPRESSED, logLimiter.tryAcquire("NotFoundException"));
+        assertEquals(ErrorLogLimiter.SUPPRESSED, logLimiter.tryAcquire("NotFoundException"));
+
+        now.addAndGet(100L);
+
+        assertEquals(2L, logLimiter.tryAcquire("NotFoundException"));
+        assertEquals(0L, logLimiter.tryAcquire("NotFoundException"));
+    }
+
+    @Test
+    void tryAcquire_limitedPerKey() {
+        logLimiter.tryAcquire("NotFoundException");
+        logLimiter.tryAcquire("NotFoundException");
+
+        assertEquals(0L, logLimiter.tryAcquire("ConflictException"));
+    }
+
+    @Test
+    void domainException_hasNoStackTrace() {
+        ConflictException exception = new ConflictException("conflict");
+
+        assertEquals(0, exception.getStackTrace().length);
+        assertEquals(ErrorCode.CONFLICT, exception.getErrorCode());
+    }
+}
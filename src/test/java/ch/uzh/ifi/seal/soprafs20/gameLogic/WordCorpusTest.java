@@ -0,0 +1,37 @@
+package ch.uzh.ifi.seal.soprafs20.gameLogic;
+
+import ch.uzh.ifi.seal.soprafs20.GameLogic.WordCorpus;
+import ch.uzh.ifi.seal.soprafs20.entity.Game;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WordCorpusTest {
+
+    @Test
+    void indexOf_roundTrip() {
+        WordCorpus corpus = WordCorpus.getInstance();
+
+        assertEquals("Strawberry", corpus.get(corpus.indexOf("Strawberry")));
+        assertThrows(IllegalArgumentException.class, () -> corpus.indexOf("Erdbeermarmeladebrot"));
+    }
+
+    @Test
+    void drawWord_removesWordFromDeck() {
+        WordCorpus corpus = WordCorpus.getInstance();
+        Game game = new Game();
+        game.setDeck(corpus.randomDeck(13));
+        List<String> deck = game.getWords();
+
+        String first = game.drawWord(0);
+        String last = game.drawWord(11);
+
+        assertEquals(deck.get(0), first);
+        assertEquals(deck.get(12), last);
+        assertEquals(11, game.getWords().size());
+        assertEquals(11, Integer.bitCount(game.getRemainingWords()));
+        assertThrows(IllegalArgumentException.class, () -> game.drawWord(11));
+    }
+}
@@ -0,0 +1,48 @@
+package ch.uzh.ifi.seal.soprafs20.gameLogic;
+
+import ch.uzh.ifi.seal.soprafs20.GameLogic.NLP;
+import ch.uzh.ifi.seal.soprafs20.GameLogic.WordProfile;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class WordProfileTest {
+
+    private NLP nlp;
+
+    @BeforeAll
+    void setUp() {
+        nlp = new NLP();
+    }
+
+    @Test
+    void isSpoiledBy_containsWord() {
+        WordProfile profile = new WordProfile("Cheetah", nlp);
+
+        assertTrue(profile.isSpoiledBy("it's a cheetah!", nlp));
+    }
+
+    @Test
+    void isSpoiledBy_sameStem() {
+        WordProfile profile = new WordProfile("laugh", nlp);
+
+        assertTrue(profile.isSpoiledBy("stop laughing", nlp));
+    }
+
+    @Test
+    void isSpoiledBy_partOfWord() {
+        WordProfile profile = new WordProfile("Star Wars", nlp);
+
+        assertTrue(profile.isSpoiledBy("wars", nlp));
+    }
+
+    @Test
+    void isSpoiledBy_unrelatedText() {
+        WordProfile profile = new WordProfile("Star Wars", nlp);
+
+        assertFalse(profile.isSpoiledBy("hi, how are you?", nlp));
+    }
+}
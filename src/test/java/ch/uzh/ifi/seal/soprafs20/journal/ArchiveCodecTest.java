@@ -0,0 +1,100 @@
+package ch.uzh.ifi.seal.soprafs20.journal;
+
+import ch.uzh.ifi.seal.soprafs20.GameLogic.WordCorpus;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ArchiveCodecTest {
+    private static final long STARTED_AT = 1_000_000L;
+
+    private final List<JournalRecord> history = new ArrayList<>();
+
+    private void record(long atMillis, JournalRecord.Type type, long[] numbers, String... texts) {
+        history.add(new JournalRecord(type, 1L, history.size() + 1L, STARTED_AT + atMillis, numbers, texts));
+    }
+
+    private JsonNode replay(byte[] archive) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JsonGenerator json = new JsonFactory().createGenerator(out);
+        ArchiveCodec.writeJson(42L, new ByteArrayInputStream(archive), json);
+        return new ObjectMapper().readTree(out.toString(StandardCharsets.UTF_8));
+    }
+
+    private void playRounds(int rounds) {
+        record(0L, JournalRecord.Type.STARTED, new long[]{7L, 8L, 9L}, "anna", "bert", "carl");
+        for(int round = 1; round <= rounds; round++) {
+            long start = round * 60_000L;
+            String word = WordCorpus.getInstance().get(round);
+            record(start, JournalRecord.Type.WORD_PICKED, new long[]{round}, word);
+            record(start + 1_000L, JournalRecord.Type.PHASE, new long[]{round, 0L}, "ENTER_CLUES_STATE", word);
+            record(start + 5_000L, JournalRecord.Type.CLUE, new long[]{8L, 25L}, "clue" + round);
+            record(start + 6_000L, JournalRecord.Type.CLUE, new long[]{9L, 24L}, "clue" + round);
+            record(start + 7_000L, JournalRecord.Type.CLUE, new long[]{0L, 0L}, "bot" + round);
+            record(start + 9_000L, JournalRecord.Type.VOTE, new long[]{8L}, "clue" + round);
+            record(start + 20_000L, JournalRecord.Type.GUESS, new long[]{1L, round * 10L}, word);
+        }
+    }
+
+    @Test
+    void encode_fullGame_fewHundredBytes() throws IOException {
+        playRounds(13);
+
+        byte[] archive = ArchiveCodec.encode(history, "lobby", 130, STARTED_AT + 900_000L);
+
+        assertTrue(archive.length < 1024, "archive takes " + archive.length + " bytes");
+        assertTrue(archive.length * 4 < replay(archive).toString().length());
+    }
+
+    @Test
+    void writeJson_encodedGame_sameGameReplayed() throws IOException {
+        playRounds(2);
+
+        JsonNode replay = replay(ArchiveCodec.encode(history, "lobby", 20, STARTED_AT + 200_000L));
+
+        assertEquals(42L, replay.get("gameId").asLong());
+        assertEquals(STARTED_AT, replay.get("startedAt").asLong());
+        assertEquals(200_000L, replay.get("durationMillis").asLong());
+        assertEquals(20, replay.get("overallScore").asInt());
+        assertEquals("lobby", replay.get("lobbyName").asText());
+        assertEquals(3, replay.get("players").size());
+        assertEquals("bert", replay.get("players").get(1).get("username").asText());
+
+        JsonNode round = replay.get("rounds").get(1);
+        assertEquals(2, round.get("round").asInt());
+        assertEquals(WordCorpus.getInstance().get(2), round.get("word").asText());
+        assertEquals(120_000L, round.get("pickedAtMillis").asLong());
+        assertEquals(3, round.get("clues").size());
+        assertEquals(8L, round.get("clues").get(0).get("playerId").asLong());
+        assertEquals("clue2", round.get("clues").get(0).get("clue").asText());
+        assertEquals(25, round.get("clues").get(0).get("secondsLeft").asInt());
+        assertTrue(round.get("clues").get(2).get("playerId").isNull());
+        assertEquals("clue2", round.get("votes").get(0).get("invalidClues").get(0).asText());
+        assertTrue(round.get("guess").get("correct").asBoolean());
+        assertEquals(20, round.get("guess").get("guesserScore").asInt());
+        assertEquals(20_000L, round.get("guess").get("afterMillis").asLong());
+        assertEquals("ENTER_CLUES_STATE", round.get("phases").get(0).get("state").asText());
+    }
+
+    @Test
+    void writeJson_wordNotInCorpus_wordKeptInDictionary() throws IOException {
+        record(0L, JournalRecord.Type.STARTED, new long[]{7L}, "anna");
+        record(1_000L, JournalRecord.Type.WORD_PICKED, new long[]{1L}, "notacorpusword");
+
+        JsonNode replay = replay(ArchiveCodec.encode(history, "lobby", 0, STARTED_AT + 2_000L));
+
+        assertEquals("notacorpusword", replay.get("rounds").get(0).get("word").asText());
+        assertTrue(replay.get("rounds").get(0).get("guess").isNull());
+    }
+}
@@ -0,0 +1,156 @@
+package ch.uzh.ifi.seal.soprafs20.journal;
+
+import ch.uzh.ifi.seal.soprafs20.metrics.MetricsRegistry;
+import ch.uzh.ifi.seal.soprafs20.service.VirtualGameClock;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GameJournalTest {
+    private final VirtualGameClock clock = new VirtualGameClock(1_000_000L);
+    private final MetricsRegistry metricsRegistry = new MetricsRegistry();
+    private Path directory;
+    private GameJournal journal;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        directory = Files.createTempDirectory("journal");
+        journal = open(256L);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        journal.close();
+        try(Stream<Path> files = Files.walk(directory)) {
+            for(Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    private GameJournal open(long segmentBytes) {
+        return new GameJournal(directory, segmentBytes, false, clock, metricsRegistry);
+    }
+
+    private long segmentCount() throws IOException {
+        try(Stream<Path> files = Files.list(directory)) {
+            return files.count();
+        }
+    }
+
+    private void clue(long lobbyId, String clue) {
+        journal.append(lobbyId, JournalRecord.Type.CLUE, new long[]{7L, 21L}, clue);
+    }
+
+    @Test
+    void history_manySegments_allRecordsInOrder() throws IOException {
+        journal.append(1L, JournalRecord.Type.STARTED, new long[]{7L, 8L}, "anna", "bert");
+        for(int i = 0; i < 40; i++) {
+            clue(1L, "clue " + i);
+        }
+
+        List<JournalRecord> history = journal.history(1L);
+
+        assertTrue(segmentCount() > 1);
+        assertEquals(41, history.size());
+        assertEquals(JournalRecord.Type.STARTED, history.get(0).getType());
+        assertArrayEquals(new String[]{"anna", "bert"}, history.get(0).getTexts());
+        for(int i = 0; i < history.size(); i++) {
+            assertEquals(i + 1, history.get(i).getSequence());
+        }
+        assertEquals("clue 39", history.get(40).getTexts()[0]);
+        assertArrayEquals(new long[]{7L, 21L}, history.get(40).getNumbers());
+        assertEquals(1_000_000L, history.get(40).getTimeMillis());
+    }
+
+    @Test
+    void history_snapshotOfEarlierVersion_skipped() {
+        journal.append(1L, JournalRecord.Type.STARTED, new long[]{7L}, "anna");
+        journal.append(1L, JournalRecord.Type.SNAPSHOT, new long[]{1L, 0L, -5L}, "ENTER_GUESS_STATE", "star wars", null);
+        journal.append(1L, JournalRecord.Type.GUESS, new long[]{1L, 100L}, "star wars");
+
+        List<JournalRecord> history = journal.history(1L);
+
+        assertEquals(2, history.size());
+        assertEquals(JournalRecord.Type.STARTED, history.get(0).getType());
+        assertEquals(JournalRecord.Type.GUESS, history.get(1).getType());
+    }
+
+    @Test
+    void open_partlyWrittenRecord_cutOffAndAppendingContinues() throws IOException {
+        journal.append(1L, JournalRecord.Type.STARTED, new long[]{7L}, "anna");
+        clue(1L, "space");
+        journal.close();
+        Path last;
+        try(Stream<Path> files = Files.list(directory)) {
+            last = files.max(Comparator.naturalOrder()).orElseThrow();
+        }
+        Files.write(last, new byte[]{0, 0, 0, 40, 1, 2, 3}, StandardOpenOption.APPEND);
+
+        journal = open(256L);
+        clue(1L, "jedi");
+
+        List<JournalRecord> history = journal.history(1L);
+        assertEquals(3, history.size());
+        assertEquals(3L, history.get(2).getSequence());
+        assertEquals("jedi", history.get(2).getTexts()[0]);
+    }
+
+    @Test
+    void append_gamesEnded_segmentsDeleted() throws IOException {
+        journal.append(1L, JournalRecord.Type.STARTED, new long[]{7L}, "anna");
+        for(int i = 0; i < 20; i++) {
+            clue(1L, "clue " + i);
+        }
+        journal.append(2L, JournalRecord.Type.STARTED, new long[]{8L}, "bert");
+        for(int i = 0; i < 20; i++) {
+            clue(2L, "clue " + i);
+        }
+        long segments = segmentCount();
+
+        journal.append(1L, JournalRecord.Type.ENDED, new long[]{120L});
+
+        assertTrue(segmentCount() < segments);
+        assertTrue(journal.history(1L).isEmpty());
+        assertEquals(21, journal.history(2L).size());
+
+        journal.forget(2L);
+        assertEquals(1, segmentCount());
+        assertTrue(metricsRegistry.getCount("game.journal.segments.deleted") > 0);
+    }
+
+    @Test
+    void retainOnly_otherGamesForgotten() {
+        journal.append(1L, JournalRecord.Type.STARTED, new long[]{7L}, "anna");
+        journal.append(2L, JournalRecord.Type.STARTED, new long[]{8L}, "bert");
+
+        journal.retainOnly(Collections.singleton(2L));
+
+        assertTrue(journal.history(1L).isEmpty());
+        assertEquals(1, journal.history(2L).size());
+    }
+
+    @Test
+    void sync_appendedRecords_oneFsyncForAll() {
+        clue(1L, "space");
+        clue(1L, "jedi");
+
+        journal.sync();
+        journal.sync();
+
+        assertEquals(1, metricsRegistry.getCount("game.journal.fsyncs"));
+        assertEquals(2, metricsRegistry.getCount("game.journal.appends"));
+    }
+}
@@ -0,0 +1,74 @@
+package ch.uzh.ifi.seal.soprafs20.metrics;
+
+import ch.uzh.ifi.seal.soprafs20.controller.MetricsController;
+import ch.uzh.ifi.seal.soprafs20.service.ClusterMembership;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@WebMvcTest(MetricsController.class)
+@TestPropertySource(properties = {"diagnostics.enabled=true", "diagnostics.sample-rate=1"})
+class DiagnosticsFilterTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+    @MockBean
+    private MetricsRegistry metricsRegistry;
+
+    @MockBean
+    private ClusterMembership clusterMembership;
+
+    @Test
+    void sampledRequest_reportsStatementsAndAllocations() throws Exception {
+        mockMvc.perform(get("/metrics"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(DiagnosticsFilter.SQL_COUNT_HEADER, "0"))
+                .andExpect(header().exists(DiagnosticsFilter.ALLOC_BYTES_HEADER))
+                .andExpect(jsonPath("$.counters").exists());
+
+        Mockito.verify(metricsRegistry).record(DiagnosticsFilter.SQL_STATEMENTS + "GET /metrics", 0L);
+        Mockito.verify(metricsRegistry).record(Mockito.eq(DiagnosticsFilter.ALLOCATED_BYTES + "GET /metrics"), Mockito.anyLong());
+    }
+
+    @Test
+    void sampledReplay_streamedWithoutBuffering() throws Exception {
+        MetricsRegistry registry = Mockito.mock(MetricsRegistry.class);
+        DiagnosticsFilter filter = new DiagnosticsFilter(registry, true, 1);
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/games/1/replay");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain filterChain = new MockFilterChain();
+
+        filter.doFilter(request, response, filterChain);
+
+        // the replay is written straight to the client, its numbers are only recorded
+        assertSame(response, filterChain.getResponse());
+        assertNull(response.getHeader(DiagnosticsFilter.SQL_COUNT_HEADER));
+        Mockito.verify(registry).record(DiagnosticsFilter.SQL_STATEMENTS + "GET unmatched", 0L);
+    }
+
+    @Test
+    void sqlStatementCounter_countsOnlyWhileStarted() {
+        SqlStatementCounter counter = new SqlStatementCounter();
+        counter.inspect("select 1");
+
+        SqlStatementCounter.start();
+        counter.inspect("select 1");
+        counter.inspect("select 2");
+
+        assertEquals(2, SqlStatementCounter.stop());
+        assertEquals(0, SqlStatementCounter.stop());
+    }
+}
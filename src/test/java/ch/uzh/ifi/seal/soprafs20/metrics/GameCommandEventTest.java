@@ -0,0 +1,57 @@
+package ch.uzh.ifi.seal.soprafs20.metrics;
+
+import ch.uzh.ifi.seal.soprafs20.GameLogic.GameState;
+import ch.uzh.ifi.seal.soprafs20.GameLogic.NLP;
+import ch.uzh.ifi.seal.soprafs20.entity.Game;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GameCommandEventTest {
+
+    @Test
+    void recording_containsGameEvents() throws Exception {
+        Game game = new Game();
+        game.setLobbyId(3L);
+        game.setGameState(GameState.ENTER_CLUES_STATE);
+
+        Path file = Files.createTempFile("justone", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(GameCommandEvent.class);
+            recording.enable(GamePhaseEvent.class);
+            recording.enable(ClueCheckEvent.class);
+            recording.start();
+
+            GameCommandEvent.start("sendClue").end(game);
+            GamePhaseEvent.emit(3L, GameState.ENTER_CLUES_STATE.name(), GameState.VOTE_ON_CLUES_STATE.name(), 1000L);
+            new NLP().checkClue("Tree", "Apple");
+
+            recording.stop();
+            recording.dump(file);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+        Files.delete(file);
+
+        RecordedEvent command = find(events, "ch.uzh.ifi.seal.soprafs20.GameCommand");
+        assertEquals("sendClue", command.getString("command"));
+        assertEquals(3L, command.getLong("lobbyId"));
+        assertEquals("ENTER_CLUES_STATE", command.getString("state"));
+        assertEquals("VOTE_ON_CLUES_STATE", find(events, "ch.uzh.ifi.seal.soprafs20.GamePhase").getString("nextState"));
+        assertTrue(find(events, "ch.uzh.ifi.seal.soprafs20.ClueCheck").getBoolean("valid"));
+    }
+
+    private RecordedEvent find(List<RecordedEvent> events, String name) {
+        return events.stream()
+                .filter(event -> event.getEventType().getName().equals(name))
+                .findFirst()
+                .orElseThrow(() -> new AssertionError("no event " + name));
+    }
+}
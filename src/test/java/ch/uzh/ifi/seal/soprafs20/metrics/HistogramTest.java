@@ -0,0 +1,48 @@
+package ch.uzh.ifi.seal.soprafs20.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HistogramTest {
+
+    @Test
+    void getValueAtPercentile_withinBucketPrecision() {
+        Histogram histogram = new Histogram();
+        for(long value = 1; value <= 1000; value++) {
+            histogram.record(value * 1000);
+        }
+
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1000L * 1001 / 2 * 1000, histogram.getSum());
+        assertEquals(500_000, histogram.getValueAtPercentile(50), 500_000 * 0.125);
+        assertEquals(990_000, histogram.getValueAtPercentile(99), 990_000 * 0.125);
+        assertEquals(1_000_000, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    void merge_addsValues() {
+        Histogram first = new Histogram();
+        Histogram second = new Histogram();
+        first.record(3);
+        second.record(5);
+        second.record(7);
+
+        first.merge(second);
+
+        assertEquals(3, first.getCount());
+        assertEquals(15, first.getSum());
+        assertEquals(7, first.getMax());
+        assertEquals(5, first.getValueAtPercentile(50));
+    }
+
+    @Test
+    void bucketOf_largeValues_staysInRange() {
+        Histogram histogram = new Histogram();
+        histogram.record(Long.MAX_VALUE);
+        histogram.record(-1);
+
+        assertEquals(Long.MAX_VALUE, histogram.getValueAtPercentile(100));
+        assertEquals(0, histogram.getValueAtPercentile(50));
+    }
+}
@@ -0,0 +1,35 @@
+package ch.uzh.ifi.seal.soprafs20.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PrometheusFormatTest {
+
+    @Test
+    void write_countersGaugesAndSummaries() {
+        MetricsRegistry metricsRegistry = new MetricsRegistry();
+        metricsRegistry.increment("commands.game.vote");
+        metricsRegistry.gauge("game.live", "state", () -> Map.of("VOTE_ON_CLUES_STATE", 2L));
+        metricsRegistry.record("http.request.game_saves", 3);
+
+        String text = PrometheusFormat.write(metricsRegistry);
+
+        assertTrue(text.contains("# TYPE commands_game_vote_total counter\ncommands_game_vote_total 1\n"));
+        assertTrue(text.contains("game_live{state=\"VOTE_ON_CLUES_STATE\"} 2\n"));
+        assertTrue(text.contains("http_request_game_saves{quantile=\"0.5\"} 3.0\n"));
+    }
+
+    @Test
+    void write_durationsInSeconds() {
+        MetricsRegistry metricsRegistry = new MetricsRegistry();
+        metricsRegistry.record("game.timer.lateness.seconds", 1_500_000_000L);
+
+        String text = PrometheusFormat.write(metricsRegistry);
+
+        assertTrue(text.contains("game_timer_lateness_seconds_sum 1.5\n"));
+        assertTrue(text.contains("game_timer_lateness_seconds_count 1\n"));
+    }
+}
@@ -8,6 +8,7 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.dao.OptimisticLockingFailureException;
 
 import java.util.Optional;
 
@@ -92,4 +93,50 @@ class GameRepositoryIntegrationTest {
         assertEquals(13, actualGame.getWords().size());
     }
 
+    @Test
+    void drawWord_onlyRemainingWordsChange() {
+        WordReader reader = new WordReader();
+
+        Game newGame = new Game();
+        newGame.setLobbyId(4L);
+        newGame.setGameState(GameState.PICK_WORD_STATE);
+        newGame.setRoundsPlayed(0);
+        newGame.setWords(reader.getRandomWords(13));
+
+        entityManager.persist(newGame);
+        entityManager.flush();
+
+        newGame.drawWord(3);
+        entityManager.flush();
+        entityManager.clear();
+
+        Game actualGame = gameRepository.findByLobbyId(newGame.getLobbyId()).orElseThrow();
+
+        assertEquals(12, actualGame.getWords().size());
+        assertArrayEquals(newGame.getDeck(), actualGame.getDeck());
+        assertEquals(newGame.getRemainingWords(), actualGame.getRemainingWords());
+        assertEquals(newGame.getWords(), actualGame.getWords());
+    }
+
+    @Test
+    void saveStaleGame_throwsOptimisticLockingFailure() {
+        Game game = new Game();
+        game.setLobbyId(5L);
+        game.setGameState(GameState.PICK_WORD_STATE);
+        game.setRoundsPlayed(0);
+
+        entityManager.persist(game);
+        entityManager.flush();
+        entityManager.clear();
+
+        Game current = entityManager.find(Game.class, 5L);
+        current.setRoundsPlayed(1);
+        entityManager.flush();
+        entityManager.clear();
+
+        game.setRoundsPlayed(2);
+
+        assertThrows(OptimisticLockingFailureException.class, () -> gameRepository.saveAndFlush(game));
+    }
+
 }
@@ -0,0 +1,103 @@
+package ch.uzh.ifi.seal.soprafs20.service;
+
+import ch.uzh.ifi.seal.soprafs20.metrics.MetricsRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ActivityTrackerTest {
+    private static final long LOBBY_IDLE = 100L;
+    private static final long GAME_IDLE = 50L;
+
+    private final GameScheduler gameScheduler = new GameScheduler(1);
+    private final VirtualGameClock clock = new VirtualGameClock(1_000L);
+    private final MetricsRegistry metricsRegistry = new MetricsRegistry();
+    private final ActivityTracker activityTracker = new ActivityTracker(gameScheduler, clock, metricsRegistry,
+            true, LOBBY_IDLE, GAME_IDLE);
+    private final BlockingQueue<Long> expired = new LinkedBlockingQueue<>();
+
+    @AfterEach
+    void tearDown() {
+        activityTracker.stop();
+        gameScheduler.shutdown();
+    }
+
+    @Test
+    void polledAndCommanded_trackedPerPlayer() {
+        activityTracker.polled(1L, "anna");
+        clock.advanceBy(30L);
+        activityTracker.commanded(1L, "bert");
+
+        assertEquals(1_000L, activityTracker.getLastPollMillis(1L, "anna").getAsLong());
+        assertFalse(activityTracker.getLastCommandMillis(1L, "anna").isPresent());
+        assertEquals(1_030L, activityTracker.getLastCommandMillis(1L, "bert").getAsLong());
+        assertEquals(1_030L + LOBBY_IDLE, activityTracker.getDeadlineMillis(1L).getAsLong());
+    }
+
+    @Test
+    void gameStarted_gameIdleTimeApplies() {
+        activityTracker.polled(1L, "anna");
+
+        activityTracker.gameStarted(1L);
+
+        assertEquals(1_000L + GAME_IDLE, activityTracker.getDeadlineMillis(1L).getAsLong());
+    }
+
+    @Test
+    void deadlinePassed_lobbyExpires() throws InterruptedException {
+        activityTracker.subscribe(expired::add);
+        activityTracker.polled(1L, "anna");
+        activityTracker.polled(2L, "bert");
+
+        clock.advanceBy(LOBBY_IDLE);
+
+        Set<Long> lobbies = new HashSet<>();
+        lobbies.add(expired.poll(3, TimeUnit.SECONDS));
+        lobbies.add(expired.poll(3, TimeUnit.SECONDS));
+        assertEquals(Set.of(1L, 2L), lobbies);
+        assertFalse(activityTracker.getDeadlineMillis(1L).isPresent());
+        assertEquals(2L, metricsRegistry.getCount("activity.expired.lobbies"));
+    }
+
+    @Test
+    void activityBeforeDeadline_checkedAgainLater() throws InterruptedException {
+        activityTracker.subscribe(expired::add);
+        activityTracker.polled(1L, "anna");
+        clock.advanceBy(LOBBY_IDLE - 10L);
+        activityTracker.polled(1L, "anna");
+
+        // the first check finds the deadline moved and waits for the new one
+        assertNull(expired.poll(300, TimeUnit.MILLISECONDS));
+
+        clock.advanceBy(LOBBY_IDLE);
+        assertEquals(1L, expired.poll(3, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void forget_neverExpires() throws InterruptedException {
+        activityTracker.subscribe(expired::add);
+        activityTracker.polled(1L, "anna");
+
+        activityTracker.forget(1L);
+        clock.advanceBy(LOBBY_IDLE);
+
+        assertNull(expired.poll(300, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void disabled_nothingTracked() {
+        ActivityTracker disabled = new ActivityTracker(gameScheduler, clock, metricsRegistry, false, LOBBY_IDLE,
+                GAME_IDLE);
+
+        disabled.polled(1L, "anna");
+
+        assertFalse(disabled.getDeadlineMillis(1L).isPresent());
+    }
+}
@@ -1,15 +1,24 @@
 package ch.uzh.ifi.seal.soprafs20.service;
 
 import ch.uzh.ifi.seal.soprafs20.entity.*;
+import ch.uzh.ifi.seal.soprafs20.events.DomainEvent;
+import ch.uzh.ifi.seal.soprafs20.events.EventBus;
 import ch.uzh.ifi.seal.soprafs20.exceptions.UnauthorizedException;
 import ch.uzh.ifi.seal.soprafs20.repository.ChatRepository;
+import ch.uzh.ifi.seal.soprafs20.repository.MessageRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.transaction.PlatformTransactionManager;
 
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -18,6 +27,15 @@ class ChatServiceTest {
     @Mock
     private ChatRepository chatRepository;
 
+    @Mock
+    private MessageRepository messageRepository;
+
+    @Mock
+    private EventBus eventBus;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
     @InjectMocks
     private ChatService chatService;
 
@@ -51,13 +69,83 @@ class ChatServiceTest {
         testPlayer.setUsername("testUsername");
 
         Lobby lobby = new Lobby();
+        lobby.setLobbyId(1L);
         lobby.setHostToken("testToken");
         lobby.addPlayerToLobby(testPlayer);
 
         Mockito.when(chatRepository.findById(Mockito.any())).thenReturn(java.util.Optional.ofNullable(testChat));
 
         chatService.addChatMessage(lobby, lobby.getHostToken(), message);
+        assertFalse(testChat.getMessages().contains(message));
+
+        chatService.getChat(1L);
         assertTrue(testChat.getMessages().contains(message));
+        Mockito.verify(messageRepository, Mockito.times(1)).saveAll(Mockito.any());
+    }
+
+    @Test
+    void flushPendingMessages_persistsQueuedMessages() {
+        Player testPlayer = new Player();
+        testPlayer.setToken("testToken");
+        testPlayer.setUsername("testUsername");
+
+        Lobby lobby = new Lobby();
+        lobby.setLobbyId(1L);
+        lobby.addPlayerToLobby(testPlayer);
+
+        Message first = new Message();
+        first.setText("Hello");
+        Message second = new Message();
+        second.setText("world");
+        chatService.addChatMessage(lobby, "testToken", first);
+        chatService.addChatMessage(lobby, "testToken", second);
+        Mockito.verify(eventBus, Mockito.times(2)).publish(Mockito.eq(1L), Mockito.eq(DomainEvent.Type.CHAT_MESSAGE),
+                Mockito.any());
+
+        chatService.flushPendingMessages();
+
+        assertTrue(testChat.getMessages().contains(first));
+        assertTrue(testChat.getMessages().contains(second));
+        Mockito.verify(messageRepository, Mockito.times(1)).saveAll(Mockito.any());
+
+        chatService.flushPendingMessages();
+        Mockito.verify(messageRepository, Mockito.times(1)).saveAll(Mockito.any());
+        assertEquals(0, chatService.countPendingLobbies());
+    }
+
+    @Test
+    void flushPendingMessages_batchFails_requeuedInOrder() {
+        Player testPlayer = new Player();
+        testPlayer.setToken("testToken");
+        testPlayer.setUsername("testUsername");
+
+        Lobby lobby = new Lobby();
+        lobby.setLobbyId(1L);
+        lobby.addPlayerToLobby(testPlayer);
+
+        Message first = new Message();
+        first.setText("Hello");
+        Message second = new Message();
+        second.setText("world");
+        chatService.addChatMessage(lobby, "testToken", first);
+        Mockito.when(messageRepository.saveAll(Mockito.any()))
+                .thenThrow(new DataAccessResourceFailureException("database is gone"))
+                .thenReturn(null);
+
+        chatService.flushPendingMessages();
+
+        Mockito.verify(transactionManager).rollback(Mockito.any());
+        assertTrue(testChat.getMessages().isEmpty());
+        assertEquals(1, chatService.countPendingLobbies());
+
+        // the failed batch is persisted with the next one, before the messages that arrived since
+        chatService.addChatMessage(lobby, "testToken", second);
+        chatService.flushPendingMessages();
+
+        Mockito.verify(messageRepository, Mockito.times(2)).saveAll(Mockito.any());
+        Mockito.verify(transactionManager).commit(Mockito.any());
+        assertEquals(Arrays.asList(first, second), testChat.getMessages());
+        assertEquals(0, chatService.countPendingLobbies());
     }
 
     @Test
@@ -0,0 +1,73 @@
+package ch.uzh.ifi.seal.soprafs20.service;
+
+import ch.uzh.ifi.seal.soprafs20.exceptions.ConflictException;
+import ch.uzh.ifi.seal.soprafs20.exceptions.UnauthorizedException;
+import ch.uzh.ifi.seal.soprafs20.metrics.MetricsRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CommandRetryTest {
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private MetricsRegistry metricsRegistry;
+    private CommandRetry commandRetry;
+
+    @BeforeEach
+    void setup() {
+        MockitoAnnotations.initMocks(this);
+        metricsRegistry = new MetricsRegistry();
+        commandRetry = new CommandRetry(transactionManager, metricsRegistry, 3);
+    }
+
+    @Test
+    void run_conflictThenSuccess_retried() {
+        AtomicInteger attempts = new AtomicInteger();
+
+        commandRetry.run("game.clue", () -> {
+            if(attempts.incrementAndGet() < 3) {
+                throw new OptimisticLockingFailureException("stale game");
+            }
+        });
+
+        assertEquals(3, attempts.get());
+        assertEquals(1L, metricsRegistry.getCount(CommandRetry.COMMANDS + "game.clue"));
+        assertEquals(2L, metricsRegistry.getCount(CommandRetry.CONFLICTS + "game.clue"));
+        assertEquals(2.0, metricsRegistry.getRatios(CommandRetry.CONFLICTS, CommandRetry.COMMANDS).get("game.clue"));
+    }
+
+    @Test
+    void run_alwaysConflicting_throwsConflict() {
+        AtomicInteger attempts = new AtomicInteger();
+
+        assertThrows(ConflictException.class, () -> commandRetry.run("game.vote", () -> {
+            attempts.incrementAndGet();
+            throw new OptimisticLockingFailureException("stale game");
+        }));
+
+        assertEquals(3, attempts.get());
+        assertEquals(1L, metricsRegistry.getCount(CommandRetry.EXHAUSTED + "game.vote"));
+    }
+
+    @Test
+    void run_otherException_notRetried() {
+        AtomicInteger attempts = new AtomicInteger();
+
+        assertThrows(UnauthorizedException.class, () -> commandRetry.run("game.guess", () -> {
+            attempts.incrementAndGet();
+            throw new UnauthorizedException("wrong state");
+        }));
+
+        assertEquals(1, attempts.get());
+        assertEquals(0L, metricsRegistry.getCount(CommandRetry.CONFLICTS + "game.guess"));
+    }
+}
@@ -0,0 +1,71 @@
+package ch.uzh.ifi.seal.soprafs20.service;
+
+import ch.uzh.ifi.seal.soprafs20.entity.Game;
+import ch.uzh.ifi.seal.soprafs20.entity.GameArchive;
+import ch.uzh.ifi.seal.soprafs20.journal.GameJournal;
+import ch.uzh.ifi.seal.soprafs20.journal.JournalRecord;
+import ch.uzh.ifi.seal.soprafs20.metrics.MetricsRegistry;
+import ch.uzh.ifi.seal.soprafs20.repository.GameArchiveRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GameArchiveServiceTest {
+
+    @Mock
+    private GameArchiveRepository gameArchiveRepository;
+
+    @Mock
+    private GameJournal gameJournal;
+
+    private final MetricsRegistry metricsRegistry = new MetricsRegistry();
+
+    private GameArchiveService gameArchiveService;
+
+    private Game game;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.initMocks(this);
+        gameArchiveService = new GameArchiveService(gameArchiveRepository, gameJournal, metricsRegistry,
+                new VirtualGameClock(2_000_000L));
+        game = new Game();
+        game.setLobbyId(1L);
+        game.setLobbyName("lobby");
+        game.setOverallScore(30);
+    }
+
+    private static JournalRecord record(long sequence, JournalRecord.Type type, long[] numbers, String... texts) {
+        return new JournalRecord(type, 1L, sequence, 1_000_000L + sequence, numbers, texts);
+    }
+
+    @Test
+    void archive_fullHistory_archived() {
+        Mockito.when(gameJournal.history(1L)).thenReturn(Arrays.asList(
+                record(1L, JournalRecord.Type.STARTED, new long[]{7L}, "anna"),
+                record(2L, JournalRecord.Type.CLUE, new long[]{7L, 20L}, "space")));
+
+        gameArchiveService.archive(game, 5L);
+
+        Mockito.verify(gameArchiveRepository).save(Mockito.any(GameArchive.class));
+        assertEquals(1L, metricsRegistry.getCount("game.archive.games"));
+    }
+
+    @Test
+    void archive_historyWithoutStart_notArchived() {
+        Mockito.when(gameJournal.history(1L)).thenReturn(Arrays.asList(
+                record(4L, JournalRecord.Type.CLUE, new long[]{7L, 20L}, "space"),
+                record(5L, JournalRecord.Type.GUESS, new long[]{1L, 100L}, "star wars")));
+
+        gameArchiveService.archive(game, 5L);
+
+        Mockito.verify(gameArchiveRepository, Mockito.never()).save(Mockito.any());
+        assertEquals(1L, metricsRegistry.getCount("game.archive.skipped"));
+    }
+}
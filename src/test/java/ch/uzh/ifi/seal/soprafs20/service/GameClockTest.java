@@ -0,0 +1,43 @@
+package ch.uzh.ifi.seal.soprafs20.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GameClockTest {
+
+    @Test
+    void systemGameClock_closeToSystemTime_neverGoesBack() {
+        SystemGameClock clock = new SystemGameClock();
+
+        long last = clock.currentTimeMillis();
+        assertTrue(Math.abs(System.currentTimeMillis() - last) < 1000);
+        for(int i = 0; i < 10_000; i++) {
+            long now = clock.currentTimeMillis();
+            assertTrue(now >= last);
+            last = now;
+        }
+    }
+
+    @Test
+    void virtualGameClock_onlyMovesForward() {
+        VirtualGameClock clock = new VirtualGameClock(5_000L);
+
+        clock.advanceBy(1_500L);
+        assertEquals(6_500L, clock.currentTimeMillis());
+
+        clock.advanceTo(6_000L);
+        assertEquals(6_500L, clock.currentTimeMillis());
+
+        clock.advanceTo(10_000L);
+        assertEquals(10_000L, clock.currentTimeMillis());
+        assertEquals(10_000_000_000L, clock.nanoTime());
+    }
+
+    @Test
+    void virtualGameClock_advanceByNegative_throwsException() {
+        VirtualGameClock clock = new VirtualGameClock(0L);
+
+        assertThrows(IllegalArgumentException.class, () -> clock.advanceBy(-1L));
+    }
+}
@@ -0,0 +1,218 @@
+package ch.uzh.ifi.seal.soprafs20.service;
+
+import ch.uzh.ifi.seal.soprafs20.GameLogic.GameState;
+import ch.uzh.ifi.seal.soprafs20.entity.Game;
+import ch.uzh.ifi.seal.soprafs20.events.DomainEvent;
+import ch.uzh.ifi.seal.soprafs20.events.EventBus;
+import ch.uzh.ifi.seal.soprafs20.events.EventSubscriber;
+import ch.uzh.ifi.seal.soprafs20.journal.GameJournal;
+import ch.uzh.ifi.seal.soprafs20.metrics.MetricsRegistry;
+import ch.uzh.ifi.seal.soprafs20.repository.GameRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.OptionalLong;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GameCoordinatorTest {
+
+    @Mock
+    private GameService gameService;
+
+    @Mock
+    private GameRepository gameRepository;
+
+    @Mock
+    private GameScheduler gameScheduler;
+
+    @Mock
+    private GameLeases gameLeases;
+
+    @Mock
+    private ClusterMembership clusterMembership;
+
+    @Mock
+    private GameJournal gameJournal;
+
+    @Mock
+    private ActivityTracker activityTracker;
+
+    @Mock
+    private EventBus eventBus;
+
+    @Mock
+    private MetricsRegistry metricsRegistry;
+
+    @Mock
+    private GameClock gameClock;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @InjectMocks
+    private GameCoordinator gameCoordinator;
+
+    private Game testGame;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.initMocks(this);
+
+        testGame = new Game();
+        testGame.setLobbyId(1L);
+        testGame.setRounds(3);
+        testGame.setRoundsPlayed(1);
+        testGame.setGameState(GameState.PICK_WORD_STATE);
+        testGame.setStartTimeSeconds(100L);
+
+        Mockito.when(gameClock.currentTimeMillis()).thenReturn(110_000L);
+        Mockito.when(gameLeases.acquire(Mockito.any())).thenReturn(OptionalLong.of(1L));
+        Mockito.when(clusterMembership.isLocal(Mockito.anyLong())).thenReturn(true);
+        Mockito.when(gameService.restoreRunningGame(Mockito.any())).thenReturn(testGame);
+        Mockito.when(gameService.getMaxTime(testGame)).thenReturn(30);
+    }
+
+    @Test
+    void timer_gameEnded_timerStoppedAndLeaseReleased() {
+        Mockito.when(gameService.tick(testGame)).thenReturn(null);
+
+        gameCoordinator.timer(testGame);
+        startedTick(0L).run();
+
+        Mockito.verify(gameService).tick(testGame);
+        Mockito.verify(gameScheduler).stop(1L);
+        Mockito.verify(gameLeases).release(1L);
+        Mockito.verify(activityTracker).gameEnded(1L);
+    }
+
+    @Test
+    void timer_conflict_nextTickTriesAgain() {
+        Mockito.when(gameService.tick(testGame)).thenThrow(new OptimisticLockingFailureException("conflict"));
+
+        gameCoordinator.timer(testGame);
+        startedTick(0L).run();
+
+        Mockito.verify(metricsRegistry).increment(CommandRetry.CONFLICTS + "game.timer");
+        Mockito.verify(transactionManager).rollback(Mockito.any());
+        Mockito.verify(gameScheduler, Mockito.never()).stop(Mockito.any());
+    }
+
+    @Test
+    void timer_leaseHeldByOtherNode_notStarted() {
+        Mockito.when(gameLeases.acquire(1L)).thenReturn(OptionalLong.empty());
+
+        gameCoordinator.timer(testGame);
+
+        Mockito.verify(gameScheduler, Mockito.never()).start(Mockito.any(), Mockito.anyLong(), Mockito.any());
+    }
+
+    @Test
+    void recoverGames_timeRanOut_firstTickRightAway() {
+        testGame.setStartTimeSeconds(0L);
+        Mockito.when(gameRepository.findActiveGames()).thenReturn(List.of(activeGame(testGame)));
+
+        assertEquals(1, gameCoordinator.recoverGames());
+
+        ArgumentCaptor<Long> delay = ArgumentCaptor.forClass(Long.class);
+        Mockito.verify(gameScheduler).start(Mockito.eq(1L), delay.capture(), Mockito.any());
+        assertTrue(delay.getValue() <= 0);
+        Mockito.verify(activityTracker).gameStarted(1L);
+    }
+
+    @Test
+    void recoverGames_timeLeft_firstTickAtDeadline() {
+        Mockito.when(gameRepository.findActiveGames()).thenReturn(List.of(activeGame(testGame)));
+
+        assertEquals(1, gameCoordinator.recoverGames());
+
+        // the state started 10 of its 30 seconds ago
+        Mockito.verify(gameScheduler).start(Mockito.eq(1L), Mockito.eq(20_000L), Mockito.any());
+        Mockito.verify(gameJournal).retainOnly(Mockito.any());
+    }
+
+    @Test
+    void recoverGames_timerAlreadyRunning_notStartedAgain() {
+        Mockito.when(gameRepository.findActiveGames()).thenReturn(List.of(activeGame(testGame)));
+        Mockito.when(gameScheduler.isRunning(1L)).thenReturn(true);
+
+        assertEquals(0, gameCoordinator.recoverGames());
+
+        Mockito.verify(gameScheduler, Mockito.never()).start(Mockito.any(), Mockito.anyLong(), Mockito.any());
+    }
+
+    @Test
+    void maintainLeases_leaseLost_timerStopped() {
+        Mockito.when(gameLeases.renew()).thenReturn(Set.of(1L));
+
+        gameCoordinator.maintainLeases();
+
+        Mockito.verify(gameScheduler).stop(1L);
+        Mockito.verify(gameJournal).forget(1L);
+        Mockito.verify(activityTracker).forget(1L);
+    }
+
+    @Test
+    void maintainLeases_gameTakenOver_timerStarted() {
+        Mockito.when(gameLeases.takeOverExpired(Mockito.any())).thenReturn(List.of(1L, 2L));
+        Mockito.when(gameRepository.findActiveGames(List.of(1L, 2L))).thenReturn(List.of(activeGame(testGame)));
+
+        gameCoordinator.maintainLeases();
+
+        Mockito.verify(gameScheduler).start(Mockito.eq(1L), Mockito.eq(20_000L), Mockito.any());
+        // the game of lobby 2 is not stored anymore
+        Mockito.verify(gameLeases).release(2L);
+    }
+
+    @Test
+    void maintainLeases_lobbyBelongsToOtherNode_handedOver() {
+        Mockito.when(gameLeases.getHeldLobbyIds()).thenReturn(Set.of(1L));
+        Mockito.when(clusterMembership.isLocal(1L)).thenReturn(false);
+        Mockito.when(gameLeases.takeOverExpired(Mockito.any())).thenReturn(Collections.emptyList());
+
+        gameCoordinator.maintainLeases();
+
+        Mockito.verify(gameScheduler).stop(1L);
+        Mockito.verify(gameLeases).handOver(1L);
+        Mockito.verify(gameJournal).forget(1L);
+    }
+
+    @Test
+    void remoteEvents_forwardedToGameService() {
+        ArgumentCaptor<EventSubscriber> subscriber = ArgumentCaptor.forClass(EventSubscriber.class);
+        Mockito.verify(eventBus).subscribe(subscriber.capture());
+
+        subscriber.getValue().onEvent(new DomainEvent(DomainEvent.Type.GAME_CHANGED, 1L,
+                Collections.emptyMap()), false);
+        Mockito.verify(gameService).changedElsewhere(1L);
+
+        subscriber.getValue().onEvent(new DomainEvent(DomainEvent.Type.GAME_ENDED, 1L,
+                Collections.emptyMap()), false);
+        Mockito.verify(gameService).endedElsewhere(1L);
+    }
+
+    private Runnable startedTick(long initialDelayMillis) {
+        ArgumentCaptor<Runnable> tick = ArgumentCaptor.forClass(Runnable.class);
+        Mockito.verify(gameScheduler).start(Mockito.eq(1L), Mockito.eq(initialDelayMillis), tick.capture());
+        return tick.getValue();
+    }
+
+    private GameRepository.ActiveGame activeGame(Game game) {
+        return new GameRepository.ActiveGame() {
+            public Long getLobbyId() { return game.getLobbyId(); }
+            public GameState getGameState() { return game.getGameState(); }
+            public Long getStartTimeMillis() { return game.getStartTimeMillis(); }
+            public String getCurrentWord() { return null; }
+        };
+    }
+}
@@ -0,0 +1,167 @@
+package ch.uzh.ifi.seal.soprafs20.service;
+
+import ch.uzh.ifi.seal.soprafs20.entity.Game;
+import ch.uzh.ifi.seal.soprafs20.exceptions.NotOwnerException;
+import ch.uzh.ifi.seal.soprafs20.metrics.MetricsRegistry;
+import ch.uzh.ifi.seal.soprafs20.repository.GameLeaseRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs several server nodes in this JVM against the one H2 database, each with its own leases
+ */
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class GameLeasesIntegrationTest {
+    private static final long LEASE_MILLIS = 5000L;
+
+    @Autowired
+    private GameLeaseRepository leaseRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private final VirtualGameClock clock = new VirtualGameClock(1_000_000L);
+
+    private GameLeases node(String nodeId) {
+        return new GameLeases(leaseRepository, transactionManager, clock, new MetricsRegistry(), nodeId, LEASE_MILLIS);
+    }
+
+    @AfterEach
+    void cleanUp() {
+        leaseRepository.deleteAll();
+    }
+
+    @Test
+    void acquire_severalNodesAtOnce_oneOwner() throws Exception {
+        List<GameLeases> nodes = new ArrayList<>();
+        for(int i = 0; i < 4; i++) {
+            nodes.add(node("node-" + i));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(nodes.size());
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<OptionalLong>> results = new ArrayList<>();
+        for(GameLeases node : nodes) {
+            results.add(executor.submit(() -> {
+                start.await();
+                return node.acquire(1L);
+            }));
+        }
+        start.countDown();
+
+        int owners = 0;
+        for(Future<OptionalLong> result : results) {
+            if(result.get(10, TimeUnit.SECONDS).isPresent()) {
+                owners++;
+            }
+        }
+        executor.shutdown();
+
+        assertEquals(1, owners);
+        assertEquals(1, nodes.stream().filter(node -> node.holds(1L)).count());
+    }
+
+    @Test
+    void takeOverExpired_ownerStoppedRenewing_newerToken() {
+        GameLeases crashed = node("crashed");
+        GameLeases survivor = node("survivor");
+        assertEquals(1L, crashed.acquire(1L).getAsLong());
+
+        clock.advanceBy(LEASE_MILLIS - 1);
+        assertTrue(survivor.takeOverExpired(lobbyId -> true).isEmpty());
+        assertTrue(survivor.acquire(1L).isEmpty());
+
+        clock.advanceBy(2);
+        assertEquals(List.of(1L), survivor.takeOverExpired(lobbyId -> true));
+        assertTrue(survivor.holds(1L));
+        assertEquals(2L, leaseRepository.findById(1L).get().getFencingToken());
+        assertEquals(Set.of(1L), crashed.renew());
+        assertFalse(crashed.holds(1L));
+    }
+
+    @Test
+    void renew_ownerAlive_notTakenOver() {
+        GameLeases owner = node("owner");
+        GameLeases other = node("other");
+        owner.acquire(1L);
+
+        for(int i = 0; i < 5; i++) {
+            clock.advanceBy(LEASE_MILLIS / 2);
+            assertTrue(owner.renew().isEmpty());
+            assertTrue(other.takeOverExpired(lobbyId -> true).isEmpty());
+        }
+        assertTrue(owner.holds(1L));
+    }
+
+    @Test
+    void fence_writtenByNewerOwner_staleOwnerRejected() {
+        GameLeases stale = node("stale");
+        GameLeases current = node("current");
+        Game game = new Game();
+        game.setLobbyId(1L);
+        stale.acquire(1L);
+        stale.fence(game);
+        assertEquals(1L, game.getFencingToken());
+
+        clock.advanceBy(LEASE_MILLIS + 1);
+        current.takeOverExpired(lobbyId -> true);
+        current.fence(game);
+        assertEquals(2L, game.getFencingToken());
+
+        assertThrows(NotOwnerException.class, () -> stale.fence(game));
+    }
+
+    @Test
+    void fence_otherNodeHoldsLease_rejectedWithOwner() {
+        GameLeases owner = node("owner");
+        GameLeases other = node("other");
+        Game game = new Game();
+        game.setLobbyId(1L);
+        owner.acquire(1L);
+
+        NotOwnerException exception = assertThrows(NotOwnerException.class, () -> other.fence(game));
+        assertEquals("owner", exception.getOwner());
+    }
+
+    @Test
+    void handOver_ownerKeepsRenewing_otherNodeTakesOver() {
+        GameLeases previous = node("previous");
+        GameLeases next = node("next");
+        previous.acquire(1L);
+        previous.acquire(2L);
+
+        previous.handOver(1L);
+        clock.advanceBy(LEASE_MILLIS / 2);
+        assertTrue(previous.renew().isEmpty());
+
+        assertEquals(List.of(1L), next.takeOverExpired(lobbyId -> true));
+        assertTrue(next.holds(1L));
+        assertFalse(previous.holds(1L));
+        assertTrue(previous.holds(2L));
+    }
+
+    @Test
+    void release_leaseFreeForOtherNodes() {
+        GameLeases first = node("first");
+        GameLeases second = node("second");
+        first.acquire(1L);
+
+        first.release(1L);
+
+        assertFalse(first.holds(1L));
+        assertEquals(1L, second.acquire(1L).getAsLong());
+    }
+}
@@ -0,0 +1,61 @@
+package ch.uzh.ifi.seal.soprafs20.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GameSchedulerTest {
+
+    private final GameScheduler gameScheduler = new GameScheduler(2);
+
+    @AfterEach
+    void tearDown() {
+        gameScheduler.shutdown();
+    }
+
+    @Test
+    void start_tickThrows_keepsTicking() throws InterruptedException {
+        CountDownLatch ticks = new CountDownLatch(2);
+        gameScheduler.start(1L, 0L, () -> {
+            ticks.countDown();
+            throw new IllegalStateException("bad tick");
+        });
+
+        assertTrue(ticks.await(3, TimeUnit.SECONDS));
+        assertTrue(gameScheduler.isRunning(1L));
+    }
+
+    @Test
+    void stop_fromOwnTick_noMoreTicks() throws InterruptedException {
+        AtomicInteger ticks = new AtomicInteger();
+        gameScheduler.start(1L, 0L, () -> {
+            ticks.incrementAndGet();
+            gameScheduler.stop(1L);
+        });
+
+        Thread.sleep(1500);
+
+        assertEquals(1, ticks.get());
+        assertFalse(gameScheduler.isRunning(1L));
+        assertEquals(0, gameScheduler.countRunning());
+    }
+
+    @Test
+    void start_sameLobbyTwice_replacesTimer() throws InterruptedException {
+        AtomicInteger firstTicks = new AtomicInteger();
+        CountDownLatch secondTick = new CountDownLatch(1);
+        gameScheduler.start(1L, 500L, firstTicks::incrementAndGet);
+        gameScheduler.start(1L, 0L, secondTick::countDown);
+
+        assertTrue(secondTick.await(1, TimeUnit.SECONDS));
+        Thread.sleep(700);
+
+        assertEquals(0, firstTicks.get());
+        assertEquals(1, gameScheduler.countRunning());
+    }
+}
@@ -15,8 +15,14 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInstance;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
 import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -26,6 +32,21 @@ import static org.junit.jupiter.api.Assertions.*;
 @TestInstance(TestInstance.Lifecycle.PER_CLASS)
 class GameServiceIntegrationTest {
 
+    @TestConfiguration
+    static class ManualTimerConfiguration {
+        @Bean
+        @Primary
+        VirtualGameClock virtualGameClock() {
+            return new VirtualGameClock(System.currentTimeMillis());
+        }
+
+        @Bean
+        @Primary
+        ManualGameScheduler manualGameScheduler() {
+            return new ManualGameScheduler();
+        }
+    }
+
     @Autowired
     private GameRepository gameRepository;
 
@@ -38,6 +59,18 @@ class GameServiceIntegrationTest {
     @Autowired
     private GameService gameService;
 
+    @Autowired
+    private GameCoordinator gameCoordinator;
+
+    @Autowired
+    private ManualGameScheduler gameScheduler;
+
+    @Autowired
+    private VirtualGameClock clock;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
     @BeforeEach
     public void setup() {
         gameRepository.deleteAll();
@@ -134,4 +167,56 @@ class GameServiceIntegrationTest {
 
         assertThrows(ConflictException.class, () -> gameService.createGame(lobby, gamePostDTO));
     }
+
+    @Test
+    void timer_gameWithoutInput_endsThroughTheTimersTicks() {
+        List<Player> players = new ArrayList<>();
+        for(long i = 1; i <= 3; i++) {
+            Player player = new Player();
+            player.setId(i);
+            player.setToken("token" + i);
+            player.setUsername("player" + i);
+            players.add(player);
+        }
+        Player host = players.get(0);
+
+        // like the request that starts a game: the timer is stored together with the new game
+        Game game = new TransactionTemplate(transactionManager).execute(status -> {
+            playerRepository.saveAll(players);
+            playerRepository.flush();
+
+            Lobby lobby = new Lobby();
+            lobby.setHostId(host.getId());
+            lobby.setHostToken(host.getToken());
+            lobby.setLobbyName("BadBunny");
+            lobby.setPrivate(true);
+            lobby.setMaxPlayersAndBots(7);
+            lobby.setRounds(1);
+            lobby.setCurrentNumBots(0);
+            lobby.setCurrentNumPlayers(players.size());
+            for(Player player : players) {
+                lobby.addPlayerToLobby(player);
+            }
+            lobby = lobbyRepository.saveAndFlush(lobby);
+
+            GamePostDTO gamePostDTO = new GamePostDTO();
+            gamePostDTO.setHostToken(host.getToken());
+            gamePostDTO.setHostId(host.getId());
+            Game createdGame = gameService.createGame(lobby, gamePostDTO);
+            gameService.setTimer(createdGame);
+            return createdGame;
+        });
+        Long lobbyId = game.getLobbyId();
+
+        // nobody does anything, every state runs out and each tick saves the game more than once
+        gameCoordinator.timer(game);
+        for(int i = 0; i < 300 && gameScheduler.isRunning(lobbyId); i++) {
+            clock.advanceBy(GameScheduler.TICK_MILLIS);
+            gameScheduler.tick(lobbyId);
+        }
+
+        assertFalse(gameScheduler.isRunning(lobbyId));
+        assertTrue(gameRepository.findByLobbyId(lobbyId).isEmpty());
+        assertFalse(lobbyRepository.findByLobbyId(lobbyId).orElseThrow().isGameStarted());
+    }
 }
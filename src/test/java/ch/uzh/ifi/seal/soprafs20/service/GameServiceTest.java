@@ -3,7 +3,13 @@ package ch.uzh.ifi.seal.soprafs20.service;
 import ch.uzh.ifi.seal.soprafs20.GameLogic.WordReader;
 import ch.uzh.ifi.seal.soprafs20.GameLogic.GameState;
 import ch.uzh.ifi.seal.soprafs20.entity.*;
+import ch.uzh.ifi.seal.soprafs20.events.DomainEvent;
+import ch.uzh.ifi.seal.soprafs20.events.EventBus;
+import ch.uzh.ifi.seal.soprafs20.exceptions.NotFoundException;
 import ch.uzh.ifi.seal.soprafs20.exceptions.UnauthorizedException;
+import ch.uzh.ifi.seal.soprafs20.journal.GameJournal;
+import ch.uzh.ifi.seal.soprafs20.journal.JournalRecord;
+import ch.uzh.ifi.seal.soprafs20.metrics.MetricsRegistry;
 import ch.uzh.ifi.seal.soprafs20.repository.*;
 import ch.uzh.ifi.seal.soprafs20.rest.dto.CluePutDTO;
 import ch.uzh.ifi.seal.soprafs20.rest.dto.GamePostDTO;
@@ -12,13 +18,21 @@ import ch.uzh.ifi.seal.soprafs20.rest.dto.RequestPutDTO;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
+import java.util.OptionalLong;
 import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -40,9 +54,50 @@ class GameServiceTest {
     @Mock
     private LobbyScoreRepository lobbyScoreRepository;
 
+    @Mock
+    private PlayerRepository playerRepository;
+
+    @Mock
+    private LobbyDirectory lobbyDirectory;
+
+    @Mock
+    private MetricsRegistry metricsRegistry;
+
+    @Spy
+    private GameClock gameClock = new SystemGameClock();
+
+    @Spy
+    private DatamuseClient datamuseClient = new DatamuseClient(DatamuseClient.DEFAULT_URL);
+
+    @Spy
+    private GameScheduler gameScheduler = new GameScheduler(1);
+
+    @Mock
+    private GameLeases gameLeases;
+
+    @Mock
+    private ClusterMembership clusterMembership;
+
+    @Mock
+    private EventBus eventBus;
+
+    @Mock
+    private GameJournal gameJournal;
+
+    @Mock
+    private GameArchiveService gameArchiveService;
+
+    @Mock
+    private ActivityTracker activityTracker;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
     @InjectMocks
     private GameService gameService;
 
+    private GameCoordinator gameCoordinator;
+
     private Game testGame;
     private Lobby testLobby;
     private Player testHost;
@@ -51,6 +106,9 @@ class GameServiceTest {
     @BeforeEach
     void setUp() {
         MockitoAnnotations.initMocks(this);
+        // the timer of a game runs the ticks of the game service
+        gameCoordinator = new GameCoordinator(gameService, gameRepository, gameScheduler, gameLeases, clusterMembership,
+                gameJournal, activityTracker, eventBus, metricsRegistry, gameClock, transactionManager);
 
         testHost = new Player();
         testHost.setId(1L);
@@ -77,6 +135,9 @@ class GameServiceTest {
 
         Mockito.when(gameRepository.findById(Mockito.any())).thenReturn(java.util.Optional.ofNullable(testGame));
         Mockito.when(gameRepository.save(Mockito.any())).thenReturn(testGame);
+        Mockito.when(gameLeases.acquire(Mockito.any())).thenReturn(OptionalLong.of(1L));
+        Mockito.when(gameLeases.holds(Mockito.any())).thenReturn(true);
+        Mockito.when(clusterMembership.isLocal(Mockito.anyLong())).thenReturn(true);
     }
 
     @Test
@@ -287,19 +348,77 @@ class GameServiceTest {
     @Test
     void pickWord_validInput_success() {
         List<String> someWordAsList = new ArrayList<>();
-        someWordAsList.add("Erdbeermarmeladebrot");
+        someWordAsList.add("Hazelnut");
         testGame.setWords(someWordAsList);
 
         gameService.pickWord(testHost.getToken(), testGame);
 
-        assertEquals("erdbeermarmeladebrot", testGame.getCurrentWord());
+        assertEquals("hazelnut", testGame.getCurrentWord());
         assertEquals(GameState.ENTER_CLUES_STATE, testGame.getGameState());
     }
 
+    @Test
+    void isSpoiler_afterPickWord() {
+        List<String> someWordAsList = new ArrayList<>();
+        someWordAsList.add("Strawberry");
+        testGame.setWords(someWordAsList);
+
+        assertFalse(gameService.isSpoiler(testGame.getLobbyId(), "strawberry"));
+
+        gameService.pickWord(testHost.getToken(), testGame);
+
+        assertTrue(gameService.isSpoiler(testGame.getLobbyId(), "I think it's a STRAWBERRY"));
+        assertTrue(gameService.isSpoiler(testGame.getLobbyId(), "strawberries"));
+        assertFalse(gameService.isSpoiler(testGame.getLobbyId(), "good luck"));
+    }
+
+    @Test
+    void getStateVersion_changesOnWrite() {
+        List<String> someWordAsList = new ArrayList<>();
+        someWordAsList.add("Strawberry");
+        testGame.setWords(someWordAsList);
+
+        long version = gameService.getStateVersion(testGame.getLobbyId());
+        assertTrue(version >= 1);
+        assertEquals(version, gameService.getStateVersion(testGame.getLobbyId()));
+
+        gameService.pickWord(testHost.getToken(), testGame);
+
+        assertTrue(gameService.getStateVersion(testGame.getLobbyId()) > version);
+        Mockito.verify(eventBus).publish(Mockito.eq(testGame.getLobbyId()), Mockito.eq(DomainEvent.Type.GAME_CHANGED),
+                Mockito.any());
+    }
+
+    @Test
+    void getStateVersion_missingGame_versionDropped() {
+        Mockito.when(gameRepository.findById(99L)).thenReturn(Optional.empty());
+
+        long version = gameService.getStateVersion(99L);
+        assertThrows(NotFoundException.class, () -> gameService.getGame(99L));
+
+        assertNotEquals(version, gameService.getStateVersion(99L));
+    }
+
+    @Test
+    void remoteEvents_moveStateVersionAndDropWord() {
+        List<String> someWordAsList = new ArrayList<>();
+        someWordAsList.add("Strawberry");
+        testGame.setWords(someWordAsList);
+        gameService.pickWord(testHost.getToken(), testGame);
+        long version = gameService.getStateVersion(testGame.getLobbyId());
+
+        gameService.changedElsewhere(testGame.getLobbyId());
+        assertTrue(gameService.getStateVersion(testGame.getLobbyId()) > version);
+        assertTrue(gameService.isSpoiler(testGame.getLobbyId(), "strawberry"));
+
+        gameService.endedElsewhere(testGame.getLobbyId());
+        assertFalse(gameService.isSpoiler(testGame.getLobbyId(), "strawberry"));
+    }
+
     @Test
     public void pickWord_unauthorizedUser() {
         List<String> someWordAsList = new ArrayList<>();
-        someWordAsList.add("Erdbeermarmeladebrot");
+        someWordAsList.add("Hazelnut");
         testGame.setWords(someWordAsList);
 
         assertThrows(UnauthorizedException.class,()->{ gameService.pickWord("someToken", testGame); });
@@ -315,7 +434,7 @@ class GameServiceTest {
         messagePutDTO.setMessage("star wars");
         messagePutDTO.setPlayerToken(testGame.getCurrentGuesser().getToken());
 
-        gameService.submitGuess(testGame, messagePutDTO, 30);
+        gameService.submitGuess(testGame, messagePutDTO, TimeUnit.SECONDS.toMillis(30));
 
         assertTrue(testGame.isGuessCorrect());
     }
@@ -330,11 +449,45 @@ class GameServiceTest {
         messagePutDTO.setMessage("star trek");
         messagePutDTO.setPlayerToken(testGame.getCurrentGuesser().getToken());
 
-        gameService.submitGuess(testGame, messagePutDTO, 30);
+        gameService.submitGuess(testGame, messagePutDTO, TimeUnit.SECONDS.toMillis(30));
 
         assertFalse(testGame.isGuessCorrect());
     }
 
+    @Test
+    void submitGuess_journalEnabled_guessJournaled() {
+        Mockito.when(gameJournal.isEnabled()).thenReturn(true);
+        testGame.setGameState(GameState.ENTER_GUESS_STATE);
+        testGame.setCurrentWord("Star Wars");
+        testGame.setStartTimeSeconds(60);
+
+        MessagePutDTO messagePutDTO = new MessagePutDTO();
+        messagePutDTO.setMessage("star wars");
+        messagePutDTO.setPlayerToken(testGame.getCurrentGuesser().getToken());
+
+        gameService.submitGuess(testGame, messagePutDTO, TimeUnit.SECONDS.toMillis(30));
+
+        Mockito.verify(gameJournal).append(Mockito.eq(testGame.getLobbyId()), Mockito.eq(JournalRecord.Type.GUESS),
+                Mockito.any(), Mockito.eq("star wars"));
+    }
+
+    @Test
+    void submitGuess_guessCorrect_scoredByMilliseconds() {
+        testGame.setGameState(GameState.ENTER_GUESS_STATE);
+        testGame.setSpecialGame(false);
+        testGame.setCurrentWord("Star Wars");
+        testGame.setStartTimeSeconds(60);
+
+        MessagePutDTO messagePutDTO = new MessagePutDTO();
+        messagePutDTO.setMessage("star wars");
+        messagePutDTO.setPlayerToken(testGame.getCurrentGuesser().getToken());
+
+        gameService.submitGuess(testGame, messagePutDTO, 2_500L);
+
+        assertEquals(137, testGame.getCurrentGuesser().getScore());
+        assertEquals(137, testGame.getOverallScore());
+    }
+
     @Test
     void submitGuess_invalidState_throwsException() {
         testGame.setGameState(GameState.ENTER_CLUES_STATE);
@@ -345,7 +498,7 @@ class GameServiceTest {
         messagePutDTO.setMessage("star wars");
         messagePutDTO.setPlayerToken(testGame.getCurrentGuesser().getToken());
 
-        assertThrows(UnauthorizedException.class,()->{ gameService.submitGuess(testGame, messagePutDTO, 30); });
+        assertThrows(UnauthorizedException.class,()->{ gameService.submitGuess(testGame, messagePutDTO, TimeUnit.SECONDS.toMillis(30)); });
         assertFalse(testGame.isGuessCorrect());
         assertNotEquals(GameState.TRANSITION_STATE, testGame.getGameState());
     }
@@ -360,7 +513,7 @@ class GameServiceTest {
         messagePutDTO.setMessage("star wars");
         messagePutDTO.setPlayerToken("someToken");
 
-        assertThrows(UnauthorizedException.class,()->{ gameService.submitGuess(testGame, messagePutDTO, 30); });
+        assertThrows(UnauthorizedException.class,()->{ gameService.submitGuess(testGame, messagePutDTO, TimeUnit.SECONDS.toMillis(30)); });
         assertFalse(testGame.isGuessCorrect());
         assertNotEquals(GameState.TRANSITION_STATE, testGame.getGameState());
     }
@@ -577,7 +730,7 @@ class GameServiceTest {
         testGame.setTimer(new InternalTimer());
         testGame.getTimer().setCancel(false);
         testGame.setTime(10);
-        gameService.timer(testGame);
+        gameCoordinator.timer(testGame);
         Thread.sleep(1000);
 
         assertEquals(GameState.ENTER_CLUES_STATE, testGame.getGameState());
@@ -614,7 +767,7 @@ class GameServiceTest {
         testGame.setTimer(new InternalTimer());
         testGame.getTimer().setCancel(false);
         testGame.setTime(10);
-        gameService.timer(testGame);
+        gameCoordinator.timer(testGame);
         Thread.sleep(1000);
 
         assertEquals(GameState.VOTE_ON_CLUES_STATE, testGame.getGameState());
@@ -652,7 +805,7 @@ class GameServiceTest {
         testGame.setTimer(new InternalTimer());
         testGame.getTimer().setCancel(false);
         testGame.setTime(15);
-        gameService.timer(testGame);
+        gameCoordinator.timer(testGame);
         Thread.sleep(1000);
 
         assertEquals(GameState.ENTER_GUESS_STATE, testGame.getGameState());
@@ -689,7 +842,7 @@ class GameServiceTest {
         testGame.setTimer(new InternalTimer());
         testGame.getTimer().setCancel(false);
         testGame.setTime(15);
-        gameService.timer(testGame);
+        gameCoordinator.timer(testGame);
         Thread.sleep(1000);
 
         assertEquals(GameState.TRANSITION_STATE, testGame.getGameState());
@@ -735,7 +888,7 @@ class GameServiceTest {
 
         Mockito.when(lobbyRepository.findByLobbyId(1L)).thenReturn(java.util.Optional.of(lobby));
 
-        gameService.timer(testGame);
+        gameCoordinator.timer(testGame);
         Thread.sleep(1000);
 
         assertEquals(GameState.END_GAME_STATE, testGame.getGameState());
@@ -789,7 +942,7 @@ class GameServiceTest {
         Mockito.when(userRepository.findById(player2.getId())).thenReturn(java.util.Optional.of(user2));
 
 
-        gameService.timer(testGame);
+        gameCoordinator.timer(testGame);
         Thread.sleep(1000);
 
         assertEquals(GameState.PICK_WORD_STATE, testGame.getGameState());
@@ -842,7 +995,7 @@ class GameServiceTest {
         Mockito.when(userRepository.findById(player2.getId())).thenReturn(java.util.Optional.of(user2));
 
 
-        gameService.timer(testGame);
+        gameCoordinator.timer(testGame);
         Thread.sleep(2*1000);
 
         assertEquals(GameState.END_GAME_STATE, testGame.getGameState());
@@ -895,7 +1048,7 @@ class GameServiceTest {
         Mockito.when(lobbyRepository.findByLobbyId(testGame.getLobbyId())).thenReturn(java.util.Optional.of(lobby));
 
 
-        gameService.timer(testGame);
+        gameCoordinator.timer(testGame);
         Thread.sleep(5*1000);
 
         assertEquals(GameState.END_GAME_STATE, testGame.getGameState());
@@ -940,7 +1093,7 @@ class GameServiceTest {
 
         Mockito.when(gameRepository.findByLobbyId(testGame.getLobbyId())).thenReturn(java.util.Optional.ofNullable(testGame));
 
-        gameService.timer(testGame);
+        gameCoordinator.timer(testGame);
 //        Thread.sleep(1*1000);
 
         assertEquals(GameState.ENTER_CLUES_STATE, testGame.getGameState());
@@ -1488,4 +1641,84 @@ class GameServiceTest {
         assertEquals(10,time);
     }
 
+    @Test
+    void timer_endGameConflictAfterScoring_rolledBack() {
+        User user = new User();
+        user.setId(testHost.getId());
+        user.setScore(10);
+        testHost.setScore(5);
+        testGame.setGameState(GameState.END_GAME_STATE);
+        testGame.setLobbyName("Test");
+        testGame.setStartTimeMillis(0L);
+        testGame.setTimer(new InternalTimer());
+        Mockito.when(gameRepository.findByLobbyId(Mockito.anyLong())).thenReturn(Optional.of(testGame));
+        Mockito.when(lobbyRepository.findByLobbyId(Mockito.anyLong())).thenReturn(Optional.of(testLobby));
+        Mockito.when(userRepository.findById(Mockito.any())).thenReturn(Optional.empty());
+        Mockito.when(userRepository.findById(testHost.getId())).thenReturn(Optional.of(user));
+        Mockito.when(gameRepository.saveAndFlush(Mockito.any()))
+                .thenThrow(new OptimisticLockingFailureException("changed by a player"));
+
+        ArgumentCaptor<Runnable> tick = ArgumentCaptor.forClass(Runnable.class);
+        Mockito.doNothing().when(gameScheduler).start(Mockito.eq(testGame.getLobbyId()), Mockito.anyLong(), tick.capture());
+        gameCoordinator.timer(testGame);
+
+        // runs the tick the way the scheduler does
+        tick.getValue().run();
+
+        // the score was added to the user before the conflict, so the whole tick is rolled back
+        Mockito.verify(userRepository).saveAndFlush(user);
+        Mockito.verify(transactionManager).rollback(Mockito.any());
+        Mockito.verify(transactionManager, Mockito.never()).commit(Mockito.any());
+        // and the next tick tries again
+        Mockito.verify(metricsRegistry).increment(CommandRetry.CONFLICTS + "game.timer");
+        Mockito.verify(gameScheduler, Mockito.never()).stop(Mockito.anyLong());
+    }
+
+    @Test
+    void abandonGame_runningGame_gameLobbyAndPlayersRemoved() {
+        Mockito.when(lobbyRepository.findById(Mockito.any())).thenReturn(Optional.of(testLobby));
+        gameScheduler.start(testGame.getLobbyId(), 60_000L, () -> {});
+
+        assertEquals(2, gameService.abandonGame(testGame.getLobbyId()));
+
+        assertFalse(gameScheduler.isRunning(testGame.getLobbyId()));
+        Mockito.verify(lobbyRepository).delete(testLobby);
+        Mockito.verify(gameRepository).delete(testGame);
+        Mockito.verify(playerRepository).deleteAll(List.of(player2, testHost));
+        Mockito.verify(lobbyDirectory).remove(testGame.getLobbyId());
+        Mockito.verify(gameLeases).release(testGame.getLobbyId());
+    }
+
+    @Test
+    void abandonGame_notCommittedYet_timerKeepsRunning() {
+        Mockito.when(lobbyRepository.findById(Mockito.any())).thenReturn(Optional.of(testLobby));
+        gameScheduler.start(testGame.getLobbyId(), 60_000L, () -> {});
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            gameService.abandonGame(testGame.getLobbyId());
+
+            // a rollback would leave the game with its timer
+            assertTrue(gameScheduler.isRunning(testGame.getLobbyId()));
+            Mockito.verify(gameLeases, Mockito.never()).release(Mockito.any());
+
+            for(TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+                synchronization.afterCommit();
+            }
+            assertFalse(gameScheduler.isRunning(testGame.getLobbyId()));
+            Mockito.verify(gameLeases).release(testGame.getLobbyId());
+        }
+        finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void abandonGame_noGame_nothingRemoved() {
+        Mockito.when(gameRepository.findById(Mockito.any())).thenReturn(Optional.empty());
+
+        assertEquals(-1, gameService.abandonGame(testGame.getLobbyId()));
+
+        Mockito.verify(gameRepository, Mockito.never()).delete(Mockito.any());
+        Mockito.verify(lobbyRepository, Mockito.never()).delete(Mockito.any());
+    }
 }
@@ -0,0 +1,79 @@
+package ch.uzh.ifi.seal.soprafs20.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HashRingTest {
+    private static final int LOBBIES = 100_000;
+
+    private static List<String> nodes(int count) {
+        List<String> nodes = new ArrayList<>();
+        for(int i = 1; i <= count; i++) {
+            nodes.add("node-" + i);
+        }
+        return nodes;
+    }
+
+    @Test
+    void ownerOf_noNodes_null() {
+        assertNull(new HashRing(Collections.emptyList(), 128).ownerOf(1L));
+    }
+
+    @Test
+    void ownerOf_sameNodes_sameOwnerOnEveryRing() {
+        HashRing ring = new HashRing(nodes(3), 128);
+        List<String> reversed = nodes(3);
+        Collections.reverse(reversed);
+        HashRing other = new HashRing(reversed, 128);
+
+        for(long lobbyId = 1; lobbyId <= 1000; lobbyId++) {
+            assertEquals(ring.ownerOf(lobbyId), other.ownerOf(lobbyId));
+        }
+    }
+
+    @Test
+    void ownerOf_consecutiveLobbies_evenlySpread() {
+        HashRing ring = new HashRing(nodes(4), 128);
+        Map<String, Integer> lobbiesPerNode = new HashMap<>();
+        for(long lobbyId = 1; lobbyId <= LOBBIES; lobbyId++) {
+            lobbiesPerNode.merge(ring.ownerOf(lobbyId), 1, Integer::sum);
+        }
+
+        assertEquals(4, lobbiesPerNode.size());
+        for(int lobbies : lobbiesPerNode.values()) {
+            assertTrue(Math.abs(lobbies - LOBBIES / 4) < LOBBIES / 4 * 0.25, "unbalanced: " + lobbiesPerNode);
+        }
+    }
+
+    @Test
+    void ownerOf_nodeJoins_onlyLobbiesOfNewNodeMove() {
+        HashRing before = new HashRing(nodes(4), 128);
+        HashRing after = new HashRing(nodes(5), 128);
+
+        int moved = 0;
+        for(long lobbyId = 1; lobbyId <= LOBBIES; lobbyId++) {
+            String owner = after.ownerOf(lobbyId);
+            if(!owner.equals(before.ownerOf(lobbyId))) {
+                assertEquals("node-5", owner);
+                moved++;
+            }
+        }
+        assertTrue(moved > LOBBIES / 5 * 0.75 && moved < LOBBIES / 5 * 1.25, "moved: " + moved);
+    }
+
+    @Test
+    void ownerOf_nodeLeaves_onlyLobbiesOfLeavingNodeMove() {
+        HashRing before = new HashRing(nodes(4), 128);
+        HashRing after = new HashRing(nodes(3), 128);
+
+        for(long lobbyId = 1; lobbyId <= LOBBIES; lobbyId++) {
+            String owner = before.ownerOf(lobbyId);
+            if(!owner.equals("node-4")) {
+                assertEquals(owner, after.ownerOf(lobbyId));
+            }
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package ch.uzh.ifi.seal.soprafs20.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+
+class LeaseMaintainerTest {
+
+    @Mock
+    private ClusterMembership clusterMembership;
+
+    @Mock
+    private GameCoordinator gameCoordinator;
+
+    private LeaseMaintainer leaseMaintainer;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.initMocks(this);
+        leaseMaintainer = new LeaseMaintainer(clusterMembership, gameCoordinator, 60_000L);
+    }
+
+    @AfterEach
+    void tearDown() {
+        leaseMaintainer.shutdown();
+    }
+
+    @Test
+    void maintain_heartbeatAndLeases() {
+        leaseMaintainer.maintain();
+
+        Mockito.verify(clusterMembership).heartbeat();
+        Mockito.verify(gameCoordinator).maintainLeases();
+    }
+
+    @Test
+    void maintain_heartbeatFails_leasesStillRenewed() {
+        Mockito.doThrow(new IllegalStateException("database down")).when(clusterMembership).heartbeat();
+
+        leaseMaintainer.maintain();
+
+        Mockito.verify(gameCoordinator).maintainLeases();
+    }
+}
@@ -0,0 +1,111 @@
+package ch.uzh.ifi.seal.soprafs20.service;
+
+import ch.uzh.ifi.seal.soprafs20.entity.Lobby;
+import ch.uzh.ifi.seal.soprafs20.rest.dto.LobbyGetDTO;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LobbyDirectoryTest {
+
+    private LobbyDirectory lobbyDirectory;
+
+    @BeforeEach
+    void setup() {
+        lobbyDirectory = new LobbyDirectory();
+    }
+
+    private Lobby createLobby(long lobbyId, int players, int bots, boolean isPrivate, boolean started) {
+        Lobby lobby = new Lobby();
+        lobby.setLobbyId(lobbyId);
+        lobby.setLobbyName("lobby" + lobbyId);
+        lobby.setHostId(lobbyId);
+        lobby.setMaxPlayersAndBots(5);
+        lobby.setCurrentNumPlayers(players);
+        lobby.setCurrentNumBots(bots);
+        lobby.setRounds(13);
+        lobby.setPrivate(isPrivate);
+        lobby.setGameIsStarted(started);
+        return lobby;
+    }
+
+    @Test
+    void list_joinableOnly_filtersPrivateStartedAndFullLobbies() {
+        lobbyDirectory.update(createLobby(1L, 1, 0, false, false));
+        lobbyDirectory.update(createLobby(2L, 1, 0, true, false));
+        lobbyDirectory.update(createLobby(3L, 3, 0, false, true));
+        lobbyDirectory.update(createLobby(4L, 3, 2, false, false));
+        lobbyDirectory.update(createLobby(5L, 2, 1, false, false));
+
+        List<LobbyGetDTO> joinable = lobbyDirectory.list(true, 0L, 10);
+        List<LobbyGetDTO> all = lobbyDirectory.list(false, 0L, 10);
+
+        assertEquals(2, joinable.size());
+        assertEquals(1L, joinable.get(0).getLobbyId());
+        assertEquals(5L, joinable.get(1).getLobbyId());
+        assertEquals(5, all.size());
+        assertEquals(1, lobbyDirectory.getNumberOfPrivateLobbies());
+        assertEquals(1, lobbyDirectory.getNumberOfStartedLobbies());
+        assertEquals(3, lobbyDirectory.getNumberOfOpenLobbies());
+    }
+
+    @Test
+    void list_withCursorAndLimit_returnsNextPage() {
+        for(long i = 1; i <= 5; i++) {
+            lobbyDirectory.update(createLobby(i, 1, 0, false, false));
+        }
+
+        List<LobbyGetDTO> firstPage = lobbyDirectory.list(true, 0L, 2);
+        List<LobbyGetDTO> secondPage = lobbyDirectory.list(true, firstPage.get(1).getLobbyId(), 2);
+
+        assertEquals(2, firstPage.size());
+        assertEquals(3L, secondPage.get(0).getLobbyId());
+        assertEquals(4L, secondPage.get(1).getLobbyId());
+    }
+
+    @Test
+    void update_changesFreeSlotIndex() {
+        Lobby lobby = createLobby(1L, 1, 0, false, false);
+        lobbyDirectory.update(lobby);
+        assertTrue(lobbyDirectory.getJoinableLobbies(4).contains(1L));
+
+        lobby.setCurrentNumPlayers(2);
+        lobby.setCurrentNumBots(1);
+        lobbyDirectory.update(lobby);
+        assertFalse(lobbyDirectory.getJoinableLobbies(4).contains(1L));
+        assertTrue(lobbyDirectory.getJoinableLobbies(2).contains(1L));
+
+        lobby.setGameIsStarted(true);
+        lobbyDirectory.update(lobby);
+        assertFalse(lobbyDirectory.getJoinableLobbies(2).contains(1L));
+        assertTrue(lobbyDirectory.list(true, 0L, 10).isEmpty());
+    }
+
+    @Test
+    void update_olderVersion_ignored() {
+        Lobby newer = createLobby(1L, 3, 0, false, false);
+        newer.setVersion(3L);
+        Lobby older = createLobby(1L, 1, 0, false, false);
+        older.setVersion(2L);
+
+        lobbyDirectory.update(newer);
+        lobbyDirectory.update(older);
+
+        assertEquals(3, lobbyDirectory.list(false, 0L, 10).get(0).getCurrentNumPlayers());
+        assertTrue(lobbyDirectory.getJoinableLobbies(2).contains(1L));
+        assertFalse(lobbyDirectory.getJoinableLobbies(4).contains(1L));
+    }
+
+    @Test
+    void remove_deletesListing() {
+        lobbyDirectory.update(createLobby(1L, 1, 0, false, false));
+
+        lobbyDirectory.remove(1L);
+
+        assertTrue(lobbyDirectory.list(false, 0L, 10).isEmpty());
+        assertEquals(0, lobbyDirectory.getNumberOfOpenLobbies());
+    }
+}
@@ -11,10 +11,14 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInstance;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.ConcurrencyFailureException;
 import org.springframework.test.context.web.WebAppConfiguration;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -146,6 +150,73 @@ class LobbyServiceIntegrationTest {
         assertTrue(ex.getMessage().contains("already hosting another lobby"));
     }
 
+    /**
+     * Fires hundreds of simultaneous joins at one lobby, the lobby must never overshoot and end up with a slot
+     * counter that matches its members. A join that waits too long for the lobby's row lock fails with a lock
+     * timeout instead of a conflict, so the lobby can end up with fewer players than it has slots.
+     */
+    @Test
+    void addPlayerToLobby_concurrentJoins_neverOvershoot() throws Exception {
+        Player host = new Player();
+        host.setId(100L);
+        host.setToken("hostToken100");
+        host.setUsername("host100");
+        playerRepository.saveAndFlush(host);
+
+        Lobby lobby = new Lobby();
+        lobby.setHostId(host.getId());
+        lobby.setHostToken(host.getToken());
+        lobby.setLobbyName("Stress");
+        lobby.setPrivate(false);
+        lobby.setMaxPlayersAndBots(7);
+        lobby.setRounds(13);
+        Long lobbyId = lobbyService.createLobby(lobby, host).getLobbyId();
+
+        int numberOfJoins = 300;
+        List<Player> joiners = new ArrayList<>();
+        for(int i = 0; i < numberOfJoins; i++) {
+            Player player = new Player();
+            player.setId(1000L + i);
+            player.setToken("joinToken" + i);
+            player.setUsername("joiner" + i);
+            joiners.add(player);
+        }
+        playerRepository.saveAll(joiners);
+        playerRepository.flush();
+
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger joined = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+        for(Player joiner : joiners) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                try {
+                    lobbyService.addPlayerToLobby(joiner.getToken(), joiner, lobbyService.getLobby(lobbyId));
+                    joined.incrementAndGet();
+                }
+                catch (ConflictException | ConcurrencyFailureException e) {
+                    rejected.incrementAndGet();
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for(Future<?> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        Lobby result = lobbyRepository.findById(lobbyId).orElseThrow();
+        assertTrue(joined.get() > 0);
+        assertTrue(joined.get() <= 6);
+        assertEquals(numberOfJoins, joined.get() + rejected.get());
+        assertEquals(1 + joined.get(), result.getCurrentNumPlayers());
+        assertEquals(result.getCurrentNumPlayers(), result.getPlayersInLobby().size());
+        assertTrue(result.getCurrentNumPlayers() + result.getCurrentNumBots() <= result.getMaxPlayersAndBots());
+    }
+
     @Test
     public void deleteLobby_success() {
         Player host = new Player();
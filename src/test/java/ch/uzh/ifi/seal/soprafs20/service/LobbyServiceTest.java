@@ -23,6 +23,10 @@ class LobbyServiceTest {
     private LobbyRepository lobbyRepository;
     @Mock
     private PlayerRepository playerRepository;
+    @Mock
+    private LobbyDirectory lobbyDirectory;
+    @Mock
+    private ActivityTracker activityTracker;
 
     @InjectMocks
     private LobbyService lobbyService;
@@ -51,6 +55,9 @@ class LobbyServiceTest {
         // when -> any object is being save in the userRepository -> return the dummy testUser
         Mockito.when(lobbyRepository.save(Mockito.any())).thenReturn(testLobby);
         Mockito.when(lobbyRepository.findById(Mockito.any())).thenReturn(java.util.Optional.ofNullable(testLobby));
+        Mockito.when(lobbyRepository.findFreshById(Mockito.any())).thenReturn(java.util.Optional.ofNullable(testLobby));
+        Mockito.when(lobbyRepository.reserveSlot(Mockito.any())).thenReturn(1);
+        Mockito.when(lobbyRepository.releaseSlot(Mockito.any())).thenReturn(1);
 
     }
 
@@ -66,6 +73,7 @@ class LobbyServiceTest {
         assertEquals(testLobby.getMaxPlayersAndBots(),lobby.getMaxPlayersAndBots());
         assertEquals(testLobby.getCurrentNumPlayers(),lobby.getCurrentNumPlayers());
         assertNull(lobby.getPrivateKey());
+        Mockito.verify(lobbyDirectory, Mockito.times(1)).update(lobby);
     }
 
     @Test
@@ -309,6 +317,20 @@ class LobbyServiceTest {
         //assertEquals("Lobby is full",ex.getMessage());
     }
 
+    @Test
+    void joinLobby_fail_slotTakenConcurrently(){
+        Player player2 = new Player();
+        player2.setToken("123");
+        player2.setId(3L);
+
+        testLobby.setPrivate(false);
+        testLobby.addPlayerToLobby(host);
+        Mockito.when(lobbyRepository.reserveSlot(Mockito.any())).thenReturn(0);
+
+        assertThrows(ConflictException.class, () -> lobbyService.addPlayerToLobby(player2.getToken(), player2, testLobby));
+        assertFalse(testLobby.getPlayersInLobby().contains(player2));
+    }
+
     @Test
     void joinLobby_fail_gameIsStarted(){
 
@@ -405,4 +427,45 @@ class LobbyServiceTest {
         assertTrue(ex.getMessage().contains("game already started"));
     }
 
+    @Test
+    void leaveLobby_gameStartedConcurrently_gameAlreadyStarted(){
+        Lobby staleLobby = new Lobby();
+        staleLobby.setLobbyId(1L);
+        testLobby.setGameIsStarted(true);
+        Mockito.when(lobbyRepository.releaseSlot(Mockito.any())).thenReturn(0);
+
+        Throwable ex = assertThrows(ConflictException.class,()->{lobbyService.removePlayerFromLobby(host, staleLobby);});
+        assertTrue(ex.getMessage().contains("game already started"));
+    }
+
+    @Test
+    void leaveLobby_noPlayerCounted_noPlayersLeft(){
+        testLobby.addPlayerToLobby(host);
+        Mockito.when(lobbyRepository.releaseSlot(Mockito.any())).thenReturn(0);
+
+        Throwable ex = assertThrows(ConflictException.class,()->{lobbyService.removePlayerFromLobby(host, testLobby);});
+        assertTrue(ex.getMessage().contains("no players left"));
+        Mockito.verify(lobbyDirectory, Mockito.never()).update(Mockito.any());
+    }
+
+    @Test
+    void evictIdleLobby_notStarted_lobbyAndPlayersRemoved(){
+        testLobby.addPlayerToLobby(host);
+
+        assertEquals(1, lobbyService.evictIdleLobby(1L));
+
+        Mockito.verify(lobbyRepository).delete(testLobby);
+        Mockito.verify(playerRepository).deleteAll(java.util.Collections.singletonList(host));
+        Mockito.verify(lobbyDirectory).remove(1L);
+    }
+
+    @Test
+    void evictIdleLobby_gameStarted_lobbyKept(){
+        testLobby.setGameIsStarted(true);
+
+        assertEquals(-1, lobbyService.evictIdleLobby(1L));
+
+        Mockito.verify(lobbyRepository, Mockito.never()).delete(Mockito.any());
+    }
+
 }
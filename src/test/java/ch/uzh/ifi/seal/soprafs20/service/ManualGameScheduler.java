@@ -0,0 +1,58 @@
+package ch.uzh.ifi.seal.soprafs20.service;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Game scheduler whose timers only tick when a test tells them to, e.g. after moving a virtual clock on.
+ * The ticks are the ones the game coordinator hands to the scheduler, so tests go through the timer's real path.
+ * One-off tasks still run on the pool.
+ */
+public class ManualGameScheduler extends GameScheduler {
+    private final Map<Long, Runnable> ticks = new ConcurrentHashMap<>();
+
+    public ManualGameScheduler() {
+        super(1);
+    }
+
+    @Override
+    public void start(Long lobbyId, long initialDelayMillis, Runnable tick) {
+        ticks.put(lobbyId, tick);
+    }
+
+    @Override
+    public void stop(Long lobbyId) {
+        ticks.remove(lobbyId);
+    }
+
+    /**
+     * Runs one tick of the game's timer on the calling thread
+     *
+     * @return false if the game has no timer (any more)
+     */
+    public boolean tick(Long lobbyId) {
+        Runnable tick = ticks.get(lobbyId);
+        if(tick == null) {
+            return false;
+        }
+        tick.run();
+        return true;
+    }
+
+    @Override
+    public boolean isRunning(Long lobbyId) {
+        return ticks.containsKey(lobbyId);
+    }
+
+    @Override
+    public Set<Long> getRunningLobbyIds() {
+        return Collections.unmodifiableSet(ticks.keySet());
+    }
+
+    @Override
+    public int countRunning() {
+        return ticks.size();
+    }
+}
@@ -0,0 +1,253 @@
+package ch.uzh.ifi.seal.soprafs20.service;
+
+import ch.uzh.ifi.seal.soprafs20.constant.MatchmakingStatus;
+import ch.uzh.ifi.seal.soprafs20.entity.Lobby;
+import ch.uzh.ifi.seal.soprafs20.entity.Player;
+import ch.uzh.ifi.seal.soprafs20.entity.User;
+import ch.uzh.ifi.seal.soprafs20.exceptions.ConflictException;
+import ch.uzh.ifi.seal.soprafs20.exceptions.NotFoundException;
+import ch.uzh.ifi.seal.soprafs20.exceptions.UnauthorizedException;
+import ch.uzh.ifi.seal.soprafs20.rest.dto.MatchmakingStatsGetDTO;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MatchmakingServiceTest {
+
+    @Mock
+    private LobbyService lobbyService;
+    @Mock
+    private UserService userService;
+    @Mock
+    private PlayerService playerService;
+
+    private LobbyDirectory lobbyDirectory;
+    private final Map<Long, Lobby> lobbies = new ConcurrentHashMap<>();
+
+    @BeforeEach
+    void setup() {
+        MockitoAnnotations.initMocks(this);
+        lobbyDirectory = new LobbyDirectory();
+        lobbies.clear();
+
+        Mockito.when(userService.getUser(Mockito.anyLong())).thenAnswer(invocation -> {
+            Long userId = invocation.getArgument(0);
+            User user = new User();
+            user.setId(userId);
+            user.setToken("token" + userId);
+            return user;
+        });
+        Mockito.when(playerService.convertUserToPlayer(Mockito.any())).thenAnswer(invocation -> {
+            User user = invocation.getArgument(0);
+            Player player = new Player();
+            player.setId(user.getId());
+            player.setToken(user.getToken());
+            return player;
+        });
+        Mockito.when(lobbyService.getLobby(Mockito.anyLong())).thenAnswer(invocation -> {
+            Lobby lobby = lobbies.get(invocation.<Long>getArgument(0));
+            if(lobby == null) {
+                throw new NotFoundException("Could not find lobby!");
+            }
+            return lobby;
+        });
+        Mockito.doAnswer(invocation -> {
+            Player player = invocation.getArgument(1);
+            Lobby lobby = invocation.getArgument(2);
+            synchronized (lobby) {
+                if(lobby.getCurrentNumPlayers() + lobby.getCurrentNumBots() >= lobby.getMaxPlayersAndBots()) {
+                    throw new ConflictException("Failed to join lobby: Sorry, the lobby is already full");
+                }
+                lobby.addPlayerToLobby(player);
+                lobby.setCurrentNumPlayers(lobby.getPlayersInLobby().size());
+            }
+            lobbyDirectory.update(lobby);
+            return null;
+        }).when(lobbyService).addPlayerToLobby(Mockito.anyString(), Mockito.any(), Mockito.any());
+        Mockito.when(lobbyService.addBots(Mockito.anyLong(), Mockito.anyInt())).thenAnswer(invocation -> {
+            Lobby lobby = lobbies.get(invocation.<Long>getArgument(0));
+            int bots = invocation.getArgument(1);
+            lobby.setCurrentNumBots(lobby.getCurrentNumBots() + bots);
+            lobbyDirectory.update(lobby);
+            return bots;
+        });
+    }
+
+    private MatchmakingService createService(long botBackfillSeconds) {
+        return new MatchmakingService(lobbyService, userService, playerService, lobbyDirectory, botBackfillSeconds);
+    }
+
+    private Lobby createLobby(long lobbyId, int maxPlayersAndBots, int players) {
+        Lobby lobby = new Lobby();
+        lobby.setLobbyId(lobbyId);
+        lobby.setLobbyName("lobby" + lobbyId);
+        lobby.setHostId(-lobbyId);
+        lobby.setMaxPlayersAndBots(maxPlayersAndBots);
+        lobby.setRounds(13);
+        lobby.setCurrentNumBots(0);
+        for(int i = 0; i < players; i++) {
+            Player player = new Player();
+            player.setId(-lobbyId * 10 - i);
+            lobby.addPlayerToLobby(player);
+        }
+        lobby.setCurrentNumPlayers(players);
+        lobbies.put(lobbyId, lobby);
+        lobbyDirectory.update(lobby);
+        return lobby;
+    }
+
+    @Test
+    void enqueue_wrongToken_throwsException() {
+        MatchmakingService matchmakingService = createService(30);
+
+        assertThrows(UnauthorizedException.class, () -> matchmakingService.enqueue(1L, "wrongToken"));
+    }
+
+    @Test
+    void enqueue_twice_throwsException() {
+        MatchmakingService matchmakingService = createService(30);
+        matchmakingService.enqueue(1L, "token1");
+
+        assertThrows(ConflictException.class, () -> matchmakingService.enqueue(1L, "token1"));
+    }
+
+    @Test
+    void match_placesIntoFullestLobby() {
+        createLobby(1L, 5, 1);
+        Lobby almostFull = createLobby(2L, 5, 3);
+        MatchmakingService matchmakingService = createService(30);
+
+        MatchmakingTicket ticket = matchmakingService.enqueue(1L, "token1");
+        matchmakingService.match();
+
+        assertEquals(MatchmakingStatus.MATCHED, ticket.getStatus());
+        assertEquals(almostFull.getLobbyId(), ticket.getLobbyId());
+        assertEquals(4, almostFull.getCurrentNumPlayers());
+    }
+
+    @Test
+    void match_noLobby_keepsWaiting() {
+        MatchmakingService matchmakingService = createService(30);
+
+        MatchmakingTicket ticket = matchmakingService.enqueue(1L, "token1");
+        matchmakingService.match();
+
+        assertEquals(MatchmakingStatus.WAITING, ticket.getStatus());
+        assertEquals(1, matchmakingService.getStats().getWaiting());
+
+        Lobby lobby = createLobby(1L, 5, 1);
+        matchmakingService.match();
+
+        assertEquals(MatchmakingStatus.MATCHED, ticket.getStatus());
+        assertEquals(2, lobby.getCurrentNumPlayers());
+    }
+
+    @Test
+    void match_cancelledTicket_isSkipped() {
+        Lobby lobby = createLobby(1L, 5, 1);
+        MatchmakingService matchmakingService = createService(30);
+
+        matchmakingService.enqueue(1L, "token1");
+        matchmakingService.cancel(1L, "token1");
+        matchmakingService.match();
+
+        assertEquals(1, lobby.getCurrentNumPlayers());
+        assertThrows(NotFoundException.class, () -> matchmakingService.getTicket(1L, "token1"));
+    }
+
+    @Test
+    void match_afterWait_backfillsBots() {
+        Lobby lobby = createLobby(1L, 5, 1);
+        MatchmakingService matchmakingService = createService(0);
+
+        matchmakingService.enqueue(1L, "token1");
+        matchmakingService.match();
+
+        assertEquals(2, lobby.getCurrentNumPlayers());
+        assertEquals(1, lobby.getCurrentNumBots());
+        assertEquals(1L, matchmakingService.getStats().getBotsBackfilled());
+    }
+
+    @Test
+    void match_onlyOwnLobby_userNotConverted() {
+        Lobby lobby = createLobby(1L, 5, 1);
+        lobby.setHostId(1L);
+        MatchmakingService matchmakingService = createService(30);
+
+        MatchmakingTicket ticket = matchmakingService.enqueue(1L, "token1");
+        matchmakingService.match();
+        matchmakingService.match();
+
+        assertEquals(MatchmakingStatus.WAITING, ticket.getStatus());
+        Mockito.verify(playerService, Mockito.never()).convertUserToPlayer(Mockito.any());
+        Mockito.verify(playerService, Mockito.never()).deletePlayer(Mockito.any());
+    }
+
+    /**
+     * Synthetic load: thousands of users enqueue concurrently while the matcher runs
+     */
+    @Test
+    void match_thousandsOfUsers_fillsAllLobbiesWithoutOvershooting() throws InterruptedException {
+        int numberOfLobbies = 1000;
+        int freeSlotsPerLobby = 4;
+        int numberOfUsers = numberOfLobbies * freeSlotsPerLobby;
+        int producers = 4;
+        for(long i = 1; i <= numberOfLobbies; i++) {
+            createLobby(i, freeSlotsPerLobby + 1, 1);
+        }
+        MatchmakingService matchmakingService = createService(30);
+
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for(int p = 0; p < producers; p++) {
+            final int offset = p;
+            Thread producer = new Thread(() -> {
+                try {
+                    start.await();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                for(long userId = 1 + offset; userId <= numberOfUsers; userId += producers) {
+                    matchmakingService.enqueue(userId, "token" + userId);
+                }
+            });
+            producer.start();
+            threads.add(producer);
+        }
+
+        Thread matcher = new Thread(() -> {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+            while(matchmakingService.getStats().getMatched() < numberOfUsers && System.nanoTime() < deadline) {
+                matchmakingService.match();
+            }
+        });
+        matcher.start();
+        start.countDown();
+        for(Thread producer : threads) {
+            producer.join();
+        }
+        matcher.join();
+
+        MatchmakingStatsGetDTO stats = matchmakingService.getStats();
+        assertEquals(numberOfUsers, stats.getMatched());
+        assertEquals(0, stats.getWaiting());
+        for(Lobby lobby : lobbies.values()) {
+            assertEquals(lobby.getMaxPlayersAndBots(), lobby.getCurrentNumPlayers());
+            assertEquals(lobby.getPlayersInLobby().size(), lobby.getCurrentNumPlayers());
+        }
+        assertTrue(lobbyDirectory.list(true, 0L, 10).isEmpty());
+    }
+}
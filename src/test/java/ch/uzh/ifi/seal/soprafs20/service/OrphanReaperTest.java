@@ -0,0 +1,124 @@
+package ch.uzh.ifi.seal.soprafs20.service;
+
+import ch.uzh.ifi.seal.soprafs20.entity.Chat;
+import ch.uzh.ifi.seal.soprafs20.entity.Message;
+import ch.uzh.ifi.seal.soprafs20.metrics.MetricsRegistry;
+import ch.uzh.ifi.seal.soprafs20.repository.ChatRepository;
+import ch.uzh.ifi.seal.soprafs20.repository.ClueRepository;
+import ch.uzh.ifi.seal.soprafs20.repository.MessageRepository;
+import ch.uzh.ifi.seal.soprafs20.repository.PlayerRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class OrphanReaperTest {
+
+    @Mock
+    private ClueRepository clueRepository;
+
+    @Mock
+    private PlayerRepository playerRepository;
+
+    @Mock
+    private ChatRepository chatRepository;
+
+    @Mock
+    private MessageRepository messageRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private ClusterMembership clusterMembership;
+
+    private final MetricsRegistry metricsRegistry = new MetricsRegistry();
+
+    private OrphanReaper orphanReaper;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.initMocks(this);
+        Mockito.when(clusterMembership.isLocal(0L)).thenReturn(true);
+        Mockito.when(clueRepository.deleteByIds(Mockito.any())).thenAnswer(
+                invocation -> invocation.<List<Long>>getArgument(0).size());
+        orphanReaper = new OrphanReaper(clueRepository, playerRepository, chatRepository, messageRepository,
+                transactionManager, clusterMembership, metricsRegistry, true, 2, 8, 10_000L);
+    }
+
+    private void orphanClues(Long... ids) {
+        Mockito.when(clueRepository.findOrphanIds(Mockito.anyLong(), Mockito.any()))
+                .thenReturn(new ArrayList<>(Arrays.asList(ids)), new ArrayList<>());
+    }
+
+    @Test
+    void reap_newOrphans_deletedByNextRun() {
+        orphanClues(1L, 2L);
+        assertEquals(0, orphanReaper.reap());
+        Mockito.verify(clueRepository, Mockito.never()).deleteByIds(Mockito.any());
+
+        orphanClues(1L, 2L);
+        assertEquals(2, orphanReaper.reap());
+
+        Mockito.verify(clueRepository).deleteByIds(Arrays.asList(1L, 2L));
+        assertEquals(2L, metricsRegistry.getCount("reaper.reclaimed.clues"));
+    }
+
+    @Test
+    void reap_fullBatch_continuesAfterLastId() {
+        orphanClues(1L, 2L);
+        orphanReaper.reap();
+
+        orphanClues(1L, 2L);
+        orphanReaper.reap();
+
+        Mockito.verify(clueRepository, Mockito.atLeastOnce()).findOrphanIds(Mockito.eq(2L), Mockito.any());
+    }
+
+    @Test
+    void reap_orphanAttachedMeanwhile_notDeleted() {
+        orphanClues(1L, 2L);
+        orphanReaper.reap();
+
+        orphanClues(2L, 3L);
+        assertEquals(1, orphanReaper.reap());
+
+        Mockito.verify(clueRepository).deleteByIds(Collections.singletonList(2L));
+    }
+
+    @Test
+    void reap_chatOfRemovedLobby_deletedWithMessages() {
+        Message message = new Message();
+        message.setMessageId(5L);
+        Chat chat = new Chat();
+        chat.setLobbyId(3L);
+        chat.setMessages(message);
+        Mockito.when(chatRepository.findOrphanIds(Mockito.anyLong(), Mockito.any()))
+                .thenAnswer(invocation -> new ArrayList<>(Collections.singletonList(3L)));
+        Mockito.when(chatRepository.findAllById(Mockito.any())).thenReturn(Collections.singletonList(chat));
+
+        orphanReaper.reap();
+        assertEquals(1, orphanReaper.reap());
+
+        Mockito.verify(chatRepository).deleteAll(Collections.singletonList(chat));
+        Mockito.verify(messageRepository).deleteByIds(Collections.singletonList(5L));
+    }
+
+    @Test
+    void reap_otherNodeOwnsReaping_nothingQueried() {
+        Mockito.when(clusterMembership.isLocal(0L)).thenReturn(false);
+
+        assertEquals(0, orphanReaper.reap());
+
+        Mockito.verifyNoInteractions(clueRepository, playerRepository, chatRepository, messageRepository);
+    }
+}
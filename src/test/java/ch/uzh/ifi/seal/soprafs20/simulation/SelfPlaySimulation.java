@@ -0,0 +1,373 @@
+package ch.uzh.ifi.seal.soprafs20.simulation;
+
+import ch.uzh.ifi.seal.soprafs20.GameLogic.GameState;
+import ch.uzh.ifi.seal.soprafs20.GameLogic.WordCorpus;
+import ch.uzh.ifi.seal.soprafs20.controller.GameController;
+import ch.uzh.ifi.seal.soprafs20.entity.Game;
+import ch.uzh.ifi.seal.soprafs20.entity.Lobby;
+import ch.uzh.ifi.seal.soprafs20.entity.Player;
+import ch.uzh.ifi.seal.soprafs20.exceptions.DomainException;
+import ch.uzh.ifi.seal.soprafs20.metrics.SqlStatementCounter;
+import ch.uzh.ifi.seal.soprafs20.repository.LobbyRepository;
+import ch.uzh.ifi.seal.soprafs20.repository.PlayerRepository;
+import ch.uzh.ifi.seal.soprafs20.rest.dto.CluePutDTO;
+import ch.uzh.ifi.seal.soprafs20.rest.dto.GamePostDTO;
+import ch.uzh.ifi.seal.soprafs20.rest.dto.MessagePutDTO;
+import ch.uzh.ifi.seal.soprafs20.rest.dto.VotePutDTO;
+import ch.uzh.ifi.seal.soprafs20.service.GameCoordinator;
+import ch.uzh.ifi.seal.soprafs20.service.GameService;
+import ch.uzh.ifi.seal.soprafs20.service.ManualGameScheduler;
+import ch.uzh.ifi.seal.soprafs20.service.VirtualGameClock;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Plays complete games against the real services, repositories and database, with synthetic players instead of
+ * clients. Time is virtual: the timer the game coordinator started for every game ticks once per virtual second and
+ * the players act after a think time drawn from a configurable distribution, all driven by one event queue on the
+ * calling thread. A game that has not ended long after its last round should have is left unfinished.
+ * Player commands go through the game controller like requests would, commands the game no longer accepts
+ * (e.g. a clue after the time ran out) are counted as rejected.
+ */
+public class SelfPlaySimulation {
+    private static final long TICK_MILLIS = 1000;
+    private static final long FIRST_PLAYER_ID = 1_000_000L;
+    // far more than the time limits of all states of a round add up to
+    private static final long MAX_ROUND_MILLIS = 5 * 60 * 1000L;
+
+    private final GameController gameController;
+    private final GameService gameService;
+    private final GameCoordinator gameCoordinator;
+    private final ManualGameScheduler gameScheduler;
+    private final LobbyRepository lobbyRepository;
+    private final PlayerRepository playerRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final VirtualGameClock clock;
+    private final Settings settings;
+    private final Random random;
+
+    private final PriorityQueue<Event> events = new PriorityQueue<>();
+    private long eventSequence;
+    private int finishedGames;
+    private int actions;
+    private int rejectedActions;
+
+    public SelfPlaySimulation(GameController gameController, GameService gameService, GameCoordinator gameCoordinator,
+                              ManualGameScheduler gameScheduler, LobbyRepository lobbyRepository,
+                              PlayerRepository playerRepository, TransactionTemplate transactionTemplate,
+                              VirtualGameClock clock, Settings settings) {
+        this.gameController = gameController;
+        this.gameService = gameService;
+        this.gameCoordinator = gameCoordinator;
+        this.gameScheduler = gameScheduler;
+        this.lobbyRepository = lobbyRepository;
+        this.playerRepository = playerRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.clock = clock;
+        this.settings = settings;
+        this.random = new Random(settings.seed);
+    }
+
+    /**
+     * Starts all games and plays them until they have ended
+     */
+    public Report run() {
+        long heapBefore = usedHeap();
+        long start = System.nanoTime();
+        SqlStatementCounter.start();
+
+        for(int i = 0; i < settings.games; i++) {
+            SimulatedGame game = startGame(i);
+            gameCoordinator.timer(game.game);
+            schedule(TICK_MILLIS, () -> tick(game));
+        }
+        int sqlStatements = SqlStatementCounter.stop();
+        long setupNanos = System.nanoTime() - start;
+        // all games are running now, measured outside of the timed part since it forces garbage collections
+        long heapPerGame = (usedHeap() - heapBefore) / Math.max(settings.games, 1);
+
+        start = System.nanoTime();
+        SqlStatementCounter.start();
+        while(!events.isEmpty()) {
+            Event event = events.poll();
+            clock.advanceTo(event.time);
+            event.action.run();
+        }
+        sqlStatements += SqlStatementCounter.stop();
+        long wallNanos = setupNanos + System.nanoTime() - start;
+
+        return new Report(settings.games, finishedGames, actions, rejectedActions, sqlStatements, wallNanos, heapPerGame);
+    }
+
+    private SimulatedGame startGame(int index) {
+        List<Player> players = new ArrayList<>();
+        for(int i = 0; i < settings.playersPerGame; i++) {
+            Player player = new Player();
+            player.setId(FIRST_PLAYER_ID + (long) index * settings.playersPerGame + i);
+            player.setUsername("simulated" + player.getId());
+            player.setToken(UUID.randomUUID().toString());
+            players.add(player);
+        }
+        Player host = players.get(0);
+
+        // like the request that starts a game: the timer is stored together with the new game
+        Game game = transactionTemplate.execute(status -> {
+            playerRepository.saveAll(players);
+            playerRepository.flush();
+
+            Lobby lobby = new Lobby();
+            lobby.setLobbyName("simulation" + index);
+            lobby.setHostId(host.getId());
+            lobby.setHostToken(host.getToken());
+            lobby.setPrivate(false);
+            lobby.setMaxPlayersAndBots(7);
+            lobby.setRounds(settings.rounds);
+            lobby.setCurrentNumBots(0);
+            lobby.setCurrentNumPlayers(players.size());
+            for(Player player : players) {
+                lobby.addPlayerToLobby(player);
+            }
+            lobby = lobbyRepository.saveAndFlush(lobby);
+
+            GamePostDTO gamePostDTO = new GamePostDTO();
+            gamePostDTO.setHostId(host.getId());
+            gamePostDTO.setHostToken(host.getToken());
+            Game createdGame = gameService.createGame(lobby, gamePostDTO);
+            gameService.setTimer(createdGame);
+            return createdGame;
+        });
+        return new SimulatedGame(game, players, clock.currentTimeMillis());
+    }
+
+    private void tick(SimulatedGame game) {
+        Long lobbyId = game.game.getLobbyId();
+        gameScheduler.tick(lobbyId);
+        if(!gameScheduler.isRunning(lobbyId)) {
+            finishedGames++;
+            return;
+        }
+        if(clock.currentTimeMillis() - game.startMillis > settings.rounds * MAX_ROUND_MILLIS) {
+            // the game is stuck, it is not ticked any more so the run ends and reports it as unfinished
+            return;
+        }
+        Game state = gameService.getGame(lobbyId);
+        String phase = state.getGameState() + ":" + state.getRoundsPlayed();
+        if(!phase.equals(game.phase)) {
+            game.phase = phase;
+            play(game, state);
+        }
+        schedule(TICK_MILLIS, () -> tick(game));
+    }
+
+    /**
+     * Schedules what the players do in the phase the game just entered
+     */
+    private void play(SimulatedGame game, Game state) {
+        long lobbyId = state.getLobbyId();
+        Player guesser = state.getCurrentGuesser();
+        String word = state.getCurrentWord();
+        GameState gameState = state.getGameState();
+
+        if(gameState == GameState.PICK_WORD_STATE) {
+            act(() -> gameController.pickWord(lobbyId, guesser.getToken()));
+        }
+        else if(gameState == GameState.ENTER_GUESS_STATE) {
+            MessagePutDTO guess = new MessagePutDTO();
+            guess.setPlayerId(guesser.getId());
+            guess.setPlayerToken(guesser.getToken());
+            guess.setMessage(random.nextDouble() < settings.correctGuessProbability ? word : randomWord(word));
+            act(() -> gameController.sendGuess(lobbyId, guess, null));
+        }
+        else if(gameState == GameState.ENTER_CLUES_STATE || gameState == GameState.VOTE_ON_CLUES_STATE) {
+            for(Player player : game.players) {
+                if(player.getId().equals(guesser.getId())) {
+                    continue;
+                }
+                if(gameState == GameState.ENTER_CLUES_STATE) {
+                    CluePutDTO clue = new CluePutDTO();
+                    clue.setPlayerId(player.getId());
+                    clue.setPlayerToken(player.getToken());
+                    clue.setMessage(randomWord(word));
+                    if(state.isSpecialGame()) {
+                        clue.setMessage2(randomWord(word));
+                    }
+                    act(() -> gameController.sendClue(lobbyId, clue, null));
+                }
+                else {
+                    VotePutDTO vote = new VotePutDTO();
+                    vote.setPlayerId(player.getId());
+                    vote.setPlayerToken(player.getToken());
+                    vote.setInvalidClues(new ArrayList<>());
+                    act(() -> gameController.vote(lobbyId, vote, null));
+                }
+            }
+        }
+    }
+
+    /**
+     * Schedules a player command after a think time, unless the player stays idle and lets the time run out
+     */
+    private void act(Runnable command) {
+        if(random.nextDouble() < settings.idleProbability) {
+            return;
+        }
+        schedule(settings.thinkTime.sample(random, settings.thinkTimeMillis), () -> {
+            actions++;
+            try {
+                command.run();
+            }
+            catch (DomainException e) {
+                rejectedActions++;
+            }
+        });
+    }
+
+    private void schedule(long delayMillis, Runnable action) {
+        events.add(new Event(clock.currentTimeMillis() + delayMillis, eventSequence++, action));
+    }
+
+    private String randomWord(String except) {
+        WordCorpus corpus = WordCorpus.getInstance();
+        String word;
+        do {
+            word = corpus.get(random.nextInt(corpus.size()));
+        } while(word.equalsIgnoreCase(except));
+        return word;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for(int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static class SimulatedGame {
+        private final Game game;
+        private final List<Player> players;
+        private final long startMillis;
+        private String phase;
+
+        private SimulatedGame(Game game, List<Player> players, long startMillis) {
+            this.game = game;
+            this.players = players;
+            this.startMillis = startMillis;
+        }
+    }
+
+    private static class Event implements Comparable<Event> {
+        private final long time;
+        private final long sequence;
+        private final Runnable action;
+
+        private Event(long time, long sequence, Runnable action) {
+            this.time = time;
+            this.sequence = sequence;
+            this.action = action;
+        }
+
+        @Override
+        public int compareTo(Event other) {
+            int byTime = Long.compare(time, other.time);
+            return byTime != 0 ? byTime : Long.compare(sequence, other.sequence);
+        }
+    }
+
+    /**
+     * How long a player thinks before acting, around the configured mean
+     */
+    public enum ThinkTime {
+        FIXED {
+            @Override
+            long sample(Random random, long meanMillis) { return meanMillis; }
+        },
+        UNIFORM {
+            @Override
+            long sample(Random random, long meanMillis) { return (long) (random.nextDouble() * 2 * meanMillis); }
+        },
+        EXPONENTIAL {
+            @Override
+            long sample(Random random, long meanMillis) { return (long) (-Math.log(1.0 - random.nextDouble()) * meanMillis); }
+        };
+
+        abstract long sample(Random random, long meanMillis);
+    }
+
+    /**
+     * Size and behaviour of a simulation, every setting can be overridden with a system property simulation.&lt;name&gt;
+     */
+    public static class Settings {
+        int games = 10;
+        int playersPerGame = 4;
+        int rounds = 3;
+        long thinkTimeMillis = 4000;
+        ThinkTime thinkTime = ThinkTime.EXPONENTIAL;
+        double correctGuessProbability = 0.6;
+        double idleProbability = 0.05;
+        long seed = 42;
+
+        public static Settings fromSystemProperties() {
+            Settings settings = new Settings();
+            settings.games = Integer.getInteger("simulation.games", settings.games);
+            settings.playersPerGame = Integer.getInteger("simulation.playersPerGame", settings.playersPerGame);
+            settings.rounds = Integer.getInteger("simulation.rounds", settings.rounds);
+            settings.thinkTimeMillis = Long.getLong("simulation.thinkTimeMillis", settings.thinkTimeMillis);
+            settings.thinkTime = ThinkTime.valueOf(System.getProperty("simulation.thinkTime", settings.thinkTime.name()));
+            settings.correctGuessProbability = Double.parseDouble(System.getProperty("simulation.correctGuessProbability",
+                    String.valueOf(settings.correctGuessProbability)));
+            settings.idleProbability = Double.parseDouble(System.getProperty("simulation.idleProbability",
+                    String.valueOf(settings.idleProbability)));
+            settings.seed = Long.getLong("simulation.seed", settings.seed);
+            return settings;
+        }
+    }
+
+    public static class Report {
+        private final int games;
+        private final int finishedGames;
+        private final int actions;
+        private final int rejectedActions;
+        private final long sqlStatements;
+        private final long wallNanos;
+        private final long heapBytesPerGame;
+
+        Report(int games, int finishedGames, int actions, int rejectedActions, long sqlStatements, long wallNanos,
+               long heapBytesPerGame) {
+            this.games = games;
+            this.finishedGames = finishedGames;
+            this.actions = actions;
+            this.rejectedActions = rejectedActions;
+            this.sqlStatements = sqlStatements;
+            this.wallNanos = wallNanos;
+            this.heapBytesPerGame = heapBytesPerGame;
+        }
+
+        public int getGames() { return games; }
+
+        public int getFinishedGames() { return finishedGames; }
+
+        public int getActions() { return actions; }
+
+        public int getRejectedActions() { return rejectedActions; }
+
+        public double getGamesPerSecond() { return finishedGames / (wallNanos / 1e9); }
+
+        public double getSqlStatementsPerGame() { return (double) sqlStatements / Math.max(games, 1); }
+
+        public long getHeapBytesPerGame() { return heapBytesPerGame; }
+
+        @Override
+        public String toString() {
+            return String.format("simulation: %d of %d games finished, %.1f games/s, %.0f SQL statements per game, "
+                            + "%d bytes heap per live game, %d player commands of which %d rejected",
+                    finishedGames, games, getGamesPerSecond(), getSqlStatementsPerGame(), heapBytesPerGame,
+                    actions, rejectedActions);
+        }
+    }
+}
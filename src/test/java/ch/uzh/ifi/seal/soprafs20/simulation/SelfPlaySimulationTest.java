@@ -0,0 +1,101 @@
+package ch.uzh.ifi.seal.soprafs20.simulation;
+
+import ch.uzh.ifi.seal.soprafs20.controller.GameController;
+import ch.uzh.ifi.seal.soprafs20.entity.Lobby;
+import ch.uzh.ifi.seal.soprafs20.repository.GameRepository;
+import ch.uzh.ifi.seal.soprafs20.repository.LobbyRepository;
+import ch.uzh.ifi.seal.soprafs20.repository.PlayerRepository;
+import ch.uzh.ifi.seal.soprafs20.service.GameCoordinator;
+import ch.uzh.ifi.seal.soprafs20.service.GameService;
+import ch.uzh.ifi.seal.soprafs20.service.ManualGameScheduler;
+import ch.uzh.ifi.seal.soprafs20.service.VirtualGameClock;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Plays a few complete games on a virtual clock. Bigger runs can be configured with system properties,
+ * see {@link SelfPlaySimulation.Settings} and the README.
+ */
+@WebAppConfiguration
+@SpringBootTest
+class SelfPlaySimulationTest {
+
+    @TestConfiguration
+    static class SimulationConfiguration {
+        @Bean
+        @Primary
+        VirtualGameClock virtualGameClock() {
+            return new VirtualGameClock(System.currentTimeMillis());
+        }
+
+        @Bean
+        @Primary
+        ManualGameScheduler manualGameScheduler() {
+            return new ManualGameScheduler();
+        }
+    }
+
+    @Autowired
+    private GameController gameController;
+
+    @Autowired
+    private GameService gameService;
+
+    @Autowired
+    private GameCoordinator gameCoordinator;
+
+    @Autowired
+    private ManualGameScheduler gameScheduler;
+
+    @Autowired
+    private GameRepository gameRepository;
+
+    @Autowired
+    private LobbyRepository lobbyRepository;
+
+    @Autowired
+    private PlayerRepository playerRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private VirtualGameClock clock;
+
+    @AfterEach
+    void cleanUp() {
+        List<Lobby> allLobbies = lobbyRepository.findAll();
+        for(Lobby l : allLobbies) {
+            l.getPlayersInLobby().clear();
+        }
+        lobbyRepository.saveAll(allLobbies);
+        gameRepository.deleteAll();
+        lobbyRepository.deleteAll();
+        playerRepository.deleteAll();
+    }
+
+    @Test
+    void selfPlay_allGamesFinish() {
+        SelfPlaySimulation.Settings settings = SelfPlaySimulation.Settings.fromSystemProperties();
+        SelfPlaySimulation simulation = new SelfPlaySimulation(gameController, gameService, gameCoordinator,
+                gameScheduler, lobbyRepository, playerRepository, new TransactionTemplate(transactionManager), clock, settings);
+
+        SelfPlaySimulation.Report report = simulation.run();
+
+        assertEquals(report.getGames(), report.getFinishedGames());
+        assertTrue(gameRepository.findAll().isEmpty());
+        assertTrue(report.getActions() > 0);
+    }
+}